@@ -61,17 +61,44 @@ public abstract class AbstractLogCompactor {
      * class Throttler.
      */
     public static class Throttler {
+        // Lowest fraction of the configured rate the compaction is slowed down to, so that it still progresses
+        private static final double MIN_RATE_RATIO = 0.05;
+
         private final RateLimiter rateLimiter;
         private final boolean isThrottleByBytes;
+        private final double maxRate;
 
         Throttler(ServerConfiguration conf) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
-            this.rateLimiter = RateLimiter.create(this.isThrottleByBytes
-                ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
+            this.maxRate = this.isThrottleByBytes
+                ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries();
+            this.rateLimiter = RateLimiter.create(maxRate);
+        }
+
+        /**
+         * Adapt the rate to the latency of the foreground operations: halve it while the latency is above
+         * the target, and raise it back towards the configured rate once it is below.
+         */
+        public void adjustRate(long latencyNanos, long targetLatencyNanos) {
+            double rate = rateLimiter.getRate();
+            double newRate = latencyNanos > targetLatencyNanos
+                    ? Math.max(maxRate * MIN_RATE_RATIO, rate / 2)
+                    : Math.min(maxRate, rate * 1.25);
+            if (newRate != rate) {
+                rateLimiter.setRate(newRate);
+            }
+        }
+
+        public double getRate() {
+            return rateLimiter.getRate();
+        }
+
+        public boolean isThrottleByBytes() {
+            return isThrottleByBytes;
         }
 
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
-        void acquire(int permits) {
+        public void acquire(int permits) {
             rateLimiter.acquire(this.isThrottleByBytes ? permits : 1);
         }
     }
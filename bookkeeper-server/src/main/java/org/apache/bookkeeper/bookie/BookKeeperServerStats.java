@@ -47,6 +47,9 @@ public interface BookKeeperServerStats {
     String ADD_ENTRY_REQUEST = "ADD_ENTRY_REQUEST";
     String ADD_ENTRY = "ADD_ENTRY";
     String ADD_ENTRY_REJECTED = "ADD_ENTRY_REJECTED";
+    String ADD_ENTRY_BATCH_SIZE = "ADD_ENTRY_BATCH_SIZE";
+    String ADD_ENTRY_DIGEST_VERIFICATION = "ADD_ENTRY_DIGEST_VERIFICATION";
+    String ADD_ENTRY_DIGEST_NOT_VERIFIED = "ADD_ENTRY_DIGEST_NOT_VERIFIED";
     String FORCE_LEDGER_REQUEST = "FORCE_LEDGER_REQUEST";
     String FORCE_LEDGER = "FORCE_LEDGER";
     String READ_ENTRY_REQUEST = "READ_ENTRY_REQUEST";
@@ -120,6 +123,10 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_GROUP_COMMIT_DEADLINE = "JOURNAL_GROUP_COMMIT_DEADLINE";
+    String JOURNAL_GROUP_COMMIT_BATCH_ENTRIES = "JOURNAL_GROUP_COMMIT_BATCH_ENTRIES";
+    String JOURNAL_GROUP_COMMIT_SYNC_LATENCY = "JOURNAL_GROUP_COMMIT_SYNC_LATENCY";
+    String JOURNAL_GROUP_COMMIT_ARRIVAL_RATE = "JOURNAL_GROUP_COMMIT_ARRIVAL_RATE";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
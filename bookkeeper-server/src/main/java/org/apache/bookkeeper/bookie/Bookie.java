@@ -19,6 +19,7 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
@@ -45,6 +46,9 @@ public interface Bookie {
             throws IOException, BookieException, InterruptedException;
     void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
+    // Entries of the same ledger, journaled as one group; the ones left in the array on failure were not added
+    void addEntries(ByteBuf[] entries, boolean recovery, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
     void setExplicitLac(ByteBuf entry, WriteCallback writeCallback, Object ctx, byte[] masterKey)
             throws IOException, InterruptedException, BookieException;
@@ -57,6 +61,9 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+    // Region of a file holding the entry, or null if it must be read with readEntry
+    FileRegion readEntryRegion(long ledgerId, long entryId, int minSize)
+            throws IOException, NoLedgerException, BookieException;
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
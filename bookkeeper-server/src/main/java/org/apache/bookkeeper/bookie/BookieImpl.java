@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -68,6 +69,7 @@ import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.net.DNS;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.BookKeeperConstants;
@@ -428,8 +430,12 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         // instantiate the journals
         journals = Lists.newArrayList();
         for (int i = 0; i < journalDirectories.size(); i++) {
-            journals.add(new Journal(i, journalDirectories.get(i),
-                    conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator));
+            File journalDirectory = journalDirectories.get(i);
+            int numStreams = Journal.getNumStreams(journalDirectory, conf);
+            for (int stream = 0; stream < numStreams; stream++) {
+                journals.add(new Journal(i, stream, journalDirectory,
+                        conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator));
+            }
         }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
@@ -897,19 +903,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
-    /**
-     * Add an entry to a ledger as specified by handle.
-     */
-    private void addEntryInternal(LedgerDescriptor handle, ByteBuf entry,
-                                  boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
-            throws IOException, BookieException, InterruptedException {
-        long ledgerId = handle.getLedgerId();
-        long entryId = handle.addEntry(entry);
-
-        bookieStats.getWriteBytes().add(entry.readableBytes());
-
-        // journal `addEntry` should happen after the entry is added to ledger storage.
-        // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
+    private void logMasterKeyIfNeeded(long ledgerId, byte[] masterKey) throws InterruptedException {
         if (masterKeyCache.get(ledgerId) == null) {
             // Force the load into masterKey cache
             byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
@@ -925,6 +919,22 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
                 getJournal(ledgerId).logAddEntry(bb, false /* ackBeforeSync */, new NopWriteCallback(), null);
             }
         }
+    }
+
+    /**
+     * Add an entry to a ledger as specified by handle.
+     */
+    private void addEntryInternal(LedgerDescriptor handle, ByteBuf entry,
+                                  boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long ledgerId = handle.getLedgerId();
+        long entryId = handle.addEntry(entry);
+
+        bookieStats.getWriteBytes().add(entry.readableBytes());
+
+        // journal `addEntry` should happen after the entry is added to ledger storage.
+        // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
+        logMasterKeyIfNeeded(ledgerId, masterKey);
 
         if (!writeDataToJournal) {
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
@@ -937,6 +947,74 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
+    /**
+     * Add entries of the same ledger sent together. They are added to the ledger storage under a single
+     * lock of the ledger, and queued in the journal as one group, so they are flushed and synced together.
+     *
+     * <p>The entries are released as they are handed to the journal, and cleared from the array. If an
+     * exception is thrown, the entries left in the array have not been added and are still owned by the
+     * caller.
+     *
+     * @param recovery whether the entries are added by a recovery, even if the ledger is fenced
+     */
+    public void addEntries(ByteBuf[] entries, boolean recovery, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        int numAdded = 0;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries[0], masterKey);
+            synchronized (handle) {
+                if (!recovery && handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                try {
+                    while (numAdded < entries.length) {
+                        handle.addEntry(entries[numAdded]);
+                        bookieStats.getWriteBytes().add(entries[numAdded].readableBytes());
+                        numAdded++;
+                    }
+                } finally {
+                    // The entries already in the ledger storage are journaled, even if a later one failed
+                    if (numAdded > 0) {
+                        logAddedEntries(handle, entries, numAdded, cb, ctx, masterKey);
+                    }
+                }
+            }
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            OpStatsLogger addEntryStats = recovery
+                    ? bookieStats.getRecoveryAddEntryStats() : bookieStats.getAddEntryStats();
+            for (int i = 0; i < numAdded; i++) {
+                addEntryStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getAddBytesStats().registerSuccessfulValue(entries[i].readableBytes());
+                entries[i].release();
+                entries[i] = null;
+            }
+            if (numAdded < entries.length) {
+                addEntryStats.registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getAddBytesStats().registerFailedValue(entries[numAdded].readableBytes());
+            }
+        }
+    }
+
+    private void logAddedEntries(LedgerDescriptor handle, ByteBuf[] entries, int count,
+                                 WriteCallback cb, Object ctx, byte[] masterKey) throws InterruptedException {
+        long ledgerId = handle.getLedgerId();
+        logMasterKeyIfNeeded(ledgerId, masterKey);
+
+        if (!writeDataToJournal) {
+            for (int i = 0; i < count; i++) {
+                cb.writeComplete(0, ledgerId, entries[i].getLong(entries[i].readerIndex() + 8), null, ctx);
+            }
+            return;
+        }
+        getJournal(ledgerId).logAddEntries(entries, count, false /* ackBeforeSync */, cb, ctx);
+    }
+
     /**
      * Add entry to a ledger, even if the ledger has previous been fenced. This should only
      * happen in bookie recovery or ledger recovery cases, where entries are being replicates
@@ -1073,6 +1151,22 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         return handle.fenceAndLogInJournal(getJournal(ledgerId));
     }
 
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, int minSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+        FileRegion region = handle.readEntryRegion(entryId, minSize);
+        if (region != null) {
+            bookieStats.getReadBytes().add(region.count());
+            bookieStats.getReadEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(requestNanos), TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerSuccessfulValue(region.count());
+        }
+        return region;
+    }
+
+    @Override
     public ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException {
         long requestNanos = MathUtils.nowInNano();
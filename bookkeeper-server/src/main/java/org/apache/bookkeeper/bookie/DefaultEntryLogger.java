@@ -32,6 +32,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
 import java.io.File;
@@ -47,6 +49,7 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -115,6 +118,10 @@ public class DefaultEntryLogger implements EntryLogger {
             return entryLogMetadata.getLedgersMap();
         }
 
+        EntryLogMetadata getEntryLogMetadata() {
+            return entryLogMetadata;
+        }
+
         public Long getLedgerIdAssigned() {
             return ledgerIdAssigned;
         }
@@ -285,6 +292,9 @@ public class DefaultEntryLogger implements EntryLogger {
     static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
     static final long MB = 1024 * 1024;
 
+    // Max size of the reads of entry log regions done by readEntries()
+    static final int READ_ENTRIES_CHUNK_SIZE = (int) MB;
+
     private final int maxSaneEntrySize;
 
     private final ByteBufAllocator allocator;
@@ -520,6 +530,7 @@ public class DefaultEntryLogger implements EntryLogger {
     @Override
     public boolean removeEntryLog(long entryLogId) {
         removeFromChannelsAndClose(entryLogId);
+        recentlyCreatedEntryLogsStatus.takeFlushedEntryLogMetadata(entryLogId);
         File entryLogFile;
         try {
             entryLogFile = findFile(entryLogId);
@@ -821,6 +832,100 @@ public class DefaultEntryLogger implements EntryLogger {
         return internalReadEntry(location, -1L, -1L, false /* validateEntry */);
     }
 
+    /**
+     * Read the region of the log holding the entries with large reads of the file, bypassing the
+     * small read buffer of the channel, and split it into entries. The entries share the buffers
+     * of the reads.
+     */
+    @Override
+    public List<ByteBuf> readEntries(long ledgerId, long firstEntryId, long firstEntryLocation,
+                                     int maxEntries, long maxBytes) throws IOException {
+        long entryLogId = logIdForOffset(firstEntryLocation);
+        if (entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            // The end of the log being written is still in its write buffer
+            return EntryLogger.super.readEntries(ledgerId, firstEntryId, firstEntryLocation, maxEntries, maxBytes);
+        }
+
+        FileChannel fc;
+        try {
+            fc = getFCForEntryInternal(ledgerId, firstEntryId, entryLogId, posForOffset(firstEntryLocation))
+                    .validateAndGetFileChannel();
+        } catch (EntryLookupException e) {
+            throw new IOException(e.toString());
+        }
+
+        List<ByteBuf> entries = new ArrayList<>();
+        long entryId = firstEntryId;
+        long size = 0;
+        // Start from the size header of the first entry
+        long pos = posForOffset(firstEntryLocation) - 4;
+        int minReadSize = 0;
+        boolean endReached = false;
+        try {
+            while (!endReached && entries.size() < maxEntries && size < maxBytes) {
+                int readSize = (int) Math.max(minReadSize, Math.min(READ_ENTRIES_CHUNK_SIZE, maxBytes - size + 4));
+                ByteBuf chunk = allocator.buffer(readSize, readSize);
+                try {
+                    int read = readFully(fc, chunk, pos);
+                    endReached = read < readSize;
+                    int offset = 0;
+                    minReadSize = 0;
+                    while (entries.size() < maxEntries && size < maxBytes && read - offset >= 4) {
+                        int entrySize = chunk.getInt(offset);
+                        if (entrySize < MIN_SANE_ENTRY_SIZE || entrySize > maxSaneEntrySize) {
+                            endReached = true;
+                            break;
+                        }
+                        if (read - offset - 4 < entrySize) {
+                            // Partially read, read it again with the next chunk
+                            if (offset == 0) {
+                                minReadSize = entrySize + 4;
+                            }
+                            break;
+                        }
+                        if (chunk.getLong(offset + 4) != ledgerId || chunk.getLong(offset + 12) != entryId) {
+                            // Entry of another ledger, or ledgers map at the end of the log
+                            endReached = true;
+                            break;
+                        }
+                        entries.add(chunk.retainedSlice(offset + 4, entrySize));
+                        offset += 4 + entrySize;
+                        size += entrySize;
+                        entryId++;
+                    }
+                    pos += offset;
+                } finally {
+                    chunk.release();
+                }
+            }
+        } catch (IOException e) {
+            if (entries.isEmpty()) {
+                throw e;
+            }
+            LOG.debug("Stopped reading entries of ledger {} from log {} at {}", ledgerId, entryLogId, pos, e);
+        }
+
+        if (entries.isEmpty()) {
+            throw new Bookie.NoEntryException("Entry not found in entrylog " + entryLogId, ledgerId, firstEntryId);
+        }
+        return entries;
+    }
+
+    private static int readFully(FileChannel fc, ByteBuf dest, long pos) throws IOException {
+        int length = dest.writableBytes();
+        ByteBuffer nioBuffer = dest.internalNioBuffer(dest.writerIndex(), length);
+        int read = 0;
+        while (read < length) {
+            int rc = fc.read(nioBuffer, pos + read);
+            if (rc <= 0) {
+                break;
+            }
+            read += rc;
+        }
+        dest.writerIndex(dest.writerIndex() + read);
+        return read;
+    }
+
 
     private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException, Bookie.NoEntryException {
@@ -865,6 +970,45 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, long location, int minSize)
+            throws IOException, Bookie.NoEntryException {
+        long entryLogId = logIdForOffset(location);
+        long pos = posForOffset(location);
+
+        int entrySize;
+        try {
+            BufferedReadChannel fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException.MissingEntryException entryLookupError) {
+            throw new Bookie.NoEntryException("Short read from entrylog " + entryLogId,
+                    ledgerId, entryId);
+        } catch (EntryLookupException e) {
+            throw new IOException(e.toString());
+        }
+        if (entrySize < minSize) {
+            return null;
+        }
+
+        // The end of the log being written may still be in its write buffer
+        BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
+        if (null != bc && pos + entrySize > bc.getFileChannelPosition()) {
+            return null;
+        }
+
+        // Open the file now, so that a compaction removing the log can't fail the transfer
+        DefaultFileRegion region = new DefaultFileRegion(findFile(entryLogId), pos, entrySize);
+        try {
+            region.open();
+        } catch (IOException e) {
+            region.release();
+            throw e;
+        }
+        return region;
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -1042,8 +1186,12 @@ public class DefaultEntryLogger implements EntryLogger {
 
     public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
         throws IOException {
-        // First try to extract the EntryLogMetadata from the index, if there's no index then fallback to scanning the
-        // entry log
+        // Use the ledgers map kept while writing the log if it was rotated since the last call, then try to
+        // extract the EntryLogMetadata from the index, if there's no index then fallback to scanning the entry log
+        EntryLogMetadata flushedLogMetadata = recentlyCreatedEntryLogsStatus.takeFlushedEntryLogMetadata(entryLogId);
+        if (flushedLogMetadata != null) {
+            return flushedLogMetadata;
+        }
         try {
             return extractEntryLogMetadataFromIndex(entryLogId);
         } catch (Exception e) {
@@ -1241,9 +1389,12 @@ public class DefaultEntryLogger implements EntryLogger {
     static class RecentEntryLogsStatus {
         private final SortedMap<Long, Boolean> entryLogsStatusMap;
         private long leastUnflushedLogId;
+        // Ledgers maps of the rotated logs once flushed, until the garbage collector asks for them
+        private final Map<Long, EntryLogMetadata> flushedEntryLogsMetadata;
 
         RecentEntryLogsStatus(long leastUnflushedLogId) {
             entryLogsStatusMap = new TreeMap<>();
+            flushedEntryLogsMetadata = new HashMap<>();
             this.leastUnflushedLogId = leastUnflushedLogId;
         }
 
@@ -1260,6 +1411,15 @@ public class DefaultEntryLogger implements EntryLogger {
             }
         }
 
+        synchronized void flushRotatedEntryLog(BufferedLogChannel logChannel) {
+            flushedEntryLogsMetadata.put(logChannel.getLogId(), logChannel.getEntryLogMetadata());
+            flushRotatedEntryLog(logChannel.getLogId());
+        }
+
+        synchronized EntryLogMetadata takeFlushedEntryLogMetadata(long entryLogId) {
+            return flushedEntryLogsMetadata.remove(entryLogId);
+        }
+
         synchronized long getLeastUnflushedLogId() {
             return leastUnflushedLogId;
         }
@@ -130,6 +130,20 @@ abstract class EntryLogManagerBase implements EntryLogManager {
         }
     }
 
+    /*
+     * Append the ledgers map to a current log, make it durable and close it, so that the ledgers of the
+     * log can be read from its index instead of scanning it after a restart. The channel is closed even if
+     * the ledgers map could not be written, the log is then scanned after the restart.
+     */
+    void finalizeAndCloseLogChannel(BufferedLogChannel logChannel) throws IOException {
+        try {
+            logChannel.appendLedgersMap();
+            logChannel.flushAndForceWrite(true);
+        } finally {
+            logChannel.close();
+        }
+    }
+
     /*
      * Creates a new log file. This method should be guarded by a lock,
      * so callers of this method should be in right scope of the lock.
@@ -585,12 +585,25 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
 
     @Override
     public void close() throws IOException {
+        // A log failing to be finalized must not leave the other ones open, the first failure is rethrown
+        IOException firstException = null;
         Set<BufferedLogChannelWithDirInfo> copyOfCurrentLogsWithDirInfo = getCopyOfCurrentLogs();
         for (BufferedLogChannelWithDirInfo currentLogWithDirInfo : copyOfCurrentLogsWithDirInfo) {
-            if (currentLogWithDirInfo.getLogChannel() != null) {
-                currentLogWithDirInfo.getLogChannel().close();
+            BufferedLogChannel logChannel = currentLogWithDirInfo.getLogChannel();
+            if (logChannel != null) {
+                try {
+                    finalizeAndCloseLogChannel(logChannel);
+                } catch (IOException e) {
+                    log.error("Failed to finalize entry log {} on close", logChannel.getLogId(), e);
+                    if (firstException == null) {
+                        firstException = e;
+                    }
+                }
             }
         }
+        if (firstException != null) {
+            throw firstException;
+        }
     }
 
     @Override
@@ -690,7 +703,7 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
             // we had to close the underlying file channel. Otherwise, we might end up
             // leaking fds which cause the disk spaces could not be reclaimed.
             channel.close();
-            recentlyCreatedEntryLogsStatus.flushRotatedEntryLog(channel.getLogId());
+            recentlyCreatedEntryLogsStatus.flushRotatedEntryLog(channel);
             rotatedLogChannels.remove(channel);
             log.info("Synced entry logger {} to disk.", channel.getLogId());
         }
@@ -58,6 +58,15 @@ public interface EntryLogMetadataMap extends Closeable {
      */
     void forEach(BiConsumer<Long, EntryLogMetadata> action) throws EntryLogMetadataMapException;
 
+    /**
+     * Performs the given action for the entry of entryLogId, if the map contains it.
+     *
+     * @param entryLogId
+     * @param action
+     * @throws EntryLogMetadataMapException
+     */
+    void forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action) throws EntryLogMetadataMapException;
+
     /**
      * Removes entryLogMetadata record from the map.
      *
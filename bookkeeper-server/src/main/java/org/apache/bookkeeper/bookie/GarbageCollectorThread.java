@@ -28,9 +28,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -48,7 +52,6 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.commons.lang3.mutable.MutableBoolean;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -103,6 +106,9 @@ public class GarbageCollectorThread extends SafeRunnable {
     // to reduce the risk getting entry log corrupted
     final AtomicBoolean compacting = new AtomicBoolean(false);
 
+    // permits shared with the garbage collectors of other ledger directories to bound the concurrent compactions
+    private volatile Semaphore compactionPermits = null;
+
     // use to get the compacting status
     final AtomicBoolean minorCompacting = new AtomicBoolean(false);
     final AtomicBoolean majorCompacting = new AtomicBoolean(false);
@@ -330,6 +336,24 @@ public class GarbageCollectorThread extends SafeRunnable {
         return forceGarbageCollection.get();
     }
 
+    /**
+     * Bound the compactions running at once to the permits, shared with the garbage collectors of other
+     * ledger directories.
+     */
+    public void setCompactionPermits(Semaphore compactionPermits) {
+        this.compactionPermits = compactionPermits;
+    }
+
+    /**
+     * Adapt the compaction rate to the latency of the foreground operations on the ledger storage.
+     *
+     * @see AbstractLogCompactor.Throttler#adjustRate(long, long)
+     */
+    public void adjustCompactionRate(long foregroundLatencyNanos, long targetLatencyNanos) {
+        compactor.throttler.adjustRate(foregroundLatencyNanos, targetLatencyNanos);
+        throttler.adjustRate(foregroundLatencyNanos, targetLatencyNanos);
+    }
+
     public void suspendMajorGC() {
         if (suspendMajorCompaction.compareAndSet(false, true)) {
             LOG.info("Suspend Major Compaction triggered by thread: {}", Thread.currentThread().getName());
@@ -530,9 +554,11 @@ public class GarbageCollectorThread extends SafeRunnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
-     * Those entry log files whose remaining size percentage is higher than threshold
-     * would not be compacted.
+     * Compaction will be executed from the entry logs with the lowest usage to the ones with the highest, the
+     * largest reclaimable size first among equal usages. Those entry log files whose remaining size percentage
+     * is higher than threshold would not be compacted. When the time of the compaction is bounded and it is
+     * throttled by bytes, the entry logs whose remaining entries cannot be rewritten in the time left are skipped
+     * for smaller ones.
      * </p>
      */
     @VisibleForTesting
@@ -543,39 +569,43 @@ public class GarbageCollectorThread extends SafeRunnable {
         int[] entryLogUsageBuckets = new int[numBuckets];
         int[] compactedBuckets = new int[numBuckets];
 
-        long start = System.currentTimeMillis();
-        MutableLong end = new MutableLong(start);
-        MutableLong timeDiff = new MutableLong(0);
-
+        // We go through all the logs so that we get a accurate report of where the usage was prior to
+        // running compaction.
+        List<CompactionCandidate> candidates = new ArrayList<>();
         entryLogMetaMap.forEach((entryLogId, meta) -> {
             int bucketIndex = calculateUsageIndex(numBuckets, meta.getUsage());
             entryLogUsageBuckets[bucketIndex]++;
-
-            if (timeDiff.getValue() < maxTimeMillis) {
-                end.setValue(System.currentTimeMillis());
-                timeDiff.setValue(end.getValue() - start);
-            }
-            if (meta.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis)
-                    || !running) {
-                // We allow the usage limit calculation to continue so that we get a accurate
-                // report of where the usage was prior to running compaction.
-                return;
+            if (meta.getUsage() < threshold) {
+                candidates.add(new CompactionCandidate(entryLogId, meta.getTotalSize(), meta.getRemainingSize(),
+                        bucketIndex));
             }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                        meta.getEntryLogId(), meta.getUsage(), threshold);
+        });
+        List<CompactionCandidate> selected = selectCompactionCandidates(candidates, getRewriteBudget(maxTimeMillis));
+
+        long start = System.currentTimeMillis();
+        long timeDiff = 0;
+        for (CompactionCandidate candidate : selected) {
+            timeDiff = System.currentTimeMillis() - start;
+            if ((maxTimeMillis > 0 && timeDiff >= maxTimeMillis) || !running) {
+                break;
             }
+            entryLogMetaMap.forKey(candidate.entryLogId, (entryLogId, meta) -> {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                            meta.getEntryLogId(), meta.getUsage(), threshold);
+                }
 
-            long priorRemainingSize = meta.getRemainingSize();
-            compactEntryLog(meta);
-            gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
-            compactedBuckets[bucketIndex]++;
-        });
+                long priorRemainingSize = meta.getRemainingSize();
+                compactEntryLog(meta);
+                gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
+                compactedBuckets[candidate.usageBucket]++;
+            });
+        }
         if (LOG.isDebugEnabled()) {
             if (!running) {
                 LOG.debug("Compaction exited due to gc not running");
             }
-            if (timeDiff.getValue() > maxTimeMillis) {
+            if (maxTimeMillis > 0 && timeDiff >= maxTimeMillis) {
                 LOG.debug("Compaction ran for {}ms but was limited by {}ms", timeDiff, maxTimeMillis);
             }
         }
@@ -584,6 +614,79 @@ public class GarbageCollectorThread extends SafeRunnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * @return the bytes the compactor can rewrite within the given time, or {@link Long#MAX_VALUE} if the time is
+     *         not bounded or the compactor is not throttled by bytes
+     */
+    private long getRewriteBudget(long maxTimeMillis) {
+        if (maxTimeMillis <= 0 || !compactor.throttler.isThrottleByBytes()) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (compactor.throttler.getRate() * maxTimeMillis / 1000);
+    }
+
+    /**
+     * Order the entry logs to compact and drop the ones not fitting in the rewrite budget.
+     *
+     * <p>
+     * Compacting an entry log reclaims its {@code T - R} garbage bytes for reading its {@code T} bytes and
+     * rewriting its {@code R} remaining ones, which is {@code (1 - u) / (1 + u)} reclaimed bytes per I/O byte
+     * with {@code u} its usage: ranking on that ratio is ranking on increasing usage, the largest reclaimable size
+     * going first among equal usages. The absolute sizes are then accounted against the budget: the compactor
+     * throttles the remaining entries it rewrites, so each entry log costs its remaining size, and those costing
+     * more than what is left of the budget are skipped for the next ones. The budget is only enforced once some of
+     * it was spent, so that an entry log larger than the whole budget is still compacted.
+     * </p>
+     *
+     * @param candidates entry logs below the compaction threshold
+     * @param rewriteBudget bytes of remaining entries that can be rewritten
+     * @return the entry logs to compact, in the order to compact them
+     */
+    @VisibleForTesting
+    static List<CompactionCandidate> selectCompactionCandidates(List<CompactionCandidate> candidates,
+                                                                long rewriteBudget) {
+        List<CompactionCandidate> ranked = new ArrayList<>(candidates);
+        ranked.sort(Comparator.comparingDouble(CompactionCandidate::getUsage)
+                .thenComparing(Comparator.comparingLong(CompactionCandidate::getReclaimableSize).reversed()));
+
+        List<CompactionCandidate> selected = new ArrayList<>();
+        long budgetLeft = rewriteBudget;
+        for (CompactionCandidate candidate : ranked) {
+            if (budgetLeft < rewriteBudget && candidate.remainingSize > budgetLeft) {
+                continue;
+            }
+            selected.add(candidate);
+            budgetLeft -= Math.min(budgetLeft, candidate.remainingSize);
+        }
+        return selected;
+    }
+
+    /**
+     * Entry log eligible for compaction, with the sizes it was selected on.
+     */
+    @VisibleForTesting
+    static final class CompactionCandidate {
+        final long entryLogId;
+        final long totalSize;
+        final long remainingSize;
+        final int usageBucket;
+
+        CompactionCandidate(long entryLogId, long totalSize, long remainingSize, int usageBucket) {
+            this.entryLogId = entryLogId;
+            this.totalSize = totalSize;
+            this.remainingSize = remainingSize;
+            this.usageBucket = usageBucket;
+        }
+
+        double getUsage() {
+            return totalSize > 0 ? (double) remainingSize / totalSize : 0;
+        }
+
+        long getReclaimableSize() {
+            return totalSize - remainingSize;
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -645,25 +748,42 @@ public class GarbageCollectorThread extends SafeRunnable {
      * @param entryLogMeta
      */
     protected void compactEntryLog(EntryLogMetadata entryLogMeta) {
-        // Similar with Sync Thread
-        // try to mark compacting flag to make sure it would not be interrupted
-        // by shutdown during compaction. otherwise it will receive
-        // ClosedByInterruptException which may cause index file & entry logger
-        // closed and corrupted.
-        if (!compacting.compareAndSet(false, true)) {
-            // set compacting flag failed, means compacting is true now
-            // indicates that compaction is in progress for this EntryLogId.
-            return;
+        // Wait for the other ledger directories to be done with their compactions if too many are running
+        Semaphore permits = compactionPermits;
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
 
         try {
-            // Do the actual compaction
-            compactor.compact(entryLogMeta);
-        } catch (Exception e) {
-            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            // Similar with Sync Thread
+            // try to mark compacting flag to make sure it would not be interrupted
+            // by shutdown during compaction. otherwise it will receive
+            // ClosedByInterruptException which may cause index file & entry logger
+            // closed and corrupted.
+            if (!compacting.compareAndSet(false, true)) {
+                // set compacting flag failed, means compacting is true now
+                // indicates that compaction is in progress for this EntryLogId.
+                return;
+            }
+
+            try {
+                // Do the actual compaction
+                compactor.compact(entryLogMeta);
+            } catch (Exception e) {
+                LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            } finally {
+                // Mark compaction done
+                compacting.set(false);
+            }
         } finally {
-            // Mark compaction done
-            compacting.set(false);
+            if (permits != null) {
+                permits.release();
+            }
         }
     }
 
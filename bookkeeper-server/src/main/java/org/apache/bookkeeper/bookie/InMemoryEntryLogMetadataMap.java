@@ -47,6 +47,14 @@ public class InMemoryEntryLogMetadataMap implements EntryLogMetadataMap {
         entryLogMetaMap.forEach(action);
     }
 
+    @Override
+    public void forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action) {
+        EntryLogMetadata entryLogMeta = entryLogMetaMap.get(entryLogId);
+        if (entryLogMeta != null) {
+            action.accept(entryLogId, entryLogMeta);
+        }
+    }
+
     @Override
     public void remove(long entryLogId) {
         entryLogMetaMap.remove(entryLogId);
@@ -38,6 +38,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +46,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -54,7 +56,11 @@ import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
 import org.apache.bookkeeper.common.collections.RecyclableArrayList;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.common.util.nativeio.IoUring;
+import org.apache.bookkeeper.common.util.nativeio.NativeAsyncIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -304,6 +310,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         Object ctx;
         long enqueueTime;
         boolean ackBeforeSync;
+        // Next entry of the group queued with this one, written right after it
+        QueueEntry groupNext;
 
         OpStatsLogger journalAddEntryStats;
         Counter journalCbQueueSize;
@@ -323,6 +331,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             qe.journalAddEntryStats = journalAddEntryStats;
             qe.journalCbQueueSize = journalCbQueueSize;
             qe.callbackTime = callbackTime;
+            qe.groupNext = null;
             return qe;
         }
 
@@ -339,6 +348,16 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             callbackTime.add(MathUtils.elapsedNanos(startTime));
         }
 
+        /**
+         * Acknowledge the entry with an error, as the journal could not make it durable.
+         */
+        void fail(int rc) {
+            journalCbQueueSize.dec();
+            journalAddEntryStats.registerFailedEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+            cb.writeComplete(rc, ledgerId, entryId, null, ctx);
+            recycle();
+        }
+
         private final Handle<QueueEntry> recyclerHandle;
 
         private QueueEntry(Handle<QueueEntry> recyclerHandle) {
@@ -370,10 +389,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         private long logId;
         private long enqueueTime;
 
+        // Set when the force write is submitted asynchronously
+        private long syncId;
+        private boolean syncOwner;
+        private long syncPosition;
+        private long syncSubmitTime;
+
         public int process(boolean shouldForceWrite) throws IOException {
-            journalStats.getForceWriteQueueSize().dec();
-            journalStats.getFwEnqueueTimeStats()
-                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+            dequeued();
 
             if (isMarker) {
                 return 0;
@@ -383,20 +406,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             try {
                 if (shouldForceWrite) {
                     this.logFile.forceWrite(false);
+                    long syncLatencyNanos = MathUtils.elapsedNanos(startTime);
                     journalStats.getJournalSyncStats()
-                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                }
-                lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
-
-                // Notify the waiters that the force write succeeded
-                for (int i = 0; i < forceWriteWaiters.size(); i++) {
-                    QueueEntry qe = forceWriteWaiters.get(i);
-                    if (qe != null) {
-                        cbThreadPool.execute(qe);
+                        .registerSuccessfulEvent(syncLatencyNanos, TimeUnit.NANOSECONDS);
+                    if (groupCommitController != null) {
+                        groupCommitController.recordSync(syncLatencyNanos);
                     }
                 }
-
-                return forceWriteWaiters.size();
+                return notifyWaiters();
             } catch (IOException e) {
                 journalStats.getJournalSyncStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
@@ -406,6 +423,40 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             }
         }
 
+        private void dequeued() {
+            journalStats.getForceWriteQueueSize().dec();
+            journalStats.getFwEnqueueTimeStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+        }
+
+        private int notifyWaiters() {
+            lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
+
+            // Notify the waiters that the force write succeeded
+            for (int i = 0; i < forceWriteWaiters.size(); i++) {
+                QueueEntry qe = forceWriteWaiters.get(i);
+                if (qe != null) {
+                    cbThreadPool.execute(qe);
+                }
+            }
+
+            return forceWriteWaiters.size();
+        }
+
+        private void failWaiters(int rc) {
+            for (int i = 0; i < forceWriteWaiters.size(); i++) {
+                QueueEntry qe = forceWriteWaiters.get(i);
+                if (qe != null) {
+                    try {
+                        cbThreadPool.execute(() -> qe.fail(rc));
+                    } catch (RejectedExecutionException ree) {
+                        // the journal is shutting down
+                        qe.fail(rc);
+                    }
+                }
+            }
+        }
+
         public void closeFileIfNecessary() {
             // Close if shouldClose is set
             if (shouldClose) {
@@ -450,6 +501,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         req.lastFlushedPosition = lastFlushedPosition;
         req.shouldClose = shouldClose;
         req.isMarker = isMarker;
+        req.syncId = 0;
+        req.syncOwner = false;
         req.enqueueTime = MathUtils.nowInNano();
         journalStats.getForceWriteQueueSize().inc();
         return req;
@@ -496,6 +549,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 }
             }
 
+            NativeAsyncIO asyncIO = conf.getJournalAsyncForceWriteEnabled()
+                    ? createAsyncForceWriteIO(conf.getJournalAsyncForceWriteQueueDepth()) : null;
+            if (asyncIO != null) {
+                runAsync(asyncIO);
+                threadToNotifyOnEx.interrupt();
+                return;
+            }
+
             boolean shouldForceWrite = true;
             int numReqInLastForceWrite = 0;
             long busyStartTime = System.nanoTime();
@@ -580,6 +641,131 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             // of exiting else we will have write requests hang
             threadToNotifyOnEx.interrupt();
         }
+        /**
+         * Force write loop submitting the syncs through {@code asyncIO}.
+         *
+         * <p>All the requests queued when the thread wakes up are grouped under a single sync
+         * per journal file, which is submitted without waiting for the syncs already in flight.
+         * The thread only blocks when there is nothing new to submit. Requests are acknowledged
+         * in order, once their sync and all the syncs submitted before it have completed, so
+         * the last log mark never moves past data that isn't durable.
+         */
+        private void runAsync(NativeAsyncIO asyncIO) {
+            int queueDepth = asyncIO.getQueueDepth();
+            boolean[] completedSyncs = new boolean[queueDepth];
+            long[] userData = new long[queueDepth];
+            int[] results = new int[queueDepth];
+            ArrayDeque<ForceWriteRequest> inflight = new ArrayDeque<>();
+            long lastSubmittedSyncId = 0;
+            long lastCompletedSyncId = 0;
+            long busyStartTime = System.nanoTime();
+
+            try {
+                while (running) {
+                    ForceWriteRequest lastUnsynced = null;
+                    forceWriteThreadTime.add(MathUtils.elapsedNanos(busyStartTime));
+                    // Leave room for the sync of a pending request plus the one of a file change
+                    boolean full = lastSubmittedSyncId - lastCompletedSyncId + 2 > queueDepth;
+                    ForceWriteRequest req;
+                    if (inflight.isEmpty()) {
+                        req = forceWriteRequests.take();
+                    } else {
+                        req = full ? null : forceWriteRequests.poll();
+                    }
+                    busyStartTime = System.nanoTime();
+
+                    while (req != null) {
+                        req.dequeued();
+                        if (req.isMarker) {
+                            req.recycle();
+                        } else {
+                            if (lastUnsynced != null && lastUnsynced.logFile != req.logFile) {
+                                submitSync(asyncIO, lastUnsynced, ++lastSubmittedSyncId);
+                            }
+                            req.syncId = lastSubmittedSyncId + 1;
+                            inflight.add(req);
+                            lastUnsynced = req;
+                            if (req.shouldClose) {
+                                submitSync(asyncIO, req, ++lastSubmittedSyncId);
+                                lastUnsynced = null;
+                            }
+                        }
+                        req = lastSubmittedSyncId - lastCompletedSyncId + 2 <= queueDepth
+                                ? forceWriteRequests.poll() : null;
+                    }
+                    if (lastUnsynced != null) {
+                        submitSync(asyncIO, lastUnsynced, ++lastSubmittedSyncId);
+                    }
+
+                    full = lastSubmittedSyncId - lastCompletedSyncId + 2 > queueDepth;
+                    boolean wait = lastSubmittedSyncId > lastCompletedSyncId
+                            && (full || forceWriteRequests.isEmpty());
+                    asyncIO.submit(wait);
+
+                    int completions = asyncIO.reapCompletions(userData, results);
+                    for (int i = 0; i < completions; i++) {
+                        if (results[i] < 0) {
+                            throw new NativeIOException("Failed to sync journal " + journalDirectory, -results[i]);
+                        }
+                        completedSyncs[(int) (userData[i] % queueDepth)] = true;
+                    }
+                    while (completedSyncs[(int) ((lastCompletedSyncId + 1) % queueDepth)]) {
+                        completedSyncs[(int) (++lastCompletedSyncId % queueDepth)] = false;
+                    }
+
+                    int numReqInLastForceWrite = 0;
+                    while (!inflight.isEmpty() && inflight.peek().syncId <= lastCompletedSyncId) {
+                        ForceWriteRequest done = inflight.poll();
+                        try {
+                            if (done.syncOwner) {
+                                long syncLatencyNanos = MathUtils.elapsedNanos(done.syncSubmitTime);
+                                journalStats.getJournalSyncStats()
+                                    .registerSuccessfulEvent(syncLatencyNanos, TimeUnit.NANOSECONDS);
+                                if (groupCommitController != null) {
+                                    groupCommitController.recordSync(syncLatencyNanos);
+                                }
+                                done.logFile.forceWriteCompleted(done.syncPosition);
+                            }
+                            numReqInLastForceWrite += done.notifyWaiters();
+                            if (done.syncOwner) {
+                                journalStats.getForceWriteGroupingCountStats()
+                                    .registerSuccessfulValue(numReqInLastForceWrite);
+                                numReqInLastForceWrite = 0;
+                            }
+                        } finally {
+                            done.closeFileIfNecessary();
+                            done.recycle();
+                        }
+                    }
+                }
+            } catch (IOException ioe) {
+                LOG.error("I/O exception in ForceWrite thread", ioe);
+                running = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.info("ForceWrite thread interrupted");
+                running = false;
+            } finally {
+                // The requests in flight are not known to be durable, so fail their waiters. Closing the
+                // ring doesn't wait for the syncs in flight, the kernel completes or cancels them.
+                for (ForceWriteRequest req : inflight) {
+                    req.failWaiters(BookieProtocol.EIO);
+                }
+                asyncIO.close();
+                for (ForceWriteRequest req : inflight) {
+                    req.shouldClose = true;
+                    req.closeFileIfNecessary();
+                    req.recycle();
+                }
+            }
+        }
+
+        private void submitSync(NativeAsyncIO asyncIO, ForceWriteRequest req, long syncId) throws IOException {
+            req.syncOwner = true;
+            req.syncSubmitTime = MathUtils.nowInNano();
+            req.syncPosition = req.logFile.submitForceWrite(asyncIO, syncId);
+        }
+
         // shutdown sync thread
         void shutdown() throws InterruptedException {
             running = false;
@@ -627,6 +813,59 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     static final long MB = 1024 * 1024L;
+    static final String STREAM_DIR_PREFIX = "stream-";
+
+    /**
+     * Get the number of journal streams hosted in a journal directory.
+     *
+     * <p>This is the configured number of streams per directory, unless the directory
+     * holds stream directories left by a previous run configured with more streams, in
+     * which case these streams are kept so that their journals are still replayed.
+     *
+     * @param journalDir journal dir
+     * @param conf server configuration
+     * @return number of journal streams in the journal dir
+     */
+    public static int getNumStreams(File journalDir, ServerConfiguration conf) {
+        int numStreams = conf.getJournalStreamsPerDirectory();
+        File[] files = journalDir.listFiles();
+        if (files == null) {
+            return numStreams;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (!f.isDirectory() || !name.startsWith(STREAM_DIR_PREFIX)) {
+                continue;
+            }
+            try {
+                int streamIndex = Integer.parseInt(name.substring(STREAM_DIR_PREFIX.length()));
+                if (streamIndex >= numStreams) {
+                    LOG.warn("Found journal stream {} in {} while only {} streams are configured, keeping it",
+                            streamIndex, journalDir, numStreams);
+                    numStreams = streamIndex + 1;
+                }
+            } catch (NumberFormatException nfe) {
+                LOG.warn("Ignoring unexpected directory {} in journal directory {}", name, journalDir);
+            }
+        }
+        return numStreams;
+    }
+
+    @VisibleForTesting
+    JournalGroupCommitController getGroupCommitController() {
+        return groupCommitController;
+    }
+
+    @VisibleForTesting
+    NativeAsyncIO createAsyncForceWriteIO(int queueDepth) {
+        try {
+            return new IoUring(Math.max(2, queueDepth));
+        } catch (NativeIOException | LinkageError e) {
+            LOG.warn("io_uring is not available, journal force writes will be synchronous: {}", e.getMessage());
+            return null;
+        }
+    }
+
     static final int KB = 1024;
     // max journal file size
     final long maxJournalSize;
@@ -650,6 +889,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // adapts the group commit settings above to the load, null if disabled
+    private final JournalGroupCommitController groupCommitController;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
@@ -695,10 +936,25 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
-        super(journalThreadName + "-" + conf.getBookiePort());
+        this(journalIndex, 0, journalDirectory, conf, ledgerDirsManager, statsLogger, allocator);
+    }
+
+    /**
+     * Create a journal stream.
+     *
+     * <p>Stream 0 uses the journal directory itself, other streams use a "stream-N"
+     * sub-directory of it. Each stream has its own last log mark.
+     *
+     * @param journalIndex index of the journal directory
+     * @param streamIndex index of the stream in the journal directory
+     */
+    public Journal(int journalIndex, int streamIndex, File journalDirectory, ServerConfiguration conf,
+            LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
+        super(journalThreadName + "-" + conf.getBookiePort() + (streamIndex == 0 ? "" : "-" + streamIndex));
         this.allocator = allocator;
 
-        StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
+        StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex",
+                streamIndex == 0 ? String.valueOf(journalIndex) : journalIndex + "-" + streamIndex);
 
         if (conf.isBusyWaitEnabled()) {
             // To achieve lower latency, use busy-wait blocking queue implementation
@@ -710,11 +966,20 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
 
         // Adjust the journal max memory in case there are multiple journals configured.
-        long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length * 1024 * 1024;
+        // Count the streams the bookie actually runs, which can be more than configured.
+        long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length
+                / getNumStreams(journalDirectory, conf) * 1024 * 1024;
         this.memoryLimitController = new MemoryLimitController(journalMaxMemory);
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
-        this.journalDirectory = journalDirectory;
+        if (streamIndex == 0) {
+            this.journalDirectory = journalDirectory;
+        } else {
+            this.journalDirectory = new File(journalDirectory, STREAM_DIR_PREFIX + streamIndex);
+            if (!this.journalDirectory.exists() && !this.journalDirectory.mkdirs()) {
+                LOG.error("Failed to create journal stream directory {}", this.journalDirectory);
+            }
+        }
         this.maxJournalSize = conf.getMaxJournalSizeMB() * MB;
         this.journalPreAllocSize = conf.getJournalPreAllocSizeMB() * MB;
         this.journalWriteBufferSize = conf.getJournalWriteBufferSizeKB() * KB;
@@ -742,14 +1007,25 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        if (conf.getJournalAdaptiveGroupCommit()) {
+            this.groupCommitController = new JournalGroupCommitController(maxGroupWaitInNanos,
+                    bufferedEntriesThreshold, journalStatsLogger);
+        } else {
+            this.groupCommitController = null;
+        }
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
+        String markFileName;
         if (conf.getJournalDirs().length == 1) {
-            lastMarkFileName = LAST_MARK_DEFAULT_NAME;
+            markFileName = LAST_MARK_DEFAULT_NAME;
         } else {
-            lastMarkFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
+            markFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
         }
+        if (streamIndex > 0) {
+            markFileName = markFileName + "." + STREAM_DIR_PREFIX + streamIndex;
+        }
+        lastMarkFileName = markFileName;
         lastLogMark.readLog();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Last Log Mark : {}", lastLogMark.getCurMark());
@@ -946,6 +1222,41 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 callbackTime));
     }
 
+    /**
+     * Record the add operations of the first entries of the array in the journal, as one group. The
+     * journal thread writes the entries of a group in a row, so they are flushed and synced together.
+     */
+    void logAddEntries(ByteBuf[] entries, int count, boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
+        QueueEntry head = null;
+        QueueEntry tail = null;
+        long enqueueTime = MathUtils.nowInNano();
+        for (int i = 0; i < count; i++) {
+            ByteBuf entry = entries[i];
+            // Retain entry until it gets written to journal
+            entry.retain();
+            journalStats.getJournalCbQueueSize().inc();
+            memoryLimitController.reserveMemory(entry.readableBytes());
+
+            QueueEntry qe = QueueEntry.create(
+                    entry, ackBeforeSync, entry.getLong(entry.readerIndex()), entry.getLong(entry.readerIndex() + 8),
+                    cb, ctx, enqueueTime,
+                    journalStats.getJournalAddEntryStats(),
+                    journalStats.getJournalCbQueueSize(),
+                    callbackTime);
+            if (head == null) {
+                head = qe;
+            } else {
+                tail.groupNext = qe;
+            }
+            tail = qe;
+        }
+        if (head != null) {
+            journalStats.getJournalQueueSize().inc();
+            queue.put(head);
+        }
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -1020,6 +1331,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             long lastFlushTimeMs = System.currentTimeMillis();
 
             long busyStartTime = System.nanoTime();
+            // The group commit settings, updated after each flush when they are adaptive
+            long groupWaitNanos = maxGroupWaitInNanos;
+            long entriesThreshold = bufferedEntriesThreshold;
+            boolean flushWhenEmpty = flushWhenQueueEmpty;
+            if (groupCommitController != null) {
+                groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                entriesThreshold = groupCommitController.getBatchEntries();
+                flushWhenEmpty = groupCommitController.shouldFlushWhenQueueEmpty();
+            }
             QueueEntry qe = null;
             while (true) {
                 // new journal file to write
@@ -1056,9 +1376,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         journalStats.getJournalQueueStats()
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
                     } else {
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushWhenEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
                         qe = queue.poll(pollWaitTimeNanos, TimeUnit.NANOSECONDS);
@@ -1073,12 +1393,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         boolean shouldFlush = false;
                         // We should issue a forceWrite if any of the three conditions below holds good
                         // 1. If the oldest pending entry has been pending for longer than the max wait time
-                        if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                                .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                        if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                                .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                             groupWhenTimeout = true;
-                        } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                        } else if (groupWaitNanos > 0 && groupWhenTimeout
                             && (qe == null // no entry to group
-                                || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                                || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                             // when group timeout, it would be better to look forward, as there might be lots of
                             // entries already timeout
                             // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1089,13 +1409,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             shouldFlush = true;
                             journalStats.getFlushMaxWaitCounter().inc();
                         } else if (qe != null
-                                && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
+                                && ((entriesThreshold > 0 && toFlush.size() > entriesThreshold)
                                 || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
                             // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                             groupWhenTimeout = false;
                             shouldFlush = true;
                             journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                        } else if (qe == null && flushWhenQueueEmpty) {
+                        } else if (qe == null && flushWhenEmpty) {
                             // We should get here only if we flushWhenQueueEmpty is true else we would wait
                             // for timeout that would put is past the maxWait threshold
                             // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1159,6 +1479,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                                         toFlush, shouldRolloverJournal, false));
                                 lastFlushTimeMs = System.currentTimeMillis();
                             }
+                            if (groupCommitController != null) {
+                                groupCommitController.recordFlush(toFlush.size());
+                                groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                                entriesThreshold = groupCommitController.getBatchEntries();
+                                flushWhenEmpty = groupCommitController.shouldFlushWhenQueueEmpty();
+                            }
                             toFlush = entryListRecycler.newInstance();
                             numEntriesToFlush = 0;
 
@@ -1182,38 +1508,43 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 if (qe == null) { // no more queue entry
                     continue;
                 }
-                if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
-                        && (journalFormatVersionToWrite < JournalChannel.V6)) {
-                    /*
-                     * this means we are using new code which supports
-                     * persisting explicitLac, but "journalFormatVersionToWrite"
-                     * is set to some older value (< V6). In this case we
-                     * shouldn't write this special entry
-                     * (METAENTRY_ID_LEDGER_EXPLICITLAC) to Journal.
-                     */
-                    memoryLimitController.releaseMemory(qe.entry.readableBytes());
-                    qe.entry.release();
-                } else if (qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
-                    int entrySize = qe.entry.readableBytes();
-                    journalStats.getJournalWriteBytes().add(entrySize);
-
-                    batchSize += (4 + entrySize);
-
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
-
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
-
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
-                    memoryLimitController.releaseMemory(qe.entry.readableBytes());
-                    qe.entry.release();
-                }
+                // The entries of a group are all written before the next flush decision
+                while (qe != null) {
+                    QueueEntry groupNext = qe.groupNext;
+                    qe.groupNext = null;
+                    if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
+                            && (journalFormatVersionToWrite < JournalChannel.V6)) {
+                        /*
+                         * this means we are using new code which supports
+                         * persisting explicitLac, but "journalFormatVersionToWrite"
+                         * is set to some older value (< V6). In this case we
+                         * shouldn't write this special entry
+                         * (METAENTRY_ID_LEDGER_EXPLICITLAC) to Journal.
+                         */
+                        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                        qe.entry.release();
+                    } else if (qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
+                        int entrySize = qe.entry.readableBytes();
+                        journalStats.getJournalWriteBytes().add(entrySize);
+
+                        batchSize += (4 + entrySize);
+
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
+
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
 
-                toFlush.add(qe);
-                numEntriesToFlush++;
-                qe = null;
+                        bc.write(lenBuff);
+                        bc.write(qe.entry);
+                        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                        qe.entry.release();
+                    }
+
+                    toFlush.add(qe);
+                    numEntriesToFlush++;
+                    qe = groupNext;
+                }
             }
         } catch (IOException ioe) {
             LOG.error("I/O exception in Journal thread!", ioe);
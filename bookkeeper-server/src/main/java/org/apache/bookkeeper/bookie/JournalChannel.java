@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
+import org.apache.bookkeeper.common.util.nativeio.NativeAsyncIO;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.util.NativeIO;
 import org.apache.bookkeeper.util.ZeroBuffer;
@@ -241,7 +242,7 @@ class JournalChannel implements Closeable {
                 throw e;
             }
         }
-        if (fRemoveFromPageCache) {
+        if (fRemoveFromPageCache || (bc != null && conf.getJournalAsyncForceWriteEnabled())) {
             this.fd = NativeIO.getSysFileDescriptor(channel.getFD());
         } else {
             this.fd = -1;
@@ -284,6 +285,30 @@ class JournalChannel implements Closeable {
             LOG.debug("Journal ForceWrite");
         }
         long newForceWritePosition = bc.forceWrite(forceMetadata);
+        forceWriteCompleted(newForceWritePosition);
+    }
+
+    /**
+     * Submit a sync of the data flushed so far, without waiting for it to complete.
+     *
+     * @param asyncIO the async I/O instance to submit the sync to
+     * @param userData the user data of the sync completion
+     * @return the position up to which the file is durable once the sync completes
+     */
+    long submitForceWrite(NativeAsyncIO asyncIO, long userData) throws IOException {
+        if (fd < 0) {
+            throw new IOException("Unable to get the file descriptor of the journal file");
+        }
+        // Only the data flushed to the file channel before the sync is submitted is covered
+        long position = bc.getFileChannelPosition();
+        asyncIO.prepareFdatasync(fd, userData, false);
+        return position;
+    }
+
+    /**
+     * Called once a sync of the journal up to {@code newForceWritePosition} has completed.
+     */
+    void forceWriteCompleted(long newForceWritePosition) {
         //
         // For POSIX_FADV_DONTNEED, we want to drop from the beginning
         // of the file to a position prior to the current position.
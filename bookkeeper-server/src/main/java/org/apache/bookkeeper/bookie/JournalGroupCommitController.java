@@ -0,0 +1,176 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_ARRIVAL_RATE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_DEADLINE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_SYNC_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Picks the journal group commit deadline and batch size from the observed load.
+ *
+ * <p>Waiting to group entries only pays off when more than one entry arrives during a sync:
+ * the entries arriving while a sync is in progress have to wait for the next one anyway. So
+ * when fewer than one entry is expected per sync the journal flushes as soon as its queue is
+ * empty, and otherwise it waits for about one sync latency, or until the number of entries
+ * expected during a sync has been buffered, whichever comes first. The configured max group
+ * wait and buffered entries threshold are used as upper bounds.
+ *
+ * <p>The sync latency is smoothed from the syncs done by the force write thread, and the
+ * arrival rate from the number of entries of each flush. Decisions are recomputed by the
+ * journal thread after each flush.
+ */
+@StatsDoc(
+    name = JOURNAL_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Journal adaptive group commit stats"
+)
+class JournalGroupCommitController {
+
+    // Smoothing factor of the moving averages, as a shift
+    private static final int SYNC_LATENCY_SHIFT = 3;
+    private static final double ARRIVAL_RATE_ALPHA = 0.125;
+
+    private final long maxGroupWaitNanos;
+    private final long maxBatchEntries;
+
+    // Written by the force write thread
+    private volatile long syncLatencyNanos = 0;
+
+    // Only accessed by the journal thread
+    private double entriesPerNano = 0;
+    private long lastFlushNanos;
+
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_DEADLINE,
+        help = "The current max time in nanoseconds an entry waits to be grouped with other entries"
+    )
+    private volatile long groupWaitNanos = 0;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_BATCH_ENTRIES,
+        help = "The current number of buffered entries which triggers a flush"
+    )
+    private volatile long batchEntries = 0;
+    private volatile boolean flushWhenQueueEmpty = true;
+
+    /**
+     * @param maxGroupWaitNanos the max time an entry can wait to be grouped
+     * @param maxBatchEntries the max number of entries in a flush, 0 for no limit
+     */
+    JournalGroupCommitController(long maxGroupWaitNanos, long maxBatchEntries, StatsLogger statsLogger) {
+        this.maxGroupWaitNanos = maxGroupWaitNanos;
+        this.maxBatchEntries = maxBatchEntries > 0 ? maxBatchEntries : Long.MAX_VALUE;
+        this.lastFlushNanos = System.nanoTime();
+
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_DEADLINE, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return groupWaitNanos;
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_BATCH_ENTRIES, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return batchEntries;
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_SYNC_LATENCY, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return syncLatencyNanos;
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_ARRIVAL_RATE, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return (long) (entriesPerNano * TimeUnit.SECONDS.toNanos(1));
+            }
+        });
+    }
+
+    /**
+     * Record the latency of a journal sync. Called by the force write thread.
+     */
+    void recordSync(long latencyNanos) {
+        long current = syncLatencyNanos;
+        if (current == 0) {
+            syncLatencyNanos = latencyNanos;
+        } else {
+            syncLatencyNanos = current + ((latencyNanos - current) >> SYNC_LATENCY_SHIFT);
+        }
+    }
+
+    /**
+     * Record a flush of the journal and update the group commit decisions. Called by the
+     * journal thread.
+     */
+    void recordFlush(int numEntries) {
+        recordFlush(numEntries, System.nanoTime());
+    }
+
+    @VisibleForTesting
+    void recordFlush(int numEntries, long now) {
+        long elapsed = Math.max(1, now - lastFlushNanos);
+        lastFlushNanos = now;
+        entriesPerNano += ARRIVAL_RATE_ALPHA * ((double) numEntries / elapsed - entriesPerNano);
+
+        long syncLatency = syncLatencyNanos;
+        double entriesPerSync = entriesPerNano * syncLatency;
+        if (entriesPerSync < 1) {
+            groupWaitNanos = 0;
+            batchEntries = 0;
+            flushWhenQueueEmpty = true;
+        } else {
+            groupWaitNanos = Math.min(maxGroupWaitNanos, syncLatency);
+            batchEntries = Math.min(maxBatchEntries, (long) Math.ceil(entriesPerSync));
+            // without a deadline, only an empty queue can trigger a flush of a small batch
+            flushWhenQueueEmpty = groupWaitNanos == 0;
+        }
+    }
+
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    long getBatchEntries() {
+        return batchEntries;
+    }
+
+    boolean shouldFlushWhenQueueEmpty() {
+        return flushWhenQueueEmpty;
+    }
+
+    private abstract static class LongGauge implements Gauge<Long> {
+        @Override
+        public Long getDefaultValue() {
+            return 0L;
+        }
+    }
+}
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import static org.apache.bookkeeper.bookie.BookieImpl.METAENTRY_ID_FENCE_KEY;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
@@ -76,6 +77,7 @@ public abstract class LedgerDescriptor {
 
     abstract long addEntry(ByteBuf entry) throws IOException, BookieException;
     abstract ByteBuf readEntry(long entryId) throws IOException, BookieException;
+    abstract FileRegion readEntryRegion(long entryId, int minSize) throws IOException, BookieException;
 
     abstract long getLastAddConfirmed() throws IOException, BookieException;
     abstract boolean waitForLastAddConfirmedUpdate(long previousLAC,
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -145,6 +146,17 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Get the region of a file holding an entry, so that it can be sent without being copied.
+     *
+     * @param minSize the min size of the entry to return a region for
+     * @return the region of the entry, to be released by the caller, or null if the entry
+     *         should be read with {@link #getEntry(long, long)}
+     */
+    default FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException, BookieException {
+        return null;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -21,8 +21,11 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
 import org.apache.bookkeeper.bookie.EntryLogMetadata;
@@ -67,6 +70,60 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read consecutive entries of a ledger, starting at an entrylog location, as done to fill
+     * a read-ahead cache. Reading stops at the first entry which isn't the next one of the ledger,
+     * at the end of the entry log, or once {@code maxEntries} entries or at least {@code maxBytes}
+     * bytes have been read.
+     * The default implementation reads the entries one at a time.
+     * @param ledgerId the ledgerID of the entries
+     * @param firstEntryId the entryID of the entry at {@code firstEntryLocation}
+     * @param firstEntryLocation the location of the first entry
+     * @param maxEntries the max number of entries to read
+     * @param maxBytes the size after which to stop reading
+     * @return the entries in order, which must be released by the caller
+     */
+    default List<ByteBuf> readEntries(long ledgerId, long firstEntryId, long firstEntryLocation,
+                                      int maxEntries, long maxBytes) throws IOException {
+        List<ByteBuf> entries = new ArrayList<>();
+        long entryLocation = firstEntryLocation;
+        long size = 0;
+        while (entries.size() < maxEntries && size < maxBytes
+                && (entryLocation >> 32) == (firstEntryLocation >> 32)) {
+            ByteBuf entry;
+            try {
+                entry = readEntry(ledgerId, firstEntryId + entries.size(), entryLocation);
+            } catch (IOException e) {
+                if (entries.isEmpty()) {
+                    throw e;
+                }
+                // Entry of another ledger, or end of the log
+                break;
+            }
+            entries.add(entry);
+            size += entry.readableBytes();
+            entryLocation += 4 /* size header */ + entry.readableBytes();
+        }
+        return entries;
+    }
+
+    /**
+     * Get the region of the entry log file holding an entry, so that the entry can be
+     * sent without being copied, and verify that it matches the expected ledger and entry ID.
+     * The region holds its own handle on the file, so it stays valid if the entry log is
+     * deleted, and must be released by the caller.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location of the entry
+     * @param minSize the min size of the entry to return a region for
+     * @return the region of the entry, or null if the entry is smaller than minSize or
+     *         must be read with {@link #readEntry(long, long, long)}
+     */
+    default FileRegion readEntryRegion(long ledgerId, long entryId, long entryLocation, int minSize)
+            throws IOException, NoEntryException {
+        return null;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -0,0 +1,156 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import com.google.common.base.MoreObjects;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.util.HardLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compaction log for the {@link DirectEntryLogger}.
+ * <p/>
+ * Follows the same file lifecycle as the default entry logger, for compacting log 1 into log 3:
+ * entries are written to "3.log.compacting", which is hard linked to "3.log.1.compacted" once
+ * it is durable. The compacted file is then hard linked to "3.log" to make it readable, and
+ * removed once the index has been updated.
+ */
+class DirectCompactionEntryLog implements CompactionEntryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectCompactionEntryLog.class);
+
+    private final DirectEntryLogger entryLogger;
+    private final long srcLogId;
+    private final long dstLogId;
+    private final File compactingFile;
+    private final File compactedFile;
+    private final File finalFile;
+    // null when recovering a log which was already compacted
+    private DirectEntryLogger.WriterWithMetadata writer;
+
+    DirectCompactionEntryLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId,
+                             DirectEntryLogger.WriterWithMetadata writer) {
+        this.entryLogger = entryLogger;
+        this.srcLogId = srcLogId;
+        this.dstLogId = dstLogId;
+        this.writer = writer;
+        this.compactingFile = entryLogger.compactingFile(dstLogId);
+        this.compactedFile = entryLogger.compactedFile(dstLogId, srcLogId);
+        this.finalFile = entryLogger.logFile(dstLogId);
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        if (writer == null) {
+            throw new IOException("Compaction log " + dstLogId + " is not writable");
+        }
+        return writer.addEntry(ledgerId, entry);
+    }
+
+    @Override
+    public void scan(EntryLogScanner scanner) throws IOException {
+        entryLogger.scanEntryLog(dstLogId, scanner);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writer != null) {
+            DirectEntryLogger.WriterWithMetadata w = writer;
+            writer = null;
+            entryLogger.finalizeWriter(w);
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (writer != null) {
+            try {
+                writer.writer.close();
+            } catch (IOException ioe) {
+                LOG.warn("Error closing compaction log writer {}", compactingFile, ioe);
+            }
+            writer = null;
+        }
+        deleteIfExists(compactingFile);
+        deleteIfExists(compactedFile);
+        entryLogger.markLogFlushed(dstLogId);
+    }
+
+    @Override
+    public void markCompacted() throws IOException {
+        if (compactingFile.exists()) {
+            if (!compactedFile.exists()) {
+                HardLink.createHardLink(compactingFile, compactedFile);
+            }
+        } else {
+            throw new IOException("Compaction log doesn't exist any more after flush: " + compactingFile);
+        }
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public void makeAvailable() throws IOException {
+        if (!finalFile.exists()) {
+            HardLink.createHardLink(compactedFile, finalFile);
+        }
+    }
+
+    @Override
+    public void finalizeAndCleanup() {
+        deleteIfExists(compactedFile);
+        deleteIfExists(compactingFile);
+        entryLogger.markLogFlushed(dstLogId);
+    }
+
+    @Override
+    public long getDstLogId() {
+        return dstLogId;
+    }
+
+    @Override
+    public long getSrcLogId() {
+        return srcLogId;
+    }
+
+    private static void deleteIfExists(File f) {
+        if (f.exists() && !f.delete()) {
+            LOG.warn("Could not delete file: {}", f);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("logId", dstLogId)
+            .add("compactedLogId", srcLogId)
+            .add("compactingLogFile", compactingFile)
+            .add("compactedLogFile", compactedFile)
+            .add("finalLogFile", finalFile)
+            .toString();
+    }
+}
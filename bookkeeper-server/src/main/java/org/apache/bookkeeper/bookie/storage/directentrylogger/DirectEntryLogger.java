@@ -0,0 +1,666 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.bookkeeper.bookie.AbstractLogCompactor;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.ShortReadException;
+import org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * EntryLogger implementation which writes and reads entry logs using direct I/O,
+ * bypassing the page cache.
+ * <p/>
+ * All writes go through aligned buffers taken from a {@link BufferPool}, and are
+ * issued asynchronously by a single writer thread. Reads borrow an aligned buffer from a
+ * second pool for the duration of the read, so the memory used for reads is bounded
+ * regardless of the number of log files or reading threads.
+ * <p/>
+ * The on-disk format is not compatible with {@link org.apache.bookkeeper.bookie.DefaultEntryLogger},
+ * see {@link Header}. Each entry is stored as a 4 byte size followed by the entry payload.
+ * A buffer flushed before it is full is padded with {@link Buffer#PADDING_BYTE} up to the next
+ * alignment, which reads as a negative size during scanning.
+ */
+public class DirectEntryLogger implements EntryLogger {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectEntryLogger.class);
+
+    private static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
+    private static final int DEFAULT_WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final Pattern LOG_FILE_PATTERN = Pattern.compile("^([0-9a-fA-F]+)\\.log$");
+    private static final Pattern ANY_LOG_FILE_PATTERN = Pattern.compile("^([0-9a-fA-F]+)\\.log.*$");
+
+    private final File ledgerDir;
+    private final NativeIO nativeIO;
+    private final ByteBufAllocator allocator;
+    private final long maxFileSize;
+    private final int maxSaneEntrySize;
+    private final DirectEntryLoggerStats stats;
+
+    private final ExecutorService writeExecutor;
+    private final BufferPool writeBuffers;
+    private final BufferPool readBuffers;
+
+    private final AtomicLong nextLogId;
+    private final ConcurrentHashMap<Long, DirectReader> readers = new ConcurrentHashMap<>();
+    // logs which are still being written, either by the current writer or by a compaction
+    private final Set<Long> unflushedLogs = ConcurrentHashMap.newKeySet();
+
+    private final Object writerLock = new Object();
+    private WriterWithMetadata curWriter = null;
+    // rotated logs which failed to be finalized, still to be flushed and closed
+    private final List<WriterWithMetadata> unfinalizedWriters = new ArrayList<>();
+
+    public DirectEntryLogger(File ledgerDir,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             StatsLogger statsLogger) throws IOException {
+        checkArgument(maxFileSize > Header.HEADER_SIZE && maxFileSize <= 0xFFFFFFFFL,
+                      "Invalid max entry log file size %d", maxFileSize);
+        this.ledgerDir = ledgerDir;
+        this.nativeIO = nativeIO;
+        this.allocator = allocator;
+        this.maxFileSize = maxFileSize & ~((long) Buffer.ALIGNMENT - 1);
+        this.maxSaneEntrySize = maxSaneEntrySize;
+        this.stats = new DirectEntryLoggerStats(statsLogger);
+
+        // a write buffer must be able to hold the header plus the largest entry
+        int writeBufferSize = Math.max(DEFAULT_WRITE_BUFFER_SIZE,
+                Buffer.nextAlignment(maxSaneEntrySize + Integer.BYTES) + Header.HEADER_SIZE);
+        int writeBufferCount = (int) Math.max(2, totalWriteBufferSize / writeBufferSize);
+        int alignedReadBufferSize = Math.max(2 * Buffer.ALIGNMENT, Buffer.nextAlignment(readBufferSize));
+        int readBufferCount = (int) Math.max(1, totalReadBufferSize / alignedReadBufferSize);
+
+        this.writeBuffers = new BufferPool(nativeIO, writeBufferSize, writeBufferCount);
+        this.readBuffers = new BufferPool(nativeIO, alignedReadBufferSize, readBufferCount);
+        this.writeExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("DirectEntryLoggerWriter"));
+        this.nextLogId = new AtomicLong(findMaxLogId(ledgerDir) + 1);
+
+        LOG.info("Created direct I/O entry logger on {} (maxFileSize: {}, writeBuffers: {} x {}, "
+                 + "readBuffers: {} x {}, nextLogId: {})", ledgerDir, this.maxFileSize,
+                 writeBufferCount, writeBufferSize, readBufferCount, alignedReadBufferSize, nextLogId.get());
+    }
+
+    private static long findMaxLogId(File ledgerDir) throws IOException {
+        File[] files = ledgerDir.listFiles();
+        if (files == null) {
+            throw new IOException(exMsg("Cannot list ledger directory").kv("dir", ledgerDir).toString());
+        }
+        long maxId = -1L;
+        for (File f : files) {
+            Matcher m = ANY_LOG_FILE_PATTERN.matcher(f.getName());
+            if (m.matches()) {
+                maxId = Math.max(maxId, Long.parseLong(m.group(1), 16));
+            }
+        }
+        return maxId;
+    }
+
+    File logFile(long logId) {
+        return new File(ledgerDir, Long.toHexString(logId) + LOG_FILE_SUFFIX);
+    }
+
+    File compactingFile(long logId) {
+        return new File(ledgerDir, Long.toHexString(logId) + TransactionalEntryLogCompactor.COMPACTING_SUFFIX);
+    }
+
+    File compactedFile(long dstLogId, long srcLogId) {
+        return new File(ledgerDir, Long.toHexString(dstLogId) + LOG_FILE_SUFFIX + "."
+                        + Long.toHexString(srcLogId) + TransactionalEntryLogCompactor.COMPACTED_SUFFIX);
+    }
+
+    WriterWithMetadata newWriter(File file) throws IOException {
+        long logId = nextLogId.getAndIncrement();
+        return newWriter(logId, file == null ? logFile(logId) : file);
+    }
+
+    private WriterWithMetadata newWriter(long logId, File file) throws IOException {
+        unflushedLogs.add(logId);
+        try {
+            DirectWriter writer = new DirectWriter(logId, file.toString(), maxFileSize,
+                                                   writeExecutor, writeBuffers, nativeIO);
+            return new WriterWithMetadata(writer, new EntryLogMetadata(logId));
+        } catch (IOException ioe) {
+            unflushedLogs.remove(logId);
+            throw ioe;
+        }
+    }
+
+    long compactionLogId() {
+        return nextLogId.getAndIncrement();
+    }
+
+    WriterWithMetadata newCompactionWriter(long logId) throws IOException {
+        return newWriter(logId, compactingFile(logId));
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf buf) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            synchronized (writerLock) {
+                int entrySize = buf.readableBytes();
+                if (curWriter == null) {
+                    curWriter = newWriter(null);
+                } else if (!curWriter.writer.hasSpaceFor(entrySize,
+                        WriterWithMetadata.ledgersMapSize(curWriter.metadata.getLedgersMap().size() + 1))) {
+                    rotateWriter();
+                }
+                long location = curWriter.addEntry(ledgerId, buf);
+                stats.getWrittenBytes().add(entrySize);
+                success = true;
+                return location;
+            }
+        } finally {
+            if (success) {
+                stats.getAddEntryStats().registerSuccessfulEvent(
+                        MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            } else {
+                stats.getAddEntryStats().registerFailedEvent(
+                        MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void rotateWriter() throws IOException {
+        long startTime = MathUtils.nowInNano();
+        WriterWithMetadata oldWriter = curWriter;
+        curWriter = null;
+        try {
+            try {
+                finalizeWriter(oldWriter);
+            } catch (IOException ioe) {
+                // The log is left without ledgers map, to be scanned like the log of a crashed bookie.
+                // Its entries are made durable by the next flush, which then closes it.
+                if (oldWriter.writer.isClosed()) {
+                    unflushedLogs.remove(oldWriter.writer.logId());
+                } else {
+                    unfinalizedWriters.add(oldWriter);
+                }
+                throw ioe;
+            }
+            curWriter = newWriter(null);
+            stats.getRotateStats().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        } catch (IOException ioe) {
+            stats.getRotateStats().registerFailedEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            throw ioe;
+        }
+        LOG.info("Rotated entry log {} to {}", oldWriter.writer.filename(), curWriter.writer.filename());
+    }
+
+    /**
+     * Append the ledgers map to the log, make it durable and close it.
+     */
+    void finalizeWriter(WriterWithMetadata w) throws IOException {
+        ByteBuf serializedMap = w.serializeLedgerMap(allocator);
+        try {
+            w.writer.finalizeAndClose(serializedMap, (int) w.metadata.getLedgersMap().size());
+        } finally {
+            serializedMap.release();
+        }
+        unflushedLogs.remove(w.writer.logId());
+    }
+
+    private void flushUnfinalizedWriters() throws IOException {
+        Iterator<WriterWithMetadata> iterator = unfinalizedWriters.iterator();
+        while (iterator.hasNext()) {
+            WriterWithMetadata w = iterator.next();
+            w.writer.flush();
+            iterator.remove();
+            closeQuietly(w);
+            unflushedLogs.remove(w.writer.logId());
+        }
+    }
+
+    private void closeQuietly(WriterWithMetadata w) {
+        try {
+            w.writer.close();
+        } catch (IOException ioe) {
+            LOG.warn("Error closing writer for entry log {}", w.writer.logId(), ioe);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            synchronized (writerLock) {
+                if (curWriter != null) {
+                    curWriter.writer.flush();
+                }
+                flushUnfinalizedWriters();
+            }
+            stats.getFlushStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        } catch (IOException ioe) {
+            stats.getFlushStats().registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            throw ioe;
+        }
+    }
+
+    @Override
+    public ByteBuf readEntry(long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(-1L, -1L, entryLocation, false);
+    }
+
+    @Override
+    public ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
+            throws IOException, NoEntryException {
+        return internalReadEntry(ledgerId, entryId, entryLocation, true);
+    }
+
+    private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validate)
+            throws IOException, NoEntryException {
+        long startTime = MathUtils.nowInNano();
+        long logId = location >> 32L;
+        long pos = location & 0xFFFFFFFFL;
+
+        DirectReader reader = getReader(logId);
+        Buffer buffer = readBuffers.acquire();
+        ByteBuf data = null;
+        boolean success = false;
+        try {
+            DirectReader.Cursor cursor = reader.cursor(buffer, Buffer.ALIGNMENT);
+            int entrySize = cursor.readIntAt(pos - Integer.BYTES);
+            if (entrySize < MIN_SANE_ENTRY_SIZE || entrySize > maxSaneEntrySize) {
+                throw new IOException(exMsg("Invalid entry size").kv("ledgerId", ledgerId)
+                                      .kv("entryId", entryId).kv("logId", logId)
+                                      .kv("pos", pos).kv("size", entrySize).toString());
+            }
+            data = allocator.buffer(entrySize, entrySize);
+            cursor.readBufferAt(data, pos, entrySize);
+
+            if (validate) {
+                long thisLedgerId = data.getLong(0);
+                long thisEntryId = data.getLong(8);
+                if (thisLedgerId != ledgerId || thisEntryId != entryId) {
+                    throw new IOException(exMsg("Bad location, found wrong entry")
+                                          .kv("expectedLedgerId", ledgerId).kv("expectedEntryId", entryId)
+                                          .kv("foundLedgerId", thisLedgerId).kv("foundEntryId", thisEntryId)
+                                          .kv("logId", logId).kv("pos", pos).toString());
+                }
+            }
+            stats.getReadBytes().add(entrySize);
+            success = true;
+            return data;
+        } catch (ShortReadException sre) {
+            throw new NoEntryException(sre.getMessage(), ledgerId, entryId);
+        } finally {
+            readBuffers.release(buffer);
+            if (success) {
+                stats.getReadEntryStats().registerSuccessfulEvent(
+                        MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            } else {
+                if (data != null) {
+                    data.release();
+                }
+                stats.getReadEntryStats().registerFailedEvent(
+                        MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private DirectReader getReader(long logId) throws IOException {
+        DirectReader reader = readers.get(logId);
+        if (reader != null) {
+            return reader;
+        }
+        try {
+            return readers.computeIfAbsent(logId, id -> {
+                try {
+                    DirectReader r = new DirectReader(id, logFile(id).toString(), nativeIO);
+                    stats.getOpenReaders().inc();
+                    return r;
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    private void closeReader(long logId) {
+        DirectReader reader = readers.remove(logId);
+        if (reader != null) {
+            stats.getOpenReaders().dec();
+            try {
+                reader.close();
+            } catch (IOException ioe) {
+                LOG.warn("Error closing reader for entry log {}", logId, ioe);
+            }
+        }
+    }
+
+    @Override
+    public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        scanLog(getReader(entryLogId), (ledgerId, offset, entrySize, cursor) -> {
+            if (!scanner.accept(ledgerId)) {
+                return;
+            }
+            ByteBuf data = allocator.buffer(entrySize, entrySize);
+            try {
+                cursor.readBufferAt(data, offset + Integer.BYTES, entrySize);
+                scanner.process(ledgerId, offset, data);
+            } finally {
+                data.release();
+            }
+        });
+    }
+
+    /**
+     * Callback for each entry found while scanning a log.
+     */
+    private interface EntryVisitor {
+        void visit(long ledgerId, long offset, int entrySize, DirectReader.Cursor cursor) throws IOException;
+    }
+
+    private void scanLog(DirectReader reader, EntryVisitor visitor) throws IOException {
+        Buffer buffer = readBuffers.acquire();
+        try {
+            DirectReader.Cursor cursor = reader.cursor(buffer, buffer.size());
+            Header header = Header.read(cursor);
+            long end = header.hasLedgerMap() ? header.ledgerMapOffset() : reader.maxOffset();
+
+            long pos = Header.HEADER_SIZE;
+            while (pos + Integer.BYTES <= end) {
+                int entrySize;
+                try {
+                    entrySize = cursor.readIntAt(pos);
+                } catch (ShortReadException sre) {
+                    break;
+                }
+                if (entrySize == 0) {
+                    // preallocated space which was never written
+                    break;
+                } else if (entrySize < 0) {
+                    long nextAlignment = alignUp(pos);
+                    if ((entrySize >>> 24) == (Buffer.PADDING_BYTE & 0xFF) && nextAlignment != pos) {
+                        pos = nextAlignment;
+                        continue;
+                    }
+                    // ledger map marker, or garbage
+                    break;
+                } else if (entrySize < Long.BYTES || entrySize > maxSaneEntrySize
+                           || pos + Integer.BYTES + entrySize > end) {
+                    LOG.warn("Invalid entry size {} found while scanning {} at {}, stopping scan",
+                             entrySize, reader.filename(), pos);
+                    break;
+                }
+                long ledgerId = cursor.readLongAt(pos + Integer.BYTES);
+                visitor.visit(ledgerId, pos, entrySize, cursor);
+                pos += Integer.BYTES + entrySize;
+            }
+        } finally {
+            readBuffers.release(buffer);
+        }
+    }
+
+    private static long alignUp(long pos) {
+        return (pos + Buffer.ALIGNMENT - 1) & ~((long) Buffer.ALIGNMENT - 1);
+    }
+
+    @Override
+    public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        DirectReader reader = getReader(entryLogId);
+        try {
+            EntryLogMetadata meta = readLedgerMap(reader);
+            if (meta != null) {
+                return meta;
+            }
+        } catch (IOException ioe) {
+            LOG.info("Failed to read ledgers map from {}, falling back to scanning: {}",
+                     reader.filename(), ioe.getMessage());
+        }
+
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        scanLog(reader, (ledgerId, offset, entrySize, cursor) -> {
+            if (throttler != null) {
+                throttler.acquire(entrySize);
+            }
+            meta.addLedgerSize(ledgerId, entrySize + Integer.BYTES);
+        });
+        return meta;
+    }
+
+    private EntryLogMetadata readLedgerMap(DirectReader reader) throws IOException {
+        Buffer buffer = readBuffers.acquire();
+        try {
+            DirectReader.Cursor cursor = reader.cursor(buffer, buffer.size());
+            Header header = Header.read(cursor);
+            if (!header.hasLedgerMap()) {
+                return null;
+            }
+            long pos = header.ledgerMapOffset();
+            int marker = cursor.readIntAt(pos);
+            int count = cursor.readIntAt(pos + Integer.BYTES);
+            if (marker != Header.LEDGER_MAP_MARKER || count != header.ledgerCount()) {
+                throw new IOException(exMsg("Corrupt ledgers map").kv("file", reader.filename())
+                                      .kv("marker", marker).kv("count", count)
+                                      .kv("expectedCount", header.ledgerCount()).toString());
+            }
+            pos += 2 * Integer.BYTES;
+            EntryLogMetadata meta = new EntryLogMetadata(reader.logId());
+            for (int i = 0; i < count; i++) {
+                long ledgerId = cursor.readLongAt(pos);
+                long size = cursor.readLongAt(pos + Long.BYTES);
+                meta.addLedgerSize(ledgerId, size);
+                pos += 2 * Long.BYTES;
+            }
+            return meta;
+        } finally {
+            readBuffers.release(buffer);
+        }
+    }
+
+    @Override
+    public Collection<Long> getFlushedLogIds() {
+        List<Long> logIds = new ArrayList<>();
+        File[] files = ledgerDir.listFiles();
+        if (files == null) {
+            return logIds;
+        }
+        for (File f : files) {
+            Matcher m = LOG_FILE_PATTERN.matcher(f.getName());
+            if (m.matches()) {
+                long logId = Long.parseLong(m.group(1), 16);
+                if (!unflushedLogs.contains(logId)) {
+                    logIds.add(logId);
+                }
+            }
+        }
+        return logIds;
+    }
+
+    @Override
+    public boolean logExists(long logId) {
+        return logFile(logId).exists();
+    }
+
+    @Override
+    public boolean removeEntryLog(long entryLogId) {
+        closeReader(entryLogId);
+        File f = logFile(entryLogId);
+        boolean deleted = f.delete();
+        if (deleted) {
+            LOG.info("Deleted entry log {}", f);
+        } else {
+            LOG.warn("Could not delete entry log {}", f);
+        }
+        return deleted;
+    }
+
+    @Override
+    public CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        long dstLogId = compactionLogId();
+        return new DirectCompactionEntryLog(this, logToCompact, dstLogId, newCompactionWriter(dstLogId));
+    }
+
+    @Override
+    public Collection<CompactionEntryLog> incompleteCompactionLogs() {
+        List<CompactionEntryLog> compactionLogs = new ArrayList<>();
+        File[] compactingFiles = ledgerDir.listFiles(
+                f -> f.getName().endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX));
+        if (compactingFiles != null) {
+            for (File f : compactingFiles) {
+                if (f.delete()) {
+                    LOG.info("Deleted failed compaction file {}", f);
+                }
+            }
+        }
+        File[] compactedFiles = ledgerDir.listFiles(
+                f -> f.getName().endsWith(TransactionalEntryLogCompactor.COMPACTED_SUFFIX));
+        if (compactedFiles != null) {
+            for (File f : compactedFiles) {
+                String[] parts = f.getName().split(Pattern.quote("."));
+                long dstLogId;
+                long srcLogId;
+                try {
+                    checkArgument(parts.length == 4, "Bad compacted file name");
+                    dstLogId = Long.parseLong(parts[0], 16);
+                    srcLogId = Long.parseLong(parts[2], 16);
+                } catch (IllegalArgumentException e) {
+                    LOG.info("Invalid compacted file found ({}), deleting", f);
+                    if (!f.delete()) {
+                        LOG.warn("Couldn't delete invalid compacted file ({})", f);
+                    }
+                    continue;
+                }
+                LOG.info("Found compacted log file {} has partially flushed index, recovering index.", f);
+                compactionLogs.add(new DirectCompactionEntryLog(this, srcLogId, dstLogId, null));
+            }
+        }
+        return compactionLogs;
+    }
+
+    void markLogFlushed(long logId) {
+        unflushedLogs.remove(logId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (writerLock) {
+                try {
+                    flushUnfinalizedWriters();
+                    if (curWriter != null) {
+                        finalizeWriter(curWriter);
+                        curWriter = null;
+                    }
+                } finally {
+                    unfinalizedWriters.forEach(this::closeQuietly);
+                    unfinalizedWriters.clear();
+                    if (curWriter != null) {
+                        closeQuietly(curWriter);
+                        curWriter = null;
+                    }
+                }
+            }
+        } finally {
+            for (Long logId : new ArrayList<>(readers.keySet())) {
+                closeReader(logId);
+            }
+            writeExecutor.shutdown();
+            try {
+                writeExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            writeBuffers.close();
+            readBuffers.close();
+        }
+    }
+
+    /**
+     * A writer along with the ledgers map of the data written through it.
+     */
+    static class WriterWithMetadata {
+        final DirectWriter writer;
+        final EntryLogMetadata metadata;
+
+        WriterWithMetadata(DirectWriter writer, EntryLogMetadata metadata) {
+            this.writer = writer;
+            this.metadata = metadata;
+        }
+
+        long addEntry(long ledgerId, ByteBuf buf) throws IOException {
+            int entrySize = buf.readableBytes();
+            long sizeOffset = writer.writeDelimited(buf);
+            metadata.addLedgerSize(ledgerId, entrySize + Integer.BYTES);
+            return (writer.logId() << 32L) | (sizeOffset + Integer.BYTES);
+        }
+
+        static int ledgersMapSize(long ledgerCount) {
+            return (int) (2 * Integer.BYTES + ledgerCount * 2 * Long.BYTES);
+        }
+
+        ByteBuf serializeLedgerMap(ByteBufAllocator allocator) {
+            int count = (int) metadata.getLedgersMap().size();
+            ByteBuf buf = allocator.buffer(ledgersMapSize(count));
+            buf.writeInt(Header.LEDGER_MAP_MARKER);
+            buf.writeInt(count);
+            metadata.getLedgersMap().forEach((ledgerId, size) -> {
+                buf.writeLong(ledgerId);
+                buf.writeLong(size);
+            });
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Stats for the direct I/O entry logger, one instance per ledger directory.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Direct I/O entry logger related stats"
+)
+@Getter
+class DirectEntryLoggerStats {
+
+    private static final String ADD_ENTRY = "direct-entrylog-add-entry";
+    private static final String READ_ENTRY = "direct-entrylog-read-entry";
+    private static final String FLUSH = "direct-entrylog-flush";
+    private static final String ROTATE = "direct-entrylog-rotate";
+    private static final String WRITTEN_BYTES = "direct-entrylog-written-bytes";
+    private static final String READ_BYTES = "direct-entrylog-read-bytes";
+    private static final String OPEN_READERS = "direct-entrylog-open-readers";
+
+    @StatsDoc(
+        name = ADD_ENTRY,
+        help = "operation stats of appending entries to the direct I/O entry log buffers"
+    )
+    private final OpStatsLogger addEntryStats;
+    @StatsDoc(
+        name = READ_ENTRY,
+        help = "operation stats of reading entries from entry logs with direct I/O"
+    )
+    private final OpStatsLogger readEntryStats;
+    @StatsDoc(
+        name = FLUSH,
+        help = "operation stats of writing out buffered data and syncing the current entry log"
+    )
+    private final OpStatsLogger flushStats;
+    @StatsDoc(
+        name = ROTATE,
+        help = "operation stats of finalizing an entry log and opening the next one"
+    )
+    private final OpStatsLogger rotateStats;
+    @StatsDoc(
+        name = WRITTEN_BYTES,
+        help = "number of entry bytes appended to entry logs"
+    )
+    private final Counter writtenBytes;
+    @StatsDoc(
+        name = READ_BYTES,
+        help = "number of entry bytes read from entry logs"
+    )
+    private final Counter readBytes;
+    @StatsDoc(
+        name = OPEN_READERS,
+        help = "number of entry log files opened for reading"
+    )
+    private final Counter openReaders;
+
+    DirectEntryLoggerStats(StatsLogger stats) {
+        addEntryStats = stats.getOpStatsLogger(ADD_ENTRY);
+        readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
+        flushStats = stats.getOpStatsLogger(FLUSH);
+        rotateStats = stats.getOpStatsLogger(ROTATE);
+        writtenBytes = stats.getCounter(WRITTEN_BYTES);
+        readBytes = stats.getCounter(READ_BYTES);
+        openReaders = stats.getCounter(OPEN_READERS);
+    }
+}
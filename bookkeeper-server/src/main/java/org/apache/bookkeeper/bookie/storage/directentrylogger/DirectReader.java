@@ -0,0 +1,173 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+import org.apache.bookkeeper.bookie.ShortReadException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * Reads an entry log file using direct I/O.
+ * <p/>
+ * The reader itself only holds the file descriptor, and is safe to share between threads,
+ * as all reads are positional. The actual reads go through a {@link Cursor}, which owns an
+ * aligned {@link Buffer} for its lifetime and caches the last block read from the file.
+ */
+class DirectReader implements AutoCloseable {
+    private final NativeIO nativeIO;
+    private final long logId;
+    private final String filename;
+    private final int fd;
+
+    DirectReader(long logId, String filename, NativeIO nativeIO) throws IOException {
+        this.nativeIO = nativeIO;
+        this.logId = logId;
+        this.filename = filename;
+        try {
+            fd = nativeIO.open(filename, NativeIO.O_RDONLY | NativeIO.O_DIRECT, 00755);
+            checkArgument(fd >= 0, "bad fd %d", fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    String filename() {
+        return filename;
+    }
+
+    /**
+     * @return the size of the file on disk, including any preallocated space.
+     */
+    long maxOffset() throws IOException {
+        try {
+            return nativeIO.lseek(fd, 0, NativeIO.SEEK_END);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    /**
+     * Create a cursor over this file.
+     *
+     * @param buffer the buffer used for reads. The cursor doesn't take ownership of it.
+     * @param minReadSize the minimum number of bytes fetched by each read. Random reads should
+     *                    use a small value, sequential scans should use the buffer size.
+     */
+    Cursor cursor(Buffer buffer, int minReadSize) {
+        return new Cursor(buffer, minReadSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    /**
+     * A cursor caches a single block of the file in its buffer. Not thread safe.
+     */
+    class Cursor {
+        private final Buffer buffer;
+        private final int minReadSize;
+        private long blockStart = -1;
+        private int blockLength = 0;
+
+        private Cursor(Buffer buffer, int minReadSize) {
+            checkArgument(buffer.size() >= 2 * Buffer.ALIGNMENT,
+                          "Read buffer too small %d", buffer.size());
+            this.buffer = buffer;
+            this.minReadSize = Math.min(Buffer.nextAlignment(Math.max(minReadSize, Buffer.ALIGNMENT)),
+                                        buffer.size());
+        }
+
+        String filename() {
+            return filename;
+        }
+
+        int readIntAt(long offset) throws IOException {
+            ensureAvailable(offset, Integer.BYTES);
+            return buffer.readInt((int) (offset - blockStart));
+        }
+
+        long readLongAt(long offset) throws IOException {
+            ensureAvailable(offset, Long.BYTES);
+            return buffer.readLong((int) (offset - blockStart));
+        }
+
+        /**
+         * Read size bytes starting at offset into dst. Reads larger than the buffer are
+         * served in several chunks.
+         */
+        void readBufferAt(ByteBuf dst, long offset, int size) throws IOException {
+            long pos = offset;
+            int remaining = size;
+            while (remaining > 0) {
+                int wanted = Math.min(remaining, buffer.size() - Buffer.ALIGNMENT);
+                ensureAvailable(pos, wanted);
+                int bytesRead = buffer.readByteBuf(dst, (int) (pos - blockStart), wanted);
+                pos += bytesRead;
+                remaining -= bytesRead;
+            }
+        }
+
+        private void ensureAvailable(long offset, int size) throws IOException {
+            if (blockStart >= 0 && offset >= blockStart && offset + size <= blockStart + blockLength) {
+                return;
+            }
+            long alignedOffset = offset & ~((long) Buffer.ALIGNMENT - 1);
+            int readSize = Math.max(minReadSize,
+                                    Buffer.nextAlignment((int) (offset - alignedOffset) + size));
+            long bytesRead;
+            try {
+                bytesRead = nativeIO.pread(fd, buffer.pointer(), readSize, alignedOffset);
+            } catch (NativeIOException ne) {
+                blockStart = -1;
+                throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                      .kv("offset", alignedOffset).kv("size", readSize)
+                                      .kv("errno", ne.getErrno()).toString(), ne);
+            }
+            blockStart = alignedOffset;
+            blockLength = (int) Math.max(bytesRead, 0);
+            if (offset + size > blockStart + blockLength) {
+                throw new ShortReadException(exMsg("Short read").kv("file", filename)
+                                             .kv("offset", offset).kv("size", size)
+                                             .kv("available", blockStart + blockLength - offset).toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a single entry log file using direct I/O.
+ * <p/>
+ * Data is accumulated in an aligned {@link Buffer}. When the buffer is full, or when
+ * the writer is flushed, the buffer is padded to the next alignment and handed to the
+ * write executor, which issues the pwrite and returns the buffer to the pool. Entries
+ * never span two buffers, so an entry is always covered by a single aligned write.
+ * <p/>
+ * The first {@link Buffer#ALIGNMENT} bytes of the file hold the header. The header
+ * is rewritten on {@link #finalizeAndClose} to point at the ledgers map, which is
+ * appended at the end of the file.
+ */
+class DirectWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectWriter.class);
+
+    private final NativeIO nativeIO;
+    private final int fd;
+    private final long logId;
+    private final String filename;
+    private final long maxFileSize;
+    private final BufferPool bufferPool;
+    private final ExecutorService writeExecutor;
+    private final List<Future<?>> outstandingWrites = new ArrayList<>();
+
+    private Buffer nativeBuffer;
+    // file offset at which the current buffer will be written
+    private long offset;
+    private boolean closed = false;
+
+    DirectWriter(long logId, String filename, long maxFileSize,
+                 ExecutorService writeExecutor, BufferPool bufferPool,
+                 NativeIO nativeIO) throws IOException {
+        checkArgument(Buffer.isAligned(maxFileSize),
+                      "Max file size (%d) is not aligned to %d", maxFileSize, Buffer.ALIGNMENT);
+        this.logId = logId;
+        this.filename = filename;
+        this.maxFileSize = maxFileSize;
+        this.writeExecutor = writeExecutor;
+        this.bufferPool = bufferPool;
+        this.nativeIO = nativeIO;
+
+        try {
+            fd = nativeIO.open(filename,
+                               NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT,
+                               00644);
+            checkArgument(fd >= 0, "bad fd %d", fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        try {
+            // preallocate the file so that the extents are contiguous on disk
+            nativeIO.fallocate(fd, 0, 0, maxFileSize);
+        } catch (NativeIOException ne) {
+            // fallocate is linux only, writes still work without it
+            LOG.debug("Couldn't preallocate entry log {} ({}), continuing", filename, ne.getMessage());
+        }
+
+        nativeBuffer = bufferPool.acquire();
+        Header.writeEmptyHeader(nativeBuffer);
+        offset = 0;
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    String filename() {
+        return filename;
+    }
+
+    /**
+     * @return the offset in the file at which the next write will be placed.
+     */
+    synchronized long position() {
+        return offset + nativeBuffer.position();
+    }
+
+    /**
+     * @return whether an entry of entrySize bytes can still be added without exceeding the max file size,
+     *         leaving room for a ledgers map of ledgersMapSize bytes to be appended by {@link #finalizeAndClose}.
+     */
+    synchronized boolean hasSpaceFor(int entrySize, int ledgersMapSize) {
+        // account for the size prefix, the worst case padding if the buffer has to be flushed first,
+        // and the padding before the ledgers map, which is written at the next alignment
+        long worstCase = position() + Integer.BYTES + entrySize + 2L * Buffer.ALIGNMENT
+                + Buffer.nextAlignment(ledgersMapSize);
+        return worstCase <= maxFileSize;
+    }
+
+    /**
+     * Write a buffer prefixed by its size.
+     * The readerIndex of the passed buffer is left untouched.
+     *
+     * @return the offset of the size prefix in the file
+     */
+    synchronized long writeDelimited(ByteBuf buf) throws IOException {
+        checkOpen();
+        int size = buf.readableBytes();
+        if (!nativeBuffer.hasSpace(size + Integer.BYTES)) {
+            flushBuffer();
+        }
+        long sizeOffset = position();
+        nativeBuffer.writeInt(size);
+        int readerIndex = buf.readerIndex();
+        try {
+            nativeBuffer.writeByteBuf(buf);
+        } finally {
+            buf.readerIndex(readerIndex);
+        }
+        return sizeOffset;
+    }
+
+    /**
+     * Write a buffer at the next aligned position, allowing it to span several native buffers.
+     * Used for the ledgers map.
+     *
+     * @return the offset in the file where the data was written
+     */
+    synchronized long writeAtAlignment(ByteBuf buf) throws IOException {
+        checkOpen();
+        int bufferPos = nativeBuffer.position();
+        if (bufferPos > 0 && Buffer.nextAlignment(bufferPos) >= nativeBuffer.size()) {
+            flushBuffer();
+        } else if (bufferPos > 0) {
+            nativeBuffer.padToAlignment();
+        }
+        long startOffset = position();
+        int readerIndex = buf.readerIndex();
+        try {
+            while (buf.isReadable()) {
+                int space = nativeBuffer.size() - nativeBuffer.position();
+                if (space == 0) {
+                    flushBuffer();
+                    space = nativeBuffer.size();
+                }
+                int toWrite = Math.min(space, buf.readableBytes());
+                nativeBuffer.writeByteBuf(buf.readSlice(toWrite));
+            }
+        } finally {
+            buf.readerIndex(readerIndex);
+        }
+        return startOffset;
+    }
+
+    /**
+     * Push the current buffer to the write executor. Does not wait for completion.
+     */
+    private void flushBuffer() throws IOException {
+        if (nativeBuffer.position() == 0) {
+            return;
+        }
+        final Buffer bufferToWrite = nativeBuffer;
+        final long writeOffset = offset;
+        final int bytesToWrite = bufferToWrite.padToAlignment();
+        if (writeOffset + bytesToWrite > maxFileSize) {
+            throw new IOException(exMsg("Write would exceed max file size")
+                                  .kv("file", filename)
+                                  .kv("offset", writeOffset)
+                                  .kv("size", bytesToWrite)
+                                  .kv("maxFileSize", maxFileSize).toString());
+        }
+
+        outstandingWrites.add(writeExecutor.submit(() -> {
+            try {
+                writeFully(bufferToWrite, bytesToWrite, writeOffset);
+            } finally {
+                bufferPool.release(bufferToWrite);
+            }
+            return null;
+        }));
+        offset += bytesToWrite;
+        nativeBuffer = bufferPool.acquire();
+    }
+
+    private void writeFully(Buffer buffer, int bytesToWrite, long writeOffset) throws IOException {
+        int written = 0;
+        try {
+            while (written < bytesToWrite) {
+                int ret = nativeIO.pwrite(fd, buffer.pointer(written, bytesToWrite - written),
+                                          bytesToWrite - written, writeOffset + written);
+                if (ret <= 0) {
+                    throw new IOException(exMsg("Short write").kv("file", filename)
+                                          .kv("offset", writeOffset + written)
+                                          .kv("remaining", bytesToWrite - written).toString());
+                }
+                written += ret;
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("offset", writeOffset)
+                                  .kv("size", bytesToWrite)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    private void waitForOutstandingWrites() throws IOException {
+        try {
+            for (Future<?> f : outstandingWrites) {
+                f.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(exMsg("Interrupted waiting for writes").kv("file", filename).toString(), ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(exMsg("Failed writing entry log").kv("file", filename).toString(), cause);
+        } finally {
+            outstandingWrites.clear();
+        }
+    }
+
+    /**
+     * Write out all buffered data and fsync the file.
+     */
+    synchronized void flush() throws IOException {
+        checkOpen();
+        flushBuffer();
+        waitForOutstandingWrites();
+        fsync();
+    }
+
+    private void fsync() throws IOException {
+        try {
+            nativeIO.fsync(fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    /**
+     * Append the ledgers map, point the header at it, make everything durable and close the file.
+     */
+    synchronized void finalizeAndClose(ByteBuf serializedLedgerMap, int ledgerCount) throws IOException {
+        checkOpen();
+        long ledgerMapOffset = writeAtAlignment(serializedLedgerMap);
+        flushBuffer();
+        waitForOutstandingWrites();
+        fsync();
+
+        // the header is only updated once the map is durable, so a crash in between
+        // leaves a log that is simply scanned on the next startup
+        nativeBuffer.reset();
+        Header.writeHeader(nativeBuffer, ledgerMapOffset, ledgerCount);
+        writeFully(nativeBuffer, nativeBuffer.padToAlignment(), 0);
+        fsync();
+        close();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException(exMsg("Writer is closed").kv("file", filename).toString());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            waitForOutstandingWrites();
+        } finally {
+            bufferPool.release(nativeBuffer);
+            nativeBuffer = null;
+            try {
+                nativeIO.close(fd);
+            } catch (NativeIOException ne) {
+                throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                      .kv("errno", ne.getErrno()).toString(), ne);
+            }
+        }
+    }
+}
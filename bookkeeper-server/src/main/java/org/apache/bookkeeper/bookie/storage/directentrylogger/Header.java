@@ -0,0 +1,111 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import java.io.IOException;
+
+/**
+ * The header of a direct I/O entry log.
+ * <pre>
+ * [0..4)    magic "BKLO"
+ * [4..8)    version
+ * [8..16)   ledgers map offset (0 if the log was not finalized)
+ * [16..20)  number of ledgers in the ledgers map
+ * [20..4096) padding
+ * </pre>
+ * The version is distinct from the versions used by the
+ * {@link org.apache.bookkeeper.bookie.DefaultEntryLogger}, so neither logger
+ * will try to interpret a file written by the other.
+ */
+class Header {
+    static final int MAGIC = 0x424B4C4F; // "BKLO"
+    static final int HEADER_DIRECT_V1 = 4;
+    static final int HEADER_SIZE = Buffer.ALIGNMENT;
+
+    private static final int VERSION_OFFSET = 4;
+    private static final int LEDGER_MAP_OFFSET_OFFSET = 8;
+    private static final int LEDGER_COUNT_OFFSET = 16;
+
+    /**
+     * Marks the start of the ledgers map. This is negative, but is not padding,
+     * so a scan that reaches it stops.
+     */
+    static final int LEDGER_MAP_MARKER = 0xFFFFFFFE;
+
+    private final int version;
+    private final long ledgerMapOffset;
+    private final int ledgerCount;
+
+    Header(int version, long ledgerMapOffset, int ledgerCount) {
+        this.version = version;
+        this.ledgerMapOffset = ledgerMapOffset;
+        this.ledgerCount = ledgerCount;
+    }
+
+    int version() {
+        return version;
+    }
+
+    long ledgerMapOffset() {
+        return ledgerMapOffset;
+    }
+
+    int ledgerCount() {
+        return ledgerCount;
+    }
+
+    boolean hasLedgerMap() {
+        return ledgerMapOffset > 0;
+    }
+
+    static void writeEmptyHeader(Buffer buffer) throws IOException {
+        writeHeader(buffer, 0L, 0);
+    }
+
+    static void writeHeader(Buffer buffer, long ledgerMapOffset, int ledgerCount) throws IOException {
+        buffer.writeInt(MAGIC);
+        buffer.writeInt(HEADER_DIRECT_V1);
+        buffer.writeInt((int) (ledgerMapOffset >>> 32));
+        buffer.writeInt((int) ledgerMapOffset);
+        buffer.writeInt(ledgerCount);
+        buffer.padToAlignment();
+    }
+
+    static Header read(DirectReader.Cursor cursor) throws IOException {
+        int magic = cursor.readIntAt(0);
+        if (magic != MAGIC) {
+            throw new IOException(exMsg("Bad magic in entry log header")
+                                  .kv("file", cursor.filename())
+                                  .kv("magic", Integer.toHexString(magic)).toString());
+        }
+        int version = cursor.readIntAt(VERSION_OFFSET);
+        if (version != HEADER_DIRECT_V1) {
+            throw new IOException(exMsg("Unknown entry log header version")
+                                  .kv("file", cursor.filename())
+                                  .kv("version", version).toString());
+        }
+        return new Header(version,
+                          cursor.readLongAt(LEDGER_MAP_OFFSET_OFFSET),
+                          cursor.readIntAt(LEDGER_COUNT_OFFSET));
+    }
+}
@@ -0,0 +1,575 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the locations of the entries of the ledgers being written in dense off-heap arrays,
+ * in front of the RocksDB locations index.
+ *
+ * <p>Entry ids within a ledger are contiguous, so the location of an entry of an active ledger
+ * is the slot {@code entryId - firstEntryId} of an array. Lookups don't go to RocksDB, and
+ * flushes don't write one key per entry: the slots set since the previous checkpoint are
+ * appended to a log file next to the RocksDB index, which is replayed on startup.
+ *
+ * <p>Ledgers that didn't receive new entries during {@code idleCheckpoints} checkpoints are
+ * considered sealed and are spilled to RocksDB, as are the least recently written ledgers
+ * when the arrays take more than {@code maxSizeBytes}. The log is rewritten with only the
+ * remaining ledgers once it is much larger than them.
+ *
+ * <p>Entries that don't fit in the array of their ledger, because they are before its first
+ * entry or after a large gap, are stored in RocksDB. Lookups missing the arrays must fall back
+ * to RocksDB.
+ *
+ * <p>With {@code useBlocks}, spilled ledgers are stored as {@link EntryLocationBlock}s rather
+ * than one record per entry, unless RocksDB already has entries of the ledger past the start
+ * of its array.
+ */
+class ActiveLedgerLocationIndex implements Closeable {
+
+    static final String LOG_FILE_NAME = "locations-active.log";
+
+    // Record: ledgerId, firstEntryId, count (or TOMBSTONE), count locations, crc32
+    private static final int RECORD_HEADER_SIZE = 8 + 8 + 4;
+    private static final int RECORD_CHECKSUM_SIZE = 4;
+    private static final int TOMBSTONE = -1;
+
+    private static final int INITIAL_SLOTS = 64;
+    private static final int MAX_SLOTS = 1 << 24;
+    // Max number of missing entries between the last slot and a new entry
+    private static final int MAX_GAP = 64 * 1024;
+    private static final long MIN_LOG_SIZE_TO_REWRITE = 64 * 1024 * 1024;
+
+    private final KeyValueStorage locationsDb;
+    private final File logFile;
+    private final long maxSizeBytes;
+    private final int idleCheckpoints;
+    private final boolean useBlocks;
+
+    private final ConcurrentLongHashMap<LedgerLocations> ledgers = ConcurrentLongHashMap.<LedgerLocations>newBuilder()
+            .expectedItems(1024)
+            .build();
+    private final AtomicLong sizeBytes = new AtomicLong();
+
+    // All the fields below are guarded by this
+    private final Set<Long> pendingTombstones = new HashSet<>();
+    private FileChannel logChannel;
+    private long logSize;
+    private long checkpointId;
+
+    ActiveLedgerLocationIndex(KeyValueStorage locationsDb, String basePath, long maxSizeBytes, int idleCheckpoints,
+                              boolean useBlocks) throws IOException {
+        this.locationsDb = locationsDb;
+        this.logFile = new File(basePath, LOG_FILE_NAME);
+        this.maxSizeBytes = maxSizeBytes;
+        this.idleCheckpoints = idleCheckpoints;
+        this.useBlocks = useBlocks;
+
+        this.logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        replay();
+    }
+
+    static boolean exists(String basePath) {
+        return new File(basePath, LOG_FILE_NAME).exists();
+    }
+
+    /**
+     * @return the location of the entry, or 0 if it is not in the arrays
+     */
+    long getLocation(long ledgerId, long entryId) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        return locations != null ? locations.get(entryId) : 0;
+    }
+
+    /**
+     * @return the last entry id of the ledger, or -1 if the ledger is not in the arrays
+     */
+    long getLastEntryInLedger(long ledgerId) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        return locations != null ? locations.getLastEntryId() : -1;
+    }
+
+    /**
+     * Set the location of an entry.
+     *
+     * @param newEntry whether the entry is being added to the storage, in which case the ledger
+     *                 is added to the arrays if needed. Locations updated by the compaction
+     *                 are only set for ledgers already in the arrays
+     * @return false if the location must be stored in RocksDB instead
+     */
+    synchronized boolean addLocation(long ledgerId, long entryId, long location, boolean newEntry)
+            throws IOException {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        if (locations == null) {
+            if (!newEntry) {
+                return false;
+            }
+            locations = new LedgerLocations(ledgerId, entryId, getLastEntryInDb(ledgerId));
+            ledgers.put(ledgerId, locations);
+        }
+
+        if (newEntry) {
+            locations.lastUpdate = checkpointId;
+        }
+        if (locations.set(entryId, location)) {
+            return true;
+        }
+        locations.entryStoredInDb(entryId);
+        return false;
+    }
+
+    synchronized void delete(long ledgerId) {
+        LedgerLocations locations = ledgers.remove(ledgerId);
+        if (locations != null) {
+            locations.release();
+            pendingTombstones.add(ledgerId);
+        }
+    }
+
+    /**
+     * Persist the locations set since the previous checkpoint, then spill the idle ledgers to
+     * RocksDB. Must be called once the locations can be considered durable.
+     */
+    synchronized void checkpoint() throws IOException {
+        List<ByteBuffer> records = new ArrayList<>();
+        for (long ledgerId : pendingTombstones) {
+            records.add(tombstone(ledgerId));
+        }
+        ledgers.forEach((ledgerId, locations) -> {
+            ByteBuffer record = locations.takeDirtyRecord();
+            if (record != null) {
+                records.add(record);
+            }
+        });
+
+        try {
+            append(records);
+        } catch (IOException e) {
+            // Write the whole arrays again at the next checkpoint
+            ledgers.forEach((ledgerId, locations) -> locations.markDirty());
+            throw e;
+        }
+        pendingTombstones.clear();
+
+        List<LedgerLocations> toSpill = new ArrayList<>();
+        List<LedgerLocations> active = new ArrayList<>();
+        ledgers.forEach((ledgerId, locations) -> {
+            if (checkpointId - locations.lastUpdate >= idleCheckpoints) {
+                toSpill.add(locations);
+            } else {
+                active.add(locations);
+            }
+        });
+        long remainingSize = sizeBytes.get() - toSpill.stream().mapToLong(LedgerLocations::sizeBytes).sum();
+        if (remainingSize > maxSizeBytes) {
+            active.sort(Comparator.comparingLong(locations -> locations.lastUpdate));
+            for (int i = 0; i < active.size() && remainingSize > maxSizeBytes; i++) {
+                toSpill.add(active.get(i));
+                remainingSize -= active.get(i).sizeBytes();
+            }
+        }
+        if (!toSpill.isEmpty()) {
+            spill(toSpill);
+        }
+
+        if (logSize > Math.max(MIN_LOG_SIZE_TO_REWRITE, 2 * sizeBytes.get())) {
+            rewriteLog();
+        }
+        checkpointId++;
+    }
+
+    /**
+     * Move all the locations to RocksDB and remove the log. Used when the arrays are disabled.
+     */
+    synchronized void spillAllAndDelete() throws IOException {
+        spill(ledgers.values());
+        logChannel.close();
+        Files.deleteIfExists(logFile.toPath());
+    }
+
+    long getLedgersCount() {
+        return ledgers.size();
+    }
+
+    long getSizeBytes() {
+        return sizeBytes.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        ledgers.forEach((ledgerId, locations) -> locations.release());
+        ledgers.clear();
+        if (logChannel.isOpen()) {
+            logChannel.close();
+        }
+    }
+
+    private void spill(List<LedgerLocations> toSpill) throws IOException {
+        long startTime = System.nanoTime();
+        long spilledEntries = 0;
+        Batch batch = locationsDb.newBatch();
+        try {
+            EntryLocationBlock.Writer blockWriter = useBlocks ? new EntryLocationBlock.Writer(batch) : null;
+            for (LedgerLocations locations : toSpill) {
+                spilledEntries += locations.writeTo(batch, blockWriter);
+            }
+            batch.flush();
+        } finally {
+            batch.close();
+        }
+
+        // Only forget the ledgers once the log won't bring them back
+        List<ByteBuffer> records = new ArrayList<>(toSpill.size());
+        for (LedgerLocations locations : toSpill) {
+            records.add(tombstone(locations.ledgerId));
+        }
+        append(records);
+
+        for (LedgerLocations locations : toSpill) {
+            ledgers.remove(locations.ledgerId, locations);
+            locations.release();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Spilled locations of {} entries from {} ledgers to the db index in {} ms", spilledEntries,
+                    toSpill.size(), (System.nanoTime() - startTime) / 1e6);
+        }
+    }
+
+    private void append(List<ByteBuffer> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        long position = logSize;
+        try {
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    position += logChannel.write(record, position);
+                }
+            }
+            logChannel.force(false);
+        } catch (IOException e) {
+            // Records written after a partial one would not be replayed
+            try {
+                logChannel.truncate(logSize);
+            } catch (IOException te) {
+                e.addSuppressed(te);
+            }
+            throw e;
+        }
+        logSize = position;
+    }
+
+    private void rewriteLog() throws IOException {
+        File tmpFile = new File(logFile.getPath() + ".tmp");
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (LedgerLocations locations : ledgers.values()) {
+                ByteBuffer record = locations.fullRecord();
+                while (record.hasRemaining()) {
+                    size += channel.write(record, size);
+                }
+            }
+            channel.force(true);
+        }
+
+        log.info("Rewriting active ledgers locations log {}: {} -> {} bytes", logFile, logSize, size);
+        logChannel.close();
+        Files.move(tmpFile.toPath(), logFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logSize = size;
+    }
+
+    private void replay() throws IOException {
+        long startTime = System.nanoTime();
+        long fileSize = logChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+
+        while (position < fileSize) {
+            header.clear();
+            if (!readFully(header, position)) {
+                break;
+            }
+            header.flip();
+            long ledgerId = header.getLong();
+            long firstEntryId = header.getLong();
+            int count = header.getInt();
+            if (count < TOMBSTONE || count > MAX_SLOTS) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(Math.max(count, 0) * 8 + RECORD_CHECKSUM_SIZE);
+            if (!readFully(body, position + RECORD_HEADER_SIZE)) {
+                break;
+            }
+            body.flip();
+            crc.reset();
+            crc.update(header.array(), 0, RECORD_HEADER_SIZE);
+            crc.update(body.array(), 0, body.limit() - RECORD_CHECKSUM_SIZE);
+            if ((int) crc.getValue() != body.getInt(body.limit() - RECORD_CHECKSUM_SIZE)) {
+                break;
+            }
+
+            if (count == TOMBSTONE) {
+                LedgerLocations locations = ledgers.remove(ledgerId);
+                if (locations != null) {
+                    locations.release();
+                }
+            } else {
+                LedgerLocations locations = ledgers.get(ledgerId);
+                for (int i = 0; i < count; i++) {
+                    long location = body.getLong();
+                    if (location == 0) {
+                        continue;
+                    }
+                    if (locations == null) {
+                        locations = new LedgerLocations(ledgerId, firstEntryId + i, -1);
+                        ledgers.put(ledgerId, locations);
+                    }
+                    locations.set(firstEntryId + i, location);
+                }
+            }
+            position += RECORD_HEADER_SIZE + body.limit();
+        }
+
+        if (position < fileSize) {
+            // Records after the last complete one belong to a checkpoint that didn't complete
+            log.warn("Truncating active ledgers locations log {} from {} to {} bytes", logFile, fileSize, position);
+            logChannel.truncate(position);
+        }
+        logSize = position;
+
+        for (LedgerLocations locations : ledgers.values()) {
+            locations.lastSpilledEntryId = getLastEntryInDb(locations.ledgerId);
+            locations.dirtyFrom = Integer.MAX_VALUE;
+        }
+        log.info("Loaded locations of {} active ledgers from {} in {} ms", ledgers.size(), logFile,
+                (System.nanoTime() - startTime) / 1e6);
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = logChannel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    private long getLastEntryInDb(long ledgerId) throws IOException {
+        return Math.max(EntryLocationBlock.getLastEntryId(locationsDb, ledgerId),
+                EntryLocationBlock.getLastEntryId(locationsDb, EntryLocationBlock.blockKey(ledgerId)));
+    }
+
+    private static ByteBuffer tombstone(long ledgerId) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + RECORD_CHECKSUM_SIZE);
+        record.putLong(ledgerId);
+        record.putLong(-1);
+        record.putInt(TOMBSTONE);
+        return seal(record);
+    }
+
+    private static ByteBuffer seal(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private final class LedgerLocations {
+        final long ledgerId;
+        final long firstEntryId;
+        // Last entry of the ledger stored in RocksDB, or -1
+        volatile long lastSpilledEntryId;
+        // Checkpoint during which the last new entry was added, guarded by the index
+        long lastUpdate;
+
+        // Guarded by this
+        private ByteBuf slots;
+        private int count;
+        private int dirtyFrom = Integer.MAX_VALUE;
+
+        LedgerLocations(long ledgerId, long firstEntryId, long lastSpilledEntryId) {
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.lastSpilledEntryId = lastSpilledEntryId;
+            this.slots = allocate(INITIAL_SLOTS);
+        }
+
+        synchronized long get(long entryId) {
+            long index = entryId - firstEntryId;
+            if (slots == null || index < 0 || index >= count) {
+                return 0;
+            }
+            return slots.getLong((int) index << 3);
+        }
+
+        synchronized long getLastEntryId() {
+            return Math.max(firstEntryId + count - 1, lastSpilledEntryId);
+        }
+
+        synchronized boolean set(long entryId, long location) {
+            long index = entryId - firstEntryId;
+            if (slots == null || index < 0 || index >= MAX_SLOTS || index > count + MAX_GAP) {
+                return false;
+            }
+
+            int i = (int) index;
+            if (i >= count) {
+                ensureCapacity(i + 1);
+                // Missing entries are left as 0
+                slots.setZero(count << 3, (i - count) << 3);
+                count = i + 1;
+            }
+            slots.setLong(i << 3, location);
+            dirtyFrom = Math.min(dirtyFrom, i);
+            return true;
+        }
+
+        void entryStoredInDb(long entryId) {
+            if (entryId > lastSpilledEntryId) {
+                lastSpilledEntryId = entryId;
+            }
+        }
+
+        synchronized ByteBuffer takeDirtyRecord() {
+            if (dirtyFrom >= count) {
+                return null;
+            }
+            ByteBuffer record = record(dirtyFrom);
+            dirtyFrom = Integer.MAX_VALUE;
+            return record;
+        }
+
+        synchronized ByteBuffer fullRecord() {
+            return record(0);
+        }
+
+        synchronized void markDirty() {
+            dirtyFrom = 0;
+        }
+
+        private ByteBuffer record(int from) {
+            int recordCount = count - from;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + recordCount * 8 + RECORD_CHECKSUM_SIZE);
+            record.putLong(ledgerId);
+            record.putLong(firstEntryId + from);
+            record.putInt(recordCount);
+            record.limit(record.position() + recordCount * 8);
+            slots.getBytes(from << 3, record);
+            record.limit(record.capacity());
+            return seal(record);
+        }
+
+        synchronized int writeTo(Batch batch, EntryLocationBlock.Writer blockWriter) throws IOException {
+            // Blocks must not overlap with the entries of the ledger already in the db
+            boolean writeBlocks = blockWriter != null && lastSpilledEntryId < firstEntryId;
+            int written = 0;
+            for (int i = 0; i < count; i++) {
+                long location = slots.getLong(i << 3);
+                if (location == 0) {
+                    continue;
+                }
+                written++;
+                if (writeBlocks) {
+                    blockWriter.add(ledgerId, firstEntryId + i, location);
+                    continue;
+                }
+                LongPairWrapper key = LongPairWrapper.get(ledgerId, firstEntryId + i);
+                LongWrapper value = LongWrapper.get(location);
+                try {
+                    batch.put(key.array, value.array);
+                } finally {
+                    key.recycle();
+                    value.recycle();
+                }
+            }
+            if (writeBlocks) {
+                blockWriter.finish();
+            }
+            return written;
+        }
+
+        synchronized long sizeBytes() {
+            return slots != null ? slots.capacity() : 0;
+        }
+
+        synchronized void release() {
+            if (slots != null) {
+                sizeBytes.addAndGet(-slots.capacity());
+                slots.release();
+                slots = null;
+            }
+        }
+
+        private void ensureCapacity(int requiredSlots) {
+            if (slots.capacity() >= requiredSlots << 3) {
+                return;
+            }
+            int newSlots = Math.min(MAX_SLOTS, Integer.highestOneBit(requiredSlots - 1) << 1);
+            ByteBuf newBuffer = allocate(newSlots);
+            newBuffer.setBytes(0, slots, 0, count << 3);
+            sizeBytes.addAndGet(-slots.capacity());
+            slots.release();
+            slots = newBuffer;
+        }
+
+        private ByteBuf allocate(int numSlots) {
+            ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(numSlots << 3, numSlots << 3);
+            sizeBytes.addAndGet(buffer.capacity());
+            return buffer;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ActiveLedgerLocationIndex.class);
+}
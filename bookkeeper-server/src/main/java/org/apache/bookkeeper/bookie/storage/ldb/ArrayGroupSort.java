@@ -22,6 +22,9 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Sort an array of longs, grouping the items in tuples.
  *
@@ -30,6 +33,9 @@ import static com.google.common.base.Preconditions.checkArgument;
  */
 public class ArrayGroupSort {
 
+    // Below this number of groups, partitions are sorted by the thread which created them
+    private static final int PARALLEL_SORT_MIN_GROUPS = 8192;
+
     private final int keySize;
     private final int groupSize;
 
@@ -50,8 +56,44 @@ public class ArrayGroupSort {
         quickSort(array, offset, (length + offset - groupSize));
     }
 
+    /**
+     * Sort the array like {@link #sort(long[], int, int)}, sorting the partitions of large arrays in
+     * parallel in the common fork-join pool.
+     */
+    public void parallelSort(long[] array, int offset, int length) {
+        checkArgument(length % groupSize == 0, "Array length must be multiple of groupSize");
+        if (length / groupSize < PARALLEL_SORT_MIN_GROUPS || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            quickSort(array, offset, (length + offset - groupSize));
+        } else {
+            ForkJoinPool.commonPool().invoke(new SortTask(array, offset, (length + offset - groupSize)));
+        }
+    }
+
     ////// Private
 
+    private class SortTask extends RecursiveAction {
+        private final long[] array;
+        private final int low;
+        private final int high;
+
+        SortTask(long[] array, int low, int high) {
+            this.array = array;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        protected void compute() {
+            if ((high - low) / groupSize < PARALLEL_SORT_MIN_GROUPS) {
+                quickSort(array, low, high);
+            } else {
+                int pivotIdx = partition(array, low, high);
+                invokeAll(new SortTask(array, low, pivotIdx - groupSize),
+                        new SortTask(array, pivotIdx + groupSize, high));
+            }
+        }
+    }
+
     private void quickSort(long[] array, int low, int high) {
         if (low < high) {
             int pivotIdx = partition(array, low, high);
@@ -28,6 +28,7 @@ import com.google.common.collect.Lists;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 //CHECKSTYLE.OFF: IllegalImport
 import io.netty.util.internal.PlatformDependent;
@@ -41,6 +42,7 @@ import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
@@ -49,16 +51,20 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.StateManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectEntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.bookie.storage.ldb.SingleDirectoryDbLedgerStorage.LedgerLoggerProcessor;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.Gauge;
@@ -90,6 +96,42 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
+    static final String WRITE_CACHE_GENERATIONS = "dbStorage_writeCacheGenerations";
+    static final String FLUSH_SEGMENT_SIZE_MB = "dbStorage_flushSegmentSizeMb";
+    static final String READ_AHEAD_THREADS = "dbStorage_readAheadThreads";
+    static final String READ_AHEAD_MAX_PENDING_BATCHES = "dbStorage_readAheadMaxPendingBatches";
+    static final String MAX_CONCURRENT_COMPACTIONS = "dbStorage_maxConcurrentCompactions";
+    static final String COMPACTION_TARGET_LATENCY_MILLIS = "dbStorage_compactionTargetLatencyMs";
+    private static final int DEFAULT_MAX_CONCURRENT_COMPACTIONS = 0;
+
+    static final String DIRECT_IO_ENTRYLOGGER = "dbStorage_directIOEntryLogger";
+    static final String DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB =
+            "dbStorage_directIOEntryLoggerTotalWriteBufferSizeMb";
+    static final String DIRECT_IO_ENTRYLOGGER_TOTAL_READBUFFER_SIZE_MB =
+            "dbStorage_directIOEntryLoggerTotalReadBufferSizeMb";
+    static final String DIRECT_IO_ENTRYLOGGER_READBUFFER_SIZE_MB = "dbStorage_directIOEntryLoggerReadBufferSizeMb";
+    private static final long DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB = 64;
+    private static final long DEFAULT_DIRECT_IO_TOTAL_READBUFFER_SIZE_MB = 64;
+    private static final long DEFAULT_DIRECT_IO_READBUFFER_SIZE_MB = 1;
+
+    static final String READ_CACHE_ADMISSION_POLICY = "dbStorage_readCacheAdmissionPolicy";
+    static final String READ_CACHE_ADMISSION_MIN_FREQUENCY = "dbStorage_readCacheAdmissionMinFrequency";
+    static final String READ_CACHE_SCAN_DETECTION = "dbStorage_readCacheScanDetection";
+    static final String READ_CACHE_SCAN_THRESHOLD = "dbStorage_readCacheScanThreshold";
+    private static final String READ_CACHE_ADMISSION_POLICY_ALL = "all";
+    private static final String READ_CACHE_ADMISSION_POLICY_FREQUENCY = "frequency";
+    private static final int DEFAULT_READ_CACHE_ADMISSION_MIN_FREQUENCY = 2;
+    private static final int DEFAULT_READ_CACHE_SCAN_THRESHOLD = 32;
+
+    static final String ACTIVE_LOCATION_INDEX_ENABLED = "dbStorage_activeLocationIndexEnabled";
+    static final String ACTIVE_LOCATION_INDEX_MAX_SIZE_MB = "dbStorage_activeLocationIndexMaxSizeMb";
+    static final String ACTIVE_LOCATION_INDEX_IDLE_FLUSHES = "dbStorage_activeLocationIndexIdleFlushes";
+    static final long DEFAULT_ACTIVE_LOCATION_INDEX_MAX_SIZE_MB = 64;
+    static final int DEFAULT_ACTIVE_LOCATION_INDEX_IDLE_FLUSHES = 10;
+
+    static final String LOCATION_INDEX_BLOCKS_ENABLED = "dbStorage_locationIndexBlocksEnabled";
+    // Used to size the frequency sketch from the read cache size
+    private static final int READ_CACHE_EXPECTED_ENTRY_SIZE = 1024;
 
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
@@ -144,8 +186,27 @@ public class DbLedgerStorage implements LedgerStorage {
         long perDirectoryReadCacheSize = readCacheMaxSize / numberOfDirs;
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
+        boolean directIOEntryLogger = conf.getBoolean(DIRECT_IO_ENTRYLOGGER, false);
+        long perDirectoryTotalWriteBufferSize = getLongVariableOrDefault(conf,
+                DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB, DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB)
+                * MB / numberOfDirs;
+        long perDirectoryTotalReadBufferSize = getLongVariableOrDefault(conf,
+                DIRECT_IO_ENTRYLOGGER_TOTAL_READBUFFER_SIZE_MB, DEFAULT_DIRECT_IO_TOTAL_READBUFFER_SIZE_MB)
+                * MB / numberOfDirs;
+        int directIOReadBufferSize = (int) (getLongVariableOrDefault(conf,
+                DIRECT_IO_ENTRYLOGGER_READBUFFER_SIZE_MB, DEFAULT_DIRECT_IO_READBUFFER_SIZE_MB) * MB);
+        if (directIOEntryLogger) {
+            log.info(" - Direct I/O entry logger: write buffers {} MB, read buffers {} MB (per directory)",
+                    perDirectoryTotalWriteBufferSize / MB, perDirectoryTotalReadBufferSize / MB);
+        }
+
         gcExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollector"));
 
+        // Each directory compacts its entry logs on its own garbage collector thread, bound the ones running at once
+        int maxConcurrentCompactions = conf.getInt(MAX_CONCURRENT_COMPACTIONS, DEFAULT_MAX_CONCURRENT_COMPACTIONS);
+        Semaphore compactionPermits = maxConcurrentCompactions > 0 && maxConcurrentCompactions < numberOfDirs
+                ? new Semaphore(maxConcurrentCompactions, true) : null;
+
         ledgerStorageList = Lists.newArrayList();
         for (File ledgerDir : ledgerDirsManager.getAllLedgerDirs()) {
             // Create a ledger dirs manager for the single directory
@@ -153,9 +214,23 @@ public class DbLedgerStorage implements LedgerStorage {
             // Remove the `/current` suffix which will be appended again by LedgersDirManager
             dirs[0] = ledgerDir.getParentFile();
             LedgerDirsManager ldm = new LedgerDirsManager(conf, dirs, ledgerDirsManager.getDiskChecker(), statsLogger);
-            ledgerStorageList.add(newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm, indexDirsManager,
-                    statsLogger, gcExecutor, perDirectoryWriteCacheSize,
-                    perDirectoryReadCacheSize, readAheadCacheBatchSize));
+
+            EntryLogger entrylogger;
+            if (directIOEntryLogger) {
+                entrylogger = new DirectEntryLogger(ledgerDir, new NativeIOImpl(), allocator,
+                        conf.getEntryLogSizeLimit(), conf.getNettyMaxFrameSizeBytes() - 500,
+                        perDirectoryTotalWriteBufferSize, perDirectoryTotalReadBufferSize,
+                        directIOReadBufferSize, statsLogger.scopeLabel("ledgerDir", ledgerDir.getPath()));
+            } else {
+                entrylogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
+            }
+            SingleDirectoryDbLedgerStorage ledgerStorage = newSingleDirectoryDbLedgerStorage(conf, ledgerManager,
+                    ldm, indexDirsManager, entrylogger, statsLogger, gcExecutor, perDirectoryWriteCacheSize,
+                    perDirectoryReadCacheSize, readAheadCacheBatchSize);
+            if (compactionPermits != null) {
+                ledgerStorage.setCompactionPermits(compactionPermits);
+            }
+            ledgerStorageList.add(ledgerStorage);
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
         }
 
@@ -190,12 +265,12 @@ public class DbLedgerStorage implements LedgerStorage {
     @VisibleForTesting
     protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
             LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
-            StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
-            int readAheadCacheBatchSize)
+            EntryLogger entryLogger, StatsLogger statsLogger, ScheduledExecutorService gcExecutor,
+            long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize)
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
-                                                  statsLogger, allocator, gcExecutor, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize);
+                                                  entryLogger, statsLogger, allocator, gcExecutor, writeCacheSize,
+                                                  readCacheSize, readAheadCacheBatchSize);
     }
 
     @Override
@@ -264,6 +339,11 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryRegion(ledgerId, entryId, minSize);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -419,6 +499,25 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    static ReadCachePolicy newReadCachePolicy(ServerConfiguration conf, long readCacheMaxSize) {
+        String admissionPolicy = conf.getString(READ_CACHE_ADMISSION_POLICY, READ_CACHE_ADMISSION_POLICY_ALL);
+        ReadCachePolicy policy;
+        if (READ_CACHE_ADMISSION_POLICY_FREQUENCY.equalsIgnoreCase(admissionPolicy)) {
+            policy = new FrequencySketchReadCachePolicy(readCacheMaxSize / READ_CACHE_EXPECTED_ENTRY_SIZE,
+                    conf.getInt(READ_CACHE_ADMISSION_MIN_FREQUENCY, DEFAULT_READ_CACHE_ADMISSION_MIN_FREQUENCY));
+        } else if (READ_CACHE_ADMISSION_POLICY_ALL.equalsIgnoreCase(admissionPolicy)) {
+            policy = ReadCachePolicy.ADMIT_ALL;
+        } else {
+            throw new IllegalArgumentException("Unknown read cache admission policy: " + admissionPolicy);
+        }
+
+        if (conf.getBoolean(READ_CACHE_SCAN_DETECTION, false)) {
+            policy = new ScanResistantReadCachePolicy(policy,
+                    conf.getInt(READ_CACHE_SCAN_THRESHOLD, DEFAULT_READ_CACHE_SCAN_THRESHOLD));
+        }
+        return policy;
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
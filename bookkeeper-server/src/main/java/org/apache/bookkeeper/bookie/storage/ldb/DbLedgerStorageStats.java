@@ -23,7 +23,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTR
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
@@ -51,9 +53,12 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READ_CACHE_REJECTED = "read-cache-rejected";
+    private static final String ZERO_COPY_READS = "zero-copy-reads";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_REJECTED = "readahead-rejected";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
@@ -67,6 +72,9 @@ class DbLedgerStorageStats {
     private static final String REJECTED_WRITE_REQUESTS = "rejected-write-requests";
     private static final String WRITE_CACHE_SIZE = "write-cache-size";
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
+    private static final String WRITE_CACHE_GENERATIONS = "write-cache-generations";
+    private static final String WRITE_CACHE_GENERATION_SIZE = "write-cache-generation-size";
+    private static final String WRITE_CACHE_GENERATION_FLUSH = "write-cache-generation-flush";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
 
@@ -118,6 +126,18 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = READ_CACHE_REJECTED,
+        help = "number of entries read from the entry logs not admitted in the read cache by its policy",
+        parent = READ_ENTRY
+    )
+    private final Counter readCacheRejectedCounter;
+    @StatsDoc(
+        name = ZERO_COPY_READS,
+        help = "number of entries served as a region of the entry log file, without being copied",
+        parent = READ_ENTRY
+    )
+    private final Counter zeroCopyReadCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -133,6 +153,11 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_REJECTED,
+        help = "number of readahead batches skipped because too many were pending"
+    )
+    private final Counter readAheadRejectedCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -184,6 +209,21 @@ class DbLedgerStorageStats {
         help = "Current number of entries in write cache"
     )
     private final Gauge<Long> writeCacheCountGauge;
+    @StatsDoc(
+        name = WRITE_CACHE_GENERATIONS,
+        help = "Current number of write cache generations holding entries, the one being written included"
+    )
+    private final Gauge<Long> writeCacheGenerationsGauge;
+    @StatsDoc(
+        name = WRITE_CACHE_GENERATION_SIZE,
+        help = "the distribution of number of bytes in the write cache generations when sealed"
+    )
+    private final OpStatsLogger writeCacheGenerationSizeStats;
+    @StatsDoc(
+        name = WRITE_CACHE_GENERATION_FLUSH,
+        help = "the time from sealing a write cache generation until its entries are flushed"
+    )
+    private final OpStatsLogger writeCacheGenerationFlushStats;
     @StatsDoc(
         name = READ_CACHE_SIZE,
         help = "Current number of bytes in read cache"
@@ -195,27 +235,39 @@ class DbLedgerStorageStats {
     )
     private final Gauge<Long> readCacheCountGauge;
 
+    // Latency of the entries added and read since the last sample, which the compaction rate adapts to
+    @Getter(AccessLevel.NONE)
+    private final LongAdder foregroundLatencyNanos = new LongAdder();
+    @Getter(AccessLevel.NONE)
+    private final LongAdder foregroundOps = new LongAdder();
+
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Long> writeCacheGenerationsSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        readCacheRejectedCounter = stats.getCounter(READ_CACHE_REJECTED);
+        zeroCopyReadCounter = stats.getCounter(ZERO_COPY_READS);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadRejectedCounter = stats.getCounter(READAHEAD_REJECTED);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
+        writeCacheGenerationSizeStats = stats.getOpStatsLogger(WRITE_CACHE_GENERATION_SIZE);
+        writeCacheGenerationFlushStats = stats.getOpStatsLogger(WRITE_CACHE_GENERATION_FLUSH);
 
         throttledWriteRequests = stats.getThreadScopedCounter(THROTTLED_WRITE_REQUESTS);
         throttledWriteStats = stats.getOpStatsLogger(THROTTLED_WRITE);
@@ -245,6 +297,18 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(WRITE_CACHE_COUNT, writeCacheCountGauge);
+        writeCacheGenerationsGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return writeCacheGenerationsSupplier.get();
+            }
+        };
+        stats.registerGauge(WRITE_CACHE_GENERATIONS, writeCacheGenerationsGauge);
         readCacheSizeGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -272,4 +336,18 @@ class DbLedgerStorageStats {
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
     }
 
+    void recordForegroundLatency(long latencyNanos) {
+        foregroundLatencyNanos.add(latencyNanos);
+        foregroundOps.increment();
+    }
+
+    /**
+     * @return the average latency of the entries added and read since the previous sample, or 0 if there were none
+     */
+    long sampleForegroundLatencyNanos() {
+        long ops = foregroundOps.sumThenReset();
+        long latencyNanos = foregroundLatencyNanos.sumThenReset();
+        return ops > 0 ? latencyNanos / ops : 0;
+    }
+
 }
@@ -0,0 +1,228 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+
+/**
+ * Compact encoding of the locations of a range of entries of a sealed ledger, stored in the
+ * locations index as a single record instead of one record per entry.
+ *
+ * <p>Blocks are keyed by {@code (ledgerId | BLOCK_KEY_FLAG, lastEntryId)}, so that they sort
+ * after all the per-entry keys and never get in the way of the per-entry lookups. A lookup
+ * that misses the per-entry keys goes to the first block of the ledger ending at or after the
+ * entry. Per-entry keys take precedence over blocks, which is how locations of entries in a
+ * block are updated by the compaction.
+ *
+ * <p>The value is a format version byte followed by varints: the number of entries, the
+ * distance between the first and the last entry ids, the first location, then for each other
+ * entry the gap with the previous entry id and the zig-zag encoded delta with the previous
+ * location. Entries written together are adjacent in the entry logs, so most entries take 2 to
+ * 4 bytes instead of 24 for a per-entry record.
+ */
+final class EntryLocationBlock {
+
+    static final long BLOCK_KEY_FLAG = 1L << 63;
+    static final int MAX_ENTRIES_PER_BLOCK = 1024;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private EntryLocationBlock() {
+    }
+
+    static long blockKey(long ledgerId) {
+        return ledgerId | BLOCK_KEY_FLAG;
+    }
+
+    /**
+     * @return whether there is any block in the locations index
+     */
+    static boolean exist(KeyValueStorage db) throws IOException {
+        // Blocks sort after all the per-entry keys, the first key at or after the first block key is a block
+        LongPairWrapper firstBlockKey = LongPairWrapper.get(BLOCK_KEY_FLAG, 0);
+        try {
+            Entry<byte[], byte[]> entry = db.getCeil(firstBlockKey.array);
+            return entry != null && (ArrayUtil.getLong(entry.getKey(), 0) & BLOCK_KEY_FLAG) != 0;
+        } finally {
+            firstBlockKey.recycle();
+        }
+    }
+
+    /**
+     * Find the location of an entry in the block, if any, covering it.
+     *
+     * @return the location of the entry, or 0 if it is not in a block
+     */
+    static long getLocation(KeyValueStorage db, long ledgerId, long entryId) throws IOException {
+        LongPairWrapper key = LongPairWrapper.get(blockKey(ledgerId), entryId);
+        try {
+            Entry<byte[], byte[]> block = db.getCeil(key.array);
+            if (block == null || ArrayUtil.getLong(block.getKey(), 0) != blockKey(ledgerId)) {
+                return 0;
+            }
+            return find(block.getValue(), ArrayUtil.getLong(block.getKey(), 8), entryId);
+        } finally {
+            key.recycle();
+        }
+    }
+
+    /**
+     * @param keyLedgerId the ledger id, or its {@link #blockKey(long)} to only look at blocks
+     * @return the last entry id stored with the given key prefix, or -1
+     */
+    static long getLastEntryId(KeyValueStorage db, long keyLedgerId) throws IOException {
+        LongPairWrapper maxEntryId = LongPairWrapper.get(keyLedgerId, Long.MAX_VALUE);
+        try {
+            Entry<byte[], byte[]> entry = db.getFloor(maxEntryId.array);
+            if (entry != null && ArrayUtil.getLong(entry.getKey(), 0) == keyLedgerId) {
+                return ArrayUtil.getLong(entry.getKey(), 8);
+            }
+            return -1;
+        } finally {
+            maxEntryId.recycle();
+        }
+    }
+
+    static long find(byte[] block, long lastEntryId, long entryId) throws IOException {
+        Decoder decoder = new Decoder(block);
+        if (decoder.readByte() != FORMAT_VERSION) {
+            throw new IOException("Unknown entry location block format: " + block[0]);
+        }
+        long count = decoder.readVarLong();
+        long currentEntryId = lastEntryId - decoder.readVarLong();
+        if (entryId < currentEntryId || entryId > lastEntryId) {
+            return 0;
+        }
+
+        long location = decoder.readVarLong();
+        for (long i = 1; currentEntryId < entryId && i < count; i++) {
+            currentEntryId += decoder.readVarLong();
+            long delta = decoder.readVarLong();
+            location += (delta >>> 1) ^ -(delta & 1);
+        }
+        return currentEntryId == entryId ? location : 0;
+    }
+
+    static byte[] encode(long[] entryIds, long[] locations, int count) {
+        // Worst case of 10 bytes per varint
+        byte[] buffer = new byte[1 + 3 * 10 + (count - 1) * 20];
+        int pos = 0;
+        buffer[pos++] = FORMAT_VERSION;
+        pos = writeVarLong(buffer, pos, count);
+        pos = writeVarLong(buffer, pos, entryIds[count - 1] - entryIds[0]);
+        pos = writeVarLong(buffer, pos, locations[0]);
+        for (int i = 1; i < count; i++) {
+            pos = writeVarLong(buffer, pos, entryIds[i] - entryIds[i - 1]);
+            long delta = locations[i] - locations[i - 1];
+            pos = writeVarLong(buffer, pos, (delta << 1) ^ (delta >> 63));
+        }
+        return Arrays.copyOf(buffer, pos);
+    }
+
+    private static int writeVarLong(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static final class Decoder {
+        private final byte[] buffer;
+        private int pos;
+
+        Decoder(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() throws IOException {
+            if (pos >= buffer.length) {
+                throw new IOException("Truncated entry location block");
+            }
+            return buffer[pos++];
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in entry location block");
+        }
+    }
+
+    /**
+     * Groups the locations of consecutive entries into blocks. Entries must be added in
+     * increasing (ledgerId, entryId) order.
+     */
+    static final class Writer {
+        private final Batch batch;
+        private final long[] entryIds = new long[MAX_ENTRIES_PER_BLOCK];
+        private final long[] locations = new long[MAX_ENTRIES_PER_BLOCK];
+        private long ledgerId = -1;
+        private int count;
+        private long blocksCount;
+
+        Writer(Batch batch) {
+            this.batch = batch;
+        }
+
+        void add(long ledgerId, long entryId, long location) throws IOException {
+            if (ledgerId != this.ledgerId || count == MAX_ENTRIES_PER_BLOCK) {
+                finish();
+                this.ledgerId = ledgerId;
+            }
+            entryIds[count] = entryId;
+            locations[count] = location;
+            count++;
+        }
+
+        /**
+         * Write the pending block, if any, to the batch.
+         */
+        void finish() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            LongPairWrapper key = LongPairWrapper.get(blockKey(ledgerId), entryIds[count - 1]);
+            try {
+                batch.put(key.array, encode(entryIds, locations, count));
+            } finally {
+                key.recycle();
+            }
+            count = 0;
+            blocksCount++;
+        }
+
+        long getBlocksCount() {
+            return blocksCount;
+        }
+    }
+}
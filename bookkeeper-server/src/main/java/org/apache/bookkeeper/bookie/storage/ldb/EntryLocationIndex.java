@@ -43,10 +43,18 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>When enabled, the locations of the ledgers being written are kept in an
+ * {@link ActiveLedgerLocationIndex} and only moved to the db once the ledgers stop
+ * receiving entries.
  */
 public class EntryLocationIndex implements Closeable {
 
     private final KeyValueStorage locationsDb;
+    private final ActiveLedgerLocationIndex activeLocations;
+    // Whether the index may hold blocks, so that the lookups missing the per-entry keys don't
+    // have to seek to the blocks of the ledger when there is none
+    private final boolean mayHaveBlocks;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
     private final EntryLocationIndexStats stats;
@@ -55,6 +63,31 @@ public class EntryLocationIndex implements Closeable {
             StatsLogger stats) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
 
+        boolean blocksEnabled = conf.getBoolean(DbLedgerStorage.LOCATION_INDEX_BLOCKS_ENABLED, false);
+        mayHaveBlocks = blocksEnabled || EntryLocationBlock.exist(locationsDb);
+        if (mayHaveBlocks && !blocksEnabled) {
+            log.info("Found entry location blocks in {}, written before blocks were disabled", basePath);
+        }
+
+        boolean activeLocationsEnabled = conf.getBoolean(DbLedgerStorage.ACTIVE_LOCATION_INDEX_ENABLED, false);
+        if (activeLocationsEnabled || ActiveLedgerLocationIndex.exists(basePath)) {
+            ActiveLedgerLocationIndex index = new ActiveLedgerLocationIndex(locationsDb, basePath,
+                    conf.getLong(DbLedgerStorage.ACTIVE_LOCATION_INDEX_MAX_SIZE_MB,
+                            DbLedgerStorage.DEFAULT_ACTIVE_LOCATION_INDEX_MAX_SIZE_MB) * 1024 * 1024,
+                    conf.getInt(DbLedgerStorage.ACTIVE_LOCATION_INDEX_IDLE_FLUSHES,
+                            DbLedgerStorage.DEFAULT_ACTIVE_LOCATION_INDEX_IDLE_FLUSHES),
+                    blocksEnabled);
+            if (!activeLocationsEnabled) {
+                log.info("Moving the locations of the active ledgers to the db index in {}", basePath);
+                index.spillAllAndDelete();
+                index.close();
+                index = null;
+            }
+            activeLocations = index;
+        } else {
+            activeLocations = null;
+        }
+
         this.stats = new EntryLocationIndexStats(
             stats,
             () -> {
@@ -63,24 +96,41 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> activeLocations != null ? activeLocations.getLedgersCount() : 0L,
+            () -> activeLocations != null ? activeLocations.getSizeBytes() : 0L);
+    }
+
+    boolean mayHaveBlocks() {
+        return mayHaveBlocks;
     }
 
     @Override
     public void close() throws IOException {
+        if (activeLocations != null) {
+            activeLocations.close();
+        }
         locationsDb.close();
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (activeLocations != null) {
+            long location = activeLocations.getLocation(ledgerId, entryId);
+            if (location != 0) {
+                return location;
+            }
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
         try {
             if (locationsDb.get(key.array, value.array) < 0) {
-                if (log.isDebugEnabled()) {
+                long location = mayHaveBlocks ? EntryLocationBlock.getLocation(locationsDb, ledgerId, entryId) : 0;
+                if (location == 0 && log.isDebugEnabled()) {
                     log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
                 }
-                return 0;
+                return location;
             }
 
             return value.getValue();
@@ -103,31 +153,30 @@ public class EntryLocationIndex implements Closeable {
              * */
             throw new Bookie.NoEntryException(ledgerId, -1);
         }
+        if (activeLocations != null) {
+            long lastEntryId = activeLocations.getLastEntryInLedger(ledgerId);
+            if (lastEntryId >= 0) {
+                return lastEntryId;
+            }
+        }
         return getLastEntryInLedgerInternal(ledgerId);
     }
 
     private long getLastEntryInLedgerInternal(long ledgerId) throws IOException {
-        LongPairWrapper maxEntryId = LongPairWrapper.get(ledgerId, Long.MAX_VALUE);
-
-        // Search the last entry in storage
-        Entry<byte[], byte[]> entry = locationsDb.getFloor(maxEntryId.array);
-        maxEntryId.recycle();
-
-        if (entry == null) {
+        // Search the last entry in storage, either as a single entry or in a block
+        long lastEntryId = EntryLocationBlock.getLastEntryId(locationsDb, ledgerId);
+        if (mayHaveBlocks) {
+            lastEntryId = Math.max(lastEntryId,
+                    EntryLocationBlock.getLastEntryId(locationsDb, EntryLocationBlock.blockKey(ledgerId)));
+        }
+        if (lastEntryId < 0) {
             throw new Bookie.NoEntryException(ledgerId, -1);
-        } else {
-            long foundLedgerId = ArrayUtil.getLong(entry.getKey(), 0);
-            long lastEntryId = ArrayUtil.getLong(entry.getKey(), 8);
+        }
 
-            if (foundLedgerId == ledgerId) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Found last page in storage db for ledger {} - last entry: {}", ledgerId, lastEntryId);
-                }
-                return lastEntryId;
-            } else {
-                throw new Bookie.NoEntryException(ledgerId, -1);
-            }
+        if (log.isDebugEnabled()) {
+            log.debug("Found last page in storage db for ledger {} - last entry: {}", ledgerId, lastEntryId);
         }
+        return lastEntryId;
     }
 
     public void addLocation(long ledgerId, long entryId, long location) throws IOException {
@@ -138,10 +187,27 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public Batch newBatch() {
+        Batch batch = locationsDb.newBatch();
+        return activeLocations != null ? new ActiveLocationsBatch(batch) : batch;
+    }
+
+    /**
+     * Create a batch for a part of the locations of a flush. Unlike the batches of {@link #newBatch()},
+     * flushing it doesn't persist the locations of the active ledgers, which is left to the batch of the
+     * flush written last.
+     */
+    public Batch newPartialBatch() {
         return locationsDb.newBatch();
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        if (activeLocations != null && activeLocations.addLocation(ledgerId, entryId, location, true)) {
+            return;
+        }
+        putLocation(batch, ledgerId, entryId, location);
+    }
+
+    private void putLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -169,7 +235,9 @@ public class EntryLocationIndex implements Closeable {
                 log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
             }
 
-            addLocation(batch, e.ledger, e.entry, e.location);
+            if (activeLocations == null || !activeLocations.addLocation(e.ledger, e.entry, e.location, false)) {
+                putLocation(batch, e.ledger, e.entry, e.location);
+            }
         }
 
         batch.flush();
@@ -180,6 +248,9 @@ public class EntryLocationIndex implements Closeable {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
+        if (activeLocations != null) {
+            activeLocations.delete(ledgerId);
+        }
     }
 
     private static final int DELETE_ENTRIES_BATCH_SIZE = 100000;
@@ -187,6 +258,8 @@ public class EntryLocationIndex implements Closeable {
     public void removeOffsetFromDeletedLedgers() throws IOException {
         LongPairWrapper firstKeyWrapper = LongPairWrapper.get(-1, -1);
         LongPairWrapper lastKeyWrapper = LongPairWrapper.get(-1, -1);
+        LongPairWrapper firstBlockKeyWrapper = LongPairWrapper.get(-1, -1);
+        LongPairWrapper lastBlockKeyWrapper = LongPairWrapper.get(-1, -1);
         LongPairWrapper keyToDelete = LongPairWrapper.get(-1, -1);
 
         Set<Long> ledgersToDelete = deletedLedgers.items();
@@ -211,6 +284,12 @@ public class EntryLocationIndex implements Closeable {
                 firstKeyWrapper.set(ledgerId, 0);
                 lastKeyWrapper.set(ledgerId, Long.MAX_VALUE);
 
+                // Blocks have a single key each, so they can be removed as a range
+                firstBlockKeyWrapper.set(EntryLocationBlock.blockKey(ledgerId), 0);
+                lastBlockKeyWrapper.set(EntryLocationBlock.blockKey(ledgerId), Long.MAX_VALUE);
+                batch.deleteRange(firstBlockKeyWrapper.array, lastBlockKeyWrapper.array);
+                batch.remove(lastBlockKeyWrapper.array);
+
                 Entry<byte[], byte[]> firstKeyRes = locationsDb.getCeil(firstKeyWrapper.array);
                 if (firstKeyRes == null || ArrayUtil.getLong(firstKeyRes.getKey(), 0) != ledgerId) {
                     // No entries found for ledger
@@ -221,10 +300,8 @@ public class EntryLocationIndex implements Closeable {
                 }
 
                 long firstEntryId = ArrayUtil.getLong(firstKeyRes.getKey(), 8);
-                long lastEntryId;
-                try {
-                    lastEntryId = getLastEntryInLedgerInternal(ledgerId);
-                } catch (Bookie.NoEntryException nee) {
+                long lastEntryId = EntryLocationBlock.getLastEntryId(locationsDb, ledgerId);
+                if (lastEntryId < 0) {
                     if (log.isDebugEnabled()) {
                         log.debug("No last entry id found for ledger {}", ledgerId);
                     }
@@ -258,6 +335,8 @@ public class EntryLocationIndex implements Closeable {
             } finally {
                 firstKeyWrapper.recycle();
                 lastKeyWrapper.recycle();
+                firstBlockKeyWrapper.recycle();
+                lastBlockKeyWrapper.recycle();
                 keyToDelete.recycle();
                 batch.close();
             }
@@ -272,5 +351,48 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Persists the active ledgers locations once the db batch is flushed, so that all the
+     * locations added through the batch are durable when flush returns.
+     */
+    private class ActiveLocationsBatch implements Batch {
+        private final Batch batch;
+
+        ActiveLocationsBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            batch.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            batch.flush();
+            activeLocations.checkpoint();
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
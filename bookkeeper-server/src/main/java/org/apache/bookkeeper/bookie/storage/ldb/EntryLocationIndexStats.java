@@ -40,6 +40,8 @@ import org.apache.bookkeeper.stats.annotations.StatsDoc;
 class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
+    private static final String ACTIVE_LEDGERS_COUNT = "active-location-index-ledgers";
+    private static final String ACTIVE_LEDGERS_SIZE = "active-location-index-size";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -47,9 +49,32 @@ class EntryLocationIndexStats {
     )
     private final Gauge<Long> entriesCountGauge;
 
+    @StatsDoc(
+        name = ACTIVE_LEDGERS_COUNT,
+        help = "Current number of ledgers whose locations are in the active ledgers index"
+    )
+    private final Gauge<Long> activeLedgersCountGauge;
+
+    @StatsDoc(
+        name = ACTIVE_LEDGERS_SIZE,
+        help = "Current memory used by the active ledgers index, in bytes"
+    )
+    private final Gauge<Long> activeLedgersSizeGauge;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
-        entriesCountGauge = new Gauge<Long>() {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> activeLedgersCountSupplier,
+                            Supplier<Long> activeLedgersSizeSupplier) {
+        entriesCountGauge = newGauge(entriesCountSupplier);
+        statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
+        activeLedgersCountGauge = newGauge(activeLedgersCountSupplier);
+        statsLogger.registerGauge(ACTIVE_LEDGERS_COUNT, activeLedgersCountGauge);
+        activeLedgersSizeGauge = newGauge(activeLedgersSizeSupplier);
+        statsLogger.registerGauge(ACTIVE_LEDGERS_SIZE, activeLedgersSizeGauge);
+    }
+
+    private static Gauge<Long> newGauge(Supplier<Long> supplier) {
+        return new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
                 return 0L;
@@ -57,10 +82,9 @@ class EntryLocationIndexStats {
 
             @Override
             public Long getSample() {
-                return entriesCountSupplier.get();
+                return supplier.get();
             }
         };
-        statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
     }
 
 }
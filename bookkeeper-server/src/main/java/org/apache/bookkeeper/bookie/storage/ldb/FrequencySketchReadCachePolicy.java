@@ -0,0 +1,140 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TinyLFU style admission filter.
+ *
+ * <p>Lookups are counted in a count-min sketch of 4-bit counters, which is periodically
+ * halved so that it tracks recent popularity. An entry that missed the cache is only
+ * admitted once it has been requested at least {@code minFrequency} times recently, so
+ * entries read once by a backlog reader don't push out entries shared by several readers.
+ *
+ * <p>A read-ahead batch is admitted on the frequency of its first entry, so that a ledger
+ * read by a single backlog reader is not read ahead into the cache either.
+ *
+ * <p>Counter updates are not atomic. Lost increments under contention only make the
+ * estimates slightly lower, which is acceptable for an approximate filter.
+ */
+class FrequencySketchReadCachePolicy implements ReadCachePolicy {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final long sampleSize;
+    private final int minFrequency;
+    private final AtomicLong additions = new AtomicLong();
+
+    /**
+     * @param expectedEntries the number of distinct entries to track, usually the number
+     *                        of entries fitting in the read cache
+     * @param minFrequency the number of recent lookups needed for an entry to be admitted
+     */
+    FrequencySketchReadCachePolicy(long expectedEntries, int minFrequency) {
+        checkArgument(minFrequency >= 1 && minFrequency <= MAX_COUNT,
+                "Invalid min frequency %s", minFrequency);
+        // 16 counters per long, with 4 counters per entry
+        int tableSize = (int) Math.min(1 << 24, Math.max(64, Long.highestOneBit(expectedEntries / 4) << 1));
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10L * tableSize * 4;
+        this.minFrequency = minFrequency;
+    }
+
+    @Override
+    public void recordAccess(long ledgerId, long entryId, boolean hit) {
+        long hash = hash(ledgerId, entryId);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= increment(indexOf(hash, i), counterShift(hash, i));
+        }
+
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    @Override
+    public boolean admit(long ledgerId, long entryId, boolean readAhead) {
+        return frequency(ledgerId, entryId) >= minFrequency;
+    }
+
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int count = (int) ((table[indexOf(hash, i)] >>> counterShift(hash, i)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private boolean increment(int index, int shift) {
+        long value = table[index];
+        if (((value >>> shift) & 0xfL) == MAX_COUNT) {
+            return false;
+        }
+        table[index] = value + (1L << shift);
+        return true;
+    }
+
+    /**
+     * Halve all the counters, so that old popularity fades away.
+     */
+    private void reset() {
+        synchronized (table) {
+            if (additions.get() < sampleSize) {
+                // Another thread already reset the sketch
+                return;
+            }
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions.set(0);
+        }
+    }
+
+    private int indexOf(long hash, int i) {
+        long h = (hash ^ SEEDS[i]) * SEEDS[(i + 1) % SEEDS.length];
+        return (int) (h >>> 32) & tableMask;
+    }
+
+    private static int counterShift(long hash, int i) {
+        // Pick one of the 16 counters of the long
+        return (int) ((hash >>> (i << 3)) & 0xfL) << 2;
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
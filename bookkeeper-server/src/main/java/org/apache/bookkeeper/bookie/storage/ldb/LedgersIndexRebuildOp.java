@@ -25,6 +25,7 @@ import com.google.protobuf.ByteString;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -43,6 +44,7 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.BookKeeperConstants;
 import org.apache.bookkeeper.util.DiskChecker;
 
@@ -187,9 +189,15 @@ public class LedgersIndexRebuildOp {
         List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
         int idx = 0;
         for (File journalDir : conf.getJournalDirs()) {
-            journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
-                    new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                            new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+            File currentDir = new File(journalDir, BookKeeperConstants.CURRENT_DIR);
+            int numStreams = Journal.getNumStreams(currentDir, conf);
+            for (int stream = 0; stream < numStreams; stream++) {
+                journals.add(new Journal(idx, stream, currentDir, conf,
+                        new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())),
+                        NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+            }
+            idx++;
         }
 
         return journals;
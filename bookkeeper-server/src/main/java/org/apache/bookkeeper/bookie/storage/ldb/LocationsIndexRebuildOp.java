@@ -30,6 +30,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +38,7 @@ import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -67,6 +69,13 @@ public class LocationsIndexRebuildOp {
 
         LOG.info("Created locations index backup at {}", backupPath);
 
+        // The locations of the active ledgers are rebuilt in the db as well
+        Path activeLocationsPath = FileSystems.getDefault().getPath(basePath, ActiveLedgerLocationIndex.LOG_FILE_NAME);
+        if (Files.exists(activeLocationsPath)) {
+            Files.move(activeLocationsPath, FileSystems.getDefault().getPath(basePath,
+                    ActiveLedgerLocationIndex.LOG_FILE_NAME + ".BACKUP-" + timestamp));
+        }
+
         long startTime = System.nanoTime();
 
         DefaultEntryLogger entryLogger = new DefaultEntryLogger(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
@@ -114,6 +123,10 @@ public class LocationsIndexRebuildOp {
                     totalEntryLogs);
         }
 
+        if (conf.getBoolean(DbLedgerStorage.LOCATION_INDEX_BLOCKS_ENABLED, false)) {
+            convertToBlocks(newIndex);
+        }
+
         newIndex.sync();
         newIndex.close();
 
@@ -121,6 +134,68 @@ public class LocationsIndexRebuildOp {
                 DurationFormatUtils.formatDurationHMS(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
     }
 
+    /**
+     * Replace the per-entry records of the rebuilt index with {@link EntryLocationBlock}s.
+     */
+    private void convertToBlocks(KeyValueStorage index) throws IOException {
+        LOG.info("Converting the rebuilt locations index to blocks");
+        long startTime = System.nanoTime();
+        long convertedEntries = 0;
+        long pendingEntries = 0;
+
+        Batch batch = index.newBatch();
+        EntryLocationBlock.Writer blockWriter = new EntryLocationBlock.Writer(batch);
+        LongPairWrapper firstKey = LongPairWrapper.get(-1, -1);
+        LongPairWrapper lastKey = LongPairWrapper.get(-1, -1);
+        long currentLedgerId = -1;
+        try (KeyValueStorage.CloseableIterator<Entry<byte[], byte[]>> iterator = index.iterator()) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                long ledgerId = ArrayUtil.getLong(entry.getKey(), 0);
+                if (ledgerId < 0) {
+                    // Reached the blocks
+                    break;
+                }
+                if (ledgerId != currentLedgerId) {
+                    if (currentLedgerId != -1) {
+                        removeEntries(batch, firstKey, lastKey, currentLedgerId);
+                    }
+                    blockWriter.finish();
+                    if (pendingEntries >= CONVERSION_BATCH_SIZE) {
+                        batch.flush();
+                        batch.clear();
+                        pendingEntries = 0;
+                    }
+                    currentLedgerId = ledgerId;
+                }
+                blockWriter.add(ledgerId, ArrayUtil.getLong(entry.getKey(), 8), ArrayUtil.getLong(entry.getValue(), 0));
+                convertedEntries++;
+                pendingEntries++;
+            }
+            if (currentLedgerId != -1) {
+                removeEntries(batch, firstKey, lastKey, currentLedgerId);
+            }
+            blockWriter.finish();
+            batch.flush();
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+            batch.close();
+        }
+
+        LOG.info("Converted {} entries to {} blocks in {} s", convertedEntries, blockWriter.getBlocksCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
+    }
+
+    private static final int CONVERSION_BATCH_SIZE = 100000;
+
+    private static void removeEntries(Batch batch, LongPairWrapper firstKey, LongPairWrapper lastKey, long ledgerId)
+            throws IOException {
+        firstKey.set(ledgerId, 0);
+        lastKey.set(ledgerId, Long.MAX_VALUE);
+        batch.deleteRange(firstKey.array, lastKey.array);
+    }
+
     private Set<Long> getActiveLedgers(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath)
             throws IOException {
         LedgerMetadataIndex ledgers = new LedgerMetadataIndex(conf, storageFactory, basePath, NullStatsLogger.INSTANCE);
@@ -171,6 +171,35 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
         }
     }
 
+    /**
+     * {@link EntryLogMetadata} life-cycle in supplied action will be transient
+     * and it will be recycled as soon as supplied action is completed.
+     */
+    @Override
+    public void forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action)
+            throws EntryLogMetadataMapException {
+        throwIfClosed();
+        LongWrapper key = LongWrapper.get(entryLogId);
+        EntryLogMetadataRecyclable metadata;
+        try {
+            byte[] value = metadataMapDB.get(key.array);
+            if (value == null) {
+                return;
+            }
+            metadata = EntryLogMetadata.deserialize(new DataInputStream(new ByteArrayInputStream(value)));
+        } catch (IOException e) {
+            log.error("Failed to read entry-log metadata {}", entryLogId, e);
+            throw new EntryLogMetadataMapException(e);
+        } finally {
+            key.recycle();
+        }
+        try {
+            action.accept(entryLogId, metadata);
+        } finally {
+            metadata.recycle();
+        }
+    }
+
     @Override
     public void remove(long entryLogId) throws EntryLogMetadataMapException {
         throwIfClosed();
@@ -27,11 +27,11 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -46,141 +46,189 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>Lookups never block. Each segment carries a {@link StampedLock} used as a
+ * sequence lock: readers copy the entry under an optimistic stamp and discard the
+ * copy if the segment was recycled in the meantime. Writers append to the current
+ * segment holding its read lock, so that recycling a segment (under its write lock)
+ * waits for in-flight copies into it to complete. Only the rotation itself is
+ * serialized between writers.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
-    private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    private static class Segment {
+        final ByteBuf buffer;
+        final ConcurrentLongLongPairHashMap index;
+        final AtomicInteger writeOffset = new AtomicInteger(0);
+        final StampedLock lock = new StampedLock();
 
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+        Segment(int segmentSize) {
+            buffer = Unpooled.directBuffer(segmentSize, segmentSize);
+            index = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build();
+        }
+    }
+
+    private final Segment[] segments;
+    private volatile int currentSegmentIdx = 0;
+    private final Object rotationLock = new Object();
 
     private final int segmentSize;
 
-    private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ByteBufAllocator allocator;
+    private final ReadCacheStats stats;
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, StatsLogger statsLogger) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, statsLogger);
+    }
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, NullStatsLogger.INSTANCE);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, StatsLogger statsLogger) {
         this.allocator = allocator;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
-        cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
-
+        segments = new Segment[segmentsCount];
         for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+            segments[i] = new Segment(segmentSize);
         }
+        stats = new ReadCacheStats(statsLogger, segmentsCount);
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ByteBuf::release);
+        for (Segment segment : segments) {
+            segment.buffer.release();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
-        lock.readLock().lock();
+        if (entrySize > segmentSize) {
+            log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+            return;
+        }
 
-        try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
+        while (true) {
+            int segmentIdx = currentSegmentIdx;
+            Segment segment = segments[segmentIdx];
+            long stamp = segment.lock.tryReadLock();
+            if (stamp == 0) {
+                // The segment is being recycled, the rotation will be visible soon
+                Thread.yield();
+                continue;
             }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
-            if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
-            } else {
-                // Copy entry into read cache segment
-                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
-                        entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+
+            try {
+                if (segmentIdx != currentSegmentIdx) {
+                    // Rotated away while acquiring the lock
+                    continue;
+                }
+                int offset = segment.writeOffset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    // Copy entry into read cache segment
+                    segment.buffer.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    segment.index.put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
             }
-        } finally {
-            lock.readLock().unlock();
+
+            // The current segment is full, roll-over to next segment and retry
+            rotate(segmentIdx);
         }
+    }
+
+    private void rotate(int fullSegmentIdx) {
+        synchronized (rotationLock) {
+            if (currentSegmentIdx != fullSegmentIdx) {
+                // Another writer already rotated
+                return;
+            }
 
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
-
-        try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
+            int nextSegmentIdx = (fullSegmentIdx + 1) % segments.length;
+            Segment next = segments[nextSegmentIdx];
+
+            // Waits for any late writer still copying into the oldest segment and
+            // invalidates the stamps of concurrent readers
+            long stamp = next.lock.writeLock();
+            try {
+                stats.getSegmentEvictions(nextSegmentIdx).add(next.index.size());
+                next.index.clear();
+                next.writeOffset.set(0);
+            } finally {
+                next.lock.unlockWrite(stamp);
             }
 
-            // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-        } finally {
-            lock.writeLock().unlock();
+            currentSegmentIdx = nextSegmentIdx;
+            stats.getSegmentRotations(nextSegmentIdx).inc();
         }
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
-
-                    ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
-                    return entry;
+        // We need to check all the segments, starting from the current one and looking
+        // backward to minimize the
+        // checks for recently inserted entries
+        int size = segments.length;
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < size; i++) {
+            int segmentIdx = (currentIdx + (size - i)) % size;
+            Segment segment = segments[segmentIdx];
+
+            long stamp = segment.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                // Being recycled, nothing valid left in it
+                continue;
+            }
+
+            LongPair res = segment.index.get(ledgerId, entryId);
+            if (res != null) {
+                int entryOffset = (int) res.first;
+                int entryLen = (int) res.second;
+
+                ByteBuf entry = allocator.buffer(entryLen, entryLen);
+                entry.writeBytes(segment.buffer, entryOffset, entryLen);
+                if (!segment.lock.validate(stamp)) {
+                    // The segment was recycled while copying, the data might be overwritten
+                    entry.release();
+                    stats.getLookupRetries().inc();
+                    continue;
                 }
+                stats.getSegmentHits(segmentIdx).inc();
+                return entry;
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
         // Entry not found in any segment
+        stats.getLookupMisses().inc();
         return null;
     }
 
     public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
-                }
+        int size = segments.length;
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < size; i++) {
+            int segmentIdx = (currentIdx + (size - i)) % size;
+
+            LongPair res = segments[segmentIdx].index.get(ledgerId, entryId);
+            if (res != null) {
+                return true;
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
         // Entry not found in any segment
@@ -191,41 +239,30 @@ public class ReadCache implements Closeable {
      * @return the total size of cached entries
      */
     public long size() {
-        lock.readLock().lock();
-
-        try {
-            long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
-                    size += segmentSize;
-                } else {
-                    // the segment is empty
-                }
+        long size = 0;
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < segments.length; i++) {
+            if (i == currentIdx) {
+                size += Math.min(segments[i].writeOffset.get(), segmentSize);
+            } else if (!segments[i].index.isEmpty()) {
+                size += segmentSize;
+            } else {
+                // the segment is empty
             }
-
-            return size;
-        } finally {
-            lock.readLock().unlock();
         }
+
+        return size;
     }
 
     /**
      * @return the total number of cached entries
      */
     public long count() {
-        lock.readLock().lock();
-
-        try {
-            long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
-            }
-
-            return count;
-        } finally {
-            lock.readLock().unlock();
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.index.size();
         }
+
+        return count;
     }
 }
@@ -0,0 +1,62 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Decides which entries read from the entry logs are inserted in the {@link ReadCache}.
+ *
+ * <p>The read cache evicts whole segments in FIFO order, so the only way to keep hot
+ * entries around is to avoid filling the cache with entries that won't be read again.
+ * Implementations are called concurrently from all the read threads and must be thread safe.
+ */
+public interface ReadCachePolicy {
+
+    /**
+     * Record a lookup in the read cache.
+     *
+     * @param hit whether the entry was found in the read cache
+     */
+    void recordAccess(long ledgerId, long entryId, boolean hit);
+
+    /**
+     * Read-ahead batches are admitted or rejected as a whole, on their first entry, before
+     * they are read from the entry logs.
+     *
+     * @param readAhead true if the entry is the first of a read-ahead batch, false if it was
+     *                  requested by a reader and missed the cache
+     * @return whether the entry, or the read-ahead batch it starts, should be inserted in the read cache
+     */
+    boolean admit(long ledgerId, long entryId, boolean readAhead);
+
+    /**
+     * A policy admitting every entry.
+     */
+    ReadCachePolicy ADMIT_ALL = new ReadCachePolicy() {
+        @Override
+        public void recordAccess(long ledgerId, long entryId, boolean hit) {
+        }
+
+        @Override
+        public boolean admit(long ledgerId, long entryId, boolean readAhead) {
+            return true;
+        }
+    };
+}
@@ -0,0 +1,107 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Per-segment stats of the {@link ReadCache}. Segment stats are labelled with the
+ * index of the segment in the ring.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "DbLedgerStorage read cache segment stats"
+)
+class ReadCacheStats {
+
+    private static final String SEGMENT_LABEL = "segment";
+    private static final String SEGMENT_HITS = "read-cache-segment-hits";
+    private static final String SEGMENT_EVICTIONS = "read-cache-segment-evictions";
+    private static final String SEGMENT_ROTATIONS = "read-cache-segment-rotations";
+    private static final String LOOKUP_MISSES = "read-cache-lookup-misses";
+    private static final String LOOKUP_RETRIES = "read-cache-lookup-retries";
+
+    @StatsDoc(
+        name = SEGMENT_HITS,
+        help = "number of lookups served by a read cache segment"
+    )
+    private final Counter[] segmentHits;
+    @StatsDoc(
+        name = SEGMENT_EVICTIONS,
+        help = "number of entries dropped from a read cache segment when it was recycled"
+    )
+    private final Counter[] segmentEvictions;
+    @StatsDoc(
+        name = SEGMENT_ROTATIONS,
+        help = "number of times a read cache segment was recycled"
+    )
+    private final Counter[] segmentRotations;
+    @StatsDoc(
+        name = LOOKUP_MISSES,
+        help = "number of lookups not found in any read cache segment"
+    )
+    private final Counter lookupMisses;
+    @StatsDoc(
+        name = LOOKUP_RETRIES,
+        help = "number of lookups discarded because the segment was recycled while copying the entry"
+    )
+    private final Counter lookupRetries;
+
+    ReadCacheStats(StatsLogger stats, int segmentsCount) {
+        segmentHits = new Counter[segmentsCount];
+        segmentEvictions = new Counter[segmentsCount];
+        segmentRotations = new Counter[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            StatsLogger segmentStats = stats.scopeLabel(SEGMENT_LABEL, Integer.toString(i));
+            segmentHits[i] = segmentStats.getCounter(SEGMENT_HITS);
+            segmentEvictions[i] = segmentStats.getCounter(SEGMENT_EVICTIONS);
+            segmentRotations[i] = segmentStats.getCounter(SEGMENT_ROTATIONS);
+        }
+        lookupMisses = stats.getCounter(LOOKUP_MISSES);
+        lookupRetries = stats.getCounter(LOOKUP_RETRIES);
+    }
+
+    Counter getSegmentHits(int segment) {
+        return segmentHits[segment];
+    }
+
+    Counter getSegmentEvictions(int segment) {
+        return segmentEvictions[segment];
+    }
+
+    Counter getSegmentRotations(int segment) {
+        return segmentRotations[segment];
+    }
+
+    Counter getLookupMisses() {
+        return lookupMisses;
+    }
+
+    Counter getLookupRetries() {
+        return lookupRetries;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Detects sequential scans of a ledger and keeps the entries they miss out of the read cache.
+ *
+ * <p>A catch-up reader going through an old ledger reads each entry once, in order, so
+ * caching the entries it reads, or reading ahead of it, only evicts entries other readers
+ * need. Once a ledger has been read sequentially for {@code scanThreshold} consecutive
+ * entries, neither the entries of that ledger which miss the cache nor its read-ahead
+ * batches are admitted, and the scan is served from the entry logs.
+ *
+ * <p>The per-ledger state is packed in a single long per slot of a small direct-mapped
+ * table: a 16-bit ledger tag, the low 40 bits of the last entry id and an 8-bit run length.
+ * Tracking is lossy when many ledgers are read at once or when updates race, which at
+ * worst makes a scan look like random reads, or the other way around for a few entries.
+ */
+class ScanResistantReadCachePolicy implements ReadCachePolicy {
+
+    private static final int TABLE_SIZE = 4096;
+    private static final int MAX_RUN_LENGTH = 0xff;
+    private static final long ENTRY_MASK = (1L << 40) - 1;
+
+    private final ReadCachePolicy delegate;
+    private final int scanThreshold;
+    private final AtomicLongArray slots = new AtomicLongArray(TABLE_SIZE);
+
+    ScanResistantReadCachePolicy(ReadCachePolicy delegate, int scanThreshold) {
+        checkArgument(scanThreshold > 0 && scanThreshold <= MAX_RUN_LENGTH,
+                "Invalid scan threshold %s", scanThreshold);
+        this.delegate = delegate;
+        this.scanThreshold = scanThreshold;
+    }
+
+    @Override
+    public void recordAccess(long ledgerId, long entryId, boolean hit) {
+        delegate.recordAccess(ledgerId, entryId, hit);
+
+        long hash = hash(ledgerId);
+        int slot = (int) hash & (TABLE_SIZE - 1);
+        long tag = hash >>> 48;
+        long state = slots.get(slot);
+
+        int runLength = 0;
+        if ((state >>> 48) == tag) {
+            long lastEntryId = (state >>> 8) & ENTRY_MASK;
+            int lastRunLength = (int) (state & MAX_RUN_LENGTH);
+            if ((entryId & ENTRY_MASK) == ((lastEntryId + 1) & ENTRY_MASK)) {
+                runLength = Math.min(lastRunLength + 1, MAX_RUN_LENGTH);
+            } else if ((entryId & ENTRY_MASK) == lastEntryId) {
+                runLength = lastRunLength;
+            }
+        }
+        slots.lazySet(slot, (tag << 48) | ((entryId & ENTRY_MASK) << 8) | runLength);
+    }
+
+    @Override
+    public boolean admit(long ledgerId, long entryId, boolean readAhead) {
+        if (isScanning(ledgerId)) {
+            return false;
+        }
+        return delegate.admit(ledgerId, entryId, readAhead);
+    }
+
+    boolean isScanning(long ledgerId) {
+        long hash = hash(ledgerId);
+        long state = slots.get((int) hash & (TABLE_SIZE - 1));
+        return (state >>> 48) == (hash >>> 48) && (state & MAX_RUN_LENGTH) >= scanThreshold;
+    }
+
+    private static long hash(long ledgerId) {
+        long h = (ledgerId + 1) * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -32,19 +32,28 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -58,7 +67,6 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
-import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
@@ -81,6 +89,7 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.commons.lang.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,30 +110,53 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final GarbageCollectorThread gcThread;
 
-    // Write cache where all new entries are inserted into
+    // Memory of the write cache, shared by its generations
+    private final WriteCacheSegmentPool writeCacheSegmentPool;
+
+    // Write cache generation where all new entries are inserted into
     protected volatile WriteCache writeCache;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Write cache generations sealed and waiting to be flushed, newest first
+    protected volatile WriteCache[] writeCachesBeingFlushed = new WriteCache[0];
+
+    // Generations not holding any entry, and seal time of the generations being flushed,
+    // guarded by the write lock of writeCacheRotationLock
+    private final Deque<WriteCache> idleWriteCaches = new ArrayDeque<>();
+    private final Map<WriteCache, Long> writeCacheSealTimes = new IdentityHashMap<>();
+
+    // Size of the current generation after which it is sealed and flushed
+    private final long writeCacheGenerationSize;
 
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
+    private final ReadCachePolicy readCachePolicy;
 
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
     protected final ReentrantLock flushMutex = new ReentrantLock();
 
     protected final AtomicBoolean hasFlushBeenTriggered = new AtomicBoolean(false);
-    private final AtomicBoolean isFlushOngoing = new AtomicBoolean(false);
 
     private static String dbStoragerExecutorName = "db-storage";
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new DefaultThreadFactory(dbStoragerExecutorName));
 
-    // Executor used to for db index cleanup
+    // Executor used to for db index cleanup, and to adapt the compaction rate
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
 
+    // Executors syncing the entry log and writing the locations index during flushes
+    private final ExecutorService flushSyncExecutor = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("db-storage-flush-sync"));
+    private final ExecutorService flushIndexExecutor = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("db-storage-flush-index"));
+
+    // Executor filling the read cache after read cache misses, null to read ahead on the read threads
+    private final ThreadPoolExecutor readAheadExecutor;
+
+    // First entry of the read-ahead batch queued or running for each ledger
+    private final ConcurrentLongLongHashMap pendingReadAheads = ConcurrentLongLongHashMap.newBuilder().build();
+
     private final CopyOnWriteArrayList<LedgerDeletionListener> ledgerDeletionListeners = Lists
             .newCopyOnWriteArrayList();
 
@@ -141,14 +173,25 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int DEFAULT_READ_AHEAD_THREADS = 1;
+    private static final long DEFAULT_FLUSH_SEGMENT_SIZE_MB = 64;
+    private static final int DEFAULT_WRITE_CACHE_GENERATIONS = 4;
+    private static final int MAX_WRITE_CACHE_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_READ_AHEAD_MAX_PENDING_BATCHES = 256;
+    private static final long DEFAULT_COMPACTION_TARGET_LATENCY_MILLIS = 0;
+    private static final long COMPACTION_RATE_ADJUSTMENT_INTERVAL_MILLIS = 1000;
+
     private final long maxReadAheadBytesSize;
 
+    // Size of the entries after which the flush starts syncing them while appending the next ones
+    private final long flushSegmentSize;
+
     private final Counter flushExecutorTime;
 
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
-            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
-            ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
-            int readAheadCacheBatchSize) throws IOException {
+            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, EntryLogger entryLogger,
+            StatsLogger statsLogger, ByteBufAllocator allocator, ScheduledExecutorService gcExecutor,
+            long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize) throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
 
@@ -159,8 +202,17 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 ledgerDirsManager.getAllLedgerDirs().get(0).getPath());
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        int writeCacheGenerations = conf.getInt(DbLedgerStorage.WRITE_CACHE_GENERATIONS,
+                DEFAULT_WRITE_CACHE_GENERATIONS);
+        checkArgument(writeCacheGenerations >= 2, "The write cache needs at least 2 generations");
+        // Segments of at most half the write cache, so that entries of up to half its size still fit
+        this.writeCacheSegmentPool = new WriteCacheSegmentPool(writeCacheMaxSize,
+                WriteCacheSegmentPool.segmentSizeFor(writeCacheMaxSize, MAX_WRITE_CACHE_SEGMENT_SIZE, 2));
+        this.writeCache = new WriteCache(allocator, writeCacheSegmentPool);
+        for (int i = 1; i < writeCacheGenerations; i++) {
+            idleWriteCaches.add(new WriteCache(allocator, writeCacheSegmentPool));
+        }
+        this.writeCacheGenerationSize = writeCacheMaxSize / writeCacheGenerations;
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
@@ -172,7 +224,21 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        flushSegmentSize = conf.getLong(DbLedgerStorage.FLUSH_SEGMENT_SIZE_MB, DEFAULT_FLUSH_SEGMENT_SIZE_MB)
+                * 1024 * 1024;
+
+        int readAheadThreads = conf.getInt(DbLedgerStorage.READ_AHEAD_THREADS, DEFAULT_READ_AHEAD_THREADS);
+        if (readAheadThreads > 0) {
+            int maxPendingBatches = conf.getInt(DbLedgerStorage.READ_AHEAD_MAX_PENDING_BATCHES,
+                    DEFAULT_READ_AHEAD_MAX_PENDING_BATCHES);
+            readAheadExecutor = new ThreadPoolExecutor(readAheadThreads, readAheadThreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(maxPendingBatches), new DefaultThreadFactory("db-storage-read-ahead"));
+        } else {
+            readAheadExecutor = null;
+        }
+
+        readCache = new ReadCache(allocator, readCacheMaxSize, ledgerDirStatsLogger);
+        readCachePolicy = DbLedgerStorage.newReadCachePolicy(conf, readCacheMaxSize);
 
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
@@ -186,19 +252,29 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
-        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+        this.entryLogger = entryLogger;
         gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, entryLogger, statsLogger);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
                 ledgerDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
+            () -> writeCache.size() + Arrays.stream(writeCachesBeingFlushed).mapToLong(WriteCache::size).sum(),
+            () -> writeCache.count() + Arrays.stream(writeCachesBeingFlushed).mapToLong(WriteCache::count).sum(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> (long) writeCachesBeingFlushed.length + 1
         );
 
         flushExecutorTime = ledgerDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
+        long compactionTargetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+                DbLedgerStorage.COMPACTION_TARGET_LATENCY_MILLIS, DEFAULT_COMPACTION_TARGET_LATENCY_MILLIS));
+        if (compactionTargetLatencyNanos > 0) {
+            cleanupExecutor.scheduleAtFixedRate(() -> gcThread.adjustCompactionRate(
+                            dbLedgerStorageStats.sampleForegroundLatencyNanos(), compactionTargetLatencyNanos),
+                    COMPACTION_RATE_ADJUSTMENT_INTERVAL_MILLIS, COMPACTION_RATE_ADJUSTMENT_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+
         executor.submit(() -> {
             ThreadRegistry.register(dbStoragerExecutorName, 0);
             // ensure the metric gets registered on start-up as this thread only executes
@@ -245,6 +321,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         gcThread.start();
     }
 
+    /**
+     * Bound the compactions running at once across the ledger directories sharing the permits.
+     */
+    void setCompactionPermits(Semaphore compactionPermits) {
+        gcThread.setCompactionPermits(compactionPermits);
+    }
+
     @Override
     public void forceGC() {
         gcThread.enableForceGC();
@@ -265,6 +348,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         try {
             flush();
 
+            if (readAheadExecutor != null) {
+                readAheadExecutor.shutdownNow();
+                readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+
             gcThread.shutdown();
             entryLogger.close();
 
@@ -275,9 +363,15 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             entryLocationIndex.close();
 
             writeCache.close();
-            writeCacheBeingFlushed.close();
+            for (WriteCache generation : writeCachesBeingFlushed) {
+                generation.close();
+            }
+            idleWriteCaches.forEach(WriteCache::close);
+            writeCacheSegmentPool.close();
             readCache.close();
             executor.shutdown();
+            flushSyncExecutor.shutdown();
+            flushIndexExecutor.shutdown();
 
         } catch (IOException e) {
             log.error("Error closing db storage", e);
@@ -304,25 +398,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
+        // We need to try to read from all the write cache generations, since recent entries could be found in any of
+        // them. The write caches are already thread safe on their own, here we just need to make sure we get references
+        // to all of them. Using an optimistic lock since the read lock is always free, unless we're sealing a
+        // generation.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        WriteCache[] localWriteCachesBeingFlushed = writeCachesBeingFlushed;
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
             stamp = writeCacheRotationLock.readLock();
             try {
                 localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+                localWriteCachesBeingFlushed = writeCachesBeingFlushed;
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
 
         boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+             || hasEntry(localWriteCachesBeingFlushed, ledgerId, entryId)
              || readCache.hasEntry(ledgerId, entryId);
 
         if (inCache) {
@@ -401,33 +496,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             log.debug("Add entry. {}@{}, lac = {}", ledgerId, entryId, lac);
         }
 
-        // First we try to do an optimistic locking to get access to the current write cache.
-        // This is based on the fact that the write cache is only being rotated (swapped) every 1 minute. During the
-        // rest of the time, we can have multiple thread using the optimistic lock here without interfering.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        boolean inserted = false;
-
-        inserted = writeCache.put(ledgerId, entryId, entry);
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // The write cache was rotated while we were inserting. We need to acquire the proper read lock and repeat
-            // the operation because we might have inserted in a write cache that was already being flushed and cleared,
-            // without being sure about this last entry being flushed or not.
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                inserted = writeCache.put(ledgerId, entryId, entry);
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
+        // The insertion is done under the read lock, which is only contended while a generation is sealed or
+        // recycled. An optimistic insertion could write into a generation recycled in the meantime, whose
+        // segments may already be used by another generation.
+        boolean inserted;
+        long stamp = writeCacheRotationLock.readLock();
+        try {
+            inserted = writeCache.put(ledgerId, entryId, entry);
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
         }
 
         if (!inserted) {
             triggerFlushAndAddEntry(ledgerId, entryId, entry);
+        } else if (writeCache.size() >= writeCacheGenerationSize) {
+            // The generation is full, seal it and flush it while the next one fills
+            triggerFlush();
         }
 
         // after successfully insert the entry, update LAC and notify the watchers
         updateCachedLacIfNeeded(ledgerId, lac);
 
-        recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
+        recordForegroundEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
         return entryId;
     }
 
@@ -439,21 +529,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
             // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
+            // If the flush has already been triggered and no generation was sealed since,
+            // we don't need to trigger another flush
+            if (triggerFlush()) {
                 log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.add(MathUtils.elapsedNanos(startTime));
-                        }
-                    });
             }
 
             long stamp = writeCacheRotationLock.readLock();
@@ -482,12 +561,63 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         throw new OperationRejectedException();
     }
 
+    /**
+     * Seal the current write cache generation, so that writes go on in a new one, and flush it in
+     * background, unless a flush has already been triggered since the last generation was sealed.
+     *
+     * @return true if a flush was triggered
+     */
+    private boolean triggerFlush() {
+        if (!hasFlushBeenTriggered.compareAndSet(false, true)) {
+            return false;
+        }
+        // When all the generations are in use, the flush seals it once one of them is flushed
+        sealWriteCache();
+        executor.execute(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    flush();
+                } catch (IOException e) {
+                    log.error("Error during flush", e);
+                } finally {
+                    flushExecutorTime.add(MathUtils.elapsedNanos(startTime));
+                }
+            });
+        return true;
+    }
+
+    private ByteBuf getFromWriteCaches(long ledgerId, long entryId) {
+        // First try to read from the write cache of recent entries
+        ByteBuf entry = writeCache.get(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        // If there's a flush going on, the entry might be in a generation being flushed, the newest first
+        for (WriteCache generation : writeCachesBeingFlushed) {
+            entry = generation.get(ledgerId, entryId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasEntry(WriteCache[] generations, long ledgerId, long entryId) {
+        for (WriteCache generation : generations) {
+            if (generation.hasEntry(ledgerId, entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         long startTime = MathUtils.nowInNano();
         try {
             ByteBuf entry = doGetEntry(ledgerId, entryId);
-            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            recordForegroundEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
             return entry;
         } catch (IOException e) {
             recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
@@ -504,32 +634,24 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
+        // We need to try to read from all the write cache generations, since recent entries could be found in any of
+        // them. Using an optimistic lock since the read lock is always free, unless we're sealing or recycling a
+        // generation. A recycled generation gives its segments back to the pool, so the entry is only valid if no
+        // generation was recycled while it was copied.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
+            if (entry != null) {
+                entry.release();
+            }
             stamp = writeCacheRotationLock.readLock();
             try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+                entry = getFromWriteCaches(ledgerId, entryId);
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
-
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getWriteCacheHitCounter().inc();
             return entry;
@@ -539,6 +661,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         // Try reading from read-ahead cache
         entry = readCache.get(ledgerId, entryId);
+        readCachePolicy.recordAccess(ledgerId, entryId, entry != null);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
             return entry;
@@ -568,52 +691,111 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             dbLedgerStorageStats.getReadFromEntryLogTime().add(MathUtils.elapsedNanos(readEntryStartNano));
         }
 
-        readCache.put(ledgerId, entryId, entry);
+        if (readCachePolicy.admit(ledgerId, entryId, false)) {
+            readCache.put(ledgerId, entryId, entry);
+        } else {
+            dbLedgerStorageStats.getReadCacheRejectedCounter().inc();
+        }
 
-        // Try to read more entries
+        // Try to read more entries, unless the policy would keep them out of the read cache
         long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (!readCachePolicy.admit(ledgerId, entryId + 1, true)) {
+            dbLedgerStorageStats.getReadCacheRejectedCounter().inc();
+        } else if (readAheadExecutor != null) {
+            scheduleReadAhead(ledgerId, entryId + 1, nextEntryLocation);
+        } else {
+            fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        }
 
         return entry;
     }
 
+    /**
+     * Get the region of the entry log holding an entry which is in neither the write caches
+     * nor the read cache. The entry is not inserted in the read cache and doesn't trigger a
+     * read-ahead, as regions are meant for large entries read once.
+     */
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException, BookieException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED
+                || writeCache.hasEntry(ledgerId, entryId)
+                || hasEntry(writeCachesBeingFlushed, ledgerId, entryId)
+                || readCache.hasEntry(ledgerId, entryId)) {
+            return null;
+        }
+
+        long startTime = MathUtils.nowInNano();
+        try {
+            long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            if (entryLocation == 0) {
+                // Let the regular read path report the missing entry
+                return null;
+            }
+            FileRegion region = entryLogger.readEntryRegion(ledgerId, entryId, entryLocation, minSize);
+            if (region != null) {
+                readCachePolicy.recordAccess(ledgerId, entryId, false);
+                dbLedgerStorageStats.getZeroCopyReadCounter().inc();
+                recordForegroundEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            }
+            return region;
+        } catch (IOException e) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * Fill the read cache on the read-ahead executor, unless a read-ahead batch of the ledger
+     * which will read the entry is already pending, as when the reader of a ledger misses the
+     * entries being read ahead. Read-ahead is skipped when too many batches are pending.
+     */
+    private void scheduleReadAhead(long ledgerId, long firstEntryId, long firstEntryLocation) {
+        long pendingFirstEntryId = pendingReadAheads.putIfAbsent(ledgerId, firstEntryId);
+        boolean tracked = pendingFirstEntryId < 0;
+        if (!tracked && firstEntryId >= pendingFirstEntryId
+                && firstEntryId < pendingFirstEntryId + readAheadCacheBatchSize) {
+            return;
+        }
+        // When another reader of the ledger is elsewhere, its batch is not tracked
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    fillReadAheadCache(ledgerId, firstEntryId, firstEntryLocation);
+                } finally {
+                    if (tracked) {
+                        pendingReadAheads.remove(ledgerId, firstEntryId);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (tracked) {
+                pendingReadAheads.remove(ledgerId, firstEntryId);
+            }
+            dbLedgerStorageStats.getReadAheadRejectedCounter().inc();
+        }
+    }
+
     private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
 
         try {
-            long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
-            long currentEntryLocation = firstEntryLocation;
-
-            while (count < readAheadCacheBatchSize
-                    && size < maxReadAheadBytesSize
-                    && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
-                        firstEntryId, currentEntryLocation);
-
-                try {
-                    long currentEntryLedgerId = entry.getLong(0);
+            // Read the following entries of the ledger at once, up to the end of the entry log
+            List<ByteBuf> entries = entryLogger.readEntries(orginalLedgerId, firstEntryId, firstEntryLocation,
+                    readAheadCacheBatchSize, maxReadAheadBytesSize);
+            try {
+                for (ByteBuf entry : entries) {
                     long currentEntryId = entry.getLong(8);
 
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
-                    }
-
-                    // Insert entry in read cache
+                    // Insert entry in read cache, the batch was admitted as a whole
                     readCache.put(orginalLedgerId, currentEntryId, entry);
 
                     count++;
-                    firstEntryId++;
                     size += entry.readableBytes();
-
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
-                } finally {
-                    entry.release();
                 }
+            } finally {
+                entries.forEach(ByteBuf::release);
             }
         } catch (Exception e) {
             if (log.isDebugEnabled()) {
@@ -648,20 +830,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 return entry;
             }
 
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
+            // If there's a flush going on, the entry might be in a generation being flushed, the newest first
+            for (WriteCache generation : writeCachesBeingFlushed) {
+                entry = generation.getLastEntry(ledgerId);
+                if (entry != null) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
+                        entry.readLong(); // ledgedId
+                        long entryId = entry.readLong();
+                        entry.resetReaderIndex();
+                        if (log.isDebugEnabled()) {
+                            log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId,
+                                    entryId);
+                        }
                     }
-                }
 
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
+                    dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                    return entry;
+                }
             }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
@@ -689,7 +874,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
         try {
-            return !writeCache.isEmpty();
+            return !writeCache.isEmpty() || writeCachesBeingFlushed.length > 0;
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -707,45 +892,39 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Only a single flush operation can happen at a time
         flushMutex.lock();
         try {
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
-
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
-            }
-
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+            // Seal the current generation so that writes can continue to happen in a new one while the flush is
+            // ongoing. When all the generations are in use, it is sealed once the oldest one has been flushed.
+            WriteCache currentWriteCache = writeCache;
+            boolean sealed = sealWriteCache(currentWriteCache);
+            boolean flushCurrentWriteCache = !sealed;
+
+            // Only the generations holding the entries written before the checkpoint are flushed, the ones
+            // sealed meanwhile are left to the next flush. Generations are only recycled under the flush mutex,
+            // so they are the oldest ones in turn.
+            WriteCache[] generationsToFlush = writeCachesBeingFlushed;
+            long sizeToFlush = 0;
+            int flushedGenerations = 0;
+            for (int i = generationsToFlush.length - 1; i >= 0; i--) {
+                sizeToFlush += flushWriteCache(generationsToFlush[i]);
+                recycleWriteCache(generationsToFlush[i]);
+                flushedGenerations++;
+                if (!sealed) {
+                    sealed = sealWriteCache(currentWriteCache);
                 }
-            });
-
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+            // A generation left unsealed for lack of room was sealed after all the others, by now or by a
+            // triggered flush, so it's the oldest one left
+            if (flushCurrentWriteCache && oldestWriteCacheBeingFlushed() == currentWriteCache) {
+                sizeToFlush += flushWriteCache(currentWriteCache);
+                recycleWriteCache(currentWriteCache);
+                flushedGenerations++;
             }
 
-            long ledgerIndexStartTime = MathUtils.nowInNano();
-            ledgerIndex.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+            if (flushedGenerations == 0) {
+                long ledgerIndexStartTime = MathUtils.nowInNano();
+                ledgerIndex.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+            }
 
             cleanupExecutor.execute(() -> {
                 // There can only be one single cleanup task running because the cleanupExecutor
@@ -764,9 +943,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -785,34 +961,123 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             // Wrap unchecked exceptions
             throw new IOException(e);
         } finally {
-            try {
-                isFlushOngoing.set(false);
-            } finally {
-                flushMutex.unlock();
+            flushMutex.unlock();
+        }
+    }
+
+    /**
+     * Write the entries of a sealed write cache generation into the entry logger, along with
+     * their locations.
+     *
+     * @return the size of the entries flushed
+     */
+    private long flushWriteCache(WriteCache generation) throws IOException {
+        long sizeToFlush = generation.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries. count: {} -- size {} Mb", generation.count(),
+                    sizeToFlush / 1024.0 / 1024);
+        }
+
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry. The entry log is synced and the locations are written
+        // segment by segment while the following entries are appended.
+        WriteCacheFlushPipeline pipeline = new WriteCacheFlushPipeline(entryLogger, entryLocationIndex,
+                flushSyncExecutor, flushIndexExecutor, flushSegmentSize, dbLedgerStorageStats);
+        try {
+            generation.forEach((ledgerId, entryId, entry) -> {
+                try {
+                    long location = entryLogger.addEntry(ledgerId, entry);
+                    pipeline.addLocation(ledgerId, entryId, location, entry.readableBytes());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            pipeline.appendsDone();
+
+            // The ledger index doesn't depend on the entries, flush it while the last segment is synced
+            long ledgerIndexStartTime = MathUtils.nowInNano();
+            ledgerIndex.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+
+            long waitStartTime = MathUtils.nowInNano();
+            pipeline.waitForIndexWrites();
+            if (log.isDebugEnabled()) {
+                log.debug("Waited {} s for the entry log sync and the locations index",
+                        MathUtils.elapsedNanos(waitStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
             }
+        } finally {
+            pipeline.close();
         }
+        return sizeToFlush;
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Seal the current write cache generation, replacing it with an empty one, so that it can be
+     * flushed while writes go on.
+     *
+     * @return true if the generation was sealed or was empty, false if all the generations are in use
      */
-    private void swapWriteCache() {
+    private boolean sealWriteCache() {
+        return sealWriteCache(null);
+    }
+
+    /**
+     * Seal the given write cache generation, if it is still the current one.
+     *
+     * @return true if the generation was sealed, was empty or was already sealed, false if all the
+     *         generations are in use
+     */
+    private boolean sealWriteCache(WriteCache generation) {
         long stamp = writeCacheRotationLock.writeLock();
         try {
-            // First, swap the current write-cache map with an empty one so that writes will
-            // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
+            if ((generation != null && writeCache != generation) || writeCache.isEmpty()) {
+                return true;
+            }
+            WriteCache nextWriteCache = idleWriteCaches.poll();
+            if (nextWriteCache == null) {
+                return false;
+            }
+
+            WriteCache[] sealedWriteCaches = new WriteCache[writeCachesBeingFlushed.length + 1];
+            sealedWriteCaches[0] = writeCache;
+            System.arraycopy(writeCachesBeingFlushed, 0, sealedWriteCaches, 1, writeCachesBeingFlushed.length);
+            writeCacheSealTimes.put(writeCache, MathUtils.nowInNano());
+            dbLedgerStorageStats.getWriteCacheGenerationSizeStats().registerSuccessfulValue(writeCache.size());
+
+            writeCachesBeingFlushed = sealedWriteCaches;
+            writeCache = nextWriteCache;
 
             // since the cache is switched, we can allow flush to be triggered
             hasFlushBeenTriggered.set(false);
+            return true;
         } finally {
-            try {
-                isFlushOngoing.set(true);
-            } finally {
-                writeCacheRotationLock.unlockWrite(stamp);
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+    }
+
+    private WriteCache oldestWriteCacheBeingFlushed() {
+        WriteCache[] sealedWriteCaches = writeCachesBeingFlushed;
+        return sealedWriteCaches.length > 0 ? sealedWriteCaches[sealedWriteCaches.length - 1] : null;
+    }
+
+    /**
+     * Discard the entries of a flushed generation, since they're now persisted, and make it
+     * available for new writes.
+     */
+    private void recycleWriteCache(WriteCache generation) {
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            WriteCache[] sealedWriteCaches = writeCachesBeingFlushed;
+            writeCachesBeingFlushed = Arrays.copyOf(sealedWriteCaches, sealedWriteCaches.length - 1);
+            generation.clear();
+            idleWriteCaches.add(generation);
+
+            Long sealTime = writeCacheSealTimes.remove(generation);
+            if (sealTime != null) {
+                recordSuccessfulEvent(dbLedgerStorageStats.getWriteCacheGenerationFlushStats(), sealTime);
             }
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
         }
     }
 
@@ -833,6 +1098,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long stamp = writeCacheRotationLock.readLock();
         try {
             writeCache.deleteLedger(ledgerId);
+            for (WriteCache generation : writeCachesBeingFlushed) {
+                generation.deleteLedger(ledgerId);
+            }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -869,6 +1137,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryLogger;
     }
 
+    @VisibleForTesting
+    ThreadPoolExecutor getReadAheadExecutor() {
+        return readAheadExecutor;
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
@@ -1007,6 +1280,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
     }
 
+    private void recordForegroundEvent(OpStatsLogger logger, long startTimeNanos) {
+        long latencyNanos = MathUtils.elapsedNanos(startTimeNanos);
+        logger.registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+        dbLedgerStorageStats.recordForegroundLatency(latencyNanos);
+    }
+
     private void recordFailedEvent(OpStatsLogger logger, long startTimeNanos) {
         logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
     }
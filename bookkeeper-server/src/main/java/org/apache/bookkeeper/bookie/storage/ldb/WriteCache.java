@@ -48,6 +48,9 @@ import org.slf4j.LoggerFactory;
  * <p>The entries are appended in a common buffer and indexed though a hashmap,
  * until the cache is cleared.
  *
+ * <p>When created with a {@link WriteCacheSegmentPool}, the segments are taken from the pool as
+ * the cache fills and are given back when it is cleared.
+ *
  * <p>There is the possibility to iterate through the stored entries in an ordered
  * way, by (ledgerId, entry).
  */
@@ -86,6 +89,8 @@ public class WriteCache implements Closeable {
 
     private final ByteBufAllocator allocator;
 
+    private final WriteCacheSegmentPool segmentPool;
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
         // Default maxSegmentSize set to 1Gb
         this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
@@ -98,6 +103,7 @@ public class WriteCache implements Closeable {
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
         this.allocator = allocator;
+        this.segmentPool = null;
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -116,6 +122,19 @@ public class WriteCache implements Closeable {
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
     }
 
+    WriteCache(ByteBufAllocator allocator, WriteCacheSegmentPool segmentPool) {
+        this.allocator = allocator;
+        this.segmentPool = segmentPool;
+        this.maxCacheSize = segmentPool.getMaxSize();
+        this.maxSegmentSize = segmentPool.getSegmentSize();
+        this.segmentOffsetMask = maxSegmentSize - 1;
+        this.segmentOffsetBits = 63 - Long.numberOfLeadingZeros(maxSegmentSize);
+        this.segmentsCount = segmentPool.getSegmentsCount();
+
+        // Taken from the pool when first written
+        this.cacheSegments = new ByteBuf[segmentsCount];
+    }
+
     public void clear() {
         cacheSize.set(0L);
         cacheOffset.set(0L);
@@ -123,15 +142,40 @@ public class WriteCache implements Closeable {
         index.clear();
         lastEntryMap.clear();
         deletedLedgers.clear();
+        if (segmentPool != null) {
+            releaseSegments();
+        }
     }
 
     @Override
     public void close() {
+        if (segmentPool != null) {
+            releaseSegments();
+            return;
+        }
         for (ByteBuf buf : cacheSegments) {
             buf.release();
         }
     }
 
+    private synchronized ByteBuf acquireSegment(int segmentIdx) {
+        ByteBuf segment = cacheSegments[segmentIdx];
+        if (segment == null) {
+            segment = segmentPool.acquire();
+            cacheSegments[segmentIdx] = segment;
+        }
+        return segment;
+    }
+
+    private synchronized void releaseSegments() {
+        for (int i = 0; i < segmentsCount; i++) {
+            if (cacheSegments[i] != null) {
+                segmentPool.release(cacheSegments[i]);
+                cacheSegments[i] = null;
+            }
+        }
+    }
+
     public boolean put(long ledgerId, long entryId, ByteBuf entry) {
         int size = entry.readableBytes();
 
@@ -161,7 +205,15 @@ public class WriteCache implements Closeable {
             }
         }
 
-        cacheSegments[segmentIdx].setBytes(localOffset, entry, entry.readerIndex(), entry.readableBytes());
+        ByteBuf segment = cacheSegments[segmentIdx];
+        if (segment == null) {
+            segment = acquireSegment(segmentIdx);
+            if (segment == null) {
+                // All the segments of the pool are used
+                return false;
+            }
+        }
+        segment.setBytes(localOffset, entry, entry.readerIndex(), entry.readableBytes());
 
         // Update last entryId for ledger. This logic is to handle writes for the same
         // ledger coming out of order and from different thread, though in practice it
@@ -192,11 +244,16 @@ public class WriteCache implements Closeable {
 
         long offset = result.first;
         int size = (int) result.second;
-        ByteBuf entry = allocator.buffer(size, size);
-
         int localOffset = (int) (offset & segmentOffsetMask);
         int segmentIdx = (int) (offset >>> segmentOffsetBits);
-        entry.writeBytes(cacheSegments[segmentIdx], localOffset, size);
+        ByteBuf segment = cacheSegments[segmentIdx];
+        if (segment == null) {
+            // Cleared in the meantime
+            return null;
+        }
+
+        ByteBuf entry = allocator.buffer(size, size);
+        entry.writeBytes(segment, localOffset, size);
         return entry;
     }
 
@@ -252,7 +309,7 @@ public class WriteCache implements Closeable {
             startTime = MathUtils.nowInNano();
 
             // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
+            groupSorter.parallelSort(sortedEntries, 0, sortedEntriesIdx);
             if (log.isDebugEnabled()) {
                 log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
             }
@@ -260,7 +317,9 @@ public class WriteCache implements Closeable {
 
             ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
             for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+                if (cacheSegments[i] != null) {
+                    entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+                }
             }
 
             for (int i = 0; i < sortedEntriesIdx; i += 4) {
@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the locations of the entries flushed from the write cache while the entries are still
+ * being appended to the entry log.
+ *
+ * <p>The flushed entries are split in segments of {@code segmentSize} bytes. Once all the entries
+ * of a segment are appended, the entry log is synced on the sync executor, and then the locations
+ * of the segment are written to the locations index on the index executor, while the entries of
+ * the following segments are appended. The locations of a segment are only written once its
+ * entries are durable, and the locations kept by the index in memory are only persisted by the
+ * last segment, once all the entries are durable.
+ */
+class WriteCacheFlushPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteCacheFlushPipeline.class);
+
+    private final EntryLogger entryLogger;
+    private final EntryLocationIndex entryLocationIndex;
+    private final Executor syncExecutor;
+    private final Executor indexExecutor;
+    private final long segmentSize;
+    private final DbLedgerStorageStats stats;
+
+    private final List<Batch> batches = new ArrayList<>();
+    private Batch currentBatch;
+    private long currentSegmentSize = 0;
+
+    private CompletableFuture<Void> lastSync = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> lastIndexWrite = CompletableFuture.completedFuture(null);
+
+    WriteCacheFlushPipeline(EntryLogger entryLogger, EntryLocationIndex entryLocationIndex, Executor syncExecutor,
+                            Executor indexExecutor, long segmentSize, DbLedgerStorageStats stats) {
+        this.entryLogger = entryLogger;
+        this.entryLocationIndex = entryLocationIndex;
+        this.syncExecutor = syncExecutor;
+        this.indexExecutor = indexExecutor;
+        this.segmentSize = segmentSize;
+        this.stats = stats;
+        this.currentBatch = newBatch(entryLocationIndex.newPartialBatch());
+    }
+
+    /**
+     * Add the location of an entry appended to the entry log.
+     */
+    void addLocation(long ledgerId, long entryId, long location, int size) throws IOException {
+        if (lastIndexWrite.isCompletedExceptionally()) {
+            // Stop appending, the flush will fail
+            waitForIndexWrites();
+        }
+
+        entryLocationIndex.addLocation(currentBatch, ledgerId, entryId, location);
+        currentSegmentSize += size;
+        if (segmentSize > 0 && currentSegmentSize >= segmentSize) {
+            submitSegment(currentBatch, null);
+            currentBatch = newBatch(entryLocationIndex.newPartialBatch());
+            currentSegmentSize = 0;
+        }
+    }
+
+    /**
+     * Submit the last segment, after all the entries have been appended.
+     */
+    void appendsDone() {
+        submitSegment(currentBatch, newBatch(entryLocationIndex.newBatch()));
+        currentBatch = null;
+    }
+
+    /**
+     * Wait for all the entries to be durable and their locations written.
+     */
+    void waitForIndexWrites() throws IOException {
+        try {
+            lastIndexWrite.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the locations index", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException && cause.getCause() instanceof IOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Release the batches, once no stage is running anymore.
+     */
+    void close() {
+        lastIndexWrite.handle((ignore, cause) -> null).join();
+        for (Batch batch : batches) {
+            try {
+                batch.close();
+            } catch (IOException e) {
+                log.warn("Failed to close locations index batch", e);
+            }
+        }
+        batches.clear();
+    }
+
+    private Batch newBatch(Batch batch) {
+        batches.add(batch);
+        return batch;
+    }
+
+    private void submitSegment(Batch batch, Batch lastBatch) {
+        // Each stage waits for the previous segment to have been through it
+        CompletableFuture<Void> sync = lastSync.thenRunAsync(() -> {
+            try {
+                long entryLoggerStart = MathUtils.nowInNano();
+                entryLogger.flush();
+                stats.getFlushEntryLogStats().registerSuccessfulEvent(MathUtils.elapsedNanos(entryLoggerStart),
+                        TimeUnit.NANOSECONDS);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, syncExecutor);
+
+        lastIndexWrite = CompletableFuture.allOf(sync, lastIndexWrite).thenRunAsync(() -> {
+            try {
+                long batchFlushStartTime = MathUtils.nowInNano();
+                batch.flush();
+                if (lastBatch != null) {
+                    lastBatch.flush();
+                }
+                stats.getFlushLocationIndexStats().registerSuccessfulEvent(
+                        MathUtils.elapsedNanos(batchFlushStartTime), TimeUnit.NANOSECONDS);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, indexExecutor);
+        lastSync = sync;
+    }
+}
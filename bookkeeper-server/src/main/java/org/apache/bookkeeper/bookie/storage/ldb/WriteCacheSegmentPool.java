@@ -0,0 +1,99 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Fixed set of direct memory segments shared by the generations of the write cache.
+ *
+ * <p>A generation takes segments as it fills and gives them back once it has been flushed, so
+ * that the memory not used by the generations being flushed is available to the one receiving
+ * new entries.
+ */
+class WriteCacheSegmentPool implements Closeable {
+
+    private final int segmentSize;
+    private final ByteBuf[] segments;
+    private final ArrayBlockingQueue<ByteBuf> freeSegments;
+
+    WriteCacheSegmentPool(long maxSize, int segmentSize) {
+        checkArgument(segmentSize > 0 && Integer.bitCount(segmentSize) == 1,
+                "Segment size needs to be in form of 2^n");
+        this.segmentSize = segmentSize;
+        int segmentsCount = (int) Math.max(1, maxSize / segmentSize);
+        this.segments = new ByteBuf[segmentsCount];
+        this.freeSegments = new ArrayBlockingQueue<>(segmentsCount);
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = Unpooled.directBuffer(segmentSize, segmentSize);
+            freeSegments.add(segments[i]);
+        }
+    }
+
+    /**
+     * Pick the segment size for a pool of {@code maxSize} bytes: the largest power of two up to
+     * {@code maxSegmentSize} splitting the pool in at least {@code minSegments} segments.
+     */
+    static int segmentSizeFor(long maxSize, int maxSegmentSize, int minSegments) {
+        long size = Math.max(1, Math.min(maxSegmentSize, maxSize / minSegments));
+        return (int) Long.highestOneBit(size);
+    }
+
+    /**
+     * @return a free segment, or null if all the segments are used
+     */
+    ByteBuf acquire() {
+        return freeSegments.poll();
+    }
+
+    void release(ByteBuf segment) {
+        freeSegments.add(segment);
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    int getSegmentsCount() {
+        return segments.length;
+    }
+
+    long getMaxSize() {
+        return (long) segmentSize * segments.length;
+    }
+
+    long getFreeSize() {
+        return (long) segmentSize * freeSegments.size();
+    }
+
+    @Override
+    public void close() {
+        for (ByteBuf segment : segments) {
+            segment.release();
+        }
+    }
+}
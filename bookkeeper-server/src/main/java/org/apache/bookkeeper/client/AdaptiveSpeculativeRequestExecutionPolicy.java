@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} adapting to the latency of the bookies.
+ *
+ * <p>The speculative request is issued once the request has been outstanding for longer than the latency
+ * percentile of the bookie it was sent to, as tracked by a {@link BookieLatencyTracker}, bounded by
+ * {@code minSpeculativeRequestTimeout} and {@code maxSpeculativeRequestTimeout}. Until enough latencies of the
+ * bookie have been recorded, {@code defaultSpeculativeRequestTimeout} is used.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+    final BookieLatencyTracker latencyTracker;
+    final long defaultSpeculativeRequestTimeoutNanos;
+    final long minSpeculativeRequestTimeoutNanos;
+    final long maxSpeculativeRequestTimeoutNanos;
+
+    AdaptiveSpeculativeRequestExecutionPolicy(BookieLatencyTracker latencyTracker,
+            int defaultSpeculativeRequestTimeout, int minSpeculativeRequestTimeout, int maxSpeculativeRequestTimeout) {
+        if (minSpeculativeRequestTimeout <= 0 || minSpeculativeRequestTimeout > maxSpeculativeRequestTimeout) {
+            throw new IllegalArgumentException("Invalid values for minSpeculativeRequestTimeout and"
+                    + " maxSpeculativeRequestTimeout");
+        }
+        this.latencyTracker = latencyTracker;
+        this.defaultSpeculativeRequestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(defaultSpeculativeRequestTimeout);
+        this.minSpeculativeRequestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(minSpeculativeRequestTimeout);
+        this.maxSpeculativeRequestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxSpeculativeRequestTimeout);
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        return scheduleSpeculativeRead(scheduler, requestExecutor);
+    }
+
+    long getSpeculativeRequestTimeoutNanos(BookieId bookie) {
+        long latency = bookie == null ? -1L : latencyTracker.getLatencyNanos(bookie);
+        if (latency < 0) {
+            latency = defaultSpeculativeRequestTimeoutNanos;
+        }
+        return Math.min(maxSpeculativeRequestTimeoutNanos, Math.max(minSpeculativeRequestTimeoutNanos, latency));
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                         final SpeculativeRequestExecutor requestExecutor) {
+        final long speculativeRequestTimeoutNanos =
+                getSpeculativeRequestTimeoutNanos(requestExecutor.getLastRequestTarget());
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                // the next timeout depends on the bookie the speculative request was sent to
+                                scheduleSpeculativeRead(scheduler, requestExecutor);
+                            } else {
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeReadTimeoutNanos = {}", requestExecutor,
+                                        speculativeRequestTimeoutNanos);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeoutNanos = {} : ",
+                                    requestExecutor, speculativeRequestTimeoutNanos, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, speculativeRequestTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeoutNanos = {} : ",
+                        requestExecutor, speculativeRequestTimeoutNanos, re);
+            }
+        }
+        return null;
+    }
+}
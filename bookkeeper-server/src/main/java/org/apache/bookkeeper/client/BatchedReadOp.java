@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a range of contiguous entries with a single batched read request to one bookie.
+ *
+ * <p>Only valid when every bookie of the ensemble stores every entry of the range, that is
+ * when the ensemble size equals the write quorum size and the range doesn't cross an ensemble
+ * change. The bookies of the write set are tried in order until one of them returns at least
+ * the first entry. The result may hold fewer entries than requested.
+ */
+class BatchedReadOp implements BatchedReadEntryCallback, SafeRunnable {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final long startEntryId;
+    private final int maxCount;
+    private final long maxSize;
+    private final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+    private List<BookieId> ensemble;
+    private DistributionSchedule.WriteSet writeSet;
+    private int nextReplica = 0;
+    private int firstError = BKException.Code.OK;
+    private long requestTimeNanos;
+
+    BatchedReadOp(LedgerHandle lh, ClientContext clientCtx, long startEntryId, int maxCount, long maxSize) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.startEntryId = startEntryId;
+        this.maxCount = maxCount;
+        this.maxSize = maxSize;
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    @Override
+    public void safeRun() {
+        requestTimeNanos = MathUtils.nowInNano();
+        ensemble = lh.getLedgerMetadata().getEnsembleAt(startEntryId);
+        writeSet = lh.getWriteSetForReadOperation(startEntryId);
+        sendNext();
+    }
+
+    private void sendNext() {
+        if (nextReplica >= writeSet.size()) {
+            complete(firstError == BKException.Code.OK ? BKException.Code.BookieHandleNotAvailableException
+                                                       : firstError, null);
+            return;
+        }
+        BookieId to = ensemble.get(writeSet.get(nextReplica++));
+        clientCtx.getBookieClient().batchReadEntries(to, lh.ledgerId, startEntryId, maxCount, maxSize,
+                                                     this, to, false);
+    }
+
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList entries, Object ctx) {
+        if (rc != BKException.Code.OK) {
+            retry(ctx, "Error: " + BKException.getMessage(rc), rc);
+            return;
+        }
+
+        List<LedgerEntry> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            long entryId = startEntryId + i;
+            ByteBuf buffer = entries.getBuffer(i);
+            ByteBuf content;
+            try {
+                content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+            } catch (BKDigestMatchException e) {
+                clientCtx.getClientStats().getReadOpDmCounter().inc();
+                if (i == 0) {
+                    retry(ctx, "Mac mismatch", BKException.Code.DigestMatchException);
+                    return;
+                }
+                // keep the valid prefix, the caller reads the rest of the range again
+                LOG.warn("Mac mismatch reading entry {} of ledger {} from {}, truncating batch",
+                         entryId, ledgerId, ctx);
+                break;
+            }
+            LedgerEntryImpl entry = LedgerEntryImpl.create(ledgerId, entryId);
+            // the length is the last field of the entry metadata
+            entry.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            entry.setEntryBuf(content.retain());
+            result.add(entry);
+        }
+        complete(BKException.Code.OK, result);
+    }
+
+    private void retry(Object host, String errMsg, int rc) {
+        if (firstError == BKException.Code.OK
+                || firstError == BKException.Code.NoSuchEntryException
+                || firstError == BKException.Code.NoSuchLedgerExistsException) {
+            firstError = rc;
+        }
+        LOG.warn("{} while batch reading L{} E{} from bookie: {}", errMsg, lh.ledgerId, startEntryId, host);
+        sendNext();
+    }
+
+    private void complete(int rc, List<LedgerEntry> entries) {
+        writeSet.recycle();
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        if (rc != BKException.Code.OK) {
+            clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.completeExceptionally(BKException.create(rc));
+        } else {
+            clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.complete(LedgerEntriesImpl.create(entries));
+        }
+    }
+}
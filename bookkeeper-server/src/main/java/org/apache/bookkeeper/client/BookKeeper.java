@@ -132,6 +132,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
 
     final OrderedExecutor mainWorkerPool;
     final OrderedScheduler scheduler;
+    // null when the read-ahead is disabled
+    final ReadAheadCache readAheadCache;
     final HashedWheelTimer requestTimer;
     final boolean ownTimer;
     final FeatureProvider featureProvider;
@@ -428,6 +430,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
 
         // initialize resources
         this.scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("BookKeeperClientScheduler").build();
+        this.readAheadCache = conf.getReadAheadCacheMaxBytes() > 0
+                ? new ReadAheadCache(conf.getReadAheadCacheMaxBytes(), conf.getReadAheadEntries()) : null;
         this.mainWorkerPool = OrderedExecutor.newBuilder()
                 .name("BookKeeperClientWorker")
                 .numThreads(conf.getNumWorkerThreads())
@@ -506,13 +510,13 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         this.placementPolicy = initializeEnsemblePlacementPolicy(conf,
                 dnsResolver, this.requestTimer, this.featureProvider, this.statsLogger, bookieAddressResolver);
 
-        this.bookieWatcher = new BookieWatcherImpl(
-                conf, this.placementPolicy, metadataDriver.getRegistrationClient(), bookieAddressResolver,
-                this.statsLogger.scope(WATCHER_SCOPE));
-
         // initialize bookie client
         this.bookieClient = new BookieClientImpl(conf, this.eventLoopGroup, this.allocator, this.mainWorkerPool,
-                scheduler, rootStatsLogger, this.bookieWatcher.getBookieAddressResolver());
+                scheduler, this.requestTimer, rootStatsLogger, bookieAddressResolver);
+
+        this.bookieWatcher = new BookieWatcherImpl(
+                conf, this.placementPolicy, metadataDriver.getRegistrationClient(), bookieAddressResolver,
+                this.statsLogger.scope(WATCHER_SCOPE), this.bookieClient::getThrottledBookies);
 
         if (conf.getDiskWeightBasedPlacementEnabled()) {
             LOG.info("Weighted ledger placement enabled");
@@ -553,6 +557,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
         scheduler = null;
+        readAheadCache = null;
         requestTimer = null;
         metadataDriver = null;
         placementPolicy = null;
@@ -696,6 +701,14 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         return scheduler;
     }
 
+    HashedWheelTimer getRequestTimer() {
+        return requestTimer;
+    }
+
+    ReadAheadCache getReadAheadCache() {
+        return readAheadCache;
+    }
+
     @VisibleForTesting
     EnsemblePlacementPolicy getPlacementPolicy() {
         return placementPolicy;
@@ -1466,6 +1479,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
             LOG.warn("The scheduler did not shutdown cleanly");
         }
+        if (readAheadCache != null) {
+            readAheadCache.close();
+        }
         mainWorkerPool.shutdown();
         if (!mainWorkerPool.awaitTermination(10, TimeUnit.SECONDS)) {
             LOG.warn("The mainWorkerPool did not shutdown cleanly");
@@ -1649,6 +1665,16 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return BookKeeper.this.getScheduler();
             }
 
+            @Override
+            public HashedWheelTimer getRequestTimer() {
+                return BookKeeper.this.getRequestTimer();
+            }
+
+            @Override
+            public ReadAheadCache getReadAheadCache() {
+                return BookKeeper.this.getReadAheadCache();
+            }
+
             @Override
             public BookKeeperClientStats getClientStats() {
                 return clientStats;
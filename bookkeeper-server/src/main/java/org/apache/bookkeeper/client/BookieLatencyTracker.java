@@ -0,0 +1,214 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.bookkeeper.net.BookieId;
+
+/**
+ * Keeps track of the latency of the reads sent to each bookie, as a histogram with log-linear buckets
+ * (8 buckets per power of 2 microseconds, so within 12.5% of the actual value). The histograms decay by
+ * halving their counts every {@link #DECAY_SAMPLES} samples, so they follow the recent behaviour of the
+ * bookies.
+ *
+ * <p>They also decay every {@link #DECAY_INTERVAL_NANOS}, whether they get samples or not. A bookie read
+ * last because it was slow gets few or no samples, so without it the bookie would be stuck with its old
+ * latency. Once its histogram has decayed under {@link #MIN_SAMPLES}, its latency is unknown again and the
+ * bookie is read in its regular turn, which gives it fresh samples.
+ */
+class BookieLatencyTracker {
+
+    static final int MIN_SAMPLES = 32;
+    static final int DECAY_SAMPLES = 4096;
+    static final long DECAY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Percentile recomputed every that many samples
+    private static final int REFRESH_SAMPLES = 64;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    private static final int NUM_BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    // Bookies whose latency is over the lowest one of the write set by that factor are read last
+    static final int SLOW_BOOKIE_FACTOR = 2;
+
+    private final double percentile;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<BookieId, LatencySketch> sketches = new ConcurrentHashMap<>();
+
+    /**
+     * @param percentile percentile returned by {@link #getLatencyNanos(BookieId)}, between 0 and 100
+     */
+    BookieLatencyTracker(double percentile) {
+        this(percentile, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    BookieLatencyTracker(double percentile, LongSupplier nanoClock) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+        this.percentile = percentile;
+        this.nanoClock = nanoClock;
+    }
+
+    void recordLatency(BookieId bookie, long latencyNanos) {
+        LatencySketch sketch = sketches.get(bookie);
+        if (sketch == null) {
+            sketch = sketches.computeIfAbsent(bookie, b -> new LatencySketch(nanoClock.getAsLong()));
+        }
+        sketch.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos), nanoClock.getAsLong());
+    }
+
+    /**
+     * @return the latency percentile of the bookie, or -1 if there are not enough recent samples
+     */
+    long getLatencyNanos(BookieId bookie) {
+        LatencySketch sketch = sketches.get(bookie);
+        if (sketch == null) {
+            return -1L;
+        }
+        sketch.decayIfDue(nanoClock.getAsLong());
+        return sketch.percentileNanos;
+    }
+
+    /**
+     * Move the bookies much slower than the fastest one of the write set to the end of the write set,
+     * keeping the order of the other bookies.
+     */
+    void moveSlowBookiesLast(List<BookieId> ensemble, DistributionSchedule.WriteSet writeSet) {
+        int size = writeSet.size();
+        if (size < 2) {
+            return;
+        }
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            long latency = getLatencyNanos(ensemble.get(writeSet.get(i)));
+            if (latency >= 0 && latency < fastest) {
+                fastest = latency;
+            }
+        }
+        if (fastest == Long.MAX_VALUE) {
+            return;
+        }
+        long threshold = Math.max(fastest, TimeUnit.MILLISECONDS.toNanos(1)) * SLOW_BOOKIE_FACTOR;
+        int end = size;
+        for (int i = 0; i < end;) {
+            if (getLatencyNanos(ensemble.get(writeSet.get(i))) > threshold) {
+                writeSet.moveAndShift(i, size - 1);
+                end--;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value, in microseconds, falling in the bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private class LatencySketch {
+        private final long[] buckets = new long[NUM_BUCKETS];
+        private long count;
+        private long samplesSinceRefresh;
+        private volatile long lastDecayNanos;
+        volatile long percentileNanos = -1L;
+
+        LatencySketch(long nowNanos) {
+            this.lastDecayNanos = nowNanos;
+        }
+
+        synchronized void record(long micros, long nowNanos) {
+            decayIfDue(nowNanos);
+            buckets[bucketIndex(micros)]++;
+            count++;
+            if (count >= DECAY_SAMPLES) {
+                decay(1);
+            }
+            if (++samplesSinceRefresh >= REFRESH_SAMPLES || (percentileNanos < 0 && count >= MIN_SAMPLES)) {
+                samplesSinceRefresh = 0;
+                refreshPercentile();
+            }
+        }
+
+        void decayIfDue(long nowNanos) {
+            if (nowNanos - lastDecayNanos < DECAY_INTERVAL_NANOS) {
+                return;
+            }
+            synchronized (this) {
+                long intervals = (nowNanos - lastDecayNanos) / DECAY_INTERVAL_NANOS;
+                if (intervals <= 0) {
+                    // Decayed by another thread
+                    return;
+                }
+                lastDecayNanos += intervals * DECAY_INTERVAL_NANOS;
+                decay((int) Math.min(intervals, 63));
+                refreshPercentile();
+            }
+        }
+
+        private void decay(int halvings) {
+            count = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                buckets[i] >>= halvings;
+                count += buckets[i];
+            }
+        }
+
+        private void refreshPercentile() {
+            if (count < MIN_SAMPLES) {
+                percentileNanos = -1L;
+                return;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    percentileNanos = TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(i));
+                    return;
+                }
+            }
+        }
+    }
+}
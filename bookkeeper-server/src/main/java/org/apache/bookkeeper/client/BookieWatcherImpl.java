@@ -35,6 +35,7 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.bookkeeper.bookie.BookKeeperServerStats;
@@ -103,6 +104,8 @@ class BookieWatcherImpl implements BookieWatcher {
 
     // Bookies that will not be preferred to be chosen in a new ensemble
     final Cache<BookieId, Boolean> quarantinedBookies;
+    // Bookies out of credits for the requests of this client, also not preferred in a new ensemble
+    private final Supplier<Set<BookieId>> throttledBookies;
 
     private volatile Set<BookieId> writableBookies = Collections.emptySet();
     private volatile Set<BookieId> readOnlyBookies = Collections.emptySet();
@@ -117,7 +120,17 @@ class BookieWatcherImpl implements BookieWatcher {
                              RegistrationClient registrationClient,
                              BookieAddressResolver bookieAddressResolver,
                              StatsLogger statsLogger)  {
+        this(conf, placementPolicy, registrationClient, bookieAddressResolver, statsLogger, Collections::emptySet);
+    }
+
+    public BookieWatcherImpl(ClientConfiguration conf,
+                             EnsemblePlacementPolicy placementPolicy,
+                             RegistrationClient registrationClient,
+                             BookieAddressResolver bookieAddressResolver,
+                             StatsLogger statsLogger,
+                             Supplier<Set<BookieId>> throttledBookies)  {
         this.conf = conf;
+        this.throttledBookies = throttledBookies;
         this.bookieAddressResolver = bookieAddressResolver;
         this.placementPolicy = placementPolicy;
         this.registrationClient = registrationClient;
@@ -267,8 +280,10 @@ class BookieWatcherImpl implements BookieWatcher {
         PlacementPolicyAdherence isEnsembleAdheringToPlacementPolicy;
         try {
             Set<BookieId> quarantinedBookiesSet = quarantinedBookies.asMap().keySet();
+            Set<BookieId> excludedBookies = new HashSet<BookieId>(quarantinedBookiesSet);
+            excludedBookies.addAll(throttledBookies.get());
             newEnsembleResponse = placementPolicy.newEnsemble(ensembleSize, writeQuorumSize, ackQuorumSize,
-                    customMetadata, new HashSet<BookieId>(quarantinedBookiesSet));
+                    customMetadata, excludedBookies);
             socketAddresses = newEnsembleResponse.getResult();
             isEnsembleAdheringToPlacementPolicy = newEnsembleResponse.isAdheringToPolicy();
             if (isEnsembleAdheringToPlacementPolicy == PlacementPolicyAdherence.FAIL) {
@@ -282,7 +297,7 @@ class BookieWatcherImpl implements BookieWatcher {
             newEnsembleTimer.registerSuccessfulEvent(MathUtils.nowInNano() - startTime, TimeUnit.NANOSECONDS);
         } catch (BKNotEnoughBookiesException e) {
             if (log.isDebugEnabled()) {
-                log.debug("Not enough healthy bookies available, using quarantined bookies");
+                log.debug("Not enough healthy bookies available, using quarantined and throttled bookies");
             }
             newEnsembleResponse = placementPolicy.newEnsemble(
                     ensembleSize, writeQuorumSize, ackQuorumSize, customMetadata, new HashSet<>());
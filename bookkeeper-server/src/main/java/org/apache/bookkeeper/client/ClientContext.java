@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.HashedWheelTimer;
 
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
@@ -42,6 +43,8 @@ public interface ClientContext {
     ByteBufAllocator getByteBufAllocator();
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
+    HashedWheelTimer getRequestTimer();
+    ReadAheadCache getReadAheadCache();
     BookKeeperClientStats getClientStats();
     boolean isClientClosed();
 }
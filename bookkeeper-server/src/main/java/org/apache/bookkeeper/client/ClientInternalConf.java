@@ -34,6 +34,8 @@ class ClientInternalConf {
 
     final Optional<SpeculativeRequestExecutionPolicy> readSpeculativeRequestPolicy;
     final Optional<SpeculativeRequestExecutionPolicy> readLACSpeculativeRequestPolicy;
+    // Latencies of the reads, tracked for adaptive speculative reads, null otherwise
+    final BookieLatencyTracker bookieReadLatencyTracker;
 
     final int explicitLacInterval;
     final long waitForWriteSetMs;
@@ -45,7 +47,6 @@ class ClientInternalConf {
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
     final int maxAllowedEnsembleChanges;
-    final long timeoutMonitorIntervalSec;
     final boolean enableBookieFailureTracking;
     final boolean useV2WireProtocol;
     final boolean enforceMinNumFaultDomainsForWrite;
@@ -78,19 +79,28 @@ class ClientInternalConf {
 
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
         this.maxAllowedEnsembleChanges = conf.getMaxAllowedEnsembleChanges();
-        this.timeoutMonitorIntervalSec = conf.getTimeoutMonitorIntervalSec();
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.enableStickyReads = conf.isStickyReadsEnabled();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.isAdaptiveSpeculativeReadEnabled()) {
+            this.bookieReadLatencyTracker = new BookieLatencyTracker(conf.getSpeculativeReadLatencyPercentile());
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new AdaptiveSpeculativeRequestExecutionPolicy(
+                                        bookieReadLatencyTracker,
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMinSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
+            this.bookieReadLatencyTracker = null;
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
                                         conf.getMaxSpeculativeReadTimeout(),
                                         conf.getSpeculativeReadTimeoutBackoffMultiplier()));
         } else {
+            this.bookieReadLatencyTracker = null;
             this.readSpeculativeRequestPolicy = Optional.<SpeculativeRequestExecutionPolicy>empty();
         }
         if (conf.getFirstSpeculativeReadLACTimeout() > 0) {
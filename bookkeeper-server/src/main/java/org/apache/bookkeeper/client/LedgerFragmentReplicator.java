@@ -408,7 +408,8 @@ public class LedgerFragmentReplicator {
                     long startWriteEntryTime = MathUtils.nowInNano();
                     bkc.getBookieClient().addEntry(newBookie, lh.getId(),
                             lh.getLedgerKey(), entryId, ByteBufList.clone(toSend),
-                            multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
+                            multiWriteCallback, dataLength,
+                            BookieProtocol.FLAG_RECOVERY_ADD | BookieProtocol.FLAG_DIGEST_VERIFIED,
                             false, WriteFlag.NONE);
                     writeDataLatency.registerSuccessfulEvent(
                            MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
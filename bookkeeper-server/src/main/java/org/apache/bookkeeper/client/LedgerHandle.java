@@ -48,10 +48,10 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -100,16 +100,25 @@ public class LedgerHandle implements WriteHandle {
     final ClientContext clientCtx;
 
     final byte[] ledgerKey;
-    private Versioned<LedgerMetadata> versionedMetadata;
+    private volatile Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
-    long lastAddPushed;
+    volatile long lastAddPushed;
 
     private enum HandleState {
         OPEN,
         CLOSED
     }
 
-    private HandleState handleState = HandleState.OPEN;
+    private volatile HandleState handleState = HandleState.OPEN;
+
+    /**
+     * Guards the assignment of the entry id and ledger length of an add, so that the lengths grow
+     * with the entry ids, and its insertion in the pending adds queue. Closing the handle takes it
+     * to change the state, so that an add which has seen the handle open is queued before the close
+     * drains the queue. It is only held for these few steps and never while taking the monitor of
+     * the handle.
+     */
+    private final Object addLock = new Object();
     private final CompletableFuture<Void> closePromise = new CompletableFuture<>();
 
     /**
@@ -117,6 +126,8 @@ public class LedgerHandle implements WriteHandle {
       * This value is used by readers, the the LAC protocol
       */
     volatile long lastAddConfirmed;
+    private static final AtomicLongFieldUpdater<LedgerHandle> LAST_ADD_CONFIRMED_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(LedgerHandle.class, "lastAddConfirmed");
 
      /**
       * Next entryId which is expected to move forward during {@link #sendAddSuccessCallbacks() }. This is important
@@ -136,7 +147,7 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    long length;
+    volatile long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
@@ -144,8 +155,6 @@ public class LedgerHandle implements WriteHandle {
     final BookiesHealthInfo bookiesHealthInfo;
     final EnumSet<WriteFlag> writeFlags;
 
-    ScheduledFuture<?> timeoutFuture = null;
-
     @VisibleForTesting
     final Map<Integer, BookieId> delayedWriteFailedBookies =
         new HashMap<Integer, BookieId>();
@@ -282,27 +291,10 @@ public class LedgerHandle implements WriteHandle {
         } else {
             explicitLacFlushPolicy = ExplicitLacFlushPolicy.VOID_EXPLICITLAC_FLUSH_POLICY;
         }
-
-        if (clientCtx.getConf().addEntryQuorumTimeoutNanos > 0) {
-            SafeRunnable monitor = new SafeRunnable() {
-                @Override
-                public void safeRun() {
-                    monitorPendingAddOps();
-                }
-            };
-            this.timeoutFuture = clientCtx.getScheduler().scheduleAtFixedRate(
-                    monitor,
-                    clientCtx.getConf().timeoutMonitorIntervalSec,
-                    clientCtx.getConf().timeoutMonitorIntervalSec,
-                    TimeUnit.SECONDS);
-        }
     }
 
     private void tearDownWriteHandleState() {
         explicitLacFlushPolicy.stopExplicitLacFlush();
-        if (timeoutFuture != null) {
-            timeoutFuture.cancel(false);
-        }
     }
 
     /**
@@ -324,11 +316,11 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddConfirmed() {
+    public long getLastAddConfirmed() {
         return lastAddConfirmed;
     }
 
-    synchronized void setLastAddConfirmed(long lac) {
+    void setLastAddConfirmed(long lac) {
         this.lastAddConfirmed = lac;
     }
 
@@ -336,7 +328,7 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
+    public long getLastAddPushed() {
         return lastAddPushed;
     }
 
@@ -426,9 +418,12 @@ public class LedgerHandle implements WriteHandle {
      * @param delta
      * @return the length of the ledger after the addition
      */
-    synchronized long addToLength(long delta) {
-        this.length += delta;
-        return this.length;
+    long addToLength(long delta) {
+        synchronized (addLock) {
+            long newLength = this.length + delta;
+            this.length = newLength;
+            return newLength;
+        }
     }
 
     /**
@@ -437,7 +432,7 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger in bytes
      */
     @Override
-    public synchronized long getLength() {
+    public long getLength() {
         return this.length;
     }
 
@@ -517,6 +512,7 @@ public class LedgerHandle implements WriteHandle {
     }
 
     void asyncCloseInternal(final CloseCallback cb, final Object ctx, final int rc) {
+        invalidateReadAhead();
         try {
             doAsyncCloseInternal(cb, ctx, rc);
         } catch (RejectedExecutionException re) {
@@ -559,6 +555,10 @@ public class LedgerHandle implements WriteHandle {
 
                 synchronized (LedgerHandle.this) {
                     prevHandleState = handleState;
+                    synchronized (addLock) {
+                        // the adds which have seen the handle open are queued, the next ones see it closed
+                        handleState = HandleState.CLOSED;
+                    }
 
                     // drain pending adds first
                     pendingAdds = drainPendingAddsAndAdjustLength();
@@ -566,7 +566,6 @@ public class LedgerHandle implements WriteHandle {
                     // taking the length must occur after draining, as draining changes the length
                     lastEntry = lastAddPushed = LedgerHandle.this.lastAddConfirmed;
                     finalLength = LedgerHandle.this.length;
-                    handleState = HandleState.CLOSED;
                 }
 
                 // error out all pending adds during closing, the callbacks shouldn't be
@@ -694,6 +693,60 @@ public class LedgerHandle implements WriteHandle {
         asyncReadEntriesInternal(firstEntry, lastEntry, cb, ctx, false);
     }
 
+    /**
+     * Read a batch of contiguous entries asynchronously.
+     *
+     * <p>When using the v2 wire protocol and every bookie of the ensemble stores every entry,
+     * the batch is served by a single request to one bookie. Otherwise this falls back to
+     * reading the range entry by entry.
+     *
+     * @param startEntry
+     *          id of the first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to return
+     * @param maxSize
+     *          maximum total size in bytes of the returned entries
+     */
+    @Override
+    public CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        // Little sanity check
+        if (startEntry < 0 || maxCount <= 0 || maxSize <= 0) {
+            LOG.error("IncorrectParameterException on ledgerId:{} startEntry:{} maxCount:{} maxSize:{}",
+                    ledgerId, startEntry, maxCount, maxSize);
+            return FutureUtils.exception(new BKIncorrectParameterException());
+        }
+
+        if (startEntry > lastAddConfirmed) {
+            LOG.error("BatchReadAsync exception on ledgerId:{} startEntry:{} lastAddConfirmed:{}",
+                    ledgerId, startEntry, lastAddConfirmed);
+            return FutureUtils.exception(new BKReadException());
+        }
+
+        LedgerMetadata metadata = getLedgerMetadata();
+        // don't read past the LAC, nor across an ensemble change
+        long lastEntry = Math.min(startEntry + maxCount - 1, lastAddConfirmed);
+        long nextEnsembleChange = LedgerMetadataUtils.getNextEnsembleChange(metadata, startEntry);
+        if (nextEnsembleChange != -1) {
+            lastEntry = Math.min(lastEntry, nextEnsembleChange - 1);
+        }
+
+        if (!clientCtx.getConf().useV2WireProtocol
+                || metadata.getEnsembleSize() != metadata.getWriteQuorumSize()) {
+            return readEntriesInternalAsync(startEntry, lastEntry, false);
+        }
+
+        BatchedReadOp op = new BatchedReadOp(this, clientCtx, startEntry,
+                                             (int) (lastEntry - startEntry + 1), maxSize);
+        if (clientCtx.isClientClosed()) {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        } else if (isHandleWritable()) {
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
+        } else {
+            op.run();
+        }
+        return op.future();
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -863,6 +916,23 @@ public class LedgerHandle implements WriteHandle {
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        ReadAheadCache readAheadCache = clientCtx.getReadAheadCache();
+        if (readAheadCache != null && !isRecoveryRead && !clientCtx.isClientClosed()) {
+            return readAheadCache.read(this, firstEntry, lastEntry);
+        }
+        return readEntriesFromBookiesAsync(firstEntry, lastEntry, isRecoveryRead);
+    }
+
+    void invalidateReadAhead() {
+        ReadAheadCache readAheadCache = clientCtx.getReadAheadCache();
+        if (readAheadCache != null) {
+            readAheadCache.invalidate(this);
+        }
+    }
+
+    CompletableFuture<LedgerEntries> readEntriesFromBookiesAsync(long firstEntry,
+                                                                 long lastEntry,
+                                                                 boolean isRecoveryRead) {
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
@@ -1302,12 +1372,13 @@ public class LedgerHandle implements WriteHandle {
         }
 
         boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
+        synchronized (addLock) {
+            // the add lock ensures that the ledger isn't closed between
+            // checking and queuing the add, and that the entry ids and
+            // the ledger lengths are assigned in the same order
             if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
+                long entryId = lastAddPushed + 1;
+                lastAddPushed = entryId;
                 long currentLedgerLength = addToLength(op.payload.readableBytes());
                 op.setEntryId(entryId);
                 op.setLedgerLength(currentLedgerLength);
@@ -1359,15 +1430,32 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
-    synchronized void updateLastConfirmed(long lac, long len) {
-        if (lac > lastAddConfirmed) {
-            lastAddConfirmed = lac;
+    void updateLastConfirmed(long lac, long len) {
+        if (updateToMax(LAST_ADD_CONFIRMED_UPDATER, lac)) {
             lacUpdateHitsCounter.inc();
         } else {
             lacUpdateMissesCounter.inc();
         }
-        lastAddPushed = Math.max(lastAddPushed, lac);
-        length = Math.max(length, len);
+        synchronized (addLock) {
+            lastAddPushed = Math.max(lastAddPushed, lac);
+            length = Math.max(length, len);
+        }
+    }
+
+    /**
+     * Sets a field to the given value if it is greater than its current value.
+     *
+     * @return whether the field was updated
+     */
+    private boolean updateToMax(AtomicLongFieldUpdater<LedgerHandle> updater, long value) {
+        long current;
+        do {
+            current = updater.get(this);
+            if (value <= current) {
+                return false;
+            }
+        } while (!updater.compareAndSet(this, current, value));
+        return true;
     }
 
     /**
@@ -1771,23 +1859,11 @@ public class LedgerHandle implements WriteHandle {
         asyncCloseInternal(NoopCloseCallback.instance, null, rc);
     }
 
-    private void monitorPendingAddOps() {
-        int timedOut = 0;
-        for (PendingAddOp op : pendingAddOps) {
-            if (op.maybeTimeout()) {
-                timedOut++;
-            }
-        }
-        if (timedOut > 0) {
-            LOG.info("Timed out {} add ops", timedOut);
-        }
-    }
-
     void errorOutPendingAdds(int rc) {
         errorOutPendingAdds(rc, drainPendingAddsAndAdjustLength());
     }
 
-    synchronized List<PendingAddOp> drainPendingAddsAndAdjustLength() {
+    List<PendingAddOp> drainPendingAddsAndAdjustLength() {
         PendingAddOp pendingAddOp;
         List<PendingAddOp> opsDrained = new ArrayList<PendingAddOp>(pendingAddOps.size());
         while ((pendingAddOp = pendingAddOps.poll()) != null) {
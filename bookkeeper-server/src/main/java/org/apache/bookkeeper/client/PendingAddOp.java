@@ -28,6 +28,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
 import java.util.EnumSet;
 
 import java.util.HashSet;
@@ -72,6 +73,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
     ClientContext clientCtx;
     boolean isRecoveryAdd = false;
     long requestTimeNanos;
+    Timeout quorumTimeout;
     long qwcLatency; // Quorum Write Completion Latency after response from quorum bookies.
     Set<BookieId> addEntrySuccessBookies;
     long writeDelayedStartTime; // min fault domains completion latency after response from ack quorum bookies
@@ -155,20 +157,17 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         ++pendingWriteRequests;
     }
 
-    boolean maybeTimeout() {
-        if (MathUtils.elapsedNanos(requestTimeNanos) >= clientCtx.getConf().addEntryQuorumTimeoutNanos) {
-            timeoutQuorumWait();
-            return true;
+    void timeoutQuorumWait(Timeout timeout) {
+        final LedgerHandle lh = this.lh;
+        if (lh == null || quorumTimeout != timeout) {
+            // the op has been recycled in the meantime
+            return;
         }
-        return false;
-    }
-
-    void timeoutQuorumWait() {
         try {
             clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId, new SafeRunnable() {
                 @Override
                 public void safeRun() {
-                    if (completed) {
+                    if (quorumTimeout != timeout || completed) {
                         return;
                     } else if (addEntrySuccessBookies.size() >= lh.getLedgerMetadata().getAckQuorumSize()) {
                         // If ackQuorum number of bookies have acknowledged the write but still not complete, indicates
@@ -257,6 +256,15 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         }
 
         this.requestTimeNanos = MathUtils.nowInNano();
+        if (clientCtx.getConf().addEntryQuorumTimeoutNanos > 0) {
+            try {
+                quorumTimeout = clientCtx.getRequestTimer().newTimeout(this::timeoutQuorumWait,
+                        clientCtx.getConf().addEntryQuorumTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (IllegalStateException | RejectedExecutionException e) {
+                // the timer is stopped when the client is closed, the add is failed on close anyway
+                LOG.warn("Could not schedule the quorum timeout of add {}@{}", entryId, lh.ledgerId, e);
+            }
+        }
         checkNotNull(lh);
         checkNotNull(lh.macManager);
 
@@ -428,6 +436,10 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         } else {
             clientCtx.getClientStats().getAddOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
         }
+        if (quorumTimeout != null) {
+            quorumTimeout.cancel();
+            quorumTimeout = null;
+        }
         cb.addCompleteWithLatency(rc, lh, entryId, qwcLatency, ctx);
         callbackTriggered = true;
 
@@ -515,6 +527,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         clientCtx = null;
         isRecoveryAdd = false;
         completed = false;
+        quorumTimeout = null;
         pendingWriteRequests = 0;
         callbackTriggered = false;
         hasRun = false;
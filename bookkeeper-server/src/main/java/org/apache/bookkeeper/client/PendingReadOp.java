@@ -106,6 +106,9 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             } else {
                 writeSet = lh.getWriteSetForReadOperation(eId);
             }
+            if (clientCtx.getConf().bookieReadLatencyTracker != null) {
+                clientCtx.getConf().bookieReadLatencyTracker.moveSlowBookiesLast(ensemble, writeSet);
+            }
         }
 
         @Override
@@ -361,10 +364,16 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
 
         /**
-         * Send to next replica speculatively, if required and possible.
-         * This returns the host we may have sent to for unit testing.
-         * @return host we sent to if we sent. null otherwise.
+         * The replica the read was last sent to, whose latency decides how long to wait before reading from
+         * the next replica.
+         *
+         * @return the bookie of the last replica read, or null if the read has not been sent yet
          */
+        @Override
+        public synchronized BookieId getLastRequestTarget() {
+            return nextReplicaIndexToReadFrom > 0 ? ensemble.get(writeSet.get(nextReplicaIndexToReadFrom - 1)) : null;
+        }
+
         @Override
         synchronized BookieId maybeSendSpeculativeRead(BitSet heardFrom) {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
@@ -548,12 +557,14 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         final int bookieIndex;
         final BookieId to;
         final LedgerEntryRequest entry;
+        final long sendTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sendTimeNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -598,6 +609,10 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
+        if (clientCtx.getConf().bookieReadLatencyTracker != null) {
+            clientCtx.getConf().bookieReadLatencyTracker.recordLatency(rctx.to,
+                    MathUtils.elapsedNanos(rctx.sendTimeNanos));
+        }
 
         buffer.retain();
         // if entry has completed don't handle twice
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import org.apache.bookkeeper.net.BookieNode;
+
+/**
+ * Immutable snapshot of the writable bookies of a placement policy, grouped by network location, to pick
+ * random bookies without walking the network topology and shuffling all its leaves for every selection.
+ *
+ * <p>The placement policies build it from their known bookies when needed and drop it whenever the
+ * topology changes.
+ */
+final class PlacementCandidateIndex {
+
+    // Random probes before falling back to a scan of all the candidates
+    private static final int MAX_PROBES = 8;
+
+    private static final BookieNode[] EMPTY = new BookieNode[0];
+
+    private final BookieNode[] bookies;
+    private final Map<String, BookieNode[]> bookiesByLocation;
+
+    private PlacementCandidateIndex(BookieNode[] bookies, Map<String, BookieNode[]> bookiesByLocation) {
+        this.bookies = bookies;
+        this.bookiesByLocation = bookiesByLocation;
+    }
+
+    static PlacementCandidateIndex build(Collection<BookieNode> knownBookies) {
+        Map<String, List<BookieNode>> byLocation = new HashMap<>();
+        for (BookieNode bookie : knownBookies) {
+            byLocation.computeIfAbsent(bookie.getNetworkLocation(), location -> new ArrayList<>()).add(bookie);
+        }
+        Map<String, BookieNode[]> bookiesByLocation = new HashMap<>(byLocation.size() * 2);
+        byLocation.forEach((location, bookies) -> bookiesByLocation.put(location, bookies.toArray(EMPTY)));
+        return new PlacementCandidateIndex(knownBookies.toArray(EMPTY), bookiesByLocation);
+    }
+
+    BookieNode[] getBookies() {
+        return bookies;
+    }
+
+    /**
+     * @return the bookies whose network location is exactly {@code networkLocation}, or null if there are
+     *         none or the location is not the one of a bookie, such as an inner node of the topology
+     */
+    BookieNode[] getBookies(String networkLocation) {
+        return bookiesByLocation.get(networkLocation);
+    }
+
+    boolean isBookieLocation(String networkLocation) {
+        return bookiesByLocation.containsKey(networkLocation);
+    }
+
+    /**
+     * Pick a random candidate accepted by the filter, uniformly among the accepted ones. Candidates are
+     * probed at random first, which takes a few probes when most of them are accepted, and then all of them
+     * are checked.
+     *
+     * @return the chosen candidate, or null if none is accepted
+     */
+    static BookieNode selectRandom(BookieNode[] candidates, Predicate<BookieNode> filter) {
+        int numCandidates = candidates.length;
+        if (numCandidates == 0) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            BookieNode candidate = candidates[random.nextInt(numCandidates)];
+            if (filter.test(candidate)) {
+                return candidate;
+            }
+        }
+
+        List<BookieNode> accepted = null;
+        for (BookieNode candidate : candidates) {
+            if (filter.test(candidate)) {
+                if (accepted == null) {
+                    accepted = new ArrayList<>();
+                }
+                accepted.add(candidate);
+            }
+        }
+        return accepted == null ? null : accepted.get(random.nextInt(accepted.size()));
+    }
+}
@@ -628,6 +628,13 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
      */
     protected BookieNode selectRandomFromRack(String netPath, Set<Node> excludeBookies, Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble) throws BKNotEnoughBookiesException {
+        if (!this.isWeighted) {
+            BookieNode bn = selectRandomFromIndex(netPath, excludeBookies, predicate, ensemble);
+            if (bn != null) {
+                return bn;
+            }
+        }
+
         WeightedRandomSelection<BookieNode> wRSelection = null;
         List<Node> leaves = new ArrayList<Node>(topology.getLeaves(netPath));
         if (!this.isWeighted) {
@@ -677,6 +684,49 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         throw new BKNotEnoughBookiesException();
     }
 
+    /**
+     * Choose random node under a given network path using the candidate index, which avoids walking and
+     * shuffling the whole topology. Only the root, the location of bookies and the exclusion of the
+     * location of bookies are resolved by the index.
+     *
+     * @return chosen bookie, or null if the network path can't be resolved by the index
+     */
+    private BookieNode selectRandomFromIndex(String netPath, Set<Node> excludeBookies,
+            Predicate<BookieNode> predicate, Ensemble<BookieNode> ensemble) throws BKNotEnoughBookiesException {
+        PlacementCandidateIndex index = getCandidateIndex();
+        BookieNode[] candidates;
+        String excludedLocation = null;
+        if (NodeBase.ROOT.equals(netPath)) {
+            candidates = index.getBookies();
+        } else if (netPath.startsWith("~")) {
+            excludedLocation = netPath.substring(1);
+            if (!index.isBookieLocation(excludedLocation)) {
+                return null;
+            }
+            candidates = index.getBookies();
+        } else {
+            candidates = index.getBookies(netPath);
+            if (candidates == null) {
+                return null;
+            }
+        }
+
+        final String location = excludedLocation;
+        BookieNode bn = PlacementCandidateIndex.selectRandom(candidates,
+                n -> !excludeBookies.contains(n)
+                        && (location == null || !location.equals(n.getNetworkLocation()))
+                        && predicate.apply(n, ensemble));
+        if (bn == null) {
+            throw new BKNotEnoughBookiesException();
+        }
+        // got a good candidate
+        if (ensemble.addNode(bn)) {
+            // add the candidate to exclude set
+            excludeBookies.add(bn);
+        }
+        return bn;
+    }
+
     /**
      * Choose a random node from whole cluster.
      *
@@ -703,6 +753,10 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                     Predicate<BookieNode> predicate,
                                                     Ensemble<BookieNode> ensemble)
         throws BKNotEnoughBookiesException {
+        if (bookiesToSelectFrom == null && !isWeighted) {
+            return selectRandomBookiesFromIndex(numBookies, excludeBookies, predicate, ensemble);
+        }
+
         WeightedRandomSelection<BookieNode> wRSelection = null;
         if (bookiesToSelectFrom == null) {
             // If the list is null, we need to select from the entire knownBookies set
@@ -780,6 +834,42 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         throw new BKNotEnoughBookiesException();
     }
 
+    private List<BookieNode> selectRandomBookiesFromIndex(int numBookies,
+                                                          Set<Node> excludeBookies,
+                                                          Predicate<BookieNode> predicate,
+                                                          Ensemble<BookieNode> ensemble)
+        throws BKNotEnoughBookiesException {
+        BookieNode[] candidates = getCandidateIndex().getBookies();
+        List<BookieNode> newBookies = new ArrayList<BookieNode>(numBookies);
+        // bookies refused by the ensemble
+        Set<BookieNode> refusedBookies = new HashSet<BookieNode>();
+        while (numBookies > 0) {
+            // When durability is being enforced; we must not violate the
+            // predicate even when selecting a random bookie; as durability
+            // guarantee is not best effort; correctness is implied by it
+            BookieNode bookie = PlacementCandidateIndex.selectRandom(candidates,
+                    n -> !excludeBookies.contains(n) && !refusedBookies.contains(n)
+                            && (!enforceDurability || predicate.apply(n, ensemble)));
+            if (bookie == null) {
+                break;
+            }
+            if (ensemble.addNode(bookie)) {
+                excludeBookies.add(bookie);
+                newBookies.add(bookie);
+                --numBookies;
+            } else {
+                refusedBookies.add(bookie);
+            }
+        }
+        if (numBookies == 0) {
+            return newBookies;
+        }
+        LOG.warn("Failed to find {} bookies : excludeBookies {}, allBookies {}.",
+            numBookies, excludeBookies, knownBookies.values());
+
+        throw new BKNotEnoughBookiesException();
+    }
+
     @Override
     public void registerSlowBookie(BookieId bookieSocketAddress, long entryId) {
         if (reorderThresholdPendingRequests <= 0) {
@@ -0,0 +1,308 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead for ledgers read sequentially, shared by all the ledger handles of a client.
+ *
+ * <p>Once a ledger is read from where the previous read of that ledger ended, the next
+ * {@code readAheadEntries} confirmed entries are prefetched with a {@link PendingReadOp}, which
+ * reads them in parallel from the bookies of their write sets, and the following reads are served
+ * from the prefetched entries. The prefetch is refilled when half of it has been consumed. Only
+ * entries up to the last add confirmed are prefetched, so the cached entries never change.
+ *
+ * <p>The read-ahead state is kept per ledger handle, as each handle is read by its own reader. The
+ * entries are kept in the buffers they were received in, up to {@code maxBytes} over all the
+ * handles. Entries are dropped once read, when the reader of the handle seeks elsewhere and when
+ * the handle is closed.
+ */
+class ReadAheadCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadAheadCache.class);
+
+    private final long maxBytes;
+    private final int readAheadEntries;
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final ConcurrentHashMap<LedgerHandle, LedgerReadAhead> handles = new ConcurrentHashMap<>();
+
+    ReadAheadCache(long maxBytes, int readAheadEntries) {
+        if (readAheadEntries <= 0) {
+            throw new IllegalArgumentException("Invalid number of read-ahead entries " + readAheadEntries);
+        }
+        this.maxBytes = maxBytes;
+        this.readAheadEntries = readAheadEntries;
+    }
+
+    /**
+     * Read entries {@code firstEntry} to {@code lastEntry} of the ledger, from the cache when they
+     * have been prefetched, and from the bookies otherwise.
+     */
+    CompletableFuture<LedgerEntries> read(LedgerHandle lh, long firstEntry, long lastEntry) {
+        LedgerReadAhead readAhead = handles.computeIfAbsent(lh, handle -> new LedgerReadAhead(handle.getId()));
+        return readAhead.read(lh, firstEntry, lastEntry);
+    }
+
+    /**
+     * Drop the entries cached for the ledger handle.
+     */
+    void invalidate(LedgerHandle lh) {
+        LedgerReadAhead readAhead = handles.remove(lh);
+        if (readAhead != null) {
+            readAhead.close();
+        }
+    }
+
+    void close() {
+        for (LedgerHandle lh : handles.keySet()) {
+            invalidate(lh);
+        }
+    }
+
+    long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    private static CompletableFuture<LedgerEntries> mergeWith(List<LedgerEntry> entries,
+                                                              CompletableFuture<LedgerEntries> future) {
+        if (entries.isEmpty()) {
+            return future;
+        }
+        return future.whenComplete((remaining, cause) -> {
+            if (cause != null) {
+                entries.forEach(LedgerEntry::close);
+            }
+        }).thenApply(remaining -> {
+            try {
+                for (LedgerEntry entry : remaining) {
+                    entries.add(LedgerEntryImpl.duplicate(entry));
+                }
+            } finally {
+                remaining.close();
+            }
+            return LedgerEntriesImpl.create(entries);
+        });
+    }
+
+    private class LedgerReadAhead {
+        private final long ledgerId;
+
+        // Fields guarded by this
+        private final TreeMap<Long, LedgerEntry> entries = new TreeMap<>();
+        // Entry following the last one read, a read starting there is sequential
+        private long nextEntryId = -1;
+        // Last entry requested by the read-ahead
+        private long prefetchedUpTo = -1;
+        private boolean prefetching = false;
+        private long pendingFirstEntry;
+        private long pendingLastEntry;
+        // Reads waiting for entries of the pending prefetch, which are handed to them directly
+        private final List<PrefetchWaiter> waiters = new ArrayList<>();
+        private boolean closed = false;
+
+        LedgerReadAhead(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+
+        CompletableFuture<LedgerEntries> read(LedgerHandle lh, long firstEntry, long lastEntry) {
+            List<LedgerEntry> hits = new ArrayList<>();
+            PrefetchWaiter waiter = null;
+            long missedEntry;
+            synchronized (this) {
+                boolean sequential = firstEntry == nextEntryId;
+                nextEntryId = lastEntry + 1;
+                if (sequential) {
+                    removeBefore(firstEntry);
+                } else {
+                    clear();
+                }
+
+                missedEntry = take(firstEntry, lastEntry, hits);
+                if (missedEntry <= lastEntry && prefetching
+                        && missedEntry >= pendingFirstEntry && missedEntry <= pendingLastEntry) {
+                    // The entries are on their way
+                    waiter = new PrefetchWaiter(missedEntry, Math.min(lastEntry, pendingLastEntry));
+                    waiters.add(waiter);
+                }
+
+                if (sequential) {
+                    maybePrefetch(lh, lastEntry);
+                }
+            }
+
+            if (missedEntry > lastEntry) {
+                return CompletableFuture.completedFuture(LedgerEntriesImpl.create(hits));
+            } else if (waiter != null) {
+                final long firstMissedEntry = missedEntry;
+                return waiter.future.thenCompose(prefetched -> {
+                    hits.addAll(prefetched);
+                    return readRemaining(lh, hits, firstMissedEntry + prefetched.size(), lastEntry);
+                });
+            } else {
+                return readRemaining(lh, hits, missedEntry, lastEntry);
+            }
+        }
+
+        private CompletableFuture<LedgerEntries> readRemaining(LedgerHandle lh, List<LedgerEntry> hits,
+                                                               long firstEntry, long lastEntry) {
+            if (firstEntry > lastEntry) {
+                return CompletableFuture.completedFuture(LedgerEntriesImpl.create(hits));
+            }
+            return mergeWith(hits, lh.readEntriesFromBookiesAsync(firstEntry, lastEntry, false));
+        }
+
+        /**
+         * Move the cached entries from {@code firstEntry} to {@code hits}, up to the first one
+         * missing.
+         *
+         * @return the id of the first entry not found in the cache
+         */
+        private long take(long firstEntry, long lastEntry, List<LedgerEntry> hits) {
+            long entryId = firstEntry;
+            while (entryId <= lastEntry) {
+                LedgerEntry entry = entries.remove(entryId);
+                if (entry == null) {
+                    break;
+                }
+                cachedBytes.addAndGet(-entry.getEntryBuffer().readableBytes());
+                hits.add(entry);
+                entryId++;
+            }
+            return entryId;
+        }
+
+        private void maybePrefetch(LedgerHandle lh, long lastEntry) {
+            if (prefetching || prefetchedUpTo - lastEntry >= readAheadEntries / 2
+                    || cachedBytes.get() >= maxBytes) {
+                return;
+            }
+            long firstEntry = Math.max(lastEntry, prefetchedUpTo) + 1;
+            long lastPrefetchedEntry = Math.min(lastEntry + readAheadEntries, lh.getLastAddConfirmed());
+            if (firstEntry > lastPrefetchedEntry) {
+                return;
+            }
+
+            prefetchedUpTo = lastPrefetchedEntry;
+            pendingFirstEntry = firstEntry;
+            pendingLastEntry = lastPrefetchedEntry;
+            prefetching = true;
+            lh.readEntriesFromBookiesAsync(firstEntry, lastPrefetchedEntry, false)
+                .whenComplete((prefetched, cause) -> onPrefetchComplete(firstEntry, prefetched, cause));
+        }
+
+        private void onPrefetchComplete(long firstEntry, LedgerEntries prefetched, Throwable cause) {
+            List<PrefetchWaiter> toNotify;
+            synchronized (this) {
+                prefetching = false;
+                toNotify = new ArrayList<>(waiters);
+                waiters.clear();
+                if (cause != null) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Failed to read ahead entries from {} of ledger {}", firstEntry, ledgerId, cause);
+                    }
+                    // Let the next reads retry, the waiting ones read their entries from the bookies
+                    prefetchedUpTo = Math.min(prefetchedUpTo, firstEntry - 1);
+                } else {
+                    try {
+                        for (LedgerEntry entry : prefetched) {
+                            for (PrefetchWaiter waiter : toNotify) {
+                                waiter.offer(entry);
+                            }
+                            int size = entry.getEntryBuffer().readableBytes();
+                            if (closed || entry.getEntryId() < nextEntryId
+                                    || cachedBytes.get() + size > maxBytes) {
+                                continue;
+                            }
+                            if (entries.putIfAbsent(entry.getEntryId(), LedgerEntryImpl.duplicate(entry)) == null) {
+                                cachedBytes.addAndGet(size);
+                            }
+                        }
+                    } finally {
+                        prefetched.close();
+                    }
+                }
+            }
+            for (PrefetchWaiter waiter : toNotify) {
+                waiter.future.complete(waiter.entries);
+            }
+        }
+
+        private void removeBefore(long entryId) {
+            Iterator<LedgerEntry> iterator = entries.headMap(entryId).values().iterator();
+            while (iterator.hasNext()) {
+                release(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        private void clear() {
+            entries.values().forEach(this::release);
+            entries.clear();
+            prefetchedUpTo = -1;
+        }
+
+        private void release(LedgerEntry entry) {
+            cachedBytes.addAndGet(-entry.getEntryBuffer().readableBytes());
+            entry.close();
+        }
+
+        synchronized void close() {
+            closed = true;
+            clear();
+        }
+    }
+
+    /**
+     * A read waiting for entries {@code firstEntry} to {@code lastEntry} of the pending prefetch.
+     * It gets the contiguous entries of that range which were prefetched, possibly none.
+     */
+    private static class PrefetchWaiter {
+        private final long firstEntry;
+        private final long lastEntry;
+        private final List<LedgerEntry> entries = new ArrayList<>();
+        private final CompletableFuture<List<LedgerEntry>> future = new CompletableFuture<>();
+
+        PrefetchWaiter(long firstEntry, long lastEntry) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+
+        void offer(LedgerEntry entry) {
+            if (entry.getEntryId() == firstEntry + entries.size() && entry.getEntryId() <= lastEntry) {
+                entries.add(LedgerEntryImpl.duplicate(entry));
+            }
+        }
+    }
+}
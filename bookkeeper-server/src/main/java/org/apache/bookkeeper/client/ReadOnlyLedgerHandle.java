@@ -111,11 +111,13 @@ class ReadOnlyLedgerHandle extends LedgerHandle implements LedgerMetadataListene
     public void close()
             throws InterruptedException, BKException {
         clientCtx.getLedgerManager().unregisterLedgerMetadataListener(ledgerId, this);
+        invalidateReadAhead();
     }
 
     @Override
     public void asyncClose(CloseCallback cb, Object ctx) {
         clientCtx.getLedgerManager().unregisterLedgerMetadataListener(ledgerId, this);
+        invalidateReadAhead();
         cb.closeComplete(BKException.Code.OK, this, ctx);
     }
 
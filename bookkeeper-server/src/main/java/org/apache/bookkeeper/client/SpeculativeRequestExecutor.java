@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define an executor for issuing speculative requests.
@@ -39,4 +40,13 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Returns the bookie the last request was sent to, for the policies adapting to the bookies.
+     *
+     * @return the bookie, or null if unknown
+     */
+    default BookieId getLastRequestTarget() {
+        return null;
+    }
 }
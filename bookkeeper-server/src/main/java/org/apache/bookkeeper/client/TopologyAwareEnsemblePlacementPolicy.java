@@ -71,6 +71,8 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
     protected WeightedRandomSelection<BookieNode> weightedSelection;
     // for now, we just maintain the writable bookies' topology
     protected NetworkTopology topology;
+    // snapshot of the known bookies, built on demand and dropped on topology changes
+    private volatile PlacementCandidateIndex candidateIndex;
     protected DNSToSwitchMapping dnsResolver;
     protected BookieAddressResolver bookieAddressResolver;
     @StatsDoc(
@@ -663,6 +665,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                     leftBookies, joinedBookies, deadBookies);
             handleBookiesThatLeft(leftBookies);
             handleBookiesThatJoined(joinedBookies);
+            invalidateCandidateIndex();
             if (this.isWeighted && (leftBookies.size() > 0 || joinedBookies.size() > 0)) {
                 this.weightedSelection.updateMap(this.bookieInfoMap);
             }
@@ -681,6 +684,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
      */
     @Override
     public void handleBookiesThatLeft(Set<BookieId> leftBookies) {
+        invalidateCandidateIndex();
         for (BookieId addr : leftBookies) {
             try {
                 BookieNode node = knownBookies.remove(addr);
@@ -712,6 +716,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
      */
     @Override
     public void handleBookiesThatJoined(Set<BookieId> joinedBookies) {
+        invalidateCandidateIndex();
         // node joined
         for (BookieId addr : joinedBookies) {
             try {
@@ -754,6 +759,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                             topology.add(newNode);
                             knownBookies.put(bookieAddress, newNode);
                             historyBookies.put(bookieAddress, newNode);
+                            invalidateCandidateIndex();
                         }
                     }
                 } catch (IllegalArgumentException | NetworkTopologyImpl.InvalidTopologyException e) {
@@ -790,6 +796,26 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
         }
     }
 
+    /*
+     * this method should be called in readlock scope of 'rwLock'
+     */
+    PlacementCandidateIndex getCandidateIndex() {
+        PlacementCandidateIndex index = candidateIndex;
+        if (index == null) {
+            // Readers racing here build the same index, the topology can't change under the read lock
+            index = PlacementCandidateIndex.build(knownBookies.values());
+            candidateIndex = index;
+        }
+        return index;
+    }
+
+    /*
+     * this method should be called in writelock scope of 'rwLock'
+     */
+    void invalidateCandidateIndex() {
+        candidateIndex = null;
+    }
+
     protected BookieNode createBookieNode(BookieId addr) {
         return new BookieNode(addr, resolveNetworkLocation(addr));
     }
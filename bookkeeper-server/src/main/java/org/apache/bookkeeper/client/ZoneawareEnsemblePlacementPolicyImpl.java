@@ -444,6 +444,23 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             int writeQuorumSize, int ackQuorumSize, Map<String, byte[]> customMetadata,
             Set<BookieId> excludeBookies) throws BKNotEnoughBookiesException {
         int ensembleSize = newEnsemble.size();
+        if (!this.isWeighted) {
+            // pick from the candidate index, without building the set of all the bookies to consider
+            BookieNode[] candidates = getCandidateIndex().getBookies();
+            for (int i = 0; i < ensembleSize; i++) {
+                // the positions not chosen yet are null
+                BookieNode candidateNode = PlacementCandidateIndex.selectRandom(candidates,
+                        n -> !excludeBookies.contains(n.getAddr()) && !newEnsemble.contains(n.getAddr()));
+                if (candidateNode == null) {
+                    LOG.error("Not enough bookies are available to form ensemble of size: {}", ensembleSize);
+                    throw new BKNotEnoughBookiesException();
+                }
+                newEnsemble.set(i, candidateNode.getAddr());
+            }
+            return PlacementResult.of(newEnsemble,
+                    isEnsembleAdheringToPlacementPolicy(newEnsemble, writeQuorumSize, ackQuorumSize));
+        }
+
         Set<BookieNode> bookiesToConsider = getBookiesToConsider(excludeBookies);
         if (bookiesToConsider.size() < newEnsemble.size()) {
             LOG.error("Not enough bookies are available to form ensemble of size: {}", newEnsemble.size());
@@ -59,6 +59,46 @@ public interface ReadHandle extends Handle {
                                                               BKException.HANDLER);
     }
 
+    /**
+     * Read a batch of contiguous entries asynchronously, starting from {@code startEntry}.
+     * <br>The batch holds at most {@code maxCount} entries and stops before exceeding
+     * {@code maxSize} bytes, but always contains at least the first entry. It never goes
+     * beyond the LastAddConfirmed, so it may return fewer entries than requested.
+     * <br>Implementations may serve the batch with a single request to one bookie;
+     * the default implementation falls back to {@link #readAsync(long, long)}, ignoring maxSize.
+     *
+     * @param startEntry
+     *          id of the first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to return
+     * @param maxSize
+     *          maximum total size in bytes of the returned entries
+     * @return an handle to the result of the operation
+     */
+    default CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        long lastEntry = Math.min(startEntry + Math.max(maxCount, 1) - 1, getLastAddConfirmed());
+        return readAsync(startEntry, lastEntry);
+    }
+
+    /**
+     * Read a batch of contiguous entries synchronously.
+     *
+     * @param startEntry
+     *          id of the first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to return
+     * @param maxSize
+     *          maximum total size in bytes of the returned entries
+     * @return the result of the operation
+     *
+     * @see #batchReadAsync(long, int, long)
+     */
+    default LedgerEntries batchRead(long startEntry, int maxCount, long maxSize)
+            throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(batchReadAsync(startEntry, maxCount, maxSize),
+                                                              BKException.HANDLER);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
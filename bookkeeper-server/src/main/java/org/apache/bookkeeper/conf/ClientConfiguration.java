@@ -100,6 +100,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
     protected static final String USE_V2_WIRE_PROTOCOL = "useV2WireProtocol";
+    protected static final String ADD_ENTRY_BATCH_MAX_ENTRIES = "addEntryBatchMaxEntries";
+    protected static final String ADD_ENTRY_BATCH_MAX_BYTES = "addEntryBatchMaxBytes";
     protected static final String NETTY_USE_POOLED_BUFFERS = "nettyUsePooledBuffers";
 
     // Read Parameters
@@ -109,6 +111,11 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_ENABLED = "adaptiveSpeculativeReadEnabled";
+    protected static final String MIN_SPECULATIVE_READ_TIMEOUT = "minSpeculativeReadTimeout";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String READ_AHEAD_CACHE_MAX_BYTES = "readAheadCacheMaxBytes";
+    protected static final String READ_AHEAD_ENTRIES = "readAheadEntries";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -596,6 +603,56 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of entries of a ledger packed in a single add request to a bookie.
+     *
+     * <p>Adds to the same ledger that are queued on a connection while the previous ones are
+     * being written are sent to the bookie in a single request. This only applies to the v2
+     * wire protocol, and requires bookies that support batched adds. A value lower than 2
+     * disables batching, which is the default.
+     *
+     * @return max number of entries in a batched add request
+     */
+    public int getAddEntryBatchMaxEntries() {
+        return getInt(ADD_ENTRY_BATCH_MAX_ENTRIES, 0);
+    }
+
+    /**
+     * Set the max number of entries of a ledger packed in a single add request to a bookie.
+     *
+     * @param maxEntries
+     *          max number of entries in a batched add request, lower than 2 to disable batching
+     * @return client configuration.
+     * @see #getAddEntryBatchMaxEntries()
+     */
+    public ClientConfiguration setAddEntryBatchMaxEntries(int maxEntries) {
+        setProperty(ADD_ENTRY_BATCH_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the max size, in bytes, of the entries packed in a single add request to a bookie.
+     *
+     * <p>The default is 64KB.
+     *
+     * @return max size of a batched add request
+     */
+    public int getAddEntryBatchMaxBytes() {
+        return getInt(ADD_ENTRY_BATCH_MAX_BYTES, 64 * 1024);
+    }
+
+    /**
+     * Set the max size, in bytes, of the entries packed in a single add request to a bookie.
+     *
+     * @param maxBytes
+     *          max size of a batched add request
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxBytes(int maxBytes) {
+        setProperty(ADD_ENTRY_BATCH_MAX_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * Get the socket read timeout. This is the number of
      * seconds we wait without hearing a response from a bookie
@@ -703,7 +760,11 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      *
      * @see #setTimeoutMonitorIntervalSec(long)
      * @return the interval at which request timeouts will be checked
+     * @deprecated the client times out its add quorum waits and its bookie requests on its request timer, see
+     *             {@link #getTimeoutTimerTickDurationMs()}. The interval is only used by a bookie client created
+     *             without a request timer.
      */
+    @Deprecated
     public long getTimeoutMonitorIntervalSec() {
         int minTimeout = Math.min(Math.min(getAddEntryQuorumTimeout(),
                                            getAddEntryTimeout()), getReadEntryTimeout());
@@ -721,7 +782,11 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      *
      * @param timeoutInterval The timeout monitor interval, in seconds
      * @return client configuration
+     * @deprecated the client times out its add quorum waits and its bookie requests on its request timer, see
+     *             {@link #setTimeoutTimerTickDurationMs(long)}. The interval is only used by a bookie client created
+     *             without a request timer.
      */
+    @Deprecated
     public ClientConfiguration setTimeoutMonitorIntervalSec(long timeoutInterval) {
         setProperty(TIMEOUT_MONITOR_INTERVAL_SEC, Long.toString(timeoutInterval));
         return this;
@@ -1038,6 +1103,127 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the speculative reads adapt to the latency of the bookies.
+     *
+     * <p>When enabled, the client tracks the latency of the reads sent to each bookie. A speculative read is
+     * sent once a read has been outstanding for longer than the {@link #getSpeculativeReadLatencyPercentile()}
+     * latency of its bookie, bounded by {@link #getMinSpeculativeReadTimeout()} and
+     * {@link #getMaxSpeculativeReadTimeout()}, instead of backing off from
+     * {@link #getFirstSpeculativeReadTimeout()}, which is only used until the latency of the bookie is known.
+     * Bookies much slower than the others of the write set are also read last.
+     *
+     * @return true if the speculative reads are adaptive.
+     */
+    public boolean isAdaptiveSpeculativeReadEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the speculative reads adapting to the latency of the bookies.
+     *
+     * @see #isAdaptiveSpeculativeReadEnabled()
+     * @param enabled
+     *          whether the speculative reads are adaptive.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the min speculative read timeout, used when speculative reads are adaptive.
+     *
+     * @return min speculative read timeout.
+     */
+    public int getMinSpeculativeReadTimeout() {
+        return getInt(MIN_SPECULATIVE_READ_TIMEOUT, 2);
+    }
+
+    /**
+     * Set the min speculative read timeout, used when speculative reads are adaptive.
+     *
+     * @param timeout
+     *          min speculative read timeout.
+     * @return client configuration.
+     */
+    public ClientConfiguration setMinSpeculativeReadTimeout(int timeout) {
+        setProperty(MIN_SPECULATIVE_READ_TIMEOUT, timeout);
+        return this;
+    }
+
+    /**
+     * Get the percentile of the read latency of a bookie after which a speculative read is sent, when speculative
+     * reads are adaptive.
+     *
+     * @return read latency percentile, between 0 and 100.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 95.0);
+    }
+
+    /**
+     * Set the percentile of the read latency of a bookie after which a speculative read is sent, when speculative
+     * reads are adaptive.
+     *
+     * @param percentile
+     *          read latency percentile, between 0 and 100.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the max size of the read-ahead cache, shared by all the ledgers read by the client.
+     *
+     * <p>When a ledger is read sequentially, the client prefetches the next {@link #getReadAheadEntries()}
+     * confirmed entries while the application consumes the current ones, and serves the following reads from the
+     * prefetched entries. The cached entries are kept in the buffers they were received in, which are usually
+     * off-heap. A value of 0 disables the read-ahead.
+     *
+     * @return max size of the read-ahead cache, in bytes.
+     */
+    public long getReadAheadCacheMaxBytes() {
+        return getLong(READ_AHEAD_CACHE_MAX_BYTES, 0L);
+    }
+
+    /**
+     * Set the max size of the read-ahead cache, shared by all the ledgers read by the client.
+     *
+     * @see #getReadAheadCacheMaxBytes()
+     * @param maxBytes
+     *          max size of the read-ahead cache, in bytes. 0 disables the read-ahead.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReadAheadCacheMaxBytes(long maxBytes) {
+        setProperty(READ_AHEAD_CACHE_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the number of entries prefetched ahead of a sequential reader.
+     *
+     * @return number of entries read ahead.
+     */
+    public int getReadAheadEntries() {
+        return getInt(READ_AHEAD_ENTRIES, 100);
+    }
+
+    /**
+     * Set the number of entries prefetched ahead of a sequential reader.
+     *
+     * @param entries
+     *          number of entries read ahead.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReadAheadEntries(int entries) {
+        setProperty(READ_AHEAD_ENTRIES, entries);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
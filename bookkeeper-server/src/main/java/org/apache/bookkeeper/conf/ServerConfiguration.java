@@ -140,6 +140,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT = "journalAdaptiveGroupCommit";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
@@ -153,9 +154,13 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
+    protected static final String JOURNAL_STREAMS_PER_DIRECTORY = "journalStreamsPerDirectory";
+    protected static final String JOURNAL_ASYNC_FORCE_WRITE_ENABLED = "journalAsyncForceWriteEnabled";
+    protected static final String JOURNAL_ASYNC_FORCE_WRITE_QUEUE_DEPTH = "journalAsyncForceWriteQueueDepth";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String MAX_REQUEST_CREDITS_PER_CONNECTION = "maxRequestCreditsPerConnection";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -224,6 +229,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String ZERO_COPY_READ_MIN_ENTRY_SIZE = "zeroCopyReadMinEntrySize";
+    protected static final String NUM_DIGEST_VERIFICATION_THREADS = "numDigestVerificationThreads";
+    protected static final String MAX_PENDING_DIGEST_VERIFICATIONS = "maxPendingDigestVerifications";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -924,6 +932,79 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getInt(JOURNAL_QUEUE_SIZE, 10_000);
     }
 
+    /**
+     * Set the number of journal streams hosted in each journal directory.
+     *
+     * @param journalStreamsPerDirectory
+     *            the number of journal streams per journal directory
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalStreamsPerDirectory(int journalStreamsPerDirectory) {
+        this.setProperty(JOURNAL_STREAMS_PER_DIRECTORY, journalStreamsPerDirectory);
+        return this;
+    }
+
+    /**
+     * Get the number of journal streams hosted in each journal directory.
+     *
+     * <p>Each stream is an independent journal, with its own journal thread, force write
+     * thread and last log mark, and ledgers are sharded across all the streams of all the
+     * journal directories. Using more than one stream per directory lets a single fast
+     * device sustain more than one writer thread worth of fsyncs.
+     *
+     * @return the number of journal streams per journal directory.
+     */
+    public int getJournalStreamsPerDirectory() {
+        return Math.max(1, this.getInt(JOURNAL_STREAMS_PER_DIRECTORY, 1));
+    }
+
+    /**
+     * Set whether the journal force writes are submitted asynchronously.
+     *
+     * @param enabled
+     *            true to submit the force writes asynchronously
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAsyncForceWriteEnabled(boolean enabled) {
+        this.setProperty(JOURNAL_ASYNC_FORCE_WRITE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the journal force writes are submitted asynchronously.
+     *
+     * <p>When enabled, the force write thread submits the fdatasync of the journal files
+     * through io_uring and reaps their completions, instead of blocking on each sync. This
+     * lets several syncs be in flight and acknowledges the adds as soon as their sync
+     * completes. On systems without io_uring support the syncs are run synchronously.
+     *
+     * @return true if the journal force writes are submitted asynchronously.
+     */
+    public boolean getJournalAsyncForceWriteEnabled() {
+        return this.getBoolean(JOURNAL_ASYNC_FORCE_WRITE_ENABLED, false);
+    }
+
+    /**
+     * Set the max number of asynchronous journal force writes in flight.
+     *
+     * @param queueDepth
+     *            the max number of force writes in flight
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAsyncForceWriteQueueDepth(int queueDepth) {
+        this.setProperty(JOURNAL_ASYNC_FORCE_WRITE_QUEUE_DEPTH, queueDepth);
+        return this;
+    }
+
+    /**
+     * Get the max number of asynchronous journal force writes in flight.
+     *
+     * @return the max number of force writes in flight.
+     */
+    public int getJournalAsyncForceWriteQueueDepth() {
+        return this.getInt(JOURNAL_ASYNC_FORCE_WRITE_QUEUE_DEPTH, 32);
+    }
+
     /**
      * Set the max amount of memory that can be used by the journal.
      *
@@ -1030,6 +1111,34 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of add and read requests a client can have in progress on a connection before
+     * throttling itself. 0 == no flow control.
+     *
+     * <p>When enabled, the v3 protocol add and read responses advertise to the client how many more requests
+     * it can send on the connection, which also accounts for {@link #getMaxAddsInProgressLimit()} and
+     * {@link #getMaxReadsInProgressLimit()}. The client holds its requests once it is out of credits, and
+     * prefers other bookies for the ensembles of new ledgers.
+     *
+     * @return max number of requests in progress per connection.
+     */
+    public int getMaxRequestCreditsPerConnection() {
+        return this.getInt(MAX_REQUEST_CREDITS_PER_CONNECTION, 0);
+    }
+
+    /**
+     * Set the max number of add and read requests a client can have in progress on a connection before
+     * throttling itself. 0 == no flow control.
+     *
+     * @param value
+     *          max number of requests in progress per connection.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxRequestCreditsPerConnection(int value) {
+        this.setProperty(MAX_REQUEST_CREDITS_PER_CONNECTION, value);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -1982,6 +2091,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Set the minimum size of the entries sent to v2 protocol readers straight from the entry
+     * log files, with sendfile, instead of being copied through the bookie memory. Only entries
+     * which are not in the write or read caches are sent this way, and only over plain text
+     * connections. A value of 0 disables zero-copy reads.
+     *
+     * @param minEntrySize
+     *          minimum entry size in bytes, or 0 to disable
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadMinEntrySize(int minEntrySize) {
+        setProperty(ZERO_COPY_READ_MIN_ENTRY_SIZE, minEntrySize);
+        return this;
+    }
+
+    /**
+     * Get the minimum size of the entries served with zero-copy reads.
+     *
+     * @return minimum entry size in bytes, or 0 if zero-copy reads are disabled
+     */
+    public int getZeroCopyReadMinEntrySize() {
+        return getInt(ZERO_COPY_READ_MIN_ENTRY_SIZE, 0);
+    }
+
 
 
     /**
@@ -2055,6 +2188,46 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(MAX_PENDING_ADD_REQUESTS_PER_THREAD, 10000);
     }
 
+    /**
+     * Set the number of threads verifying the digests of the entries written to the bookie. The verification runs
+     * in parallel with the journal and does not delay the responses, a corrupted entry is reported in the logs and
+     * in the stats. 0 disables the verification.
+     *
+     * @param numThreads
+     *          number of threads verifying digests
+     * @return server configuration
+     */
+    public ServerConfiguration setNumDigestVerificationThreads(int numThreads) {
+        setProperty(NUM_DIGEST_VERIFICATION_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * Get the number of threads verifying the digests of the entries written to the bookie (default: 0, disabled).
+     */
+    public int getNumDigestVerificationThreads() {
+        return getInt(NUM_DIGEST_VERIFICATION_THREADS, 0);
+    }
+
+    /**
+     * Set the max number of entries waiting for their digest to be verified. Entries written beyond that are not
+     * verified.
+     *
+     * @param maxPendingDigestVerifications
+     * @return server configuration
+     */
+    public ServerConfiguration setMaxPendingDigestVerifications(int maxPendingDigestVerifications) {
+        setProperty(MAX_PENDING_DIGEST_VERIFICATIONS, maxPendingDigestVerifications);
+        return this;
+    }
+
+    /**
+     * Get the max number of entries waiting for their digest to be verified (default: 10000 entries).
+     */
+    public int getMaxPendingDigestVerifications() {
+        return getInt(MAX_PENDING_DIGEST_VERIFICATIONS, 10000);
+    }
+
 
 
     /**
@@ -2310,6 +2483,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal adapts the group commit wait and batch size to the load.
+     *
+     * <p>When enabled, the journal measures the sync latency and the arrival rate of entries,
+     * and only waits to group entries when more than one entry is expected per sync. The wait
+     * is then about one sync latency, and the batch size the number of entries expected during
+     * a sync. {@link #getJournalMaxGroupWaitMSec()} and {@link #getJournalBufferedEntriesThreshold()}
+     * are used as upper bounds, and {@link #getJournalFlushWhenQueueEmpty()} is ignored.
+     *
+     * @return true if the group commit is adaptive.
+     */
+    public boolean getJournalAdaptiveGroupCommit() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_COMMIT, false);
+    }
+
+    /**
+     * Enable/disable the adaptive journal group commit.
+     *
+     * @param enabled flag to enable/disable the adaptive group commit
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommit(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT, enabled);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
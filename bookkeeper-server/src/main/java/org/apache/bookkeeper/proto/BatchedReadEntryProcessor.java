@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.Recycler;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadRequest;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a batched read, returning as many contiguous entries as fit within the
+ * limits of the request, starting from the requested entry.
+ *
+ * <p>The first entry is always returned if it exists, even if it exceeds the max size.
+ * Hitting a missing entry after the first one just ends the batch, as the client will
+ * fall back to reading the rest of the range from another bookie.
+ *
+ * <p>The response is also bounded by the max frame size of the bookie, as the client would
+ * otherwise fail to decode it and close the connection.
+ */
+class BatchedReadEntryProcessor extends PacketProcessorBase<BatchedReadRequest> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadEntryProcessor.class);
+
+    // frame length, packet header, error code, ledger id and entry id of a response
+    static final int RESPONSE_HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+    // length prefix of each entry in a response
+    static final int ENTRY_FRAMING_SIZE = 4;
+
+    private boolean throttleReadResponses;
+    private int maxFrameSize;
+
+    public static BatchedReadEntryProcessor create(BatchedReadRequest request,
+                                                   Channel channel,
+                                                   BookieRequestProcessor requestProcessor,
+                                                   boolean throttleReadResponses,
+                                                   int maxFrameSize) {
+        BatchedReadEntryProcessor rep = RECYCLER.get();
+        rep.init(request, channel, requestProcessor);
+        rep.throttleReadResponses = throttleReadResponses;
+        rep.maxFrameSize = maxFrameSize;
+        return rep;
+    }
+
+    @Override
+    protected void processPacket() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new batched read request: {}", request);
+        }
+        int errorCode = BookieProtocol.EOK;
+        long startTimeNanos = MathUtils.nowInNano();
+        ByteBufList data = null;
+        try {
+            data = readEntries();
+        } catch (Bookie.NoLedgerException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOENTRY;
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            LOG.error("Ledger {} is in an unknown state", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception batch reading at {}:{} : {}", request.getLedgerId(),
+                      request.getEntryId(), t.getMessage(), t);
+            errorCode = BookieProtocol.EBADREQ;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Batched read rc = {} for {}", errorCode, request);
+        }
+        sendResponse(data, errorCode, startTimeNanos);
+    }
+
+    @VisibleForTesting
+    ByteBufList readEntries() throws IOException, BookieException {
+        long ledgerId = request.getLedgerId();
+        long entryId = request.getEntryId();
+        int maxCount = Math.max(request.getMaxCount(), 1);
+        long maxSize = Math.min(request.getMaxSize(), maxFrameSize - RESPONSE_HEADER_SIZE);
+
+        ByteBuf first = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+        ByteBufList data = ByteBufList.get(first);
+        long size = first.readableBytes() + ENTRY_FRAMING_SIZE;
+        try {
+            while (data.size() < maxCount) {
+                ByteBuf entry;
+                try {
+                    entry = requestProcessor.getBookie().readEntry(ledgerId, entryId + data.size());
+                } catch (Bookie.NoEntryException e) {
+                    break;
+                }
+                if (size + entry.readableBytes() + ENTRY_FRAMING_SIZE > maxSize) {
+                    entry.release();
+                    break;
+                }
+                size += entry.readableBytes() + ENTRY_FRAMING_SIZE;
+                data.add(entry);
+            }
+        } catch (IOException | BookieException e) {
+            // the entries read so far are still valid, so return them instead of failing the batch
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Stopping batched read {} after {} entries", request, data.size(), e);
+            }
+        } catch (Throwable t) {
+            data.release();
+            throw t;
+        }
+        return data;
+    }
+
+    private void sendResponse(ByteBufList data, int errorCode, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        final OpStatsLogger logger = stats.getReadEntryStats();
+        BookieProtocol.Response response;
+        if (errorCode == BookieProtocol.EOK) {
+            logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildBatchedReadResponse(data, request);
+        } else {
+            if (data != null) {
+                data.release();
+            }
+            logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildErrorResponse(errorCode, request);
+        }
+
+        if (throttleReadResponses) {
+            sendResponseAndWait(errorCode, response, stats.getReadRequestStats());
+        } else {
+            sendResponse(errorCode, response, stats.getReadRequestStats());
+        }
+        recycle();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchedReadEntry(%d, %d, %d)", request.getLedgerId(), request.getEntryId(),
+                             request.getMaxCount());
+    }
+
+    private void recycle() {
+        super.reset();
+        throttleReadResponses = false;
+        maxFrameSize = 0;
+        this.recyclerHandle.recycle(this);
+    }
+
+    private final Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle;
+
+    private BatchedReadEntryProcessor(Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
+    private static final Recycler<BatchedReadEntryProcessor> RECYCLER =
+            new Recycler<BatchedReadEntryProcessor>() {
+        @Override
+        protected BatchedReadEntryProcessor newObject(Recycler.Handle<BatchedReadEntryProcessor> handle) {
+            return new BatchedReadEntryProcessor(handle);
+        }
+    };
+}
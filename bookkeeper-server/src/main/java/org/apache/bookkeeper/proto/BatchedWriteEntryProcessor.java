@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol.ParsedBatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes batched add entry requests.
+ *
+ * <p>The entries are handed to the bookie together, which queues them in the journal as one group, so
+ * they are written, flushed and synced together. Each entry is acknowledged with its own add response.
+ */
+class BatchedWriteEntryProcessor extends PacketProcessorBase<ParsedBatchAddRequest> implements WriteCallback {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedWriteEntryProcessor.class);
+
+    long startTimeNanos;
+
+    BatchedWriteEntryProcessor(ParsedBatchAddRequest request, Channel channel,
+                               BookieRequestProcessor requestProcessor) {
+        init(request, channel, requestProcessor);
+    }
+
+    @Override
+    protected void processPacket() {
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(request.isHighPriority() && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            LOG.warn("BookieServer is running in readonly mode,"
+                    + " so rejecting the request from the client!");
+            sendErrorResponses(BookieProtocol.EREADONLY);
+            return;
+        }
+
+        startTimeNanos = MathUtils.nowInNano();
+        ByteBuf[] entries = request.getEntries();
+        requestProcessor.getRequestStats().getAddEntryBatchSizeStats().registerSuccessfulValue(entries.length);
+        for (ByteBuf entry : entries) {
+            requestProcessor.maybeVerifyDigest(entry, request.isDigestVerified());
+        }
+        int rc = BookieProtocol.EOK;
+        try {
+            // The bookie releases the entries it adds, and clears them from the array
+            requestProcessor.getBookie().addEntries(entries, request.isRecoveryAdd(), this, channel,
+                    request.getMasterKey());
+        } catch (OperationRejectedException e) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Operation rejected while writing {}", request, e);
+            }
+            rc = BookieProtocol.ETOOMANYREQUESTS;
+        } catch (IOException e) {
+            LOG.error("Error writing {}", request, e);
+            rc = BookieProtocol.EIO;
+        } catch (BookieException.LedgerFencedException lfe) {
+            LOG.error("Attempt to write to fenced ledger", lfe);
+            rc = BookieProtocol.EFENCED;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+            rc = BookieProtocol.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception while writing {} : {}", request, t.getMessage(), t);
+            rc = BookieProtocol.EBADREQ;
+        }
+
+        if (rc != BookieProtocol.EOK) {
+            // The entries added before the failure are acknowledged by the journal. The remaining ones would
+            // fail the same way, and the client fails them anyway once one of the entries fails on this bookie
+            sendErrorResponses(rc);
+        }
+    }
+
+    /**
+     * Fail the entries of the batch not handed to the bookie, and release them.
+     */
+    private void sendErrorResponses(int rc) {
+        ByteBuf[] entries = request.getEntries();
+        for (int i = 0; i < entries.length; i++) {
+            ByteBuf entry = entries[i];
+            if (entry == null) {
+                continue;
+            }
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+            if (startTimeNanos > 0) {
+                requestProcessor.getRequestStats().getAddEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+            sendResponse(rc,
+                         BookieProtocol.AddResponse.create(request.getProtocolVersion(), rc,
+                                                           request.getLedgerId(), entryId),
+                         requestProcessor.getRequestStats().getAddRequestStats());
+            entry.release();
+            entries[i] = null;
+        }
+    }
+
+    void rejectAll(int rc) {
+        sendErrorResponses(rc);
+    }
+
+    @Override
+    public void writeComplete(int rc, long ledgerId, long entryId,
+                              BookieId addr, Object ctx) {
+        if (BookieProtocol.EOK == rc) {
+            requestProcessor.getRequestStats().getAddEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getAddEntryStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        sendResponse(rc,
+                     BookieProtocol.AddResponse.create(request.getProtocolVersion(), rc, ledgerId, entryId),
+                     requestProcessor.getRequestStats().getAddRequestStats());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchedWriteEntry(%d, %d)",
+                             request.getLedgerId(), request.getEntries().length);
+    }
+}
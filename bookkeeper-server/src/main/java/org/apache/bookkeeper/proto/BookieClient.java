@@ -22,10 +22,12 @@ package org.apache.bookkeeper.proto;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
@@ -49,6 +51,14 @@ public interface BookieClient {
      */
     List<BookieId> getFaultyBookies();
 
+    /**
+     * Get the set of bookies which have run out of credits for the requests of this client,
+     * when they do flow control.
+     *
+     * @return the set of throttled bookies
+     */
+    Set<BookieId> getThrottledBookies();
+
     /**
      * Check whether the channel used to write to a bookie channel is writable.
      * A channel becomes non-writable when its buffer become full, and will stay
@@ -180,6 +190,25 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a batch of contiguous entries from bookie at address {@code address}, starting from
+     * {@code startEntryId}. The bookie returns at least the first entry if it has it, and stops
+     * at {@code maxCount} entries or before the response exceeds {@code maxSize} bytes, so fewer
+     * entries than requested may be returned. Only supported over the v2 wire protocol.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param startEntryId id of the first entry to read
+     * @param maxCount maximum number of entries to return
+     * @param maxSize maximum size in bytes of the returned entries
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param allowFastFail fail the read immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieId,long)}
+     */
+    void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount, long maxSize,
+                          BatchedReadEntryCallback cb, Object ctx, boolean allowFastFail);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -31,13 +31,18 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import io.netty.util.Timeout;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -57,6 +62,7 @@ import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
@@ -84,6 +90,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     private final OrderedExecutor executor;
     private final ScheduledExecutorService scheduler;
     private final ScheduledFuture<?> timeoutFuture;
+    private final HashedWheelTimer requestTimer;
+    private volatile Timeout timeoutCheck;
 
     private final EventLoopGroup eventLoopGroup;
     private final ByteBufAllocator allocator;
@@ -108,6 +116,21 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                             ByteBufAllocator allocator,
                             OrderedExecutor executor, ScheduledExecutorService scheduler,
                             StatsLogger statsLogger, BookieAddressResolver bookieAddressResolver) throws IOException {
+        this(conf, eventLoopGroup, allocator, executor, scheduler, null, statsLogger, bookieAddressResolver);
+    }
+
+    /**
+     * Create a bookie client checking the timeouts of its requests on the given timer.
+     *
+     * @param requestTimer timer ticking the request timeout checks, or null to check them on the scheduler
+     *                     every {@link ClientConfiguration#getTimeoutMonitorIntervalSec()}
+     */
+    @SuppressWarnings("deprecation")
+    public BookieClientImpl(ClientConfiguration conf, EventLoopGroup eventLoopGroup,
+                            ByteBufAllocator allocator,
+                            OrderedExecutor executor, ScheduledExecutorService scheduler,
+                            HashedWheelTimer requestTimer,
+                            StatsLogger statsLogger, BookieAddressResolver bookieAddressResolver) throws IOException {
         this.conf = conf;
         this.v3Conf = new ClientConfiguration(conf);
         this.v3Conf.setUseV2WireProtocol(false);
@@ -126,7 +149,14 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
 
         this.scheduler = scheduler;
-        if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
+        this.requestTimer = requestTimer;
+        if (conf.getAddEntryTimeout() <= 0 && conf.getReadEntryTimeout() <= 0) {
+            this.timeoutFuture = null;
+        } else if (requestTimer != null) {
+            // Check on every tick of the completion tables' wheels, each check only visits the expired buckets
+            this.timeoutFuture = null;
+            scheduleTimeoutCheck();
+        } else {
             SafeRunnable monitor = safeRun(() -> {
                 monitorPendingOperations();
             });
@@ -134,8 +164,27 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                                                                     conf.getTimeoutMonitorIntervalSec(),
                                                                     conf.getTimeoutMonitorIntervalSec(),
                                                                     TimeUnit.SECONDS);
-        } else {
-            this.timeoutFuture = null;
+        }
+    }
+
+    private void scheduleTimeoutCheck() {
+        try {
+            timeoutCheck = requestTimer.newTimeout(timeout -> {
+                if (closed) {
+                    return;
+                }
+                try {
+                    monitorPendingOperations();
+                } catch (Throwable t) {
+                    LOG.warn("Failed to check the timeouts of the pending operations", t);
+                }
+                scheduleTimeoutCheck();
+            }, CompletionTable.TICK_NANOS, TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException | RejectedExecutionException e) {
+            // The timer has been stopped, the client is being closed
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Could not schedule the timeout check of the pending operations", e);
+            }
         }
     }
 
@@ -165,6 +214,23 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         return faultyBookies;
     }
 
+    @Override
+    public Set<BookieId> getThrottledBookies() {
+        Set<BookieId> throttledBookies = null;
+        for (PerChannelBookieClientPool channelPool : channels.values()) {
+            if (channelPool instanceof DefaultPerChannelBookieClientPool) {
+                DefaultPerChannelBookieClientPool pool = (DefaultPerChannelBookieClientPool) channelPool;
+                if (pool.isOutOfCredits()) {
+                    if (throttledBookies == null) {
+                        throttledBookies = new HashSet<>();
+                    }
+                    throttledBookies.add(pool.address);
+                }
+            }
+        }
+        return throttledBookies == null ? Collections.emptySet() : throttledBookies;
+    }
+
     @Override
     public boolean isWritable(BookieId address, long key) {
         final PerChannelBookieClientPool pcbcPool = lookupClient(address);
@@ -378,6 +444,24 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    private void completeBatchedRead(final int rc,
+                                     final long ledgerId,
+                                     final long startEntryId,
+                                     final BatchedReadEntryCallback cb,
+                                     final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    cb.readEntriesComplete(rc, ledgerId, startEntryId, null, ctx);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                   ledgerId, startEntryId, null, ctx);
+        }
+    }
+
     private static class ChannelReadyForAddEntryCallback
         implements GenericCallback<PerChannelBookieClient> {
         private final Handle<ChannelReadyForAddEntryCallback> recyclerHandle;
@@ -515,6 +599,26 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void batchReadEntries(final BookieId addr, final long ledgerId, final long startEntryId,
+                                 final int maxCount, final long maxSize,
+                                 final BatchedReadEntryCallback cb, final Object ctx,
+                                 final boolean allowFastFail) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.readEntriesComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                                   ledgerId, startEntryId, null, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeBatchedRead(rc, ledgerId, startEntryId, cb, ctx);
+            } else {
+                pcbc.batchReadEntries(ledgerId, startEntryId, maxCount, maxSize, cb, ctx, allowFastFail);
+            }
+        }, ledgerId);
+    }
 
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
@@ -592,6 +696,10 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             if (timeoutFuture != null) {
                 timeoutFuture.cancel(false);
             }
+            Timeout check = timeoutCheck;
+            if (check != null) {
+                check.cancel();
+            }
         } finally {
             closeLock.writeLock().unlock();
         }
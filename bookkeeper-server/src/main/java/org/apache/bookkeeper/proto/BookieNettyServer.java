@@ -331,6 +331,8 @@ class BookieNettyServer {
 
                     // For ByteBufList, skip the usual LengthFieldPrepender and have the encoder itself to add it
                     pipeline.addLast("bytebufList", ByteBufList.ENCODER_WITH_SIZE);
+                    // Same for the zero-copy read responses, which are sent as a header and a file region
+                    pipeline.addLast("fileRegion", BookieProtoEncoding.FileRegionFrameEncoder.INSTANCE);
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
                     pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
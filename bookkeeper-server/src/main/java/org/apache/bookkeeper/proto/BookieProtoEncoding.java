@@ -35,7 +35,10 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
@@ -118,6 +121,33 @@ public class BookieProtoEncoding {
                 ar.recycle();
                 data.prepend(buf);
                 return data;
+            } else if (r instanceof BookieProtocol.BatchedAddRequest) {
+                BookieProtocol.BatchedAddRequest bar = (BookieProtocol.BatchedAddRequest) r;
+                int totalHeaderSize = 4 // for the header
+                    + BookieProtocol.MASTER_KEY_LENGTH // for the master key
+                    + 4; // for the number of entries
+                ByteBuf buf = allocator.buffer(totalHeaderSize);
+                buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), r.getFlags()));
+                buf.writeBytes(r.getMasterKey(), 0, BookieProtocol.MASTER_KEY_LENGTH);
+                buf.writeInt(bar.getCount());
+                ByteBufList data = bar.getData();
+                data.prepend(buf);
+                return data;
+            } else if (r instanceof BookieProtocol.BatchedReadRequest) {
+                BookieProtocol.BatchedReadRequest br = (BookieProtocol.BatchedReadRequest) r;
+                int totalHeaderSize = 4 // for request type
+                    + 8 // for ledgerId
+                    + 8 // for start entryId
+                    + 4 // for max count
+                    + 8; // for max size
+
+                ByteBuf buf = allocator.buffer(totalHeaderSize);
+                buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), r.getFlags()));
+                buf.writeLong(br.getLedgerId());
+                buf.writeLong(br.getEntryId());
+                buf.writeInt(br.getMaxCount());
+                buf.writeLong(br.getMaxSize());
+                return buf;
             } else if (r instanceof BookieProtocol.ReadRequest) {
                 int totalHeaderSize = 4 // for request type
                     + 8 // for ledgerId
@@ -176,6 +206,28 @@ public class BookieProtoEncoding {
                         masterKey, packet.retain());
             }
 
+            case BookieProtocol.BATCH_ADD_ENTRY: {
+                byte[] masterKey = readMasterKey(packet);
+                int count = packet.readInt();
+                ByteBuf[] entries = new ByteBuf[count];
+                try {
+                    for (int i = 0; i < count; i++) {
+                        int length = packet.readInt();
+                        entries[i] = packet.retainedSlice(packet.readerIndex(), length);
+                        packet.skipBytes(length);
+                    }
+                } catch (RuntimeException e) {
+                    for (ByteBuf entry : entries) {
+                        ReferenceCountUtil.safeRelease(entry);
+                    }
+                    throw e;
+                }
+                if (count > 0) {
+                    ledgerId = entries[0].getLong(entries[0].readerIndex());
+                }
+                return new BookieProtocol.ParsedBatchAddRequest(version, ledgerId, flags, masterKey, entries);
+            }
+
             case BookieProtocol.READENTRY:
                 ledgerId = packet.readLong();
                 entryId = packet.readLong();
@@ -187,6 +239,13 @@ public class BookieProtoEncoding {
                 } else {
                     return new BookieProtocol.ReadRequest(version, ledgerId, entryId, flags, null);
                 }
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                ledgerId = packet.readLong();
+                entryId = packet.readLong();
+                int maxCount = packet.readInt();
+                long maxSize = packet.readLong();
+                return new BookieProtocol.BatchedReadRequest(version, ledgerId, entryId, maxCount, maxSize, flags);
+            }
             case BookieProtocol.AUTH:
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
                 builder.mergeFrom(new ByteBufInputStream(packet), extensionRegistry);
@@ -240,6 +299,19 @@ public class BookieProtoEncoding {
                 return msg;
             }
             BookieProtocol.Response r = (BookieProtocol.Response) msg;
+            if (msg instanceof BookieProtocol.FileRegionReadResponse) {
+                FileRegion region = ((BookieProtocol.FileRegionReadResponse) r).getRegion();
+                ByteBuf header = allocator.directBuffer(28);
+                // The frame size is written here, as the length prepender only handles buffers
+                header.writeInt(24 + (int) region.count());
+                header.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+                header.writeInt(r.getErrorCode());
+                header.writeLong(r.getLedgerId());
+                header.writeLong(r.getEntryId());
+                r.recycle();
+                return new FileRegionFrame(header, region);
+            }
+
             ByteBuf buf = allocator.buffer(24);
             buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
 
@@ -255,6 +327,28 @@ public class BookieProtoEncoding {
                     } else {
                         return buf;
                     }
+                } else if (msg instanceof BookieProtocol.BatchedReadResponse) {
+                    buf.writeInt(r.getErrorCode());
+                    buf.writeLong(r.getLedgerId());
+                    buf.writeLong(r.getEntryId());
+
+                    BookieProtocol.BatchedReadResponse brr = (BookieProtocol.BatchedReadResponse) r;
+                    if (!brr.hasData()) {
+                        return buf;
+                    }
+                    // each entry is prefixed by its length, the prefixes share a single buffer
+                    ByteBufList data = brr.getData();
+                    ByteBuf lengths = allocator.buffer(4 * data.size());
+                    ByteBufList out = ByteBufList.get(buf);
+                    for (int i = 0; i < data.size(); i++) {
+                        ByteBuf entry = data.getBuffer(i);
+                        lengths.writeInt(entry.readableBytes());
+                        out.add(lengths.retainedSlice(4 * i, 4));
+                        out.add(entry.retain());
+                    }
+                    lengths.release();
+                    data.release();
+                    return out;
                 } else if (msg instanceof BookieProtocol.AddResponse) {
                     buf.writeInt(r.getErrorCode());
                     buf.writeLong(r.getLedgerId());
@@ -295,6 +389,24 @@ public class BookieProtoEncoding {
 
                 return new BookieProtocol.ReadResponse(
                         version, rc, ledgerId, entryId, buffer.retainedSlice());
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                rc = buffer.readInt();
+                ledgerId = buffer.readLong();
+                entryId = buffer.readLong();
+
+                ByteBufList data = null;
+                while (buffer.isReadable()) {
+                    int length = buffer.readInt();
+                    ByteBuf entry = buffer.retainedSlice(buffer.readerIndex(), length);
+                    buffer.skipBytes(length);
+                    if (data == null) {
+                        data = ByteBufList.get(entry);
+                    } else {
+                        data.add(entry);
+                    }
+                }
+                return new BookieProtocol.BatchedReadResponse(version, rc, ledgerId, entryId, data);
+            }
             case BookieProtocol.AUTH:
                 ByteBufInputStream bufStream = new ByteBufInputStream(buffer);
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
@@ -483,6 +595,58 @@ public class BookieProtoEncoding {
         }
     }
 
+    /**
+     * A v2 protocol frame made of a header buffer, which includes the frame size, followed by
+     * an entry sent from a file.
+     */
+    static final class FileRegionFrame extends AbstractReferenceCounted {
+        private final ByteBuf header;
+        private final FileRegion region;
+
+        FileRegionFrame(ByteBuf header, FileRegion region) {
+            this.header = header;
+            this.region = region;
+        }
+
+        @Override
+        protected void deallocate() {
+            header.release();
+            region.release();
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            header.touch(hint);
+            region.touch(hint);
+            return this;
+        }
+    }
+
+    /**
+     * Writes {@link FileRegionFrame}s as a header buffer followed by the file region, so that the
+     * transport can send the entry with sendfile. It must be placed after the length prepender, as
+     * the frame already carries its size.
+     */
+    @Sharable
+    public static class FileRegionFrameEncoder extends ChannelOutboundHandlerAdapter {
+        public static final FileRegionFrameEncoder INSTANCE = new FileRegionFrameEncoder();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof FileRegionFrame) {
+                FileRegionFrame frame = (FileRegionFrame) msg;
+                try {
+                    ctx.write(frame.header.retain(), ctx.voidPromise());
+                    ctx.write(frame.region.retain(), promise);
+                } finally {
+                    frame.release();
+                }
+            } else {
+                ctx.write(msg, promise);
+            }
+        }
+    }
+
     /**
      * A response message decoder.
      */
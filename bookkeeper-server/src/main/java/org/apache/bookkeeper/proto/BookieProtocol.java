@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
@@ -134,6 +135,22 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
 
+    /**
+     * Batched read. The request payload is the 8-byte ledger id, the 8-byte id of the
+     * first entry to read, a 4-byte max number of entries and an 8-byte max response size.
+     * The response has the same header as a read response, followed by each entry
+     * prefixed by its 4-byte length. Entries are contiguous, starting from the first entry.
+     */
+    byte BATCH_READ_ENTRY = 7;
+
+    /**
+     * Batched add. The request payload is the master key, a 4-byte number of entries, then
+     * each entry prefixed by its 4-byte length. Entries are formatted exactly as the payload
+     * of an add request and must belong to the ledger of the header. The bookie acknowledges
+     * each entry with a regular add response.
+     */
+    byte BATCH_ADD_ENTRY = 8;
+
     /**
      * The error code that indicates success.
      */
@@ -189,6 +206,12 @@ public interface BookieProtocol {
     short FLAG_DO_FENCING = 0x0001;
     short FLAG_RECOVERY_ADD = 0x0002;
     short FLAG_HIGH_PRIORITY = 0x0004;
+    /**
+     * The digest of the entry has been computed or verified by the writer from data it trusts, so the bookie does
+     * not need to verify it again. Set by the replication, which re-adds entries it has read and verified. Only
+     * trusted along with {@link #FLAG_RECOVERY_ADD}, so that regular writers cannot skip the verification.
+     */
+    short FLAG_DIGEST_VERIFIED = 0x0008;
 
     /**
      * A Bookie request object.
@@ -244,6 +267,11 @@ public interface BookieProtocol {
             return (flags & FLAG_HIGH_PRIORITY) == FLAG_HIGH_PRIORITY;
         }
 
+        boolean isDigestVerified() {
+            short trusted = FLAG_RECOVERY_ADD | FLAG_DIGEST_VERIFIED;
+            return (flags & trusted) == trusted;
+        }
+
         @Override
         public String toString() {
             return String.format("Op(%d)[Ledger:%d,Entry:%d]", opCode, ledgerId, entryId);
@@ -358,6 +386,70 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A Request that adds several entries of the same ledger. The entry id is the one of the
+     * first entry of the batch.
+     */
+    class BatchedAddRequest extends Request {
+        final ByteBufList data;
+        final int count;
+
+        BatchedAddRequest(byte protocolVersion, long ledgerId, long firstEntryId, short flags,
+                          byte[] masterKey, int count, ByteBufList data) {
+            init(protocolVersion, BATCH_ADD_ENTRY, ledgerId, firstEntryId, flags, masterKey);
+            this.count = count;
+            this.data = data;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the entries, each one prefixed by its length
+         */
+        ByteBufList getData() {
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,Count:%d]", opCode, ledgerId, entryId, count);
+        }
+    }
+
+    /**
+     * This is similar to batched add request, but it used when processing the request on the bookie side.
+     */
+    class ParsedBatchAddRequest extends Request {
+        final ByteBuf[] entries;
+
+        ParsedBatchAddRequest(byte protocolVersion, long ledgerId, short flags, byte[] masterKey,
+                              ByteBuf[] entries) {
+            init(protocolVersion, BATCH_ADD_ENTRY, ledgerId, INVALID_ENTRY_ID, flags, masterKey);
+            this.entries = entries;
+        }
+
+        ByteBuf[] getEntries() {
+            return entries;
+        }
+
+        boolean isRecoveryAdd() {
+            return (flags & FLAG_RECOVERY_ADD) == FLAG_RECOVERY_ADD;
+        }
+
+        void release() {
+            for (ByteBuf entry : entries) {
+                ReferenceCountUtil.safeRelease(entry);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Count:%d]", opCode, ledgerId, entries.length);
+        }
+    }
+
     /**
      * A Request that reads data.
      */
@@ -372,6 +464,36 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A Request that reads a contiguous range of entries.
+     */
+    class BatchedReadRequest extends ReadRequest {
+        final int maxCount;
+        final long maxSize;
+
+        BatchedReadRequest(byte protocolVersion, long ledgerId, long entryId,
+                           int maxCount, long maxSize, short flags) {
+            super(protocolVersion, ledgerId, entryId, flags, null);
+            this.opCode = BATCH_READ_ENTRY;
+            this.maxCount = maxCount;
+            this.maxSize = maxSize;
+        }
+
+        int getMaxCount() {
+            return maxCount;
+        }
+
+        long getMaxSize() {
+            return maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,MaxCount:%d,MaxSize:%d]",
+                                 opCode, ledgerId, entryId, maxCount, maxSize);
+        }
+    }
+
     /**
      * An authentication request.
      */
@@ -477,6 +599,70 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A successful read response whose entry is sent straight from an entry log file.
+     */
+    class FileRegionReadResponse extends Response {
+        final FileRegion region;
+
+        FileRegionReadResponse(byte protocolVersion, long ledgerId, long entryId, FileRegion region) {
+            init(protocolVersion, READENTRY, EOK, ledgerId, entryId);
+            this.region = region;
+        }
+
+        FileRegion getRegion() {
+            return region;
+        }
+
+        @Override
+        public void retain() {
+            region.retain();
+        }
+
+        @Override
+        public void release() {
+            region.release();
+        }
+    }
+
+    /**
+     * A response carrying a contiguous range of entries, starting at entryId.
+     */
+    class BatchedReadResponse extends Response {
+        final ByteBufList data;
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId) {
+            this(protocolVersion, errorCode, ledgerId, entryId, null);
+        }
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, ByteBufList data) {
+            init(protocolVersion, BATCH_READ_ENTRY, errorCode, ledgerId, entryId);
+            this.data = data;
+        }
+
+        boolean hasData() {
+            return data != null && data.size() > 0;
+        }
+
+        ByteBufList getData() {
+            return data;
+        }
+
+        @Override
+        public void retain() {
+            if (data != null) {
+                data.retain();
+            }
+        }
+
+        @Override
+        public void release() {
+            if (data != null) {
+                data.release();
+            }
+        }
+    }
+
     /**
      * A response that adds data.
      */
@@ -29,9 +29,11 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.AttributeKey;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -41,6 +43,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import lombok.AccessLevel;
@@ -69,6 +72,9 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieRequestProcessor.class);
 
+    private static final AttributeKey<AtomicInteger> REQUESTS_IN_PROGRESS =
+            AttributeKey.valueOf("bookieRequestsInProgress");
+
     /**
      * The server configuration. We use this for getting the number of add and read
      * worker threads.
@@ -122,6 +128,9 @@ public class BookieRequestProcessor implements RequestProcessor {
     final Semaphore addsSemaphore;
     final Semaphore readsSemaphore;
 
+    // max add and read requests in progress per connection advertised to v3 clients, 0 if no flow control
+    private final int maxRequestCreditsPerConnection;
+
     // to temporary blacklist channels
     final Optional<Cache<Channel, Boolean>> blacklistedChannels;
     final Consumer<Channel> onResponseTimeout;
@@ -130,6 +139,12 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    // Minimum size of the entries sent as file regions, 0 if disabled
+    private final int zeroCopyReadMinEntrySize;
+
+    // Verifies the digests of the written entries, null if disabled
+    private final EntryDigestVerifier digestVerifier;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
             SecurityHandlerFactory shFactory, ByteBufAllocator allocator) throws SecurityException {
         this.serverCfg = serverCfg;
@@ -138,6 +153,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.zeroCopyReadMinEntrySize = serverCfg.getZeroCopyReadMinEntrySize();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -202,6 +218,26 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
         readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
+
+        this.maxRequestCreditsPerConnection = serverCfg.getMaxRequestCreditsPerConnection();
+
+        if (serverCfg.getNumDigestVerificationThreads() > 0) {
+            this.digestVerifier = new EntryDigestVerifier(serverCfg.getNumDigestVerificationThreads(),
+                    serverCfg.getMaxPendingDigestVerifications(), allocator, statsLogger);
+            bookie.getLedgerStorage().registerLedgerDeletionListener(digestVerifier);
+        } else {
+            this.digestVerifier = null;
+        }
+    }
+
+    /**
+     * Schedule the verification of the digest of an entry about to be written, unless it is disabled or the
+     * writer has flagged the entry as already verified.
+     */
+    void maybeVerifyDigest(ByteBuf entry, boolean alreadyVerified) {
+        if (digestVerifier != null && !alreadyVerified) {
+            digestVerifier.verify(entry);
+        }
     }
 
     protected void onAddRequestStart(Channel channel) {
@@ -219,9 +255,11 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
         requestStats.trackAddRequest();
+        trackRequestOnChannel(channel);
     }
 
-    protected void onAddRequestFinish() {
+    protected void onAddRequestFinish(Channel channel) {
+        untrackRequestOnChannel(channel);
         requestStats.untrackAddRequest();
         if (addsSemaphore != null) {
             addsSemaphore.release();
@@ -243,15 +281,58 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
         requestStats.trackReadRequest();
+        trackRequestOnChannel(channel);
     }
 
-    protected void onReadRequestFinish() {
+    protected void onReadRequestFinish(Channel channel) {
+        untrackRequestOnChannel(channel);
         requestStats.untrackReadRequest();
         if (readsSemaphore != null) {
             readsSemaphore.release();
         }
     }
 
+    private void trackRequestOnChannel(Channel channel) {
+        if (maxRequestCreditsPerConnection > 0) {
+            AtomicInteger inProgress = channel.attr(REQUESTS_IN_PROGRESS).get();
+            if (inProgress == null) {
+                AtomicInteger newInProgress = new AtomicInteger();
+                inProgress = channel.attr(REQUESTS_IN_PROGRESS).setIfAbsent(newInProgress);
+                if (inProgress == null) {
+                    inProgress = newInProgress;
+                }
+            }
+            inProgress.incrementAndGet();
+        }
+    }
+
+    private void untrackRequestOnChannel(Channel channel) {
+        if (maxRequestCreditsPerConnection > 0) {
+            AtomicInteger inProgress = channel.attr(REQUESTS_IN_PROGRESS).get();
+            if (inProgress != null) {
+                inProgress.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Advertise in the response to an add or read request how many more of these requests the client can
+     * send on the channel, if the bookie does flow control. The request being answered is still in progress.
+     */
+    void setRequestCredits(BookkeeperProtocol.Response.Builder response, Channel channel, boolean isAdd) {
+        if (maxRequestCreditsPerConnection <= 0) {
+            return;
+        }
+        AtomicInteger inProgress = channel.attr(REQUESTS_IN_PROGRESS).get();
+        int otherRequestsInProgress = inProgress == null ? 0 : inProgress.get() - 1;
+        int credits = maxRequestCreditsPerConnection - otherRequestsInProgress;
+        Semaphore semaphore = isAdd ? addsSemaphore : readsSemaphore;
+        if (semaphore != null) {
+            credits = Math.min(credits, semaphore.availablePermits() + 1);
+        }
+        response.setCredits(Math.max(credits, 0));
+    }
+
     @VisibleForTesting
     int maxAddsInProgressCount() {
         return requestStats.maxAddsInProgressCount();
@@ -271,6 +352,9 @@ public class BookieRequestProcessor implements RequestProcessor {
             shutdownExecutor(longPollThreadPool);
         }
         shutdownExecutor(highPriorityThreadPool);
+        if (digestVerifier != null) {
+            digestVerifier.shutdown();
+        }
         requestTimer.stop();
         LOG.info("Closed RequestProcessor");
     }
@@ -371,10 +455,18 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ParsedAddRequest);
                     processAddRequest((BookieProtocol.ParsedAddRequest) r, c);
                     break;
+                case BookieProtocol.BATCH_ADD_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.ParsedBatchAddRequest);
+                    processBatchedAddRequest((BookieProtocol.ParsedBatchAddRequest) r, c);
+                    break;
                 case BookieProtocol.READENTRY:
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, c);
                     break;
+                case BookieProtocol.BATCH_READ_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.BatchedReadRequest);
+                    processBatchedReadRequest((BookieProtocol.BatchedReadRequest) r, c);
+                    break;
                 case BookieProtocol.AUTH:
                     LOG.info("Ignoring auth operation from client {}", c.remoteAddress());
                     BookkeeperProtocol.AuthMessage message = BookkeeperProtocol.AuthMessage
@@ -453,6 +545,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                         .setHeader(write.getHeader())
                         .setStatus(addResponse.getStatus())
                         .setAddResponse(addResponse);
+                setRequestCredits(response, c, true);
                 BookkeeperProtocol.Response resp = response.build();
                 write.sendResponse(addResponse.getStatus(), resp, requestStats.getAddRequestStats());
             }
@@ -541,8 +634,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .setHeader(read.getHeader())
                     .setStatus(readResponse.getStatus())
                     .setReadResponse(readResponse);
+                setRequestCredits(response, c, false);
                 BookkeeperProtocol.Response resp = response.build();
                 read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
+                onReadRequestFinish(c);
             }
         }
     }
@@ -684,6 +779,54 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processBatchedAddRequest(final BookieProtocol.ParsedBatchAddRequest r, final Channel c) {
+        BatchedWriteEntryProcessor write = new BatchedWriteEntryProcessor(r, c, this);
+
+        final OrderedExecutor threadPool;
+        if (r.isHighPriority()) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add entries {}. Too many pending requests", r);
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                write.rejectAll(BookieProtocol.ETOOMANYREQUESTS);
+            }
+        }
+    }
+
+    private void processBatchedReadRequest(final BookieProtocol.BatchedReadRequest r, final Channel c) {
+        BatchedReadEntryProcessor read = BatchedReadEntryProcessor.create(r, c, this, throttleReadResponses,
+                serverCfg.getNettyMaxFrameSizeBytes());
+
+        if (null == readThreadPool) {
+            read.run();
+        } else {
+            try {
+                readThreadPool.executeOrdered(r.getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to batch read entries from {}:{}. Too many pending requests",
+                            r.ledgerId, r.entryId);
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                read.sendResponse(
+                    BookieProtocol.ETOOMANYREQUESTS,
+                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+                    requestStats.getReadRequestStats());
+            }
+        }
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
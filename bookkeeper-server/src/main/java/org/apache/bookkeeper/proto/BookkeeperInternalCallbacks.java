@@ -38,6 +38,7 @@ import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.zookeeper.AsyncCallback;
@@ -223,6 +224,15 @@ public class BookkeeperInternalCallbacks {
         void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx);
     }
 
+    /**
+     * Declaration of a callback implementation for batched reads. On success, entries holds
+     * the contiguous entries starting at startEntryId. The entries are released once the
+     * callback returns, so they must be retained to be used afterwards.
+     */
+    public interface BatchedReadEntryCallback {
+        void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList entries, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
@@ -0,0 +1,336 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.proto.PerChannelBookieClient.CompletionKey;
+import org.apache.bookkeeper.proto.PerChannelBookieClient.CompletionValue;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Completions of the requests in flight on a channel.
+ *
+ * <p>The table is split in sections, each one an open addressing hash table guarded by its own
+ * monitor. Several completions can be registered with equal keys, which happens with the v2
+ * protocol when the same entry is read more than once at the same time; they are returned in
+ * no particular order.
+ *
+ * <p>Each section also links its completions in a hashed timing wheel, by deadline, so that
+ * looking for timed out completions only visits the wheel buckets whose time has passed, instead
+ * of every completion in flight. Removing a completion from the wheel is constant time, and
+ * needs no allocation, as the links are stored in the completion itself.
+ */
+class CompletionTable {
+
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final int WHEEL_SIZE = 1024;
+
+    private static final int NUM_SECTIONS = 16;
+    private static final int INITIAL_SECTION_CAPACITY = 64;
+    private static final float MAP_FILL_FACTOR = 0.66f;
+
+    private static final Object DELETED_KEY = new Object();
+
+    private final Section[] sections;
+
+    CompletionTable() {
+        this(MathUtils.nowInNano());
+    }
+
+    @VisibleForTesting
+    CompletionTable(long startNanos) {
+        sections = new Section[NUM_SECTIONS];
+        for (int i = 0; i < NUM_SECTIONS; i++) {
+            sections[i] = new Section(startNanos);
+        }
+    }
+
+    /**
+     * Register a completion. Its deadline is its start time plus its timeout.
+     */
+    void put(CompletionKey key, CompletionValue value) {
+        int h = hash(key);
+        value.deadlineNanos = value.startTime + value.timeoutNanos();
+        sectionFor(h).put(key, value, h);
+    }
+
+    CompletionValue get(CompletionKey key) {
+        int h = hash(key);
+        return sectionFor(h).get(key, h);
+    }
+
+    /**
+     * Remove a completion registered with the given key.
+     *
+     * @return the removed completion, or null
+     */
+    CompletionValue remove(CompletionKey key) {
+        int h = hash(key);
+        return sectionFor(h).remove(key, h);
+    }
+
+    /**
+     * Remove the completions whose deadline has passed.
+     *
+     * @return the removed completions
+     */
+    List<CompletionValue> removeTimedOut() {
+        return removeTimedOut(MathUtils.nowInNano());
+    }
+
+    @VisibleForTesting
+    List<CompletionValue> removeTimedOut(long nowNanos) {
+        List<CompletionValue> timedOut = new ArrayList<>();
+        for (Section s : sections) {
+            s.removeTimedOut(nowNanos, timedOut);
+        }
+        return timedOut;
+    }
+
+    /**
+     * Remove all the completions.
+     *
+     * @return the removed completions
+     */
+    List<CompletionValue> removeAll() {
+        List<CompletionValue> removed = new ArrayList<>();
+        for (Section s : sections) {
+            s.removeAll(removed);
+        }
+        return removed;
+    }
+
+    int size() {
+        int size = 0;
+        for (Section s : sections) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    private Section sectionFor(int h) {
+        return sections[(h >>> 28) & (NUM_SECTIONS - 1)];
+    }
+
+    private static int hash(CompletionKey key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Section {
+        private final long startNanos;
+        private Object[] keys;
+        private CompletionValue[] values;
+        private int size = 0;
+        // Buckets either used or deleted
+        private int usedBuckets = 0;
+        private int resizeThreshold;
+
+        private final CompletionValue[] wheel = new CompletionValue[WHEEL_SIZE];
+        // Last tick whose bucket was visited
+        private long currentTick = 0;
+
+        Section(long startNanos) {
+            this.startNanos = startNanos;
+            this.keys = new Object[INITIAL_SECTION_CAPACITY];
+            this.values = new CompletionValue[INITIAL_SECTION_CAPACITY];
+            this.resizeThreshold = (int) (INITIAL_SECTION_CAPACITY * MAP_FILL_FACTOR);
+        }
+
+        synchronized void put(CompletionKey key, CompletionValue value, int h) {
+            if (usedBuckets + 1 > resizeThreshold) {
+                // Only grow if the table is full of live completions, rather than deleted ones
+                int capacity = keys.length;
+                rehash(size + 1 > capacity / 2 ? capacity * 2 : capacity);
+            }
+            insert(key, value, h);
+            size++;
+            link(value);
+        }
+
+        synchronized CompletionValue get(CompletionKey key, int h) {
+            int idx = find(key, null, h);
+            return idx >= 0 ? values[idx] : null;
+        }
+
+        synchronized CompletionValue remove(CompletionKey key, int h) {
+            int idx = find(key, null, h);
+            if (idx < 0) {
+                return null;
+            }
+            CompletionValue value = values[idx];
+            removeAt(idx);
+            return value;
+        }
+
+        synchronized void removeTimedOut(long nowNanos, List<CompletionValue> timedOut) {
+            long nowTick = (nowNanos - startNanos) / TICK_NANOS;
+            if (nowTick <= currentTick) {
+                return;
+            }
+            // Visit each bucket at most once, completions due in later rounds stay in their bucket
+            long ticks = Math.min(nowTick - currentTick, WHEEL_SIZE);
+            for (long tick = currentTick + 1; tick <= currentTick + ticks; tick++) {
+                CompletionValue value = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+                while (value != null) {
+                    CompletionValue next = value.wheelNext;
+                    if (value.deadlineNanos - nowNanos <= 0) {
+                        int idx = find(value.tableKey, value, value.tableHash);
+                        if (idx >= 0) {
+                            removeAt(idx);
+                        } else {
+                            unlink(value);
+                        }
+                        timedOut.add(value);
+                    }
+                    value = next;
+                }
+            }
+            currentTick = nowTick;
+        }
+
+        synchronized void removeAll(List<CompletionValue> removed) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && keys[i] != DELETED_KEY) {
+                    CompletionValue value = values[i];
+                    unlink(value);
+                    removed.add(value);
+                }
+                keys[i] = null;
+                values[i] = null;
+            }
+            size = 0;
+            usedBuckets = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Find the bucket of the given value, or of any value with the given key if value is null.
+         */
+        private int find(CompletionKey key, CompletionValue value, int h) {
+            int mask = keys.length - 1;
+            int idx = h & mask;
+            while (true) {
+                Object k = keys[idx];
+                if (k == null) {
+                    return -1;
+                }
+                if (k != DELETED_KEY && (value != null ? values[idx] == value : key.equals(k))) {
+                    return idx;
+                }
+                idx = (idx + 1) & mask;
+            }
+        }
+
+        private void insert(CompletionKey key, CompletionValue value, int h) {
+            int mask = keys.length - 1;
+            int idx = h & mask;
+            while (true) {
+                Object k = keys[idx];
+                if (k == null || k == DELETED_KEY) {
+                    if (k == null) {
+                        usedBuckets++;
+                    }
+                    keys[idx] = key;
+                    values[idx] = value;
+                    value.tableKey = key;
+                    value.tableHash = h;
+                    return;
+                }
+                idx = (idx + 1) & mask;
+            }
+        }
+
+        private void removeAt(int idx) {
+            CompletionValue value = values[idx];
+            int mask = keys.length - 1;
+            if (keys[(idx + 1) & mask] == null) {
+                keys[idx] = null;
+                usedBuckets--;
+                // Clean up the deleted buckets that precede, as no probe needs to go through them
+                int prev = (idx - 1) & mask;
+                while (keys[prev] == DELETED_KEY) {
+                    keys[prev] = null;
+                    usedBuckets--;
+                    prev = (prev - 1) & mask;
+                }
+            } else {
+                keys[idx] = DELETED_KEY;
+            }
+            values[idx] = null;
+            size--;
+            unlink(value);
+        }
+
+        private void rehash(int newCapacity) {
+            Object[] oldKeys = keys;
+            CompletionValue[] oldValues = values;
+            keys = new Object[newCapacity];
+            values = new CompletionValue[newCapacity];
+            usedBuckets = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                Object k = oldKeys[i];
+                if (k != null && k != DELETED_KEY) {
+                    insert((CompletionKey) k, oldValues[i], oldValues[i].tableHash);
+                }
+            }
+            resizeThreshold = (int) (newCapacity * MAP_FILL_FACTOR);
+        }
+
+        private void link(CompletionValue value) {
+            // Round the deadline up to a tick, so the completion has timed out when its bucket is visited
+            long tick = (value.deadlineNanos - startNanos + TICK_NANOS - 1) / TICK_NANOS;
+            if (tick <= currentTick) {
+                tick = currentTick + 1;
+            }
+            int bucket = (int) (tick & (WHEEL_SIZE - 1));
+            value.wheelBucket = bucket;
+            value.wheelPrev = null;
+            value.wheelNext = wheel[bucket];
+            if (value.wheelNext != null) {
+                value.wheelNext.wheelPrev = value;
+            }
+            wheel[bucket] = value;
+        }
+
+        private void unlink(CompletionValue value) {
+            if (value.wheelBucket < 0) {
+                return;
+            }
+            if (value.wheelPrev != null) {
+                value.wheelPrev.wheelNext = value.wheelNext;
+            } else {
+                wheel[value.wheelBucket] = value.wheelNext;
+            }
+            if (value.wheelNext != null) {
+                value.wheelNext.wheelPrev = value.wheelPrev;
+            }
+            value.wheelPrev = null;
+            value.wheelNext = null;
+            value.wheelBucket = -1;
+        }
+    }
+}
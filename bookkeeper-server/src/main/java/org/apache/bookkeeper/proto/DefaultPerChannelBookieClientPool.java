@@ -126,6 +126,25 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         return getClient(key).isWritable();
     }
 
+    /**
+     * @return whether the bookie has run out of credits for any of the connections
+     */
+    boolean isOutOfCredits() {
+        for (PerChannelBookieClient pcbc : clients) {
+            if (pcbc.isOutOfCredits()) {
+                return true;
+            }
+        }
+        if (clients != clientsV3Enforced) {
+            for (PerChannelBookieClient pcbc : clientsV3Enforced) {
+                if (pcbc.isOutOfCredits()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public void checkTimeoutOnPendingOperations() {
         for (int i = 0; i < clients.length; i++) {
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_DIGEST_NOT_VERIFIED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_DIGEST_VERIFICATION;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.LedgerStorage.LedgerDeletionListener;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies the digests of the entries written to the bookie on a dedicated pool, in parallel with the journal
+ * rather than in front of it, so that the verification adds no latency to the writes. A corrupted entry is
+ * still written and acknowledged, the verification only reports it.
+ *
+ * <p>The bookie does not know the digest type of the ledgers. It is found out from the first entries verified for
+ * each ledger, by trying the CRC32C and CRC32 digests, which do not need the ledger password. An entry matching
+ * none of them is either corrupted or from a ledger using another digest type, so the detection is retried on the
+ * next entries: once a CRC digest matches, the entries missed before are reported as failed verifications. After
+ * {@link #MAX_DETECTION_ATTEMPTS} misses, the ledger is taken as using HMAC or DUMMY, whose entries are not
+ * verified.
+ *
+ * <p>Only the entries added through the request processors are verified. The entries copied by the
+ * {@link org.apache.bookkeeper.bookie.datainteg.EntryCopier} of the data integrity check are written straight to
+ * the ledger storage, and are not verified by the bookie.
+ */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Bookie digest verification stats"
+)
+class EntryDigestVerifier implements LedgerDeletionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntryDigestVerifier.class);
+
+    static final int MAX_DETECTION_ATTEMPTS = 3;
+
+    // Digest manager of the ledgers, notVerifiable standing for the ledgers whose digest cannot be verified.
+    // Digest managers keep their state in thread locals, so they are shared by the verification threads.
+    private final ConcurrentLongHashMap<DigestManager> ledgerDigestManagers =
+            ConcurrentLongHashMap.<DigestManager>newBuilder().build();
+    private final DigestManager notVerifiable;
+    // Ledgers whose digest type is not known yet, with the entries matching no digest so far
+    private final ConcurrentLongHashMap<DigestDetection> pendingDetections =
+            ConcurrentLongHashMap.<DigestDetection>newBuilder().build();
+    private final ThreadPoolExecutor executor;
+    private final ByteBufAllocator allocator;
+
+    @StatsDoc(
+        name = ADD_ENTRY_DIGEST_VERIFICATION,
+        help = "stats of the digest verification of the entries written to the bookie, failed for corrupted entries"
+    )
+    private final OpStatsLogger verificationStats;
+    @StatsDoc(
+        name = ADD_ENTRY_DIGEST_NOT_VERIFIED,
+        help = "Counter for entries whose digest was not verified, because of their digest type or because too many"
+            + " verifications were pending"
+    )
+    private final Counter notVerifiedCounter;
+
+    EntryDigestVerifier(int numThreads, int maxPending, ByteBufAllocator allocator, StatsLogger statsLogger) {
+        this.allocator = allocator;
+        this.notVerifiable = newDigestManager(-1L, DigestType.DUMMY);
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxPending),
+                new ThreadFactoryBuilder().setNameFormat("BookieDigestVerification-%d").setDaemon(true).build());
+        this.verificationStats = statsLogger.getOpStatsLogger(ADD_ENTRY_DIGEST_VERIFICATION);
+        this.notVerifiedCounter = statsLogger.getCounter(ADD_ENTRY_DIGEST_NOT_VERIFIED);
+    }
+
+    /**
+     * Schedule the verification of an entry. The entry is retained until it is verified, the caller keeps its
+     * reference.
+     */
+    void verify(ByteBuf entry) {
+        ByteBuf data = entry.retainedSlice();
+        try {
+            executor.execute(() -> {
+                try {
+                    verifyEntry(data);
+                } finally {
+                    data.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            data.release();
+            notVerifiedCounter.inc();
+        }
+    }
+
+    private void verifyEntry(ByteBuf data) {
+        long startTimeNanos = MathUtils.nowInNano();
+        if (data.readableBytes() < DigestManager.METADATA_LENGTH) {
+            LOG.error("Entry of {} bytes written to the bookie is too short to have a digest", data.readableBytes());
+            verificationStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            return;
+        }
+        long ledgerId = data.getLong(0);
+        long entryId = data.getLong(8);
+
+        DigestManager digestManager = ledgerDigestManagers.get(ledgerId);
+        if (digestManager == null) {
+            digestManager = detectDigestManager(ledgerId, data);
+            if (digestManager != null) {
+                DigestManager previous = ledgerDigestManagers.putIfAbsent(ledgerId, digestManager);
+                DigestDetection detection = pendingDetections.remove(ledgerId);
+                if (detection != null) {
+                    reportMissed(ledgerId, detection, previous != null ? previous : digestManager);
+                }
+                verificationStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                        TimeUnit.NANOSECONDS);
+            } else {
+                detectionMissed(ledgerId, entryId, data, MathUtils.elapsedNanos(startTimeNanos));
+            }
+        } else if (digestManager == notVerifiable) {
+            notVerifiedCounter.inc();
+        } else if (digestManager.isDigestMatching(data)) {
+            verificationStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            LOG.error("Digest mismatch for entry {}@{} written to the bookie, digest manager {}",
+                    entryId, ledgerId, digestManager.getClass().getSimpleName());
+            verificationStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return the digest manager of the CRC digest matching the entry, or null if none does
+     */
+    private DigestManager detectDigestManager(long ledgerId, ByteBuf data) {
+        DigestManager digestManager = newDigestManager(ledgerId, DigestType.CRC32C);
+        if (digestManager.isDigestMatching(data)) {
+            return digestManager;
+        }
+        digestManager = newDigestManager(ledgerId, DigestType.CRC32);
+        return digestManager.isDigestMatching(data) ? digestManager : null;
+    }
+
+    private void detectionMissed(long ledgerId, long entryId, ByteBuf data, long elapsedNanos) {
+        DigestDetection detection = pendingDetections.computeIfAbsent(ledgerId, id -> new DigestDetection());
+        int attempts = detection.addMissed(entryId, elapsedNanos);
+        if (attempts < 0) {
+            // The digest type was found out in the meantime
+            verifyEntry(data);
+            return;
+        } else if (attempts == 0) {
+            // Enough entries missed already, the ledger is being taken as not verifiable
+            notVerifiedCounter.inc();
+            return;
+        }
+        LOG.warn("Entry {}@{} written to the bookie matches no CRC digest, either corrupted or of a ledger"
+                + " with another digest type", entryId, ledgerId);
+
+        DigestManager digestManager;
+        if (attempts >= MAX_DETECTION_ATTEMPTS) {
+            DigestManager previous = ledgerDigestManagers.putIfAbsent(ledgerId, notVerifiable);
+            digestManager = previous != null ? previous : notVerifiable;
+        } else {
+            // Another entry may have matched a digest since this one was checked
+            digestManager = ledgerDigestManagers.get(ledgerId);
+        }
+        if (digestManager != null) {
+            pendingDetections.remove(ledgerId, detection);
+            reportMissed(ledgerId, detection, digestManager);
+        }
+    }
+
+    private void reportMissed(long ledgerId, DigestDetection detection, DigestManager digestManager) {
+        int missed = detection.finish();
+        if (missed <= 0) {
+            return;
+        }
+        if (digestManager == notVerifiable) {
+            LOG.info("Entries of ledger {} are not verified, its digest type is neither CRC32C nor CRC32", ledgerId);
+            notVerifiedCounter.add(missed);
+            return;
+        }
+        for (int i = 0; i < missed; i++) {
+            LOG.error("Digest mismatch for entry {}@{} written to the bookie, digest manager {}",
+                    detection.entryIds[i], ledgerId, digestManager.getClass().getSimpleName());
+            verificationStats.registerFailedEvent(detection.elapsedNanos[i], TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private DigestManager newDigestManager(long ledgerId, DigestType digestType) {
+        try {
+            return DigestManager.instantiate(ledgerId, null, digestType, allocator, true);
+        } catch (GeneralSecurityException e) {
+            // Only HMAC needs the password
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void ledgerDeleted(long ledgerId) {
+        ledgerDigestManagers.remove(ledgerId);
+        pendingDetections.remove(ledgerId);
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * The entries of a ledger matching no digest, until its digest type is found out.
+     */
+    private static final class DigestDetection {
+        private final long[] entryIds = new long[MAX_DETECTION_ATTEMPTS];
+        private final long[] elapsedNanos = new long[MAX_DETECTION_ATTEMPTS];
+        private int count;
+        private boolean finished;
+
+        /**
+         * @return the number of entries missed so far, 0 if enough were already missed, or -1 if the detection
+         *         is finished
+         */
+        synchronized int addMissed(long entryId, long elapsed) {
+            if (finished) {
+                return -1;
+            } else if (count == MAX_DETECTION_ATTEMPTS) {
+                return 0;
+            }
+            entryIds[count] = entryId;
+            elapsedNanos[count] = elapsed;
+            return ++count;
+        }
+
+        /**
+         * @return the number of entries missed, or -1 if the detection was already finished
+         */
+        synchronized int finish() {
+            if (finished) {
+                return -1;
+            }
+            finished = true;
+            return count;
+        }
+    }
+}
@@ -72,15 +72,14 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiPredicate;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -95,6 +94,7 @@ import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
@@ -138,8 +138,6 @@ import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.bookkeeper.util.StringUtils;
-import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
-import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -180,13 +178,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
 
-    private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
-            ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().build();
-
-    // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
-    // read request for the same ledgerId/entryId
-    private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
-        new SynchronizedHashMultiMap<>();
+    // Completions of the requests in flight. With the v2 protocol, duplicated read requests for the same
+    // ledgerId/entryId share the same key
+    private final CompletionTable completionObjects = new CompletionTable();
 
     private final StatsLogger statsLogger;
     @StatsDoc(
@@ -310,6 +304,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
     private final boolean useV2WireProtocol;
     private final boolean preserveMdcForTaskExecution;
+    private final int addEntryBatchMaxEntries;
+    private final int addEntryBatchMaxBytes;
+
+    /**
+     * Adds waiting for the channel event loop to be sent in a single request.
+     */
+    private final Object addBatchLock = new Object();
+    private PendingAddBatch pendingAddBatch = null;
 
     /**
      * The following member variables do not need to be concurrent, or volatile
@@ -344,6 +346,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private volatile boolean isWritable = true;
     private long lastBookieUnavailableLogTimestamp = 0;
 
+    // Flow control of the v3 add and read requests, from the credits advertised by the bookie in its responses.
+    // The requests sent out of credits are held until the bookie grants more. Fields guarded by throttledSends
+    private final Queue<ThrottledSend> throttledSends = new ArrayDeque<>();
+    private int sendCredits = Integer.MAX_VALUE;
+    private int creditedRequestsInFlight = 0;
+    private long nextCreditedSendSeq = 0;
+
     public PerChannelBookieClient(OrderedExecutor executor, EventLoopGroup eventLoopGroup,
                                   BookieId addr, BookieAddressResolver bookieAddressResolver) throws SecurityException {
         this(new ClientConfiguration(), executor, eventLoopGroup, addr, NullStatsLogger.INSTANCE, null, null,
@@ -397,6 +406,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
+        this.addEntryBatchMaxEntries = conf.getAddEntryBatchMaxEntries();
+        this.addEntryBatchMaxBytes = conf.getAddEntryBatchMaxBytes();
 
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
@@ -773,6 +784,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return;
             }
             completionKey = acquireV2Key(ledgerId, entryId, OperationType.ADD_ENTRY);
+            if (addEntryBatchMaxEntries > 1 && options == BookieProtocol.FLAG_NONE) {
+                putCompletionKeyValue(completionKey,
+                                      acquireAddCompletion(completionKey,
+                                                           cb, ctx, ledgerId, entryId));
+                batchAddEntry(completionKey, ledgerId, masterKey, entryId, toSend, allowFastFail);
+                return;
+            }
             request = BookieProtocol.AddRequest.create(
                     BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId,
                     (short) options, masterKey, toSend);
@@ -991,6 +1009,31 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Batched reads of contiguous entries. Only supported over the v2 wire protocol.
+     */
+    public void batchReadEntries(final long ledgerId,
+                                 final long startEntryId,
+                                 final int maxCount,
+                                 final long maxSize,
+                                 BatchedReadEntryCallback cb,
+                                 Object ctx,
+                                 boolean allowFastFail) {
+        if (!useV2WireProtocol) {
+            cb.readEntriesComplete(BKException.Code.IllegalOpException, ledgerId, startEntryId, null, ctx);
+            return;
+        }
+        Object request = new BookieProtocol.BatchedReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                ledgerId, startEntryId, maxCount, maxSize, (short) 0);
+        CompletionKey completionKey = acquireV2Key(ledgerId, startEntryId, OperationType.BATCH_READ_ENTRY);
+
+        BatchedReadCompletion readCompletion = new BatchedReadCompletion(completionKey, cb, ctx,
+                                                                         ledgerId, startEntryId);
+        putCompletionKeyValue(completionKey, readCompletion);
+
+        writeAndFlush(channel, completionKey, request, allowFastFail);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
@@ -1015,15 +1058,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getBookieInfoRequest);
     }
 
-    private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
-        return value.maybeTimeout();
-    };
-
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
-
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        List<CompletionValue> timedOut = completionObjects.removeTimedOut();
+        for (CompletionValue completion : timedOut) {
+            releaseCredit(completion);
+            completion.timeout();
+        }
+        // Requests held while nothing is in flight anymore get no response to release them
+        sendThrottledRequests();
 
+        int timedOutOperations = timedOut.size();
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
                      timedOutOperations, channel, bookieId);
@@ -1107,6 +1151,169 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         super.channelWritabilityChanged(ctx);
     }
 
+    /**
+     * Queue an add in the batch of its ledger. The batch is sent when the channel event loop
+     * gets to it, or as soon as it is full, so that adds queue up only while the event loop is
+     * busy writing the previous ones.
+     */
+    private void batchAddEntry(CompletionKey key, long ledgerId, byte[] masterKey, long entryId,
+                               ByteBufList toSend, boolean allowFastFail) {
+        final Channel c = channel;
+        if (c == null) {
+            errorOut(key);
+            return;
+        }
+
+        PendingAddBatch previous = null;
+        PendingAddBatch full = null;
+        PendingAddBatch created = null;
+        int size = toSend.readableBytes();
+        synchronized (addBatchLock) {
+            PendingAddBatch batch = pendingAddBatch;
+            if (batch != null && (batch.channel != c || batch.ledgerId != ledgerId
+                                  || batch.bytes + size > addEntryBatchMaxBytes)) {
+                previous = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new PendingAddBatch(c, ledgerId, masterKey, entryId);
+                created = batch;
+            }
+            batch.add(key, ByteBufList.clone(toSend), size, allowFastFail);
+            if (batch.keys.size() >= addEntryBatchMaxEntries) {
+                full = batch;
+                pendingAddBatch = null;
+            } else {
+                pendingAddBatch = batch;
+            }
+        }
+
+        if (previous != null) {
+            sendAddBatch(previous);
+        }
+        if (full != null) {
+            sendAddBatch(full);
+        } else if (created != null) {
+            final PendingAddBatch scheduled = created;
+            try {
+                c.eventLoop().execute(() -> flushAddBatch(scheduled));
+            } catch (RejectedExecutionException e) {
+                flushAddBatch(scheduled);
+            }
+        }
+    }
+
+    private void flushAddBatch(PendingAddBatch batch) {
+        synchronized (addBatchLock) {
+            if (pendingAddBatch != batch) {
+                // Already sent
+                return;
+            }
+            pendingAddBatch = null;
+        }
+        sendAddBatch(batch);
+    }
+
+    private void sendAddBatch(PendingAddBatch batch) {
+        if (batch.keys.size() == 1) {
+            // Single adds are sent as regular add requests
+            ByteBufList data = batch.entries.get(0);
+            Object request = BookieProtocol.AddRequest.create(
+                    BookieProtocol.CURRENT_PROTOCOL_VERSION, batch.ledgerId, batch.firstEntryId,
+                    BookieProtocol.FLAG_NONE, batch.masterKey, data);
+            data.release();
+            writeAndFlush(batch.channel, batch.keys.get(0), request, batch.allowFastFail);
+            return;
+        }
+
+        ByteBufList data = null;
+        for (ByteBufList entry : batch.entries) {
+            ByteBuf length = allocator.buffer(4);
+            length.writeInt(entry.readableBytes());
+            if (data == null) {
+                data = ByteBufList.get(length);
+            } else {
+                data.add(length);
+            }
+            for (int i = 0; i < entry.size(); i++) {
+                data.add(entry.getBuffer(i).retain());
+            }
+            entry.release();
+        }
+        BookieProtocol.BatchedAddRequest request = new BookieProtocol.BatchedAddRequest(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, batch.ledgerId, batch.firstEntryId,
+                BookieProtocol.FLAG_NONE, batch.masterKey, batch.keys.size(), data);
+
+        final Channel channel = batch.channel;
+        final List<CompletionKey> keys = batch.keys;
+        final boolean isChannelWritable = channel.isWritable();
+        if (isWritable != isChannelWritable) {
+            isWritable = isChannelWritable;
+        }
+
+        if (batch.allowFastFail && !isWritable) {
+            LOG.warn("Operation {} failed: TooManyRequestsException", request);
+            data.release();
+            for (CompletionKey key : keys) {
+                errorOut(key, BKException.Code.TooManyRequestsException);
+            }
+            return;
+        }
+
+        try {
+            final long startTime = MathUtils.nowInNano();
+
+            ChannelPromise promise = channel.newPromise().addListener(future -> {
+                if (future.isSuccess()) {
+                    nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    for (CompletionKey key : keys) {
+                        CompletionValue completion = completionObjects.get(key);
+                        if (completion != null) {
+                            completion.setOutstanding();
+                        }
+                    }
+                } else {
+                    nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                }
+            });
+
+            channel.writeAndFlush(request, promise);
+        } catch (Throwable e) {
+            LOG.warn("Operation {} failed", request, e);
+            for (CompletionKey key : keys) {
+                errorOut(key);
+            }
+        }
+    }
+
+    /**
+     * Consecutive adds to a ledger, waiting to be sent in a single request.
+     */
+    private static class PendingAddBatch {
+        final Channel channel;
+        final long ledgerId;
+        final byte[] masterKey;
+        final long firstEntryId;
+        final List<CompletionKey> keys = new ArrayList<>();
+        final List<ByteBufList> entries = new ArrayList<>();
+        int bytes = 0;
+        boolean allowFastFail = true;
+
+        PendingAddBatch(Channel channel, long ledgerId, byte[] masterKey, long firstEntryId) {
+            this.channel = channel;
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.firstEntryId = firstEntryId;
+        }
+
+        void add(CompletionKey key, ByteBufList entry, int size, boolean allowFastFail) {
+            keys.add(key);
+            entries.add(entry);
+            bytes += size;
+            this.allowFastFail &= allowFastFail;
+        }
+    }
+
     private void writeAndFlush(final Channel channel,
                                final CompletionKey key,
                                final Object request) {
@@ -1117,6 +1324,156 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                            final CompletionKey key,
                            final Object request,
                            final boolean allowFastFail) {
+        if (channel != null && isCreditedRequest(key, request)) {
+            boolean held;
+            synchronized (throttledSends) {
+                // Always let one request through, the bookie only grants credits in its responses
+                held = !throttledSends.isEmpty() || (sendCredits <= 0 && creditedRequestsInFlight > 0);
+                if (held) {
+                    throttledSends.add(new ThrottledSend(channel, key, request, allowFastFail));
+                } else {
+                    onCreditedSend(completionObjects.get(key));
+                }
+            }
+            if (held) {
+                // Keep the requests in order, the held ones are sent first if there are credits now
+                sendThrottledRequests();
+                return;
+            }
+        }
+        doWriteAndFlush(channel, key, request, allowFastFail);
+    }
+
+    private static boolean isCreditedRequest(CompletionKey key, Object request) {
+        return request instanceof Request
+            && (key.operationType == OperationType.ADD_ENTRY || key.operationType == OperationType.READ_ENTRY);
+    }
+
+    // Called with throttledSends held
+    private void onCreditedSend(CompletionValue completion) {
+        sendCredits--;
+        if (completion != null) {
+            completion.creditedSendSeq = nextCreditedSendSeq++;
+            creditedRequestsInFlight++;
+        }
+    }
+
+    // Called with throttledSends held, returns whether the request was still in flight
+    private boolean onCreditedRequestDone(CompletionValue completion) {
+        if (completion == null || completion.creditedSendSeq < 0) {
+            return false;
+        }
+        completion.creditedSendSeq = -1;
+        if (creditedRequestsInFlight > 0) {
+            creditedRequestsInFlight--;
+        }
+        return true;
+    }
+
+    /**
+     * Give back the credit of a request which will get no response from the bookie, as it failed to be sent or
+     * timed out. The requests held for lack of credits are then sent by the next request, response or timeout
+     * check.
+     */
+    private void releaseCredit(CompletionValue completion) {
+        if (completion == null) {
+            return;
+        }
+        synchronized (throttledSends) {
+            onCreditedRequestDone(completion);
+        }
+    }
+
+    /**
+     * Update the credits of the connection from the response to an add or read request, and send the requests
+     * held for lack of credits that now fit.
+     *
+     * <p>The bookie computed the credits when it built the response, so the requests sent after the one
+     * answered may not have been counted in. They are taken off the credits, bounded by the credited requests
+     * still in flight.
+     */
+    private void onCreditedResponse(Response response, CompletionValue completion) {
+        synchronized (throttledSends) {
+            long sendSeq = completion == null ? -1 : completion.creditedSendSeq;
+            boolean inFlight = onCreditedRequestDone(completion);
+            if (!response.hasCredits()) {
+                // Bookies not doing flow control do not set the credits
+                sendCredits = Integer.MAX_VALUE;
+            } else {
+                long sentAfter = creditedRequestsInFlight;
+                if (inFlight) {
+                    sentAfter = Math.min(sentAfter, nextCreditedSendSeq - sendSeq - 1);
+                }
+                sendCredits = (int) (response.getCredits() - sentAfter);
+            }
+        }
+        sendThrottledRequests();
+    }
+
+    private void sendThrottledRequests() {
+        while (true) {
+            List<ThrottledSend> toSend = null;
+            synchronized (throttledSends) {
+                while (!throttledSends.isEmpty() && (sendCredits > 0 || creditedRequestsInFlight == 0)) {
+                    ThrottledSend throttled = throttledSends.poll();
+                    CompletionValue completion = completionObjects.get(throttled.key);
+                    if (completion == null) {
+                        // Timed out while held
+                        continue;
+                    }
+                    onCreditedSend(completion);
+                    if (toSend == null) {
+                        toSend = new ArrayList<>();
+                    }
+                    toSend.add(throttled);
+                }
+            }
+            if (toSend == null) {
+                return;
+            }
+            // The requests failing to be sent give their credits back, which may let more through
+            for (ThrottledSend throttled : toSend) {
+                doWriteAndFlush(throttled.channel, throttled.key, throttled.request, throttled.allowFastFail);
+            }
+        }
+    }
+
+    private void resetSendCredits() {
+        synchronized (throttledSends) {
+            // The completions of the held requests are errored out with the other outstanding ones
+            throttledSends.clear();
+            sendCredits = Integer.MAX_VALUE;
+            creditedRequestsInFlight = 0;
+        }
+    }
+
+    /**
+     * @return whether the bookie has run out of credits for this connection
+     */
+    boolean isOutOfCredits() {
+        synchronized (throttledSends) {
+            return sendCredits <= 0;
+        }
+    }
+
+    private static final class ThrottledSend {
+        final Channel channel;
+        final CompletionKey key;
+        final Object request;
+        final boolean allowFastFail;
+
+        ThrottledSend(Channel channel, CompletionKey key, Object request, boolean allowFastFail) {
+            this.channel = channel;
+            this.key = key;
+            this.request = request;
+            this.allowFastFail = allowFastFail;
+        }
+    }
+
+    private void doWriteAndFlush(final Channel channel,
+                                 final CompletionKey key,
+                                 final Object request,
+                                 final boolean allowFastFail) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
             errorOut(key);
@@ -1149,6 +1506,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     }
                 } else {
                     nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    // No response will come for the request, it gets errored out with the channel or timed out
+                    releaseCredit(completionObjects.get(key));
                 }
             });
 
@@ -1165,10 +1524,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
         CompletionValue completion = completionObjects.remove(key);
         if (completion != null) {
+            releaseCredit(completion);
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1178,10 +1535,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
         CompletionValue completion = completionObjects.remove(key);
         if (completion != null) {
+            releaseCredit(completion);
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1210,13 +1565,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     void errorOutOutstandingEntries(int rc) {
-        Optional<CompletionKey> multikey = completionObjectsV2Conflicts.getAnyKey();
-        while (multikey.isPresent()) {
-            multikey.ifPresent(k -> errorOut(k, rc));
-            multikey = completionObjectsV2Conflicts.getAnyKey();
-        }
-        for (CompletionKey key : completionObjects.keys()) {
-            errorOut(key, rc);
+        for (CompletionValue completion : completionObjects.removeAll()) {
+            completion.errorOut(rc);
         }
     }
 
@@ -1241,6 +1591,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        resetSendCredits();
         errorOutOutstandingEntries(BKException.Code.BookieHandleNotAvailableException);
         errorOutPendingOps(BKException.Code.BookieHandleNotAvailableException);
 
@@ -1420,6 +1771,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return OperationType.WRITE_LAC;
             case BookieProtocol.GET_BOOKIE_INFO:
                 return OperationType.GET_BOOKIE_INFO;
+            case BookieProtocol.BATCH_READ_ENTRY:
+                return OperationType.BATCH_READ_ENTRY;
             default:
                 throw new IllegalArgumentException("Invalid operation type " + opCode);
         }
@@ -1457,6 +1810,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
         final CompletionValue completionValue = completionObjects.get(key);
+        if (header.getOperation() == OperationType.ADD_ENTRY || header.getOperation() == OperationType.READ_ENTRY) {
+            onCreditedResponse(response, completionValue);
+        }
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1577,6 +1933,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         protected long entryId;
         protected long startTime;
 
+        // Links of the completion in the completion table and its timing wheel
+        CompletionKey tableKey;
+        int tableHash;
+        long deadlineNanos;
+        int wheelBucket = -1;
+        CompletionValue wheelPrev;
+        CompletionValue wheelNext;
+
+        // Sequence number of the credited send of the request while it is in flight, -1 otherwise.
+        // Guarded by throttledSends
+        long creditedSendSeq = -1;
+
         public CompletionValue(String operationName,
                                Object ctx,
                                long ledgerId, long entryId,
@@ -1609,13 +1977,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return readEntryTimeoutNanos;
         }
 
         void timeout() {
@@ -1843,6 +2206,71 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     // visible for testing
+    class BatchedReadCompletion extends CompletionValue {
+        final BatchedReadEntryCallback cb;
+
+        public BatchedReadCompletion(final CompletionKey key,
+                                     final BatchedReadEntryCallback originalCallback,
+                                     final Object originalCtx,
+                                     long ledgerId, final long startEntryId) {
+            super("BatchedRead", originalCtx, ledgerId, startEntryId,
+                  readEntryOpLogger, readTimeoutOpLogger);
+
+            this.cb = new BatchedReadEntryCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId, long startEntryId,
+                                                    ByteBufList entries, Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.readEntriesComplete(rc, ledgerId, startEntryId,
+                                                             entries, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId, entryId, null, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV2Response(long ledgerId, long entryId,
+                                     StatusCode status,
+                                     BookieProtocol.Response response) {
+            readEntryOutstanding.dec();
+            if (!(response instanceof BookieProtocol.BatchedReadResponse)) {
+                return;
+            }
+            ByteBufList entries = ((BookieProtocol.BatchedReadResponse) response).getData();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "startEntry", entryId,
+                            "entries", entries == null ? 0 : entries.size());
+            }
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            if (rc == BKException.Code.OK && entries == null) {
+                rc = BKException.Code.NoSuchEntryException;
+            }
+            // the response, and so the entries, are released once the callback returns
+            cb.readEntriesComplete(rc, ledgerId, entryId, entries, ctx);
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            // batched reads are never sent over the v3 protocol
+        }
+    }
+
     class ReadCompletion extends CompletionValue {
         final ReadEntryCallback cb;
 
@@ -2016,13 +2444,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2162,13 +2585,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return addEntryTimeoutNanos;
         }
 
         @Override
@@ -2296,20 +2714,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
-        CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
-        if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
-            completionObjectsV2Conflicts.put(key, value);
-        }
+        // V2 keys can be duplicated, if there's a pending read request on same ledger/entry
+        completionObjects.put(key, value);
     }
 
     private CompletionValue getCompletionValue(CompletionKey key) {
-        CompletionValue completionValue = completionObjects.remove(key);
-        if (completionValue == null) {
-            // If there's no completion object here, try in the multimap
-            completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
-        }
-        return completionValue;
+        return completionObjects.remove(key);
     }
 
     private long getTxnId() {
@@ -19,6 +19,9 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FileRegion;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
@@ -76,6 +79,14 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
                     throw BookieException.create(BookieException.Code.UnauthorizedAccessException);
                 }
             }
+            if (fenceResult == null && canSendFileRegion()) {
+                FileRegion region = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                        request.getEntryId(), requestProcessor.getZeroCopyReadMinEntrySize());
+                if (region != null) {
+                    sendFileRegionResponse(region, startTimeNanos);
+                    return;
+                }
+            }
             data = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("##### Read entry ##### {} -- ref-count: {}", data.readableBytes(), data.refCnt());
@@ -140,6 +151,32 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         recycle();
     }
 
+    /**
+     * Entries can only be sent as file regions when they don't have to go through TLS, and when
+     * the channel is able to frame them.
+     */
+    private boolean canSendFileRegion() {
+        if (requestProcessor.getZeroCopyReadMinEntrySize() <= 0) {
+            return false;
+        }
+        ChannelPipeline pipeline = channel.pipeline();
+        return pipeline.get(BookieProtoEncoding.FileRegionFrameEncoder.class) != null
+                && pipeline.get(SslHandler.class) == null;
+    }
+
+    private void sendFileRegionResponse(FileRegion region, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        stats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                TimeUnit.NANOSECONDS);
+        BookieProtocol.Response response = ResponseBuilder.buildFileRegionReadResponse(region, request);
+        if (throttleReadResponses) {
+            sendResponseAndWait(BookieProtocol.EOK, response, stats.getReadRequestStats());
+        } else {
+            sendResponse(BookieProtocol.EOK, response, stats.getReadRequestStats());
+        }
+        recycle();
+    }
+
     private void sendFenceResponse(Boolean result, ByteBuf data, long startTimeNanos) {
         final int retCode = result != null && result ? BookieProtocol.EOK : BookieProtocol.EIO;
         sendResponse(data, retCode, startTimeNanos);
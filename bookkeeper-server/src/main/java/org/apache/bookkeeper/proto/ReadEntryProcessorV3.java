@@ -316,10 +316,11 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setHeader(getHeader())
                 .setStatus(readResponse.getStatus())
                 .setReadResponse(readResponse);
+        requestProcessor.setRequestCredits(response, channel, false);
         sendResponse(response.getStatus(),
                      response.build(),
                      reqStats);
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(channel);
     }
 
     //
@@ -20,6 +20,7 @@
 package org.apache.bookkeeper.proto;
 
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BATCH_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
@@ -98,6 +99,12 @@ public class RequestStats {
             parent = ADD_ENTRY_REQUEST
     )
     private final Counter addEntryRejectedCounter;
+    @StatsDoc(
+        name = ADD_ENTRY_BATCH_SIZE,
+        help = "number of entries of the batched add requests on a bookie",
+        parent = ADD_ENTRY_REQUEST
+    )
+    private final OpStatsLogger addEntryBatchSizeStats;
     @StatsDoc(
         name = READ_ENTRY_REQUEST,
         help = "request stats of ReadEntry on a bookie"
@@ -242,6 +249,7 @@ public class RequestStats {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
         this.addRequestStats = statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST);
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
+        this.addEntryBatchSizeStats = statsLogger.getOpStatsLogger(ADD_ENTRY_BATCH_SIZE);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
@@ -21,12 +21,17 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
+import org.apache.bookkeeper.util.ByteBufList;
 
 class ResponseBuilder {
     static BookieProtocol.Response buildErrorResponse(int errorCode, BookieProtocol.Request r) {
         if (r.getOpCode() == BookieProtocol.ADDENTRY) {
             return BookieProtocol.AddResponse.create(r.getProtocolVersion(), errorCode,
                                                   r.getLedgerId(), r.getEntryId());
+        } else if (r.getOpCode() == BookieProtocol.BATCH_READ_ENTRY) {
+            return new BookieProtocol.BatchedReadResponse(r.getProtocolVersion(), errorCode,
+                                                          r.getLedgerId(), r.getEntryId());
         } else {
             assert(r.getOpCode() == BookieProtocol.READENTRY);
             return new BookieProtocol.ReadResponse(r.getProtocolVersion(), errorCode,
@@ -43,4 +48,14 @@ class ResponseBuilder {
         return new BookieProtocol.ReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
                 r.getLedgerId(), r.getEntryId(), data);
     }
+
+    static BookieProtocol.Response buildFileRegionReadResponse(FileRegion region, BookieProtocol.Request r) {
+        return new BookieProtocol.FileRegionReadResponse(r.getProtocolVersion(), r.getLedgerId(),
+                r.getEntryId(), region);
+    }
+
+    static BookieProtocol.Response buildBatchedReadResponse(ByteBufList data, BookieProtocol.BatchedReadRequest r) {
+        return new BookieProtocol.BatchedReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
+                r.getLedgerId(), r.getEntryId(), data);
+    }
 }
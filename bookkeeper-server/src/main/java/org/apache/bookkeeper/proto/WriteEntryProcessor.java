@@ -73,6 +73,7 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         startTimeNanos = MathUtils.nowInNano();
         int rc = BookieProtocol.EOK;
         ByteBuf addData = request.getData();
+        requestProcessor.maybeVerifyDigest(addData, request.isDigestVerified());
         try {
             if (request.isRecoveryAdd()) {
                 requestProcessor.getBookie().recoveryAddEntry(addData, this, channel, request.getMasterKey());
@@ -104,6 +104,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                         .setHeader(getHeader())
                         .setStatus(addResponse.getStatus())
                         .setAddResponse(addResponse);
+                requestProcessor.setRequestCredits(response, channel, true);
                 Response resp = response.build();
                 sendResponse(status, resp, requestProcessor.getRequestStats().getAddRequestStats());
             }
@@ -118,6 +119,8 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
         ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
+        // v3 requests have no flag for entries already verified
+        requestProcessor.maybeVerifyDigest(entryToAdd, false);
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
                 requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb, channel, masterKey);
@@ -170,6 +173,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                     .setHeader(getHeader())
                     .setStatus(addResponse.getStatus())
                     .setAddResponse(addResponse);
+            requestProcessor.setRequestCredits(response, channel, true);
             Response resp = response.build();
             sendResponse(addResponse.getStatus(), resp,
                          requestProcessor.getRequestStats().getAddRequestStats());
@@ -179,7 +183,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     @Override
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         super.sendResponse(code, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(channel);
     }
 
     /**
@@ -19,6 +19,7 @@ package org.apache.bookkeeper.proto.checksum;
 */
 
 import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import com.scurrilous.circe.checksum.Java9IntHash;
 import com.scurrilous.circe.crc.Sse42Crc32C;
 
 import io.netty.buffer.ByteBuf;
@@ -44,7 +45,7 @@ class CRC32CDigestManager extends DigestManager {
     public CRC32CDigestManager(long ledgerId, boolean useV2Protocol, ByteBufAllocator allocator) {
         super(ledgerId, useV2Protocol, allocator);
 
-        if (!Sse42Crc32C.isSupported() && !nonSupportedMessagePrinted) {
+        if (!Java9IntHash.isAvailable() && !Sse42Crc32C.isSupported() && !nonSupportedMessagePrinted) {
             log.warn("Sse42Crc32C is not supported, will use a slower CRC32C implementation.");
             nonSupportedMessagePrinted = true;
         }
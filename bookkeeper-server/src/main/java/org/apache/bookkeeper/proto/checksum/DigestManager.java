@@ -237,6 +237,32 @@ public abstract class DigestManager {
         return lac;
     }
 
+    /**
+     * Check whether the digest of an entry matches its content, without consuming the entry nor logging
+     * mismatches, so that it can be used to find out the digest type of an entry.
+     *
+     * @param dataReceived
+     * @return true if the digest matches
+     */
+    public boolean isDigestMatching(ByteBuf dataReceived) {
+        if ((METADATA_LENGTH + macCodeLength) > dataReceived.readableBytes()) {
+            return false;
+        }
+        int start = dataReceived.readerIndex();
+        update(dataReceived.slice(start, METADATA_LENGTH));
+
+        int offset = start + METADATA_LENGTH + macCodeLength;
+        update(dataReceived.slice(offset, dataReceived.writerIndex() - offset));
+
+        ByteBuf digest = allocator.buffer(macCodeLength);
+        try {
+            populateValueAndReset(digest);
+            return digest.compareTo(dataReceived.slice(start + METADATA_LENGTH, macCodeLength)) == 0;
+        } finally {
+            digest.release();
+        }
+    }
+
     /**
      * Verify that the digest matches and returns the data in the entry.
      *
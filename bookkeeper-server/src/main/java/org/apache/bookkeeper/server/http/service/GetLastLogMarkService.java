@@ -23,6 +23,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import io.netty.buffer.UnpooledByteBufAllocator;
+
 import java.io.File;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +38,7 @@ import org.apache.bookkeeper.http.HttpServer;
 import org.apache.bookkeeper.http.service.HttpEndpointService;
 import org.apache.bookkeeper.http.service.HttpServiceRequest;
 import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,8 +82,14 @@ public class GetLastLogMarkService implements HttpEndpointService {
                 List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
                 int idx = 0;
                 for (File journalDir : conf.getJournalDirs()) {
-                    journals.add(new Journal(idx++, journalDir, conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                      new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+                    int numStreams = Journal.getNumStreams(journalDir, conf);
+                    for (int stream = 0; stream < numStreams; stream++) {
+                        journals.add(new Journal(idx, stream, journalDir, conf,
+                          new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                            new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())),
+                          NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+                    }
+                    idx++;
                 }
                 for (Journal journal : journals) {
                     LogMark lastLogMark = journal.getLastLogMark().getCurMark();
@@ -19,12 +19,14 @@
 package org.apache.bookkeeper.tools.cli.commands.bookie;
 
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LogMark;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
 import org.apache.bookkeeper.tools.framework.CliFlags;
 import org.apache.bookkeeper.tools.framework.CliSpec;
@@ -58,12 +60,16 @@ public class LastMarkCommand extends BookieCommand<CliFlags> {
             File[] journalDirs = conf.getJournalDirs();
 
             for (int idx = 0; idx < journalDirs.length; idx++) {
-                Journal journal = new Journal(idx, journalDirs[idx], conf, dirsManager);
-                LogMark lastLogMark = journal.getLastLogMark().getCurMark();
-                LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
-                    lastLogMark.getLogFileId(),
-                    Long.toHexString(lastLogMark.getLogFileId()),
-                    lastLogMark.getLogFileOffset());
+                int numStreams = Journal.getNumStreams(journalDirs[idx], conf);
+                for (int stream = 0; stream < numStreams; stream++) {
+                    Journal journal = new Journal(idx, stream, journalDirs[idx], conf, dirsManager,
+                            NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+                    LogMark lastLogMark = journal.getLastLogMark().getCurMark();
+                    LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
+                        lastLogMark.getLogFileId(),
+                        Long.toHexString(lastLogMark.getLogFileId()),
+                        lastLogMark.getLogFileOffset());
+                }
             }
             return true;
         } catch (IOException e) {
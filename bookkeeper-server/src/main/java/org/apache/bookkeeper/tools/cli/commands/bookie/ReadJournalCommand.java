@@ -22,6 +22,7 @@ import com.beust.jcommander.Parameter;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -31,6 +32,7 @@ import lombok.experimental.Accessors;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
 import org.apache.bookkeeper.tools.framework.CliFlags;
 import org.apache.bookkeeper.tools.framework.CliSpec;
@@ -179,9 +181,15 @@ public class ReadJournalCommand extends BookieCommand<ReadJournalCommand.ReadJou
             journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
             int idx = 0;
             for (File journalDir : conf.getJournalDirs()) {
-                journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
-                         new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                               new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+                File currentDir = new File(journalDir, BookKeeperConstants.CURRENT_DIR);
+                int numStreams = Journal.getNumStreams(currentDir, conf);
+                for (int stream = 0; stream < numStreams; stream++) {
+                    journals.add(new Journal(idx, stream, currentDir, conf,
+                             new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                                   new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())),
+                             NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+                }
+                idx++;
             }
         }
         return journals;
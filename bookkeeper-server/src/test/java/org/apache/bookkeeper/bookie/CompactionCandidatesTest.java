@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.GarbageCollectorThread.CompactionCandidate;
+import org.junit.Test;
+
+/**
+ * Test the selection of the entry logs to compact.
+ */
+public class CompactionCandidatesTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static CompactionCandidate candidate(long entryLogId, long totalSize, long remainingSize) {
+        return new CompactionCandidate(entryLogId, totalSize, remainingSize, 0);
+    }
+
+    private static List<Long> select(long rewriteBudget, CompactionCandidate... candidates) {
+        List<Long> entryLogIds = new ArrayList<>();
+        for (CompactionCandidate candidate
+                : GarbageCollectorThread.selectCompactionCandidates(Arrays.asList(candidates), rewriteBudget)) {
+            entryLogIds.add(candidate.entryLogId);
+        }
+        return entryLogIds;
+    }
+
+    @Test
+    public void testRankedByUsageThenReclaimableSize() {
+        List<Long> selected = select(Long.MAX_VALUE,
+                candidate(1, 100 * MB, 40 * MB),
+                candidate(2, 100 * MB, 10 * MB),
+                candidate(3, 10 * MB, 1 * MB),
+                candidate(4, 1000 * MB, 300 * MB),
+                candidate(5, 50 * MB, 0));
+        // Entry logs 2 and 3 have the same usage, 2 reclaims more
+        assertEquals(Arrays.asList(5L, 2L, 3L, 4L, 1L), selected);
+    }
+
+    @Test
+    public void testLogsNotFittingTheBudgetAreSkipped() {
+        List<Long> selected = select(100 * MB,
+                candidate(1, 200 * MB, 20 * MB),
+                candidate(2, 1000 * MB, 200 * MB),
+                candidate(3, 100 * MB, 30 * MB),
+                candidate(4, 100 * MB, 40 * MB),
+                candidate(5, 100 * MB, 50 * MB));
+        // 2 does not fit in what is left after 1, 3 and 4 still do but not 5
+        assertEquals(Arrays.asList(1L, 3L, 4L), selected);
+    }
+
+    @Test
+    public void testLogLargerThanTheBudgetSelectedFirst() {
+        List<Long> selected = select(10 * MB,
+                candidate(1, 1000 * MB, 100 * MB),
+                candidate(2, 100 * MB, 20 * MB),
+                candidate(3, 100 * MB, 0));
+        // Fully garbage logs cost nothing to rewrite, the first log to rewrite is compacted even beyond the budget
+        assertEquals(Arrays.asList(3L, 1L), selected);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test that the metadata of the entry logs current at a clean shutdown is read from their index after a restart.
+ */
+public class EntryLogMetadataRestartTest {
+
+    private static final int NUM_LEDGERS = 3;
+    private static final int NUM_ENTRIES = 10;
+    private static final int ENTRY_SIZE = 100;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+
+    @After
+    public void tearDown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    private ServerConfiguration newConf(boolean entryLogPerLedger) throws Exception {
+        File ledgerDir = tmpDirs.createNew("entryLogMetadata", "restart");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.toString() });
+        conf.setEntryLogPerLedgerEnabled(entryLogPerLedger);
+        return conf;
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeZero(ENTRY_SIZE - entry.writerIndex());
+        return entry;
+    }
+
+    /**
+     * @return the ids of the entry logs written
+     */
+    private static Set<Long> writeEntries(DefaultEntryLogger entryLogger) throws Exception {
+        Set<Long> entryLogIds = new HashSet<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+                ByteBuf entry = newEntry(ledgerId, entryId);
+                try {
+                    entryLogIds.add(entryLogger.addEntry(ledgerId, entry) >> 32);
+                } finally {
+                    entry.release();
+                }
+            }
+        }
+        return entryLogIds;
+    }
+
+    private void verifyMetadataReadFromIndexAfterRestart(ServerConfiguration conf, int expectedLedgersPerLog)
+            throws Exception {
+        DefaultEntryLogger entryLogger = new DefaultEntryLogger(conf);
+        Set<Long> entryLogIds = writeEntries(entryLogger);
+        entryLogger.close();
+
+        // The logs still current on close have their ledgers map appended, no scan is needed to read them
+        DefaultEntryLogger restartedEntryLogger = new DefaultEntryLogger(conf);
+        try {
+            Set<Long> ledgerIds = new HashSet<>();
+            for (long entryLogId : entryLogIds) {
+                EntryLogMetadata meta = restartedEntryLogger.extractEntryLogMetadataFromIndex(entryLogId);
+                assertEquals(expectedLedgersPerLog, meta.getLedgersMap().size());
+                meta.getLedgersMap().forEach((ledgerId, size) -> {
+                    assertEquals(NUM_ENTRIES * (ENTRY_SIZE + 4), size);
+                    ledgerIds.add(ledgerId);
+                });
+                assertEquals(meta.getTotalSize(), meta.getRemainingSize());
+            }
+            assertEquals(NUM_LEDGERS, ledgerIds.size());
+            for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+                assertTrue(ledgerIds.contains(ledgerId));
+            }
+        } finally {
+            restartedEntryLogger.close();
+        }
+    }
+
+    @Test
+    public void testSingleEntryLog() throws Exception {
+        verifyMetadataReadFromIndexAfterRestart(newConf(false), NUM_LEDGERS);
+    }
+
+    @Test
+    public void testEntryLogPerLedger() throws Exception {
+        verifyMetadataReadFromIndexAfterRestart(newConf(true), 1);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.nativeio.NativeAsyncIO;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the journal force write loop submitting its syncs asynchronously.
+ */
+public class JournalAsyncForceWriteTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int QUEUE_DEPTH = 8;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final FakeAsyncIO asyncIO = new FakeAsyncIO();
+    private final BlockingQueue<long[]> acks = new LinkedBlockingQueue<>();
+    private Journal journal;
+
+    /**
+     * Async I/O whose syncs are completed by the test.
+     */
+    private static class FakeAsyncIO implements NativeAsyncIO {
+        private final List<Long> prepared = new ArrayList<>();
+        private final ArrayDeque<long[]> completions = new ArrayDeque<>();
+        final BlockingQueue<Long> submitted = new LinkedBlockingQueue<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        final CountDownLatch preparing = new CountDownLatch(1);
+        volatile CountDownLatch prepareGate = new CountDownLatch(0);
+
+        @Override
+        public int getQueueDepth() {
+            return QUEUE_DEPTH;
+        }
+
+        @Override
+        public void prepareFdatasync(int fd, long userData, boolean linkNext) {
+            preparing.countDown();
+            try {
+                prepareGate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            prepared.add(userData);
+        }
+
+        @Override
+        public synchronized int submit(boolean waitForCompletion) {
+            int count = prepared.size();
+            submitted.addAll(prepared);
+            prepared.clear();
+            while (waitForCompletion && completions.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // shutting down, the loop checks whether it is still running
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int reapCompletions(long[] userData, int[] results) {
+            int count = 0;
+            while (count < userData.length && !completions.isEmpty()) {
+                long[] completion = completions.poll();
+                userData[count] = completion[0];
+                results[count] = (int) completion[1];
+                count++;
+            }
+            return count;
+        }
+
+        synchronized void complete(long userData, int result) {
+            completions.add(new long[] { userData, result });
+            notifyAll();
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        File journalDir = tmpDirs.createNew("journal", "async");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        File ledgerDir = tmpDirs.createNew("ledger", "async");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalAsyncForceWriteEnabled(true);
+        conf.setJournalAsyncForceWriteQueueDepth(QUEUE_DEPTH);
+        // every add is flushed to the file and handed to the force write thread on its own
+        conf.setJournalMaxGroupWaitMSec(0);
+        conf.setNumJournalCallbackThreads(1);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager,
+                statsProvider.getStatsLogger(""), UnpooledByteBufAllocator.DEFAULT) {
+            @Override
+            NativeAsyncIO createAsyncForceWriteIO(int queueDepth) {
+                return asyncIO;
+            }
+        };
+        journal.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncIO.prepareGate.countDown();
+        journal.shutdown();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeZero(entry.writableBytes());
+        return entry;
+    }
+
+    private void ack(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+        acks.add(new long[] { entryId, rc });
+    }
+
+    private void addEntry(long entryId) throws Exception {
+        ByteBuf entry = newEntry(entryId);
+        journal.logAddEntry(entry, false, this::ack, null);
+        entry.release();
+    }
+
+    private long nextSubmittedSync() throws Exception {
+        Long syncId = asyncIO.submitted.poll(10, TimeUnit.SECONDS);
+        assertNotNull("No sync submitted", syncId);
+        return syncId;
+    }
+
+    private void assertAck(long entryId, int rc) throws Exception {
+        long[] ack = acks.poll(10, TimeUnit.SECONDS);
+        assertNotNull("Entry " + entryId + " not acknowledged", ack);
+        assertEquals(entryId, ack[0]);
+        assertEquals(rc, ack[1]);
+    }
+
+    @Test
+    public void testAcknowledgedOnceTheSyncCompletes() throws Exception {
+        addEntry(0);
+        long syncId = nextSubmittedSync();
+        assertNull(acks.poll(200, TimeUnit.MILLISECONDS));
+
+        asyncIO.complete(syncId, 0);
+        assertAck(0, BookieProtocol.EOK);
+    }
+
+    @Test
+    public void testAcknowledgedInSubmissionOrder() throws Exception {
+        // Hold the force write thread while it prepares the first sync, so that the second add is queued
+        // and its sync submitted without waiting for the first one
+        asyncIO.prepareGate = new CountDownLatch(1);
+        addEntry(0);
+        assertTrue(asyncIO.preparing.await(10, TimeUnit.SECONDS));
+        addEntry(1);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (journal.getJournalStats().getForceWriteQueueSize().get() < 1) {
+            assertTrue("Second add not handed to the force write thread", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        asyncIO.prepareGate.countDown();
+        long firstSync = nextSubmittedSync();
+        long secondSync = nextSubmittedSync();
+
+        // The second sync completing first doesn't acknowledge anything
+        asyncIO.complete(secondSync, 0);
+        assertNull(acks.poll(200, TimeUnit.MILLISECONDS));
+
+        asyncIO.complete(firstSync, 0);
+        assertAck(0, BookieProtocol.EOK);
+        assertAck(1, BookieProtocol.EOK);
+    }
+
+    @Test
+    public void testGroupSyncedTogether() throws Exception {
+        ByteBuf[] entries = new ByteBuf[3];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = newEntry(i);
+        }
+        journal.logAddEntries(entries, entries.length, false, this::ack, null);
+        for (ByteBuf entry : entries) {
+            entry.release();
+        }
+
+        // The entries of the group are written before the journal flushes, so a single sync covers them
+        long syncId = nextSubmittedSync();
+        assertNull(asyncIO.submitted.poll(200, TimeUnit.MILLISECONDS));
+        assertNull(acks.poll(0, TimeUnit.MILLISECONDS));
+
+        asyncIO.complete(syncId, 0);
+        for (int i = 0; i < entries.length; i++) {
+            assertAck(i, BookieProtocol.EOK);
+        }
+    }
+
+    @Test
+    public void testFailedSyncFailsTheWaiters() throws Exception {
+        addEntry(0);
+        asyncIO.complete(nextSubmittedSync(), -5);
+        assertAck(0, BookieProtocol.EIO);
+        assertTrue(asyncIO.closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownFailsTheSyncsInFlight() throws Exception {
+        addEntry(0);
+        nextSubmittedSync();
+
+        journal.shutdown();
+        assertAck(0, BookieProtocol.EIO);
+        assertTrue(asyncIO.closed.await(0, TimeUnit.SECONDS));
+    }
+}
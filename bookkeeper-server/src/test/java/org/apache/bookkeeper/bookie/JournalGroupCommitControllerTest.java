@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_DEADLINE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the group commit decisions of the {@link JournalGroupCommitController}, and the journal waiting on them.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long MAX_BATCH_ENTRIES = 100;
+    // The moving average of the sync latency can stop moving up to 8 nanos below the latency
+    private static final double SYNC_LATENCY_PRECISION_NANOS = 8;
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS,
+            MAX_BATCH_ENTRIES, statsProvider.getStatsLogger(""));
+    private long now = System.nanoTime();
+    private Journal journal;
+
+    @After
+    public void tearDown() throws Exception {
+        if (journal != null) {
+            journal.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private void syncs(int count, long latencyNanos) {
+        for (int i = 0; i < count; i++) {
+            controller.recordSync(latencyNanos);
+        }
+    }
+
+    private void flushes(int count, int entriesPerFlush, long intervalNanos) {
+        for (int i = 0; i < count; i++) {
+            now += intervalNanos;
+            controller.recordFlush(entriesPerFlush, now);
+        }
+    }
+
+    private void assertNoGrouping() {
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(0, controller.getBatchEntries());
+        assertTrue(controller.shouldFlushWhenQueueEmpty());
+    }
+
+    @Test
+    public void testNoGroupingUnderLightLoad() {
+        assertNoGrouping();
+        // One entry every 10ms with 1ms syncs, an entry rarely arrives during a sync
+        syncs(10, TimeUnit.MILLISECONDS.toNanos(1));
+        flushes(100, 1, TimeUnit.MILLISECONDS.toNanos(10));
+        assertNoGrouping();
+    }
+
+    @Test
+    public void testDeadlineAdaptsUnderLoad() {
+        // 20 entries per ms with 1ms syncs: wait about a sync for the 20 entries arriving during it
+        syncs(10, TimeUnit.MILLISECONDS.toNanos(1));
+        flushes(100, 20, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), controller.getGroupWaitNanos());
+        assertEquals(20, controller.getBatchEntries());
+        assertFalse(controller.shouldFlushWhenQueueEmpty());
+        assertEquals(controller.getGroupWaitNanos(),
+                statsProvider.getGauge(JOURNAL_GROUP_COMMIT_DEADLINE).getSample().longValue());
+        assertEquals(controller.getBatchEntries(),
+                statsProvider.getGauge(JOURNAL_GROUP_COMMIT_BATCH_ENTRIES).getSample().longValue());
+
+        // Slower syncs, the configured max wait and batch size bound the grouping
+        syncs(200, TimeUnit.MILLISECONDS.toNanos(5));
+        flushes(1, 20, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+        assertEquals(MAX_BATCH_ENTRIES, controller.getBatchEntries());
+
+        // Faster syncs, shorter waits for smaller groups
+        syncs(200, TimeUnit.MICROSECONDS.toNanos(200));
+        flushes(1, 20, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(200), controller.getGroupWaitNanos(),
+                SYNC_LATENCY_PRECISION_NANOS);
+        assertEquals(4, controller.getBatchEntries());
+        assertFalse(controller.shouldFlushWhenQueueEmpty());
+
+        // The load goes away, back to flushing each entry on its own
+        flushes(100, 1, TimeUnit.MILLISECONDS.toNanos(10));
+        assertNoGrouping();
+    }
+
+    @Test
+    public void testQuietPeriodAddNotDelayedPastMaxWait() throws Exception {
+        long maxGroupWaitMs = 300;
+        File journalDir = tmpDirs.createNew("journal", "group-commit");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        File ledgerDir = tmpDirs.createNew("ledger", "group-commit");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalAdaptiveGroupCommit(true);
+        conf.setJournalMaxGroupWaitMSec(maxGroupWaitMs);
+        conf.setJournalFlushWhenQueueEmpty(false);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+
+        // Left by a burst of adds with slow syncs, the journal groups the entries and no longer
+        // flushes when its queue is empty
+        JournalGroupCommitController journalController = journal.getGroupCommitController();
+        journalController.recordSync(TimeUnit.SECONDS.toNanos(10));
+        long start = System.nanoTime();
+        journalController.recordFlush(0, start);
+        journalController.recordFlush(1000, start + TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(maxGroupWaitMs), journalController.getGroupWaitNanos());
+        assertFalse(journalController.shouldFlushWhenQueueEmpty());
+        journal.start();
+
+        // A lone add of the quiet period that follows waits for the deadline, not for a full batch
+        for (long entryId = 0; entryId < 3; entryId++) {
+            ByteBuf entry = Unpooled.buffer(64);
+            entry.writeLong(1);
+            entry.writeLong(entryId);
+            entry.writeZero(entry.writableBytes());
+            CompletableFuture<Integer> acked = new CompletableFuture<>();
+            long addStart = MathUtils.nowInNano();
+            journal.logAddEntry(entry, false, (rc, ledgerId, eid, addr, ctx) -> acked.complete(rc), null);
+            entry.release();
+
+            assertEquals(BookieProtocol.EOK, acked.get(maxGroupWaitMs + 5000, TimeUnit.MILLISECONDS).intValue());
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(MathUtils.elapsedNanos(addStart));
+            assertTrue("Acknowledged after " + elapsedMs + "ms", elapsedMs <= maxGroupWaitMs + 1000);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.Journal.LastLogMark;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the journal streams of a directory are replayed and checkpointed on their own after a restart.
+ */
+public class JournalStreamsRestartTest {
+
+    private static final int NUM_STREAMS = 3;
+    private static final int NUM_LEDGERS = 6;
+    private static final int NUM_ENTRIES = 10;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File journalDir;
+    private File ledgerDir;
+    private LedgerDirsManager ledgerDirsManager;
+    private final List<Journal> started = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        journalDir = BookieImpl.getCurrentDirectory(tmpDirs.createNew("journal", "streams"));
+        BookieImpl.checkDirectoryStructure(journalDir);
+        File ledgerRoot = tmpDirs.createNew("ledger", "streams");
+        ledgerDir = BookieImpl.getCurrentDirectory(ledgerRoot);
+        BookieImpl.checkDirectoryStructure(ledgerDir);
+
+        ServerConfiguration conf = newConf(NUM_STREAMS);
+        ledgerDirsManager = new LedgerDirsManager(conf, new File[] { ledgerRoot },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Journal journal : started) {
+            journal.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private ServerConfiguration newConf(int streams) {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getParent());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getParent() });
+        conf.setJournalStreamsPerDirectory(streams);
+        return conf;
+    }
+
+    /**
+     * Create the journals of the directory the way the bookie does.
+     */
+    private List<Journal> newJournals(ServerConfiguration conf) {
+        List<Journal> journals = new ArrayList<>();
+        int numStreams = Journal.getNumStreams(journalDir, conf);
+        for (int stream = 0; stream < numStreams; stream++) {
+            journals.add(new Journal(0, stream, journalDir, conf, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                    UnpooledByteBufAllocator.DEFAULT));
+        }
+        return journals;
+    }
+
+    private static Journal journalOf(List<Journal> journals, long ledgerId) {
+        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeZero(entry.writableBytes());
+        return entry;
+    }
+
+    /**
+     * Write entries of the ledgers through the journal of each ledger, and wait for them to be synced.
+     */
+    private void writeEntries(List<Journal> journals, long firstLedgerId, long lastLedgerId) throws Exception {
+        for (Journal journal : journals) {
+            journal.start();
+            started.add(journal);
+        }
+        int numEntries = (int) (lastLedgerId - firstLedgerId + 1) * NUM_ENTRIES;
+        CountDownLatch synced = new CountDownLatch(numEntries);
+        AtomicInteger failures = new AtomicInteger();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            for (long ledgerId = firstLedgerId; ledgerId <= lastLedgerId; ledgerId++) {
+                ByteBuf entry = newEntry(ledgerId, entryId);
+                journalOf(journals, ledgerId).logAddEntry(entry, false, (rc, lid, eid, addr, ctx) -> {
+                    if (rc != BookieProtocol.EOK) {
+                        failures.incrementAndGet();
+                    }
+                    synced.countDown();
+                }, null);
+                entry.release();
+            }
+        }
+        assertTrue(synced.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    private void shutdown(List<Journal> journals) {
+        for (Journal journal : journals) {
+            journal.shutdown();
+            started.remove(journal);
+        }
+    }
+
+    /**
+     * Replay the journal from its last log mark, the way the bookie does on startup.
+     *
+     * @return the "ledgerId:entryId" of the entries replayed
+     */
+    private static Set<String> replay(Journal journal) throws Exception {
+        Set<String> replayed = new HashSet<>();
+        LogMark markedLog = journal.getLastLogMark().getCurMark();
+        List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(),
+                journalId -> journalId >= markedLog.getLogFileId());
+        for (long id : logs) {
+            long logPosition = id == markedLog.getLogFileId() ? markedLog.getLogFileOffset() : 0L;
+            journal.scanJournal(id, logPosition, (journalVersion, offset, entry) -> {
+                long ledgerId = entry.getLong();
+                long entryId = entry.getLong();
+                if (entryId >= 0) {
+                    replayed.add(ledgerId + ":" + entryId);
+                }
+            });
+        }
+        return replayed;
+    }
+
+    /**
+     * @return the "ledgerId:entryId" of the entries of the ledgers written to the given stream
+     */
+    private static Set<String> entriesOf(int stream, long firstLedgerId, long lastLedgerId) {
+        Set<String> entries = new HashSet<>();
+        for (long ledgerId = firstLedgerId; ledgerId <= lastLedgerId; ledgerId++) {
+            if (MathUtils.signSafeMod(ledgerId, NUM_STREAMS) == stream) {
+                for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                    entries.add(ledgerId + ":" + entryId);
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testStreamsReplayedAfterRestart() throws Exception {
+        ServerConfiguration conf = newConf(NUM_STREAMS);
+        List<Journal> journals = newJournals(conf);
+        assertEquals(NUM_STREAMS, journals.size());
+        writeEntries(journals, 1, NUM_LEDGERS);
+        shutdown(journals);
+
+        // Every stream but the first one has its own directory
+        assertEquals(journalDir, journals.get(0).getJournalDirectory());
+        for (int stream = 1; stream < NUM_STREAMS; stream++) {
+            assertEquals(new File(journalDir, "stream-" + stream), journals.get(stream).getJournalDirectory());
+        }
+
+        List<Journal> restarted = newJournals(conf);
+        assertEquals(NUM_STREAMS, restarted.size());
+        for (int stream = 0; stream < NUM_STREAMS; stream++) {
+            assertEquals(entriesOf(stream, 1, NUM_LEDGERS), replay(restarted.get(stream)));
+        }
+    }
+
+    @Test
+    public void testStreamsOnDiskKeptWhenFewerConfigured() throws Exception {
+        writeEntries(newJournals(newConf(NUM_STREAMS)), 1, NUM_LEDGERS);
+        shutdown(new ArrayList<>(started));
+
+        // Restarted with a single stream configured, the streams on disk are still replayed
+        ServerConfiguration conf = newConf(1);
+        assertEquals(NUM_STREAMS, Journal.getNumStreams(journalDir, conf));
+        List<Journal> restarted = newJournals(conf);
+        assertEquals(NUM_STREAMS, restarted.size());
+        Set<String> replayed = new HashSet<>();
+        for (int stream = 0; stream < NUM_STREAMS; stream++) {
+            Set<String> entries = replay(restarted.get(stream));
+            assertEquals(entriesOf(stream, 1, NUM_LEDGERS), entries);
+            replayed.addAll(entries);
+        }
+        assertEquals(NUM_LEDGERS * NUM_ENTRIES, replayed.size());
+
+        // The ledgers keep going to the same streams
+        writeEntries(restarted, NUM_LEDGERS + 1, 2 * NUM_LEDGERS);
+        shutdown(restarted);
+        List<Journal> restartedAgain = newJournals(conf);
+        for (int stream = 0; stream < NUM_STREAMS; stream++) {
+            assertEquals(entriesOf(stream, 1, 2 * NUM_LEDGERS), replay(restartedAgain.get(stream)));
+        }
+    }
+
+    @Test
+    public void testStreamsCheckpointedOnTheirOwn() throws Exception {
+        ServerConfiguration conf = newConf(NUM_STREAMS);
+        List<Journal> journals = newJournals(conf);
+        writeEntries(journals, 1, NUM_LEDGERS);
+
+        // Only the second stream is checkpointed, in a last mark file of its own
+        Checkpoint checkpoint = journals.get(1).newCheckpoint();
+        journals.get(1).checkpointComplete(checkpoint, false);
+        shutdown(journals);
+        assertTrue(new File(ledgerDir, "lastMark.stream-1").exists());
+        assertFalse(new File(ledgerDir, "lastMark").exists());
+        assertFalse(new File(ledgerDir, "lastMark.stream-2").exists());
+
+        List<Journal> restarted = newJournals(conf);
+        LastLogMark mark = restarted.get(1).getLastLogMark();
+        assertEquals(0, mark.getCurMark().compare(journals.get(1).getLastLogMark().getCurMark()));
+        assertTrue(replay(restarted.get(1)).isEmpty());
+        assertEquals(entriesOf(0, 1, NUM_LEDGERS), replay(restarted.get(0)));
+        assertEquals(entriesOf(2, 1, NUM_LEDGERS), replay(restarted.get(2)));
+
+        // Checkpointing the first stream writes the default last mark file
+        long ledgerOfFirstStream = 3 * NUM_STREAMS;
+        writeEntries(restarted, ledgerOfFirstStream, ledgerOfFirstStream);
+        restarted.get(0).checkpointComplete(restarted.get(0).newCheckpoint(), false);
+        shutdown(restarted);
+        assertTrue(new File(ledgerDir, "lastMark").exists());
+        assertTrue(newJournals(conf).get(0).getLastLogMark().getCurMark().getLogFileId() > 0);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the rotation of the logs of the direct I/O entry logger.
+ */
+public class DirectEntryLoggerRotationTest {
+
+    private static final long MAX_FILE_SIZE = 64 * 1024;
+    private static final int MAX_SANE_ENTRY_SIZE = 4 * 1024;
+    private static final long TOTAL_WRITE_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final long TOTAL_READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final FileChannelNativeIO nativeIO = new FileChannelNativeIO();
+    private File ledgerDir;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = tmpDirs.createNew("directEntryLogger", "rotation");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    private DirectEntryLogger newEntryLogger() throws IOException {
+        return new DirectEntryLogger(ledgerDir, nativeIO, ByteBufAllocator.DEFAULT, MAX_FILE_SIZE,
+                MAX_SANE_ENTRY_SIZE, TOTAL_WRITE_BUFFER_SIZE, TOTAL_READ_BUFFER_SIZE, READ_BUFFER_SIZE,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static void assertEntry(DirectEntryLogger entryLogger, long ledgerId, long entryId, int size,
+                                    long location) throws Exception {
+        ByteBuf expected = newEntry(ledgerId, entryId, size);
+        ByteBuf read = entryLogger.readEntry(ledgerId, entryId, location);
+        try {
+            assertEquals(expected, read);
+        } finally {
+            read.release();
+            expected.release();
+        }
+    }
+
+    @Test
+    public void testRotationLeavesRoomForTheLedgersMap() throws Exception {
+        // Every entry is in its own ledger, so the ledgers map takes a large part of each log
+        final int entrySize = 32;
+        final int numEntries = 5000;
+        List<Long> locations = new ArrayList<>();
+
+        DirectEntryLogger entryLogger = newEntryLogger();
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf entry = newEntry(i, 0, entrySize);
+            locations.add(entryLogger.addEntry(i, entry));
+            entry.release();
+        }
+        entryLogger.flush();
+        assertTrue("Logs should have been rotated", entryLogger.getFlushedLogIds().size() > 1);
+        for (int i = 0; i < numEntries; i++) {
+            assertEntry(entryLogger, i, 0, entrySize, locations.get(i));
+        }
+        entryLogger.close();
+
+        File[] logFiles = ledgerDir.listFiles((dir, name) -> name.endsWith(".log"));
+        for (File logFile : logFiles) {
+            assertTrue("Log " + logFile + " exceeds the max file size", logFile.length() <= MAX_FILE_SIZE);
+        }
+
+        // All the logs are finalized, their ledgers maps hold every ledger
+        DirectEntryLogger restarted = newEntryLogger();
+        try {
+            long ledgers = 0;
+            for (long logId : restarted.getFlushedLogIds()) {
+                EntryLogMetadata meta = restarted.getEntryLogMetadata(logId);
+                ledgers += meta.getLedgersMap().size();
+            }
+            assertEquals(numEntries, ledgers);
+        } finally {
+            restarted.close();
+        }
+        assertEquals(0, nativeIO.openFileCount());
+    }
+
+    @Test
+    public void testFailedRotationFlushesAndClosesTheOldLog() throws Exception {
+        final int entrySize = 1000;
+        List<Long> locations = new ArrayList<>();
+
+        DirectEntryLogger entryLogger = newEntryLogger();
+        // Nothing is flushed before the first rotation, so it is the one to fail
+        nativeIO.failNextFsyncs(1);
+        boolean rotationFailed = false;
+        for (int i = 0; i < 1000 && !rotationFailed; i++) {
+            ByteBuf entry = newEntry(1, i, entrySize);
+            try {
+                locations.add(entryLogger.addEntry(1, entry));
+            } catch (IOException e) {
+                rotationFailed = true;
+            } finally {
+                entry.release();
+            }
+        }
+        assertTrue("Rotation should have failed", rotationFailed);
+        assertTrue(entryLogger.getFlushedLogIds().isEmpty());
+
+        // The entries of the log which failed to be finalized are still made durable by the next flush
+        entryLogger.flush();
+        assertEquals(1, entryLogger.getFlushedLogIds().size());
+        long unfinalizedLogId = entryLogger.getFlushedLogIds().iterator().next();
+        for (int i = 0; i < locations.size(); i++) {
+            assertEntry(entryLogger, 1, i, entrySize, locations.get(i));
+        }
+
+        // New entries go to a new log, whose rotation succeeds
+        int firstEntryAfterFailure = locations.size();
+        for (int i = firstEntryAfterFailure; i < firstEntryAfterFailure + 200; i++) {
+            ByteBuf entry = newEntry(1, i, entrySize);
+            locations.add(entryLogger.addEntry(1, entry));
+            entry.release();
+        }
+        entryLogger.flush();
+        assertTrue(entryLogger.getFlushedLogIds().size() > 1);
+        for (int i = 0; i < locations.size(); i++) {
+            assertEntry(entryLogger, 1, i, entrySize, locations.get(i));
+        }
+        entryLogger.close();
+        assertEquals("File descriptors leaked", 0, nativeIO.openFileCount());
+
+        // The log without ledgers map is scanned for its metadata
+        DirectEntryLogger restarted = newEntryLogger();
+        try {
+            EntryLogMetadata meta = restarted.getEntryLogMetadata(unfinalizedLogId);
+            assertEquals(firstEntryAfterFailure * (entrySize + Integer.BYTES), meta.getLedgersMap().get(1));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void testFailedCloseReleasesTheWriter() throws Exception {
+        DirectEntryLogger entryLogger = newEntryLogger();
+        ByteBuf entry = newEntry(1, 0, 100);
+        entryLogger.addEntry(1, entry);
+        entry.release();
+
+        nativeIO.failNextFsyncs(1);
+        try {
+            entryLogger.close();
+            fail("Close should have failed to finalize the log");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("File descriptors leaked", 0, nativeIO.openFileCount());
+    }
+}
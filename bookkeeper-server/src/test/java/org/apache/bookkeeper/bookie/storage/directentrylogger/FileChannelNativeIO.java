@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * {@link NativeIO} implemented with file channels, so that the direct I/O entry logger can be tested
+ * without the native library. Fsyncs can be made to fail to test the error paths.
+ */
+class FileChannelNativeIO implements NativeIO {
+
+    private final AtomicInteger nextFd = new AtomicInteger(3);
+    private final Map<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger fsyncsToFail = new AtomicInteger(0);
+
+    void failNextFsyncs(int count) {
+        fsyncsToFail.set(count);
+    }
+
+    int openFileCount() {
+        return channels.size();
+    }
+
+    private FileChannel channel(int fd) throws NativeIOException {
+        FileChannel channel = channels.get(fd);
+        if (channel == null) {
+            throw new NativeIOException("Bad file descriptor", 9);
+        }
+        return channel;
+    }
+
+    @Override
+    public int open(String pathname, int flags, int mode) throws NativeIOException {
+        try {
+            String fileMode = (flags & O_WRONLY) != 0 ? "rw" : "r";
+            FileChannel channel = new RandomAccessFile(pathname, fileMode).getChannel();
+            int fd = nextFd.getAndIncrement();
+            channels.put(fd, channel);
+            return fd;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage(), 2);
+        }
+    }
+
+    @Override
+    public int fsync(int fd) throws NativeIOException {
+        if (fsyncsToFail.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            throw new NativeIOException("Injected fsync failure", 5);
+        }
+        try {
+            channel(fd).force(true);
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage(), 5);
+        }
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+        throw new NativeIOException("fallocate not supported");
+    }
+
+    @Override
+    public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+        byte[] data = new byte[count];
+        PlatformDependent.copyMemory(pointer, data, 0, count);
+        try {
+            return channel(fd).write(ByteBuffer.wrap(data), offset);
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage(), 5);
+        }
+    }
+
+    @Override
+    public long posix_memalign(int alignment, int size) throws NativeIOException {
+        throw new NativeIOException("posix_memalign not supported");
+    }
+
+    @Override
+    public void free(long pointer) throws NativeIOException {
+        throw new NativeIOException("free not supported");
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) throws NativeIOException {
+        try {
+            return whence == SEEK_END ? channel(fd).size() + offset : offset;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage(), 5);
+        }
+    }
+
+    @Override
+    public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+        ByteBuffer data = ByteBuffer.allocate((int) size);
+        try {
+            int read = channel(fd).read(data, offset);
+            if (read <= 0) {
+                return 0;
+            }
+            PlatformDependent.copyMemory(data.array(), 0, pointer, read);
+            return read;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage(), 5);
+        }
+    }
+
+    @Override
+    public int close(int fd) throws NativeIOException {
+        FileChannel channel = channels.remove(fd);
+        if (channel == null) {
+            throw new NativeIOException("Bad file descriptor", 9);
+        }
+        try {
+            channel.close();
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage(), 5);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the locations of the active ledgers kept by the {@link EntryLocationIndex} in an
+ * {@link ActiveLedgerLocationIndex}, across flushes and restarts.
+ */
+public class ActiveLedgerLocationIndexTest {
+
+    private static final int IDLE_FLUSHES = 2;
+    private static final int NUM_ENTRIES = 100;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File indexDir;
+    private TestStatsProvider statsProvider;
+    private EntryLocationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        indexDir = tmpDirs.createNew("locations", "active");
+        index = newIndex(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        tmpDirs.cleanup();
+    }
+
+    private EntryLocationIndex newIndex(boolean activeLocationsEnabled) throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setProperty(DbLedgerStorage.ACTIVE_LOCATION_INDEX_ENABLED, activeLocationsEnabled);
+        conf.setProperty(DbLedgerStorage.ACTIVE_LOCATION_INDEX_IDLE_FLUSHES, IDLE_FLUSHES);
+        statsProvider = new TestStatsProvider();
+        return new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, indexDir.getPath(),
+                statsProvider.getStatsLogger(""));
+    }
+
+    private void restart(boolean activeLocationsEnabled) throws Exception {
+        index.close();
+        index = newIndex(activeLocationsEnabled);
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) | (entryId + 1);
+    }
+
+    private static long compactedLocation(long ledgerId, long entryId) {
+        return ((ledgerId + 1000) << 32) | (entryId + 1);
+    }
+
+    private void addLocations(Batch batch, long ledgerId, long firstEntryId, long lastEntryId) throws Exception {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            index.addLocation(batch, ledgerId, entryId, location(ledgerId, entryId));
+        }
+    }
+
+    /**
+     * Add the locations of a write cache flush, through a batch persisting the active locations.
+     */
+    private void flush(long ledgerId, long firstEntryId, long lastEntryId) throws Exception {
+        Batch batch = index.newBatch();
+        try {
+            addLocations(batch, ledgerId, firstEntryId, lastEntryId);
+            batch.flush();
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Flush without new entries for the first ledger, until the other ledgers are spilled as idle.
+     */
+    private void flushUntilIdleSpilled(long activeLedgerId, long nextEntryId) throws Exception {
+        for (int i = 0; i <= IDLE_FLUSHES; i++) {
+            flush(activeLedgerId, nextEntryId + i, nextEntryId + i);
+        }
+    }
+
+    private long activeLedgers() {
+        return statsProvider.getGauge("active-location-index-ledgers").getSample().longValue();
+    }
+
+    private File logFile() {
+        return new File(indexDir, ActiveLedgerLocationIndex.LOG_FILE_NAME);
+    }
+
+    private void assertLocations(long ledgerId, long firstEntryId, long lastEntryId) throws Exception {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertEquals("Wrong location of " + ledgerId + "@" + entryId, location(ledgerId, entryId),
+                    index.getLocation(ledgerId, entryId));
+        }
+        assertEquals(lastEntryId, index.getLastEntryInLedger(ledgerId));
+    }
+
+    private void assertNoLocations(long ledgerId, long firstEntryId, long lastEntryId) throws Exception {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertEquals("Location left for " + ledgerId + "@" + entryId, 0, index.getLocation(ledgerId, entryId));
+        }
+    }
+
+    @Test
+    public void testLocationsFoundAfterRestart() throws Exception {
+        Batch batch = index.newBatch();
+        addLocations(batch, 1, 0, NUM_ENTRIES - 1);
+        addLocations(batch, 2, 0, NUM_ENTRIES / 2 - 1);
+        batch.flush();
+        batch.close();
+        assertEquals(2, activeLedgers());
+        assertTrue(logFile().length() > 0);
+
+        restart(true);
+        assertEquals(2, activeLedgers());
+        assertLocations(1, 0, NUM_ENTRIES - 1);
+        assertLocations(2, 0, NUM_ENTRIES / 2 - 1);
+
+        // New entries after the restart append to the arrays replayed from the log
+        flush(1, NUM_ENTRIES, 2 * NUM_ENTRIES - 1);
+        restart(true);
+        assertLocations(1, 0, 2 * NUM_ENTRIES - 1);
+    }
+
+    @Test
+    public void testOnlyTheLastBatchOfAFlushPersistsTheActiveLocations() throws Exception {
+        // The segments of a flush are written through partial batches, which don't touch the log
+        Batch partial = index.newPartialBatch();
+        addLocations(partial, 1, 0, NUM_ENTRIES - 1);
+        partial.flush();
+        partial.close();
+        assertEquals(0, logFile().length());
+        assertLocations(1, 0, NUM_ENTRIES - 1);
+
+        // The last batch of the flush persists the locations of all its segments
+        flush(1, NUM_ENTRIES, 2 * NUM_ENTRIES - 1);
+        long logSize = logFile().length();
+        assertTrue(logSize > 0);
+        restart(true);
+        assertLocations(1, 0, 2 * NUM_ENTRIES - 1);
+
+        // Locations added through a batch never flushed are lost with the bookie, the journal has them
+        Batch unflushed = index.newBatch();
+        addLocations(unflushed, 2, 0, NUM_ENTRIES - 1);
+        unflushed.close();
+        assertEquals(logSize, logFile().length());
+        restart(true);
+        assertNoLocations(2, 0, NUM_ENTRIES - 1);
+        assertLocations(1, 0, 2 * NUM_ENTRIES - 1);
+    }
+
+    @Test
+    public void testIdleLedgersSpilledToTheDb() throws Exception {
+        flush(1, 0, NUM_ENTRIES - 1);
+        flush(2, 0, NUM_ENTRIES - 1);
+        assertEquals(2, activeLedgers());
+
+        flushUntilIdleSpilled(1, NUM_ENTRIES);
+        assertEquals(1, activeLedgers());
+        assertLocations(2, 0, NUM_ENTRIES - 1);
+
+        // The log doesn't bring the spilled ledger back
+        restart(true);
+        assertEquals(1, activeLedgers());
+        assertLocations(1, 0, NUM_ENTRIES + IDLE_FLUSHES);
+        assertLocations(2, 0, NUM_ENTRIES - 1);
+    }
+
+    @Test
+    public void testCompactionUpdates() throws Exception {
+        flush(1, 0, NUM_ENTRIES - 1);
+        flush(2, 0, NUM_ENTRIES - 1);
+        flushUntilIdleSpilled(1, NUM_ENTRIES);
+        assertEquals(1, activeLedgers());
+
+        // Ledger 1 is in the arrays, ledger 2 was spilled and ledger 3 was never written since the start
+        List<EntryLocation> newLocations = new ArrayList<>();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId += 2) {
+                newLocations.add(new EntryLocation(ledgerId, entryId, compactedLocation(ledgerId, entryId)));
+            }
+        }
+        index.updateLocations(newLocations);
+
+        // The compaction only updates the arrays that exist, the other locations go to the db
+        assertEquals(1, activeLedgers());
+        for (int i = 0; i < 2; i++) {
+            for (EntryLocation location : newLocations) {
+                assertEquals(location.getLocation(), index.getLocation(location.getLedger(), location.getEntry()));
+            }
+            for (long ledgerId = 1; ledgerId <= 2; ledgerId++) {
+                for (long entryId = 1; entryId < NUM_ENTRIES; entryId += 2) {
+                    assertEquals(location(ledgerId, entryId), index.getLocation(ledgerId, entryId));
+                }
+            }
+            assertEquals(NUM_ENTRIES + IDLE_FLUSHES, index.getLastEntryInLedger(1));
+            assertEquals(NUM_ENTRIES - 2, index.getLastEntryInLedger(3));
+
+            // The updates of the arrays were persisted by the batch of the compaction
+            restart(true);
+            assertEquals(1, activeLedgers());
+        }
+    }
+
+    @Test
+    public void testDeletedLedgers() throws Exception {
+        flush(1, 0, NUM_ENTRIES - 1);
+        flush(2, 0, NUM_ENTRIES - 1);
+        flush(3, 0, NUM_ENTRIES - 1);
+        for (int i = 0; i <= IDLE_FLUSHES; i++) {
+            Batch batch = index.newBatch();
+            addLocations(batch, 1, NUM_ENTRIES + i, NUM_ENTRIES + i);
+            addLocations(batch, 2, NUM_ENTRIES + i, NUM_ENTRIES + i);
+            batch.flush();
+            batch.close();
+        }
+        assertEquals(2, activeLedgers());
+
+        // Ledger 2 is in the arrays, ledger 3 was spilled to the db
+        index.delete(2);
+        index.delete(3);
+        assertEquals(1, activeLedgers());
+        for (long ledgerId = 2; ledgerId <= 3; ledgerId++) {
+            try {
+                index.getLastEntryInLedger(ledgerId);
+                fail("Ledger " + ledgerId + " was deleted");
+            } catch (Bookie.NoEntryException e) {
+                // expected
+            }
+        }
+        assertNoLocations(2, 0, NUM_ENTRIES + IDLE_FLUSHES);
+
+        // The tombstone of ledger 2 is written by the next flush, ledger 3 is removed from the db
+        flush(1, NUM_ENTRIES + IDLE_FLUSHES + 1, NUM_ENTRIES + IDLE_FLUSHES + 1);
+        index.removeOffsetFromDeletedLedgers();
+        assertNoLocations(3, 0, NUM_ENTRIES - 1);
+
+        restart(true);
+        assertEquals(1, activeLedgers());
+        assertNoLocations(2, 0, NUM_ENTRIES + IDLE_FLUSHES);
+        assertNoLocations(3, 0, NUM_ENTRIES - 1);
+        assertLocations(1, 0, NUM_ENTRIES + IDLE_FLUSHES + 1);
+    }
+
+    @Test
+    public void testDisablingMovesTheLocationsToTheDb() throws Exception {
+        flush(1, 0, NUM_ENTRIES - 1);
+        flush(2, 0, NUM_ENTRIES - 1);
+        flushUntilIdleSpilled(1, NUM_ENTRIES);
+        assertEquals(1, activeLedgers());
+        assertTrue(logFile().exists());
+
+        restart(false);
+        assertFalse(logFile().exists());
+        assertEquals(0, activeLedgers());
+        assertLocations(1, 0, NUM_ENTRIES + IDLE_FLUSHES);
+        assertLocations(2, 0, NUM_ENTRIES - 1);
+
+        // New locations go to the db, and are still there with the index enabled again
+        flush(1, NUM_ENTRIES + IDLE_FLUSHES + 1, 2 * NUM_ENTRIES);
+        restart(false);
+        assertLocations(1, 0, 2 * NUM_ENTRIES);
+        restart(true);
+        assertEquals(0, activeLedgers());
+        assertLocations(1, 0, 2 * NUM_ENTRIES);
+        assertLocations(2, 0, NUM_ENTRIES - 1);
+    }
+}
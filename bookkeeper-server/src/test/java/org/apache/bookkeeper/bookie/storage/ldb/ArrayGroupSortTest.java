@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Test the ordering of the groups sorted by {@link ArrayGroupSort}, sequentially and in parallel.
+ */
+public class ArrayGroupSortTest {
+
+    private static final int KEY_SIZE = 2;
+    private static final int GROUP_SIZE = 4;
+    // Enough groups for the partitions to be sorted in parallel
+    private static final int NUM_GROUPS = 100_000;
+
+    private final ArrayGroupSort sorter = new ArrayGroupSort(KEY_SIZE, GROUP_SIZE);
+
+    /**
+     * Groups of (ledgerId, entryId, offset, length), with duplicated keys and values derived from the keys, so
+     * that groups broken up by the sort are detected.
+     */
+    private static long[] newGroups(int numGroups, long seed) {
+        Random random = new Random(seed);
+        long[] array = new long[numGroups * GROUP_SIZE];
+        for (int i = 0; i < array.length; i += GROUP_SIZE) {
+            long ledgerId = random.nextInt(100);
+            long entryId = random.nextInt(numGroups);
+            array[i] = ledgerId;
+            array[i + 1] = entryId;
+            array[i + 2] = ledgerId * 31 + entryId;
+            array[i + 3] = ledgerId ^ entryId;
+        }
+        return array;
+    }
+
+    /**
+     * Sort the groups of the range with a comparator on their keys.
+     */
+    private static long[] expectedSort(long[] array, int offset, int length) {
+        long[][] groups = new long[length / GROUP_SIZE][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = Arrays.copyOfRange(array, offset + i * GROUP_SIZE, offset + (i + 1) * GROUP_SIZE);
+        }
+        Arrays.sort(groups, Comparator.<long[]>comparingLong(group -> group[0]).thenComparingLong(group -> group[1]));
+        long[] expected = array.clone();
+        for (int i = 0; i < groups.length; i++) {
+            System.arraycopy(groups[i], 0, expected, offset + i * GROUP_SIZE, GROUP_SIZE);
+        }
+        return expected;
+    }
+
+    @Test
+    public void testSort() {
+        for (int numGroups : new int[] { 0, 1, 2, 3, 10, 1000 }) {
+            long[] array = newGroups(numGroups, numGroups);
+            long[] expected = expectedSort(array, 0, array.length);
+            sorter.sort(array);
+            assertArrayEquals(expected, array);
+        }
+    }
+
+    @Test
+    public void testSortedAndReversedGroups() {
+        long[] array = newGroups(1000, 1);
+        long[] expected = expectedSort(array, 0, array.length);
+        sorter.sort(array);
+        sorter.sort(array);
+        assertArrayEquals(expected, array);
+
+        long[] reversed = new long[array.length];
+        for (int i = 0; i < array.length; i += GROUP_SIZE) {
+            System.arraycopy(array, i, reversed, array.length - i - GROUP_SIZE, GROUP_SIZE);
+        }
+        sorter.parallelSort(reversed, 0, reversed.length);
+        assertArrayEquals(expected, reversed);
+    }
+
+    @Test
+    public void testSortRange() {
+        long[] array = newGroups(1000, 2);
+        int offset = 100 * GROUP_SIZE;
+        int length = 500 * GROUP_SIZE;
+        long[] expected = expectedSort(array, offset, length);
+
+        // The groups outside of the range are left where they are
+        long[] sorted = array.clone();
+        sorter.sort(sorted, offset, length);
+        assertArrayEquals(expected, sorted);
+        sorted = array.clone();
+        sorter.parallelSort(sorted, offset, length);
+        assertArrayEquals(expected, sorted);
+    }
+
+    @Test
+    public void testParallelSort() {
+        long[] array = newGroups(NUM_GROUPS, 3);
+        long[] expected = expectedSort(array, 0, array.length);
+        long[] sorted = array.clone();
+        sorter.parallelSort(sorted, 0, sorted.length);
+        assertArrayEquals(expected, sorted);
+
+        // The same ordering as the sequential sort
+        sorter.sort(array);
+        assertArrayEquals(sorted, array);
+    }
+
+    @Test
+    public void testLengthNotMultipleOfGroupSize() {
+        long[] array = newGroups(10, 4);
+        try {
+            sorter.sort(array, 0, array.length - 1);
+            fail("The length is not a multiple of the group size");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            sorter.parallelSort(array, 0, array.length - 1);
+            fail("The length is not a multiple of the group size");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
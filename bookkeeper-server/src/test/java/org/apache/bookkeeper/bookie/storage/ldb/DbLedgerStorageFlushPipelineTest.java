@@ -0,0 +1,205 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that a checkpoint of the DbLedgerStorage covers all the entries written before it, when they
+ * are flushed through the pipeline of entry log syncs and locations index writes.
+ */
+public class DbLedgerStorageFlushPipelineTest {
+
+    private static final int NUM_LEDGERS = 3;
+    private static final int ENTRY_SIZE = 4 * 1024;
+    // About 7 MB of entries, flushed in several segments
+    private static final long NUM_ENTRIES = 600;
+    private static final long MAX_ENTRIES = 5000;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.createNew("dbLedgerStorage", "flushPipeline");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.toString() });
+        // 2 generations of 16 MB, flushed in segments of 1 MB
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 32);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_GENERATIONS, 2);
+        conf.setProperty(DbLedgerStorage.FLUSH_SEGMENT_SIZE_MB, 1);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        startStorage();
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private void startStorage() throws Exception {
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId * 7 + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    /**
+     * Add an entry to each ledger, the ledgers being interleaved in the write cache.
+     */
+    private void addEntries(long entryId) throws Exception {
+        for (long ledgerId = NUM_LEDGERS; ledgerId >= 1; ledgerId--) {
+            ByteBuf entry = newEntry(ledgerId, entryId);
+            try {
+                storage.addEntry(entry);
+            } finally {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * Check that the entries of the range have their location in the index, and that the entry log
+     * holds them there.
+     */
+    private void assertFlushed(long firstEntryId, long lastEntryId) throws Exception {
+        EntryLogger entryLogger = storage.getLedgerStorageList().get(0).getEntryLogger();
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                long location = storage.getLocation(ledgerId, entryId);
+                assertNotEquals("No location for " + ledgerId + "@" + entryId, 0, location);
+                ByteBuf expected = newEntry(ledgerId, entryId);
+                ByteBuf entry = entryLogger.readEntry(ledgerId, entryId, location);
+                try {
+                    assertEquals(expected, entry);
+                } finally {
+                    entry.release();
+                    expected.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointCoversAllSegments() throws Exception {
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            addEntries(entryId);
+        }
+        storage.flush();
+        assertFlushed(0, NUM_ENTRIES - 1);
+
+        // The entries are appended sorted by ledger and entry, across all the segments
+        long previousLocation = 0;
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                long location = storage.getLocation(ledgerId, entryId);
+                assertTrue("Entry " + ledgerId + "@" + entryId + " not appended in order",
+                        location > previousLocation);
+                previousLocation = location;
+            }
+        }
+
+        // The locations of the last segment and of the earlier ones were all persisted
+        storage.shutdown();
+        startStorage();
+        assertFlushed(0, NUM_ENTRIES - 1);
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            assertEquals(NUM_ENTRIES - 1, storage.getLastAddConfirmed(ledgerId));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCheckpointCoversEntriesWrittenBeforeIt() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong lastAdded = new AtomicLong(-1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long entryId = 0; entryId < MAX_ENTRIES && !done.get(); entryId++) {
+                    addEntries(entryId);
+                    lastAdded.set(entryId);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, "writer");
+
+        writer.start();
+        try {
+            long lastChecked = -1;
+            for (int i = 0; i < 10 && failure.get() == null; i++) {
+                Thread.sleep(100);
+                long lastAddedBeforeCheckpoint = lastAdded.get();
+                storage.flush();
+                assertFlushed(lastChecked + 1, lastAddedBeforeCheckpoint);
+                lastChecked = lastAddedBeforeCheckpoint;
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Writer failed", failure.get());
+        }
+        assertTrue(lastAdded.get() > 0);
+    }
+}
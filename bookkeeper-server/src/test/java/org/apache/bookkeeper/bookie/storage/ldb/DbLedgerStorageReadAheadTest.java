@@ -0,0 +1,208 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the read-ahead of the DbLedgerStorage on its executor, and the dedup of the batches pending
+ * for a ledger.
+ */
+public class DbLedgerStorageReadAheadTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    private static final int NUM_ENTRIES = 200;
+    private static final int READ_AHEAD_BATCH_SIZE = 10;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final CountDownLatch readAheadBlocked = new CountDownLatch(1);
+    private DbLedgerStorage storage;
+    private ThreadPoolExecutor readAheadExecutor;
+
+    @After
+    public void tearDown() throws Exception {
+        readAheadBlocked.countDown();
+        if (storage != null) {
+            storage.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private void newStorage(int maxPendingBatches) throws Exception {
+        File ledgerDir = tmpDirs.createNew("dbLedgerStorage", "readAhead");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.toString() });
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, READ_AHEAD_BATCH_SIZE);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_THREADS, 1);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_MAX_PENDING_BATCHES, maxPendingBatches);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+        readAheadExecutor = storage.getLedgerStorageList().get(0).getReadAheadExecutor();
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    /**
+     * Write the entries of the ledgers and flush them, so that they're read from the entry logs.
+     */
+    private void writeLedgers(long... ledgerIds) throws Exception {
+        for (long ledgerId : ledgerIds) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+        }
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            for (long ledgerId : ledgerIds) {
+                ByteBuf entry = newEntry(ledgerId, entryId);
+                try {
+                    storage.addEntry(entry);
+                } finally {
+                    entry.release();
+                }
+            }
+        }
+        storage.flush();
+    }
+
+    private void read(long ledgerId, long entryId) throws Exception {
+        ByteBuf expected = newEntry(ledgerId, entryId);
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        try {
+            assertEquals(expected, entry);
+        } finally {
+            entry.release();
+            expected.release();
+        }
+    }
+
+    /**
+     * Keep the read-ahead thread busy, so that the batches stay pending.
+     */
+    private void blockReadAhead() throws Exception {
+        CountDownLatch blocking = new CountDownLatch(1);
+        readAheadExecutor.execute(() -> {
+            blocking.countDown();
+            try {
+                readAheadBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocking.await(10, TimeUnit.SECONDS));
+    }
+
+    private void unblockReadAhead() throws Exception {
+        readAheadBlocked.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (readAheadExecutor.getCompletedTaskCount() < readAheadExecutor.getTaskCount()) {
+            assertTrue("Read-ahead batches still pending", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testPendingBatchesOfLedgerDeduped() throws Exception {
+        newStorage(16);
+        writeLedgers(1);
+        blockReadAhead();
+
+        // The miss on the first entry queues the batch of the following ones
+        read(1, 0);
+        assertEquals(2, readAheadExecutor.getTaskCount());
+        // The reader misses the entries of the pending batch, they're not queued again
+        for (long entryId = 1; entryId < READ_AHEAD_BATCH_SIZE; entryId++) {
+            read(1, entryId);
+        }
+        assertEquals(2, readAheadExecutor.getTaskCount());
+        // Another reader of the ledger, elsewhere, has its own batch
+        read(1, 100);
+        assertEquals(3, readAheadExecutor.getTaskCount());
+        assertEquals(2, readAheadExecutor.getQueue().size());
+
+        unblockReadAhead();
+        // The entries read ahead are found in the read cache, without new batches
+        for (long entryId = 101; entryId <= 100 + READ_AHEAD_BATCH_SIZE; entryId++) {
+            read(1, entryId);
+        }
+        assertEquals(3, readAheadExecutor.getTaskCount());
+
+        // Once its batch is done, the next miss of the ledger reads ahead again
+        read(1, 150);
+        unblockReadAhead();
+        assertEquals(4, readAheadExecutor.getTaskCount());
+        read(1, 151);
+        assertEquals(4, readAheadExecutor.getTaskCount());
+    }
+
+    @Test
+    public void testRejectedBatchNotLeftPending() throws Exception {
+        newStorage(1);
+        writeLedgers(1, 2);
+        blockReadAhead();
+
+        read(1, 0);
+        assertEquals(1, readAheadExecutor.getQueue().size());
+        // No room for the batch of the second ledger, it is dropped
+        read(2, 0);
+        assertEquals(2, readAheadExecutor.getTaskCount());
+
+        unblockReadAhead();
+        for (long entryId = 1; entryId <= READ_AHEAD_BATCH_SIZE; entryId++) {
+            read(1, entryId);
+        }
+        // The ledger whose batch was dropped reads ahead on its next miss
+        read(2, 1);
+        unblockReadAhead();
+        assertEquals(3, readAheadExecutor.getTaskCount());
+        read(2, 2);
+        assertEquals(3, readAheadExecutor.getTaskCount());
+    }
+}
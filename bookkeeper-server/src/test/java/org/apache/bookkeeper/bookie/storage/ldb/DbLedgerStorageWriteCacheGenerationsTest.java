@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the generations of the write cache of the DbLedgerStorage, and the checkpoints flushing them.
+ */
+public class DbLedgerStorageWriteCacheGenerationsTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 1024;
+    private static final long MAX_ENTRIES = 50000;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.createNew("dbLedgerStorage", "generations");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.toString() });
+        // 4 generations of 256 KB
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 1);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 1);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_GENERATIONS, 4);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+        storage.setMasterKey(LEDGER_ID, "key".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private void addEntry(long entryId) throws Exception {
+        ByteBuf entry = newEntry(entryId);
+        try {
+            storage.addEntry(entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * @return a description of the mismatch, or null if the entry read is the one written
+     */
+    private String checkEntry(long entryId) throws Exception {
+        ByteBuf expected = newEntry(entryId);
+        ByteBuf read = storage.getEntry(LEDGER_ID, entryId);
+        try {
+            return expected.equals(read) ? null : "Entry " + entryId + " read corrupted";
+        } finally {
+            read.release();
+            expected.release();
+        }
+    }
+
+    @Test
+    public void testEntriesReadableThroughTheGenerations() throws Exception {
+        // Several generations are filled, sealed and flushed in background
+        final int numEntries = 2000;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            addEntry(entryId);
+            assertNull(checkEntry(entryId / 2));
+        }
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            assertNull(checkEntry(entryId));
+        }
+
+        storage.flush();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            assertNull(checkEntry(entryId));
+        }
+        assertEquals(numEntries - 1, storage.getLastAddConfirmed(LEDGER_ID));
+    }
+
+    @Test(timeout = 60000)
+    public void testCheckpointsWithConcurrentWritesAndReads() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong lastAdded = new AtomicLong(-1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // The writer keeps filling generations, a checkpoint only flushes the ones it found and returns
+        Thread writer = new Thread(() -> {
+            try {
+                for (long entryId = 0; entryId < MAX_ENTRIES && !done.get(); entryId++) {
+                    addEntry(entryId);
+                    lastAdded.set(entryId);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, "writer");
+
+        // The readers copy entries from the generations while they are recycled, and must never see
+        // the segments reused by another generation
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        long last = lastAdded.get();
+                        if (last < 0) {
+                            continue;
+                        }
+                        long entryId = Math.max(0, last - ThreadLocalRandom.current().nextLong(500));
+                        String mismatch = checkEntry(entryId);
+                        if (mismatch != null) {
+                            failure.compareAndSet(null, new AssertionError(mismatch));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "reader-" + i);
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        try {
+            for (int i = 0; i < 20 && failure.get() == null; i++) {
+                storage.flush();
+                Thread.sleep(50);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Concurrent access failed", failure.get());
+        }
+
+        storage.flush();
+        for (long entryId = 0; entryId <= lastAdded.get(); entryId++) {
+            assertNull(checkEntry(entryId));
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the encoding of {@link EntryLocationBlock}s, and how the {@link EntryLocationIndex} finds,
+ * updates and deletes the locations stored in blocks.
+ */
+public class EntryLocationBlockTest {
+
+    private static final long LAST_ENTRY_ID = 3499;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File indexDir;
+    private EntryLocationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        indexDir = tmpDirs.createNew("locations", "blocks");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private static ServerConfiguration newConf(boolean blocksEnabled) {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setProperty(DbLedgerStorage.LOCATION_INDEX_BLOCKS_ENABLED, blocksEnabled);
+        return conf;
+    }
+
+    private EntryLocationIndex openIndex(boolean blocksEnabled) throws IOException {
+        if (index != null) {
+            index.close();
+        }
+        index = new EntryLocationIndex(newConf(blocksEnabled), KeyValueStorageRocksDB.factory, indexDir.getPath(),
+                NullStatsLogger.INSTANCE);
+        return index;
+    }
+
+    private static boolean isWritten(long entryId) {
+        return entryId % 7 != 3;
+    }
+
+    /**
+     * Locations spread over a few entry logs, not increasing within a log.
+     */
+    private static long location(long ledgerId, long entryId) {
+        return ((ledgerId * 10 + entryId / 500 + 1) << 32) | ((entryId * 37) % 1000) * 100;
+    }
+
+    private static long compactedLocation(long ledgerId, long entryId) {
+        return ((ledgerId * 10 + 1000) << 32) | entryId;
+    }
+
+    /**
+     * Write the locations of the ledgers as blocks, directly in the db of the index.
+     */
+    private void writeBlocks(long... ledgerIds) throws IOException {
+        KeyValueStorage db = KeyValueStorageRocksDB.factory.newKeyValueStorage(indexDir.getPath(), "locations",
+                DbConfigType.EntryLocation, newConf(true));
+        Batch batch = db.newBatch();
+        try {
+            EntryLocationBlock.Writer writer = new EntryLocationBlock.Writer(batch);
+            for (long ledgerId : ledgerIds) {
+                for (long entryId = 0; entryId <= LAST_ENTRY_ID; entryId++) {
+                    if (isWritten(entryId)) {
+                        writer.add(ledgerId, entryId, location(ledgerId, entryId));
+                    }
+                }
+            }
+            writer.finish();
+            assertTrue(writer.getBlocksCount() > ledgerIds.length);
+            batch.flush();
+        } finally {
+            batch.close();
+            db.close();
+        }
+    }
+
+    private void assertBlockLocations(long ledgerId) throws IOException {
+        for (long entryId = 0; entryId <= LAST_ENTRY_ID + 1; entryId++) {
+            long expected = isWritten(entryId) && entryId <= LAST_ENTRY_ID ? location(ledgerId, entryId) : 0;
+            assertEquals("Wrong location of " + ledgerId + "@" + entryId, expected,
+                    index.getLocation(ledgerId, entryId));
+        }
+        assertEquals(LAST_ENTRY_ID, index.getLastEntryInLedger(ledgerId));
+    }
+
+    private void assertNoLedger(long ledgerId) throws IOException {
+        for (long entryId = 0; entryId <= LAST_ENTRY_ID; entryId++) {
+            assertEquals("Location left for " + ledgerId + "@" + entryId, 0, index.getLocation(ledgerId, entryId));
+        }
+        try {
+            index.getLastEntryInLedger(ledgerId);
+            fail("Ledger " + ledgerId + " was deleted");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        long[] entryIds = { 5, 6, 7, 100, 101, 1L << 40, (1L << 40) + 1 };
+        long[] locations = { 1L << 32, (1L << 32) + 1000, 1, Long.MAX_VALUE, 2, (5L << 32) | 8, Long.MAX_VALUE };
+        long lastEntryId = entryIds[entryIds.length - 1];
+        for (int count = 1; count <= entryIds.length; count++) {
+            byte[] block = EntryLocationBlock.encode(entryIds, locations, count);
+            long blockLastEntryId = entryIds[count - 1];
+            for (int i = 0; i < count; i++) {
+                assertEquals(locations[i], EntryLocationBlock.find(block, blockLastEntryId, entryIds[i]));
+            }
+            // Entries outside of the block, or in a gap of it
+            assertEquals(0, EntryLocationBlock.find(block, blockLastEntryId, 4));
+            assertEquals(0, EntryLocationBlock.find(block, blockLastEntryId, blockLastEntryId + 1));
+            assertEquals(0, EntryLocationBlock.find(block, blockLastEntryId, 50));
+        }
+
+        byte[] block = EntryLocationBlock.encode(entryIds, locations, entryIds.length);
+        byte[] truncated = Arrays.copyOf(block, block.length - 1);
+        try {
+            EntryLocationBlock.find(truncated, lastEntryId, lastEntryId);
+            fail("The block is truncated");
+        } catch (IOException e) {
+            // expected
+        }
+        block[0] = 42;
+        try {
+            EntryLocationBlock.find(block, lastEntryId, entryIds[0]);
+            fail("Unknown format version");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLocationsFoundInBlocks() throws Exception {
+        writeBlocks(1, 2);
+
+        // The blocks are found even with blocks disabled for the new locations
+        openIndex(false);
+        assertTrue(index.mayHaveBlocks());
+        assertBlockLocations(1);
+        assertBlockLocations(2);
+        assertNoLedger(3);
+    }
+
+    @Test
+    public void testNoBlocksLookupWithoutBlocks() throws Exception {
+        openIndex(false);
+        assertFalse(index.mayHaveBlocks());
+        for (long entryId = 0; entryId <= LAST_ENTRY_ID; entryId++) {
+            index.addLocation(1, entryId, location(1, entryId));
+        }
+
+        openIndex(false);
+        assertFalse(index.mayHaveBlocks());
+        assertEquals(location(1, 10), index.getLocation(1, 10));
+        assertEquals(LAST_ENTRY_ID, index.getLastEntryInLedger(1));
+
+        openIndex(true);
+        assertTrue(index.mayHaveBlocks());
+    }
+
+    @Test
+    public void testPerEntryKeysOverrideBlocks() throws Exception {
+        writeBlocks(1);
+        openIndex(false);
+
+        // The compaction moves some of the entries of the blocks
+        List<EntryLocation> newLocations = new ArrayList<>();
+        for (long entryId = 0; entryId <= LAST_ENTRY_ID; entryId += 3) {
+            if (isWritten(entryId)) {
+                newLocations.add(new EntryLocation(1, entryId, compactedLocation(1, entryId)));
+            }
+        }
+        index.updateLocations(newLocations);
+
+        for (int i = 0; i < 2; i++) {
+            for (long entryId = 0; entryId <= LAST_ENTRY_ID; entryId++) {
+                long expected = !isWritten(entryId) ? 0
+                        : entryId % 3 == 0 ? compactedLocation(1, entryId) : location(1, entryId);
+                assertEquals("Wrong location of entry " + entryId, expected, index.getLocation(1, entryId));
+            }
+            assertEquals(LAST_ENTRY_ID, index.getLastEntryInLedger(1));
+            openIndex(false);
+        }
+    }
+
+    @Test
+    public void testDeletedLedgersBlocksRemoved() throws Exception {
+        writeBlocks(1, 2, 3);
+        openIndex(false);
+        index.updateLocations(Arrays.asList(new EntryLocation(2, 0, compactedLocation(2, 0)),
+                new EntryLocation(2, LAST_ENTRY_ID, compactedLocation(2, LAST_ENTRY_ID))));
+
+        index.delete(2);
+        index.removeOffsetFromDeletedLedgers();
+        assertNoLedger(2);
+        assertBlockLocations(1);
+        assertBlockLocations(3);
+
+        // Nothing comes back after a restart, with blocks enabled or not
+        openIndex(true);
+        assertNoLedger(2);
+        assertBlockLocations(1);
+        assertBlockLocations(3);
+
+        index.delete(1);
+        index.delete(3);
+        index.removeOffsetFromDeletedLedgers();
+        openIndex(false);
+        assertFalse(index.mayHaveBlocks());
+        assertNoLedger(1);
+        assertNoLedger(3);
+    }
+}
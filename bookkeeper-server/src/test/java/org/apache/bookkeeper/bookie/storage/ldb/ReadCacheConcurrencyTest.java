@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the lookups of the {@link ReadCache} running concurrently with the puts and the rotations of its
+ * segments never return an entry torn by a put, or data of a recycled segment.
+ */
+public class ReadCacheConcurrencyTest {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+    private static final int SEGMENTS_COUNT = 4;
+    private static final int NUM_WRITERS = 2;
+    private static final int NUM_READERS = 4;
+    private static final long TEST_DURATION_MILLIS = 2000;
+    private static final long MAX_FAILURES_REPORTED = 10;
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private ReadCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, SEGMENTS_COUNT * SEGMENT_SIZE, SEGMENT_SIZE,
+                statsProvider.getStatsLogger(""));
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    /**
+     * The content of an entry only depends on its ids, with sizes not aligned on the 64 bytes of the cache.
+     */
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        int size = 16 + (int) ((entryId * 131 + ledgerId * 7) % 1500);
+        ByteBuf entry = Unpooled.buffer(size, size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId * 31 + entryId * 17 + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static String checkEntry(long ledgerId, long entryId, ByteBuf entry) {
+        ByteBuf expected = newEntry(ledgerId, entryId);
+        try {
+            if (!expected.equals(entry)) {
+                return "Wrong content for " + ledgerId + "@" + entryId + ": " + entry.readableBytes()
+                        + " bytes starting with " + entry.getLong(0) + "@" + entry.getLong(8) + ", expected "
+                        + expected.readableBytes() + " bytes";
+            }
+            return null;
+        } finally {
+            expected.release();
+        }
+    }
+
+    @Test
+    public void testRecycledSegmentsNotRead() {
+        // Fill more than the whole cache, the oldest segments get recycled
+        long entryId = 0;
+        long cachedBytes = 0;
+        while (cachedBytes < 3 * SEGMENTS_COUNT * SEGMENT_SIZE) {
+            ByteBuf entry = newEntry(1, entryId++);
+            cachedBytes += WriteCache.align64(entry.readableBytes());
+            cache.put(1, entryId - 1, entry);
+            entry.release();
+        }
+        long lastEntryId = entryId - 1;
+
+        long found = 0;
+        boolean evicted = false;
+        for (entryId = lastEntryId; entryId >= 0; entryId--) {
+            ByteBuf entry = cache.get(1, entryId);
+            if (entry == null) {
+                evicted = true;
+                continue;
+            }
+            // Nothing of the recycled segments is left behind the evicted entries
+            assertFalse("Entry " + entryId + " found after evicted ones", evicted);
+            assertNull(checkEntry(1, entryId, entry));
+            entry.release();
+            found++;
+        }
+        assertTrue(evicted);
+        assertEquals(cache.count(), found);
+        assertTrue(cache.hasEntry(1, lastEntryId));
+        assertTrue(cache.size() <= SEGMENTS_COUNT * SEGMENT_SIZE);
+    }
+
+    @Test
+    public void testReadsDuringPutsAndRotations() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLongArray lastPut = new AtomicLongArray(NUM_WRITERS);
+        AtomicLong writtenBytes = new AtomicLong();
+        AtomicLong hits = new AtomicLong();
+        AtomicLong misses = new AtomicLong();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < NUM_WRITERS; w++) {
+            final int writer = w;
+            lastPut.set(writer, -1);
+            threads.add(new Thread(() -> {
+                for (long entryId = 0; running.get(); entryId++) {
+                    ByteBuf entry = newEntry(writer, entryId);
+                    writtenBytes.addAndGet(entry.readableBytes());
+                    cache.put(writer, entryId, entry);
+                    entry.release();
+                    lastPut.set(writer, entryId);
+                }
+            }, "read-cache-writer-" + w));
+        }
+        for (int r = 0; r < NUM_READERS; r++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int ledgerId = random.nextInt(NUM_WRITERS);
+                    long last = lastPut.get(ledgerId);
+                    if (last < 0) {
+                        continue;
+                    }
+                    // Mostly entries still in the cache, some of them just put, and some evicted
+                    long entryId = Math.max(0, last - random.nextLong(100));
+                    ByteBuf entry = cache.get(ledgerId, entryId);
+                    if (entry == null) {
+                        misses.incrementAndGet();
+                        continue;
+                    }
+                    String failure = checkEntry(ledgerId, entryId, entry);
+                    entry.release();
+                    hits.incrementAndGet();
+                    if (failure != null && failures.size() < MAX_FAILURES_REPORTED) {
+                        failures.add(failure);
+                    }
+                }
+            }, "read-cache-reader-" + r));
+        }
+
+        threads.forEach(Thread::start);
+        Thread.sleep(TEST_DURATION_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertTrue("Lookups returned wrong entries: " + failures, failures.isEmpty());
+        assertTrue(hits.get() > 0);
+        // The whole cache was recycled many times over
+        assertTrue(writtenBytes.get() > 10 * SEGMENTS_COUNT * SEGMENT_SIZE);
+        assertEquals(misses.get(), statsProvider.getCounter("read-cache-lookup-misses").get().longValue());
+    }
+}
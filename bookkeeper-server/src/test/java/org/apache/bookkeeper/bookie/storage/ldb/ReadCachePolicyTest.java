@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the read cache admission policies, for missed entries and read-ahead batches.
+ */
+public class ReadCachePolicyTest {
+
+    @Test
+    public void testFrequencyAdmission() {
+        FrequencySketchReadCachePolicy policy = new FrequencySketchReadCachePolicy(10000, 2);
+
+        policy.recordAccess(1, 0, false);
+        assertFalse(policy.admit(1, 0, false));
+        policy.recordAccess(1, 0, false);
+        assertTrue(policy.admit(1, 0, false));
+    }
+
+    @Test
+    public void testFrequencyAdmissionOfReadAhead() {
+        FrequencySketchReadCachePolicy policy = new FrequencySketchReadCachePolicy(10000, 2);
+
+        // A single reader going through the ledger doesn't get its batches admitted
+        policy.recordAccess(1, 0, false);
+        assertFalse(policy.admit(1, 1, true));
+
+        // Once a second reader went through the same entries, they are admitted
+        policy.recordAccess(1, 1, false);
+        policy.recordAccess(1, 1, false);
+        assertTrue(policy.admit(1, 1, true));
+    }
+
+    @Test
+    public void testScanDetection() {
+        ScanResistantReadCachePolicy policy = new ScanResistantReadCachePolicy(ReadCachePolicy.ADMIT_ALL, 8);
+
+        // The run length counts the reads following the first one
+        for (long entryId = 0; entryId <= 8; entryId++) {
+            assertTrue(policy.admit(1, entryId, false));
+            assertTrue(policy.admit(1, entryId + 1, true));
+            policy.recordAccess(1, entryId, false);
+        }
+        assertTrue(policy.isScanning(1));
+
+        // Neither the missed entries nor the read-ahead batches of the scan are admitted
+        assertFalse(policy.admit(1, 9, false));
+        assertFalse(policy.admit(1, 10, true));
+        // Other ledgers are not affected
+        assertTrue(policy.admit(2, 0, false));
+        assertTrue(policy.admit(2, 1, true));
+
+        // A random read ends the scan
+        policy.recordAccess(1, 100, false);
+        assertFalse(policy.isScanning(1));
+        assertTrue(policy.admit(1, 101, true));
+    }
+}
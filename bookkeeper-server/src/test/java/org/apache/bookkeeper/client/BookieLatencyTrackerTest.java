@@ -0,0 +1,97 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Test;
+
+/**
+ * Test the tracking of the read latency of the bookies.
+ */
+public class BookieLatencyTrackerTest {
+
+    private final AtomicLong clock = new AtomicLong(0);
+    private final BookieLatencyTracker tracker = new BookieLatencyTracker(99, clock::get);
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+    private final DistributionSchedule schedule = new RoundRobinDistributionSchedule(3, 2, 3);
+
+    private void record(int bookieIndex, long latencyMillis, int samples) {
+        for (int i = 0; i < samples; i++) {
+            tracker.recordLatency(ensemble.get(bookieIndex), TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private int firstBookieRead() {
+        DistributionSchedule.WriteSet writeSet = schedule.getWriteSet(0);
+        try {
+            tracker.moveSlowBookiesLast(ensemble, writeSet);
+            return writeSet.get(0);
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testNotEnoughSamples() {
+        record(0, 50, BookieLatencyTracker.MIN_SAMPLES - 1);
+        record(1, 1, BookieLatencyTracker.MIN_SAMPLES);
+        assertEquals(-1L, tracker.getLatencyNanos(ensemble.get(0)));
+        assertTrue(tracker.getLatencyNanos(ensemble.get(1)) > 0);
+        assertEquals(0, firstBookieRead());
+    }
+
+    @Test
+    public void testSlowBookieReadLast() {
+        record(0, 50, 100);
+        record(1, 1, 100);
+        record(2, 1, 100);
+        assertEquals(1, firstBookieRead());
+    }
+
+    @Test
+    public void testSlowBookieRetriedOnceItsLatencyDecayed() {
+        record(0, 50, 100);
+        record(1, 1, 100);
+        assertEquals(1, firstBookieRead());
+
+        // The slow bookie gets no more samples, while the other one keeps being read
+        clock.addAndGet(BookieLatencyTracker.DECAY_INTERVAL_NANOS);
+        record(1, 1, 100);
+        assertEquals(1, firstBookieRead());
+
+        // Its histogram decayed under the min samples, so it is read in its turn again
+        clock.addAndGet(BookieLatencyTracker.DECAY_INTERVAL_NANOS);
+        assertEquals(-1L, tracker.getLatencyNanos(ensemble.get(0)));
+        assertEquals(0, firstBookieRead());
+
+        // And it stays first once its fresh samples show that it recovered
+        record(0, 1, 3000);
+        assertEquals(0, firstBookieRead());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.junit.Test;
+
+/**
+ * Test the adds of many threads to the same ledger handle, and their races with closing it.
+ */
+public class LedgerHandleConcurrentAddTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWORD = "concurrent".getBytes();
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_ADDS_PER_THREAD = 200;
+
+    public LedgerHandleConcurrentAddTest() {
+        super(3);
+    }
+
+    private static byte[] randomEntry() {
+        return new byte[1 + ThreadLocalRandom.current().nextInt(1000)];
+    }
+
+    /**
+     * Check that the length carried by each entry is the sum of the sizes of the entries up to it.
+     *
+     * @return the length of the ledger
+     */
+    private long verifyLengths(LedgerHandle lh, long lastEntryId) throws Exception {
+        long length = 0;
+        if (lastEntryId < 0) {
+            return length;
+        }
+        Enumeration<LedgerEntry> entries = lh.readEntries(0, lastEntryId);
+        long expectedEntryId = 0;
+        while (entries.hasMoreElements()) {
+            LedgerEntry entry = entries.nextElement();
+            assertEquals(expectedEntryId++, entry.getEntryId());
+            length += entry.getEntry().length;
+            assertEquals("Wrong length for entry " + entry.getEntryId(), length, entry.getLength());
+        }
+        assertEquals(lastEntryId + 1, expectedEntryId);
+        return length;
+    }
+
+    @Test(timeout = 60000)
+    public void testLengthsGrowInEntryIdOrder() throws Exception {
+        LedgerHandle lh = bkc.createLedger(3, 3, 2, DigestType.CRC32, PASSWORD);
+
+        CountDownLatch added = new CountDownLatch(NUM_THREADS * NUM_ADDS_PER_THREAD);
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] adders = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            adders[i] = new Thread(() -> {
+                for (int j = 0; j < NUM_ADDS_PER_THREAD; j++) {
+                    lh.asyncAddEntry(randomEntry(), (rc, handle, entryId, ctx) -> {
+                        if (rc != BKException.Code.OK) {
+                            failures.incrementAndGet();
+                        }
+                        added.countDown();
+                    }, null);
+                }
+            }, "adder-" + i);
+            adders[i].start();
+        }
+        for (Thread adder : adders) {
+            adder.join();
+        }
+        assertTrue("Adds did not complete", added.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+
+        long lastEntryId = NUM_THREADS * NUM_ADDS_PER_THREAD - 1;
+        assertEquals(lastEntryId, lh.getLastAddConfirmed());
+        assertEquals(lh.getLength(), verifyLengths(lh, lastEntryId));
+        lh.close();
+
+        LedgerMetadata metadata = lh.getLedgerMetadata();
+        assertEquals(lastEntryId, metadata.getLastEntryId());
+        assertEquals(lh.getLength(), metadata.getLength());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseRacingWithAdds() throws Exception {
+        LedgerHandle lh = bkc.createLedger(3, 3, 2, DigestType.CRC32, PASSWORD);
+
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicInteger issued = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        ConcurrentMap<Long, Integer> succeeded = new ConcurrentHashMap<>();
+        AtomicInteger unexpectedFailures = new AtomicInteger();
+        Thread[] adders = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            adders[i] = new Thread(() -> {
+                // keep adding while the close happens, and a few adds after it
+                for (int j = 0; j < NUM_ADDS_PER_THREAD || !closed.get(); j++) {
+                    byte[] entry = randomEntry();
+                    issued.incrementAndGet();
+                    lh.asyncAddEntry(entry, (rc, handle, entryId, ctx) -> {
+                        if (rc == BKException.Code.OK) {
+                            succeeded.put(entryId, entry.length);
+                        } else if (rc != BKException.Code.LedgerClosedException) {
+                            unexpectedFailures.incrementAndGet();
+                        }
+                        completed.incrementAndGet();
+                    }, null);
+                }
+            }, "adder-" + i);
+            adders[i].start();
+        }
+
+        // close while the adders are running, close must not wait on them
+        while (issued.get() < NUM_THREADS * NUM_ADDS_PER_THREAD / 2) {
+            Thread.sleep(1);
+        }
+        lh.close();
+        closed.set(true);
+        for (Thread adder : adders) {
+            adder.join();
+        }
+        while (completed.get() < issued.get()) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, unexpectedFailures.get());
+
+        // the successful adds are the ones the ledger was closed with, and the length covers them only
+        LedgerMetadata metadata = lh.getLedgerMetadata();
+        assertTrue(metadata.isClosed());
+        long lastEntryId = metadata.getLastEntryId();
+        assertEquals(lastEntryId + 1, succeeded.size());
+        long length = 0;
+        for (long entryId = 0; entryId <= lastEntryId; entryId++) {
+            assertTrue("Missing entry " + entryId, succeeded.containsKey(entryId));
+            length += succeeded.get(entryId);
+        }
+        assertEquals(length, metadata.getLength());
+
+        LedgerHandle readLh = bkc.openLedger(lh.getId(), DigestType.CRC32, PASSWORD);
+        assertEquals(length, verifyLengths(readLh, lastEntryId));
+        readLh.close();
+    }
+}
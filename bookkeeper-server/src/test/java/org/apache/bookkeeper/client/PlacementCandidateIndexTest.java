@@ -0,0 +1,196 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Sets;
+import io.netty.util.HashedWheelTimer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieNode;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the {@link PlacementCandidateIndex} of a placement policy is rebuilt when the bookies or their
+ * racks change, and reused otherwise.
+ */
+public class PlacementCandidateIndexTest {
+
+    private static final String RACK_1 = "/rack-1";
+    private static final String RACK_2 = "/rack-2";
+    private static final String RACK_3 = "/rack-3";
+
+    private final Map<String, String> racks = new ConcurrentHashMap<>();
+    private final BookieId bookie1 = BookieId.parse("127.0.0.1:3181");
+    private final BookieId bookie2 = BookieId.parse("127.0.0.2:3181");
+    private final BookieId bookie3 = BookieId.parse("127.0.0.3:3181");
+    private final BookieId bookie4 = BookieId.parse("127.0.0.4:3181");
+    private final BookieId bookie5 = BookieId.parse("127.0.0.5:3181");
+    private HashedWheelTimer timer;
+    private RackawareEnsemblePlacementPolicy policy;
+
+    /**
+     * Resolve the racks of the bookies from the map of the test, so that they can be moved.
+     */
+    private class TestDNSResolver implements DNSToSwitchMapping {
+        @Override
+        public List<String> resolve(List<String> names) {
+            return names.stream().map(name -> racks.getOrDefault(name, NetworkTopology.DEFAULT_RACK))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public void reloadCachedMappings() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        racks.put("127.0.0.1", RACK_1);
+        racks.put("127.0.0.2", RACK_1);
+        racks.put("127.0.0.3", RACK_2);
+        racks.put("127.0.0.4", RACK_2);
+        racks.put("127.0.0.5", RACK_2);
+        timer = new HashedWheelTimer();
+        policy = new RackawareEnsemblePlacementPolicy();
+        policy.initialize(new ClientConfiguration(), Optional.of(new TestDNSResolver()), timer,
+                SettableFeatureProvider.DISABLE_ALL, NullStatsLogger.INSTANCE,
+                BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        policy.onClusterChanged(Sets.newHashSet(bookie1, bookie2, bookie3, bookie4), Collections.emptySet());
+    }
+
+    @After
+    public void tearDown() {
+        policy.uninitalize();
+        timer.stop();
+    }
+
+    private static Set<BookieId> addresses(BookieNode[] bookies) {
+        Set<BookieId> addresses = new HashSet<>();
+        if (bookies != null) {
+            for (BookieNode bookie : bookies) {
+                addresses.add(bookie.getAddr());
+            }
+        }
+        return addresses;
+    }
+
+    private PlacementCandidateIndex index() {
+        return policy.getCandidateIndex();
+    }
+
+    @Test
+    public void testIndexReusedWithoutChanges() {
+        PlacementCandidateIndex index = index();
+        assertSame(index, index());
+        assertEquals(Sets.newHashSet(bookie1, bookie2, bookie3, bookie4), addresses(index.getBookies()));
+        assertEquals(Sets.newHashSet(bookie1, bookie2), addresses(index.getBookies(RACK_1)));
+        assertEquals(Sets.newHashSet(bookie3, bookie4), addresses(index.getBookies(RACK_2)));
+        assertFalse(index.isBookieLocation(RACK_3));
+        assertNull(index.getBookies(NetworkTopology.DEFAULT_RACK));
+
+        // The same bookies and racks, nothing to rebuild
+        policy.onBookieRackChange(Arrays.asList(bookie1, bookie3));
+        assertSame(index, index());
+    }
+
+    @Test
+    public void testIndexRebuiltWhenBookiesJoinOrLeave() {
+        PlacementCandidateIndex index = index();
+        policy.onClusterChanged(Sets.newHashSet(bookie1, bookie2, bookie3, bookie4, bookie5),
+                Collections.emptySet());
+        PlacementCandidateIndex joined = index();
+        assertNotSame(index, joined);
+        assertEquals(Sets.newHashSet(bookie3, bookie4, bookie5), addresses(joined.getBookies(RACK_2)));
+        assertEquals(5, joined.getBookies().length);
+
+        // A bookie turning read-only is no longer a candidate
+        policy.onClusterChanged(Sets.newHashSet(bookie1, bookie3, bookie4, bookie5), Sets.newHashSet(bookie2));
+        PlacementCandidateIndex left = index();
+        assertNotSame(joined, left);
+        assertEquals(Sets.newHashSet(bookie1), addresses(left.getBookies(RACK_1)));
+        assertEquals(Sets.newHashSet(bookie1, bookie3, bookie4, bookie5), addresses(left.getBookies()));
+
+        // The last bookie of a rack leaves, the rack is no longer a location of bookies
+        policy.onClusterChanged(Sets.newHashSet(bookie3, bookie4, bookie5), Collections.emptySet());
+        assertFalse(index().isBookieLocation(RACK_1));
+        assertNull(index().getBookies(RACK_1));
+    }
+
+    @Test
+    public void testIndexRebuiltWhenRackChanges() {
+        PlacementCandidateIndex index = index();
+        racks.put("127.0.0.1", RACK_3);
+        policy.onBookieRackChange(Arrays.asList(bookie1));
+
+        PlacementCandidateIndex moved = index();
+        assertNotSame(index, moved);
+        assertEquals(Sets.newHashSet(bookie2), addresses(moved.getBookies(RACK_1)));
+        assertEquals(Sets.newHashSet(bookie1), addresses(moved.getBookies(RACK_3)));
+        assertTrue(moved.isBookieLocation(RACK_3));
+        assertEquals(4, moved.getBookies().length);
+        for (BookieNode bookie : moved.getBookies()) {
+            if (bookie.getAddr().equals(bookie1)) {
+                assertEquals(RACK_3, bookie.getNetworkLocation());
+            }
+        }
+    }
+
+    @Test
+    public void testLeftBookiesNotChosen() throws Exception {
+        policy.onClusterChanged(Sets.newHashSet(bookie1, bookie2, bookie3, bookie4, bookie5),
+                Collections.emptySet());
+        // Build the index before the bookie leaves
+        assertEquals(5, index().getBookies().length);
+        policy.onClusterChanged(Sets.newHashSet(bookie1, bookie3, bookie4, bookie5), Collections.emptySet());
+
+        // Spread over the two racks, the first one only has a single bookie left
+        for (int i = 0; i < 100; i++) {
+            List<BookieId> ensemble = policy.newEnsemble(2, 2, 2, Collections.emptyMap(), Collections.emptySet())
+                    .getResult();
+            assertEquals(2, ensemble.size());
+            assertTrue(ensemble.contains(bookie1));
+            assertFalse(ensemble.contains(bookie2));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.junit.Test;
+
+/**
+ * Test the read-ahead of the ledgers read sequentially.
+ */
+public class ReadAheadCacheTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 100;
+
+    private final ReadAheadCache cache = new ReadAheadCache(1024 * 1024, 10);
+
+    /**
+     * A ledger handle whose reads from the bookies are completed by the test.
+     */
+    private static class Reads {
+        final LedgerHandle lh = mock(LedgerHandle.class);
+        final List<long[]> ranges = new ArrayList<>();
+        final List<CompletableFuture<LedgerEntries>> futures = new ArrayList<>();
+
+        Reads(long lastAddConfirmed) {
+            when(lh.getId()).thenReturn(LEDGER_ID);
+            when(lh.getLastAddConfirmed()).thenReturn(lastAddConfirmed);
+            when(lh.readEntriesFromBookiesAsync(anyLong(), anyLong(), anyBoolean())).thenAnswer(invocation -> {
+                CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+                ranges.add(new long[] { invocation.getArgument(0), invocation.getArgument(1) });
+                futures.add(future);
+                return future;
+            });
+        }
+
+        void complete(int read) {
+            long[] range = ranges.get(read);
+            List<LedgerEntry> entries = new ArrayList<>();
+            for (long entryId = range[0]; entryId <= range[1]; entryId++) {
+                entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, ENTRY_SIZE,
+                        Unpooled.wrappedBuffer(new byte[ENTRY_SIZE])));
+            }
+            futures.get(read).complete(LedgerEntriesImpl.create(entries));
+        }
+    }
+
+    private static void assertEntries(CompletableFuture<LedgerEntries> future, long firstEntry, long lastEntry)
+            throws Exception {
+        try (LedgerEntries entries = future.get()) {
+            long entryId = firstEntry;
+            for (LedgerEntry entry : entries) {
+                assertEquals(entryId++, entry.getEntryId());
+            }
+            assertEquals(lastEntry + 1, entryId);
+        }
+    }
+
+    /**
+     * Read the first two entries, the second read being sequential starts the prefetch of entries 2 to 11.
+     */
+    private void startSequentialReads(Reads reads) throws Exception {
+        CompletableFuture<LedgerEntries> first = cache.read(reads.lh, 0, 0);
+        reads.complete(0);
+        assertEntries(first, 0, 0);
+
+        CompletableFuture<LedgerEntries> second = cache.read(reads.lh, 1, 1);
+        assertEquals(3, reads.ranges.size());
+        assertEquals(2, reads.ranges.get(1)[0]);
+        assertEquals(11, reads.ranges.get(1)[1]);
+        reads.complete(2);
+        assertEntries(second, 1, 1);
+    }
+
+    @Test
+    public void testSequentialReadsServedFromPrefetch() throws Exception {
+        Reads reads = new Reads(100);
+        startSequentialReads(reads);
+        reads.complete(1);
+
+        CompletableFuture<LedgerEntries> read = cache.read(reads.lh, 2, 4);
+        assertTrue(read.isDone());
+        assertEntries(read, 2, 4);
+        // Nothing more was read from the bookies
+        assertEquals(3, reads.ranges.size());
+
+        cache.invalidate(reads.lh);
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testReadsWaitingForThePrefetchGetTheirEntries() throws Exception {
+        Reads reads = new Reads(100);
+        startSequentialReads(reads);
+
+        // Several reads wait for the same prefetch, each advancing the reader past the entries of the previous
+        CompletableFuture<LedgerEntries> third = cache.read(reads.lh, 2, 3);
+        CompletableFuture<LedgerEntries> fourth = cache.read(reads.lh, 4, 5);
+        assertFalse(third.isDone());
+        assertFalse(fourth.isDone());
+        reads.complete(1);
+
+        assertEntries(third, 2, 3);
+        assertEntries(fourth, 4, 5);
+        assertEquals(3, reads.ranges.size());
+        CompletableFuture<LedgerEntries> fifth = cache.read(reads.lh, 6, 6);
+        assertTrue(fifth.isDone());
+        assertEntries(fifth, 6, 6);
+
+        cache.close();
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testReadsWaitingForAFailedPrefetch() throws Exception {
+        Reads reads = new Reads(100);
+        startSequentialReads(reads);
+
+        CompletableFuture<LedgerEntries> third = cache.read(reads.lh, 2, 3);
+        reads.futures.get(1).completeExceptionally(new BKException.BKReadException());
+
+        // The waiting read goes to the bookies for its entries
+        assertEquals(4, reads.ranges.size());
+        assertEquals(2, reads.ranges.get(3)[0]);
+        assertEquals(3, reads.ranges.get(3)[1]);
+        reads.complete(3);
+        assertEntries(third, 2, 3);
+        cache.close();
+    }
+
+    @Test
+    public void testHandlesOfTheSameLedgerAreIndependent() throws Exception {
+        Reads reads = new Reads(100);
+        Reads otherReads = new Reads(100);
+        startSequentialReads(reads);
+        reads.complete(1);
+        assertTrue(cache.getCachedBytes() > 0);
+
+        // Another reader of the same ledger neither breaks the sequence of the first one nor uses its entries
+        CompletableFuture<LedgerEntries> other = cache.read(otherReads.lh, 2, 2);
+        assertEquals(1, otherReads.ranges.size());
+        otherReads.complete(0);
+        assertEntries(other, 2, 2);
+
+        CompletableFuture<LedgerEntries> third = cache.read(reads.lh, 2, 3);
+        assertTrue(third.isDone());
+        assertEntries(third, 2, 3);
+        assertEquals(3, reads.ranges.size());
+
+        // Closing the other handle keeps the entries of the first one
+        cache.invalidate(otherReads.lh);
+        assertTrue(cache.getCachedBytes() > 0);
+        cache.invalidate(reads.lh);
+        assertEquals(0, cache.getCachedBytes());
+    }
+}
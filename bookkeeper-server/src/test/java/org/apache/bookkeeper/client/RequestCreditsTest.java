@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.junit.Test;
+
+/**
+ * Test the flow control of the requests sent to a bookie, from the credits it advertises.
+ */
+public class RequestCreditsTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWORD = "credits".getBytes();
+    private static final int NUM_LEDGERS = 4;
+    private static final int NUM_ENTRIES = 100;
+
+    public RequestCreditsTest() {
+        super(1);
+    }
+
+    private List<LedgerHandle> createLedgers() throws Exception {
+        List<LedgerHandle> ledgers = new ArrayList<>();
+        for (int i = 0; i < NUM_LEDGERS; i++) {
+            ledgers.add(bkc.createLedger(1, 1, 1, DigestType.CRC32, PASSWORD));
+        }
+        return ledgers;
+    }
+
+    private static byte[] entry(long ledgerId, long entryId) {
+        return ("entry-" + ledgerId + "-" + entryId).getBytes();
+    }
+
+    @Test
+    public void testRequestsHeldUntilCreditsAreGranted() throws Exception {
+        restartBookies(conf -> conf.setMaxRequestCreditsPerConnection(4));
+        List<LedgerHandle> ledgers = createLedgers();
+
+        // Many more requests than the credits are sent at once, the held ones are sent as responses come
+        CountDownLatch added = new CountDownLatch(NUM_LEDGERS * NUM_ENTRIES);
+        AtomicInteger addFailures = new AtomicInteger();
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            for (LedgerHandle lh : ledgers) {
+                lh.asyncAddEntry(entry(lh.getId(), i), (rc, handle, entryId, ctx) -> {
+                    if (rc != BKException.Code.OK) {
+                        addFailures.incrementAndGet();
+                    }
+                    added.countDown();
+                }, null);
+            }
+        }
+        assertTrue("Adds did not complete", added.await(30, TimeUnit.SECONDS));
+        assertEquals(0, addFailures.get());
+
+        CountDownLatch read = new CountDownLatch(NUM_LEDGERS * NUM_ENTRIES);
+        AtomicInteger readFailures = new AtomicInteger();
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            for (LedgerHandle lh : ledgers) {
+                lh.asyncReadEntries(i, i, (rc, handle, entries, ctx) -> {
+                    if (rc != BKException.Code.OK || !entries.hasMoreElements()) {
+                        readFailures.incrementAndGet();
+                    } else {
+                        LedgerEntry entry = entries.nextElement();
+                        byte[] expected = entry(handle.getId(), entry.getEntryId());
+                        if (!new String(expected).equals(new String(entry.getEntry()))) {
+                            readFailures.incrementAndGet();
+                        }
+                    }
+                    read.countDown();
+                }, null);
+            }
+        }
+        assertTrue("Reads did not complete", read.await(30, TimeUnit.SECONDS));
+        assertEquals(0, readFailures.get());
+    }
+
+    @Test
+    public void testCreditsGrantedWithRejections() throws Exception {
+        // The bookie rejects most of the adds sent at once, the rejections still advertise credits
+        restartBookies(conf -> conf.setMaxRequestCreditsPerConnection(1000)
+                .setNumAddWorkerThreads(1)
+                .setMaxPendingAddRequestPerThread(1));
+        List<LedgerHandle> ledgers = createLedgers();
+
+        CountDownLatch added = new CountDownLatch(NUM_LEDGERS * NUM_ENTRIES);
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            for (LedgerHandle lh : ledgers) {
+                lh.asyncAddEntry(entry(lh.getId(), i), (rc, handle, entryId, ctx) -> added.countDown(), null);
+            }
+        }
+        assertTrue("Adds did not complete", added.await(30, TimeUnit.SECONDS));
+
+        // Nothing is left in flight for the connection, so new requests go through
+        LedgerHandle lh = bkc.createLedger(1, 1, 1, DigestType.CRC32, PASSWORD);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, lh.addEntry(entry(lh.getId(), i)));
+        }
+        Enumeration<LedgerEntry> entries = lh.readEntries(0, 9);
+        int count = 0;
+        while (entries.hasMoreElements()) {
+            entries.nextElement();
+            count++;
+        }
+        assertEquals(10, count);
+        lh.close();
+    }
+}
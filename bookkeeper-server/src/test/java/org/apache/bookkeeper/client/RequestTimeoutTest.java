@@ -0,0 +1,145 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.junit.Test;
+
+/**
+ * Test the timeouts of the add quorum waits and of the bookie requests, run on the client request timer.
+ */
+public class RequestTimeoutTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWORD = "timeout".getBytes();
+    private static final byte[] ENTRY = "entry".getBytes();
+    private static final int NUM_BOOKIES = 3;
+    private static final int NUM_ENTRIES = 100;
+    // Interval of the former timeout monitor, much longer than the timeouts tested
+    private static final long MONITOR_INTERVAL_SEC = 60;
+
+    public RequestTimeoutTest() {
+        super(NUM_BOOKIES);
+    }
+
+    private BookKeeperTestClient newClient(int addEntryQuorumTimeoutSec, int addEntryTimeoutSec,
+                                           int readEntryTimeoutSec) throws Exception {
+        ClientConfiguration conf = new ClientConfiguration(baseClientConf);
+        conf.setAddEntryQuorumTimeout(addEntryQuorumTimeoutSec)
+            .setAddEntryTimeout(addEntryTimeoutSec)
+            .setReadEntryTimeout(readEntryTimeoutSec)
+            .setProperty("timeoutMonitorIntervalSec", MONITOR_INTERVAL_SEC);
+        return new BookKeeperTestClient(conf);
+    }
+
+    private static CompletableFuture<Integer> addEntry(LedgerHandle lh) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        lh.asyncAddEntry(ENTRY, (rc, handle, entryId, ctx) -> result.complete(rc), null);
+        return result;
+    }
+
+    @Test(timeout = 60000)
+    public void testAddQuorumWaitTimesOut() throws Exception {
+        BookKeeperTestClient client = newClient(1, (int) MONITOR_INTERVAL_SEC, (int) MONITOR_INTERVAL_SEC);
+        CountDownLatch wakeUp = new CountDownLatch(1);
+        try {
+            LedgerHandle lh = client.createLedger(NUM_BOOKIES, NUM_BOOKIES, NUM_BOOKIES, DigestType.CRC32, PASSWORD);
+            assertEquals(BKException.Code.OK, addEntry(lh).get(10, TimeUnit.SECONDS).intValue());
+
+            // The ack quorum is the whole ensemble, the add waits on the sleeping bookie
+            BookieId sleeping = lh.getLedgerMetadata().getEnsembleAt(0).get(0);
+            sleepBookie(sleeping, wakeUp);
+            long startNanos = System.nanoTime();
+            int rc = addEntry(lh).get(10, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            assertEquals(BKException.Code.AddEntryQuorumTimeoutException, rc);
+            assertTrue("Timed out after " + elapsedMillis + " ms", elapsedMillis >= 1000);
+        } finally {
+            wakeUp.countDown();
+            client.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCompletedAddsCancelTheirTimeouts() throws Exception {
+        BookKeeperTestClient client = newClient(1, (int) MONITOR_INTERVAL_SEC, (int) MONITOR_INTERVAL_SEC);
+        try {
+            LedgerHandle lh = client.createLedger(NUM_BOOKIES, NUM_BOOKIES, 2, DigestType.CRC32, PASSWORD);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                lh.addEntry(ENTRY);
+            }
+
+            // Only the timeout check of the bookie client is left on the timer
+            long deadline = System.currentTimeMillis() + 10000;
+            while (client.getRequestTimer().pendingTimeouts() > 1) {
+                assertTrue("Timeouts of completed adds still pending: " + client.getRequestTimer().pendingTimeouts(),
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(100);
+            }
+
+            // Past the quorum timeout, the completed adds have not failed the ledger
+            Thread.sleep(2000);
+            assertEquals(NUM_ENTRIES, lh.addEntry(ENTRY));
+            assertEquals(NUM_ENTRIES, lh.getLastAddConfirmed());
+            lh.close();
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testBookieRequestsTimeOutOnTheTimer() throws Exception {
+        LedgerHandle writeLh = bkc.createLedger(NUM_BOOKIES, NUM_BOOKIES, NUM_BOOKIES, DigestType.CRC32, PASSWORD);
+        writeLh.addEntry(ENTRY);
+
+        BookKeeperTestClient client = newClient(0, (int) MONITOR_INTERVAL_SEC, 1);
+        CountDownLatch wakeUp = new CountDownLatch(1);
+        try {
+            LedgerHandle lh = client.openLedgerNoRecovery(writeLh.getId(), DigestType.CRC32, PASSWORD);
+            for (BookieId bookie : lh.getLedgerMetadata().getEnsembleAt(0)) {
+                sleepBookie(bookie, wakeUp);
+            }
+
+            // The read requests time out long before the former monitor would have looked at them
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            long startNanos = System.nanoTime();
+            lh.asyncReadEntries(0, 0, (rc, handle, entries, ctx) -> result.complete(rc), null);
+            int rc = result.get(MONITOR_INTERVAL_SEC / 2, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            assertNotEquals(BKException.Code.OK, rc);
+            assertTrue("Timed out after " + elapsedMillis + " ms", elapsedMillis >= 1000);
+        } finally {
+            wakeUp.countDown();
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BATCH_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.SortedLedgerStorage;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the adds batched by the client, and how the bookie writes and acknowledges them.
+ */
+public class BatchedAddEntryTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] MASTER_KEY = new byte[BookieProtocol.MASTER_KEY_LENGTH];
+    private static final int MAX_BATCH_ENTRIES = 4;
+    private static final int MAX_BATCH_BYTES = 16 * 1024;
+    private static final long FAILING_LEDGER_ID = 1000;
+    private static final long FAILING_ENTRY_ID = 2;
+
+    private OrderedExecutor executor;
+    private EventLoopGroup eventLoopGroup;
+    private PerChannelBookieClient pcbc;
+
+    /**
+     * Ledger storage failing the add of a single entry.
+     */
+    public static class FailingLedgerStorage extends SortedLedgerStorage {
+        @Override
+        public long addEntry(ByteBuf entry) throws IOException {
+            if (entry.getLong(entry.readerIndex()) == FAILING_LEDGER_ID
+                    && entry.getLong(entry.readerIndex() + 8) == FAILING_ENTRY_ID) {
+                throw new IOException("Failing the add of entry " + FAILING_ENTRY_ID);
+            }
+            return super.addEntry(entry);
+        }
+    }
+
+    public BatchedAddEntryTest() {
+        super(1);
+        baseConf.setLedgerStorageClass(FailingLedgerStorage.class.getName());
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ClientConfiguration conf = new ClientConfiguration(baseClientConf)
+                .setUseV2WireProtocol(true)
+                .setAddEntryBatchMaxEntries(MAX_BATCH_ENTRIES)
+                .setAddEntryBatchMaxBytes(MAX_BATCH_BYTES);
+        executor = OrderedExecutor.newBuilder().name("batched-add-test").numThreads(1).build();
+        eventLoopGroup = new NioEventLoopGroup(1);
+        pcbc = new PerChannelBookieClient(conf, executor, eventLoopGroup, addressByIndex(0),
+                NullStatsLogger.INSTANCE, null, null, null, bkc.getBookieAddressResolver());
+
+        CompletableFuture<Integer> connected = new CompletableFuture<>();
+        pcbc.connectIfNeededAndDoOp((rc, client) -> connected.complete(rc));
+        assertEquals(BKException.Code.OK, connected.get(10, TimeUnit.SECONDS).intValue());
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        if (pcbc != null) {
+            pcbc.close();
+        }
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        super.tearDown();
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int payloadSize) {
+        ByteBuf entry = Unpooled.buffer(16 + payloadSize);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        for (int i = 0; i < payloadSize; i++) {
+            entry.writeByte((int) (entryId + i));
+        }
+        return entry;
+    }
+
+    /**
+     * Add the entries from the event loop of the channel, so that the ones that fit are batched
+     * before the loop gets to send them.
+     *
+     * @return the result code of each add
+     */
+    private List<CompletableFuture<Integer>> addEntries(long ledgerId, int[] payloadSizes, int options)
+            throws Exception {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < payloadSizes.length; i++) {
+            results.add(new CompletableFuture<>());
+        }
+        pcbc.channel.eventLoop().submit(() -> {
+            for (int i = 0; i < payloadSizes.length; i++) {
+                CompletableFuture<Integer> result = results.get(i);
+                pcbc.addEntry(ledgerId, MASTER_KEY, i, ByteBufList.get(newEntry(ledgerId, i, payloadSizes[i])),
+                        (rc, lid, entryId, addr, ctx) -> result.complete(rc), null, options, false,
+                        EnumSet.noneOf(WriteFlag.class));
+            }
+        }).get(10, TimeUnit.SECONDS);
+        return results;
+    }
+
+    private static void assertResult(int expectedRc, CompletableFuture<Integer> result) throws Exception {
+        assertEquals(expectedRc, result.get(10, TimeUnit.SECONDS).intValue());
+    }
+
+    private void assertEntries(long ledgerId, int[] payloadSizes) throws Exception {
+        Bookie bookie = serverByIndex(0).getBookie();
+        for (int i = 0; i < payloadSizes.length; i++) {
+            ByteBuf entry = bookie.readEntry(ledgerId, i);
+            try {
+                assertEquals("Wrong content for entry " + i, newEntry(ledgerId, i, payloadSizes[i]), entry);
+            } finally {
+                entry.release();
+            }
+        }
+    }
+
+    private TestOpStatsLogger batchSizeStats() throws Exception {
+        return getStatsProvider(0).getOpStatsLogger(SERVER_SCOPE + "." + ADD_ENTRY_BATCH_SIZE);
+    }
+
+    @Test
+    public void testMixedSizeBatches() throws Exception {
+        // With a 16 bytes header: the first 4 entries fill a batch, the next 2 fit in 16KB but not with
+        // the last one, which is left alone in its batch and sent as a regular add
+        int[] payloadSizes = { 1, 100, 8000, 4000, 10000, 50, 8000 };
+        List<CompletableFuture<Integer>> results = addEntries(1, payloadSizes, BookieProtocol.FLAG_NONE);
+        for (CompletableFuture<Integer> result : results) {
+            assertResult(BKException.Code.OK, result);
+        }
+
+        assertEntries(1, payloadSizes);
+        assertEquals(2, batchSizeStats().getSuccessCount());
+        assertEquals(3.0, batchSizeStats().getSuccessAverage(), 0.0);
+    }
+
+    @Test
+    public void testSingleEntrySentAsRegularAdd() throws Exception {
+        int[] payloadSizes = { 100 };
+        assertResult(BKException.Code.OK, addEntries(1, payloadSizes, BookieProtocol.FLAG_NONE).get(0));
+
+        assertEntries(1, payloadSizes);
+        assertEquals(0, batchSizeStats().getSuccessCount());
+    }
+
+    @Test
+    public void testRecoveryAndHighPriorityAddsNotBatched() throws Exception {
+        int[] payloadSizes = { 10, 20, 30, 40 };
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        results.addAll(addEntries(1, payloadSizes, BookieProtocol.FLAG_RECOVERY_ADD));
+        results.addAll(addEntries(2, payloadSizes, BookieProtocol.FLAG_HIGH_PRIORITY));
+        for (CompletableFuture<Integer> result : results) {
+            assertResult(BKException.Code.OK, result);
+        }
+
+        assertEntries(1, payloadSizes);
+        assertEntries(2, payloadSizes);
+        assertEquals(0, batchSizeStats().getSuccessCount());
+    }
+
+    @Test
+    public void testEntryFailingInBatch() throws Exception {
+        int[] payloadSizes = { 10, 10, 10, 10 };
+        List<CompletableFuture<Integer>> results = addEntries(FAILING_LEDGER_ID, payloadSizes,
+                BookieProtocol.FLAG_NONE);
+
+        // The entries before the failing one are written and acknowledged, the others are failed
+        assertResult(BKException.Code.OK, results.get(0));
+        assertResult(BKException.Code.OK, results.get(1));
+        assertResult(BKException.Code.WriteException, results.get(2));
+        assertResult(BKException.Code.WriteException, results.get(3));
+        assertEquals(1, batchSizeStats().getSuccessCount());
+        assertEquals(4.0, batchSizeStats().getSuccessAverage(), 0.0);
+
+        assertEntries(FAILING_LEDGER_ID, new int[] { 10, 10 });
+        Bookie bookie = serverByIndex(0).getBookie();
+        for (long entryId = FAILING_ENTRY_ID; entryId < payloadSizes.length; entryId++) {
+            try {
+                bookie.readEntry(FAILING_LEDGER_ID, entryId).release();
+                fail("Entry " + entryId + " should not have been added");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the size bounds of batched reads and the encoding of their responses.
+ */
+public class BatchedReadEntryProcessorTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int ENTRY_SIZE = 1000;
+    private static final long NUM_ENTRIES = 100;
+
+    private BookieRequestProcessor requestProcessor;
+
+    @Before
+    public void setUp() throws Exception {
+        Bookie bookie = mock(Bookie.class);
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            if (entryId >= NUM_ENTRIES) {
+                throw new Bookie.NoEntryException(LEDGER_ID, entryId);
+            }
+            return newEntry(entryId);
+        });
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private ByteBufList read(long startEntryId, int maxCount, long maxSize, int maxFrameSize) throws Exception {
+        BookieProtocol.BatchedReadRequest request = new BookieProtocol.BatchedReadRequest(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, LEDGER_ID, startEntryId, maxCount, maxSize,
+                BookieProtocol.FLAG_NONE);
+        BatchedReadEntryProcessor processor = BatchedReadEntryProcessor.create(
+                request, mock(Channel.class), requestProcessor, false, maxFrameSize);
+        return processor.readEntries();
+    }
+
+    private static long responseSize(ByteBufList data) {
+        return BatchedReadEntryProcessor.RESPONSE_HEADER_SIZE
+                + data.readableBytes() + (long) data.size() * BatchedReadEntryProcessor.ENTRY_FRAMING_SIZE;
+    }
+
+    @Test
+    public void testBoundedByRequestedMaxSize() throws Exception {
+        ByteBufList data = read(0, 50, 10 * (ENTRY_SIZE + 4), 5 * 1024 * 1024);
+        try {
+            assertEquals(10, data.size());
+        } finally {
+            data.release();
+        }
+    }
+
+    @Test
+    public void testBoundedByMaxFrameSize() throws Exception {
+        int maxFrameSize = 20 * 1024;
+        ByteBufList data = read(0, 50, Long.MAX_VALUE, maxFrameSize);
+        try {
+            assertEquals((maxFrameSize - BatchedReadEntryProcessor.RESPONSE_HEADER_SIZE) / (ENTRY_SIZE + 4),
+                    data.size());
+            assertTrue(responseSize(data) <= maxFrameSize);
+        } finally {
+            data.release();
+        }
+    }
+
+    @Test
+    public void testBoundedByMaxCountAndLastEntry() throws Exception {
+        ByteBufList data = read(0, 5, Long.MAX_VALUE, 5 * 1024 * 1024);
+        try {
+            assertEquals(5, data.size());
+        } finally {
+            data.release();
+        }
+
+        data = read(NUM_ENTRIES - 3, 50, Long.MAX_VALUE, 5 * 1024 * 1024);
+        try {
+            assertEquals(3, data.size());
+        } finally {
+            data.release();
+        }
+    }
+
+    @Test
+    public void testFirstEntryAlwaysReturned() throws Exception {
+        ByteBufList data = read(0, 50, 1, 5 * 1024 * 1024);
+        try {
+            assertEquals(1, data.size());
+        } finally {
+            data.release();
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeResponse() throws Exception {
+        ByteBufList data = read(0, 8, Long.MAX_VALUE, 5 * 1024 * 1024);
+        BookieProtocol.BatchedReadResponse response = new BookieProtocol.BatchedReadResponse(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.EOK, LEDGER_ID, 0, data);
+
+        BookieProtoEncoding.ResponseEnDeCoderPreV3 codec = new BookieProtoEncoding.ResponseEnDeCoderPreV3(null);
+        ByteBufList encoded = (ByteBufList) codec.encode(response, ByteBufAllocator.DEFAULT);
+        ByteBuf frame = ByteBufList.coalesce(encoded);
+        encoded.release();
+        // the frame length is prepended later in the pipeline
+        assertEquals(BatchedReadEntryProcessor.RESPONSE_HEADER_SIZE - 4
+                + 8 * (ENTRY_SIZE + BatchedReadEntryProcessor.ENTRY_FRAMING_SIZE), frame.readableBytes());
+
+        BookieProtocol.BatchedReadResponse decoded = (BookieProtocol.BatchedReadResponse) codec.decode(frame);
+        frame.release();
+        try {
+            assertEquals(BookieProtocol.EOK, decoded.getErrorCode());
+            assertEquals(8, decoded.getData().size());
+            for (int i = 0; i < 8; i++) {
+                ByteBuf entry = decoded.getData().getBuffer(i);
+                assertEquals(ENTRY_SIZE, entry.readableBytes());
+                assertEquals(LEDGER_ID, entry.getLong(0));
+                assertEquals(i, entry.getLong(8));
+            }
+        } finally {
+            decoded.release();
+        }
+    }
+}
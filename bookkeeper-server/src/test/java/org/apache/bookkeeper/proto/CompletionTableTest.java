@@ -0,0 +1,215 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.PerChannelBookieClient.CompletionKey;
+import org.apache.bookkeeper.proto.PerChannelBookieClient.CompletionValue;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the hash table and the timing wheel of {@link CompletionTable}.
+ */
+public class CompletionTableTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int READ_TIMEOUT_SEC = 5;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(READ_TIMEOUT_SEC);
+    private static final int NUM_COMPLETIONS = 5000;
+
+    private PerChannelBookieClient pcbc;
+    private CompletionTable table;
+
+    @Before
+    public void setUp() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration().setReadEntryTimeout(READ_TIMEOUT_SEC);
+        pcbc = new PerChannelBookieClient(conf, null, null, BookieId.parse("127.0.0.1:3181"),
+                NullStatsLogger.INSTANCE, null, null, null, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        table = new CompletionTable(0);
+    }
+
+    /**
+     * A read completion timing out at the given time, on the clock of the table.
+     */
+    private CompletionValue newCompletion(CompletionKey key, long entryId, long deadlineNanos) {
+        CompletionValue value = pcbc.new ReadCompletion(key, (rc, ledgerId, eid, buffer, ctx) -> { }, null,
+                LEDGER_ID, entryId);
+        value.startTime = deadlineNanos - TIMEOUT_NANOS;
+        return value;
+    }
+
+    private CompletionKey v3Key(long txnId) {
+        return pcbc.new V3CompletionKey(txnId, OperationType.READ_ENTRY);
+    }
+
+    private CompletionValue put(long txnId, long deadlineNanos) {
+        CompletionKey key = v3Key(txnId);
+        CompletionValue value = newCompletion(key, txnId, deadlineNanos);
+        table.put(key, value);
+        return value;
+    }
+
+    @Test
+    public void testDuplicateV2Keys() {
+        // Same entry read twice at the same time, the v2 keys are equal
+        CompletionKey key1 = pcbc.acquireV2Key(LEDGER_ID, 0, OperationType.READ_ENTRY);
+        CompletionKey key2 = pcbc.acquireV2Key(LEDGER_ID, 0, OperationType.READ_ENTRY);
+        assertNotSame(key1, key2);
+        assertEquals(key1, key2);
+        CompletionValue value1 = newCompletion(key1, 0, TIMEOUT_NANOS);
+        CompletionValue value2 = newCompletion(key2, 0, TIMEOUT_NANOS);
+        CompletionKey otherKey = pcbc.acquireV2Key(LEDGER_ID, 1, OperationType.READ_ENTRY);
+        CompletionValue other = newCompletion(otherKey, 1, TIMEOUT_NANOS);
+        table.put(key1, value1);
+        table.put(key2, value2);
+        table.put(otherKey, other);
+        assertEquals(3, table.size());
+
+        Set<CompletionValue> removed = new HashSet<>();
+        CompletionKey lookup = pcbc.acquireV2Key(LEDGER_ID, 0, OperationType.READ_ENTRY);
+        CompletionValue found = table.get(lookup);
+        assertTrue(found == value1 || found == value2);
+        removed.add(table.remove(lookup));
+        removed.add(table.remove(lookup));
+        assertTrue(removed.contains(value1));
+        assertTrue(removed.contains(value2));
+        assertNull(table.remove(lookup));
+        assertNull(table.get(lookup));
+        assertSame(other, table.get(otherKey));
+        assertEquals(1, table.size());
+
+        // The removed completions are gone from the wheel too
+        List<CompletionValue> timedOut = table.removeTimedOut(TIMEOUT_NANOS + CompletionTable.TICK_NANOS);
+        assertEquals(1, timedOut.size());
+        assertSame(other, timedOut.get(0));
+    }
+
+    @Test
+    public void testRemoveAfterRehashAndDeletions() {
+        // Enough completions for every section to grow several times
+        List<CompletionKey> keys = new ArrayList<>();
+        List<CompletionValue> values = new ArrayList<>();
+        for (int i = 0; i < NUM_COMPLETIONS; i++) {
+            CompletionKey key = v3Key(i);
+            CompletionValue value = newCompletion(key, i, TIMEOUT_NANOS);
+            keys.add(key);
+            values.add(value);
+            table.put(key, value);
+        }
+        assertEquals(NUM_COMPLETIONS, table.size());
+
+        // Leave deleted buckets behind, then put new completions over them
+        for (int i = 0; i < NUM_COMPLETIONS; i += 2) {
+            assertSame(values.get(i), table.remove(v3Key(i)));
+        }
+        for (int i = 0; i < NUM_COMPLETIONS; i += 2) {
+            CompletionKey key = v3Key(NUM_COMPLETIONS + i);
+            CompletionValue value = newCompletion(key, NUM_COMPLETIONS + i, TIMEOUT_NANOS);
+            keys.set(i, key);
+            values.set(i, value);
+            table.put(key, value);
+        }
+        assertEquals(NUM_COMPLETIONS, table.size());
+
+        for (int i = 0; i < NUM_COMPLETIONS; i++) {
+            assertSame("Wrong completion for " + keys.get(i), values.get(i), table.get(keys.get(i)));
+        }
+        for (int i = 0; i < NUM_COMPLETIONS; i += 2) {
+            assertNull(table.get(v3Key(i)));
+        }
+
+        // Remove in another order than the insertion, through both the map and the wheel
+        for (int i = NUM_COMPLETIONS - 1; i >= 0; i -= 3) {
+            assertSame(values.get(i), table.remove(keys.get(i)));
+            values.set(i, null);
+        }
+        Set<CompletionValue> remaining = new HashSet<>();
+        for (CompletionValue value : values) {
+            if (value != null) {
+                remaining.add(value);
+            }
+        }
+        assertEquals(remaining.size(), table.size());
+        List<CompletionValue> timedOut = table.removeTimedOut(TIMEOUT_NANOS + CompletionTable.TICK_NANOS);
+        assertEquals(remaining.size(), timedOut.size());
+        assertEquals(remaining, new HashSet<>(timedOut));
+        assertEquals(0, table.size());
+        assertTrue(table.removeAll().isEmpty());
+    }
+
+    @Test
+    public void testTimeoutsAcrossWheelRounds() {
+        long wheelNanos = CompletionTable.WHEEL_SIZE * CompletionTable.TICK_NANOS;
+        // Due in the same bucket, but one and two rounds of the wheel later than the first one
+        long deadline = 10 * CompletionTable.TICK_NANOS;
+        CompletionValue sameRound = put(1, deadline);
+        CompletionValue nextRound = put(2, deadline + wheelNanos);
+        CompletionValue twoRoundsLater = put(3, deadline + 2 * wheelNanos);
+
+        assertTrue(table.removeTimedOut(deadline - CompletionTable.TICK_NANOS).isEmpty());
+        List<CompletionValue> timedOut = table.removeTimedOut(deadline);
+        assertEquals(1, timedOut.size());
+        assertSame(sameRound, timedOut.get(0));
+
+        // Checked at every tick of the next round, the later completions stay until their deadline
+        for (long now = deadline + CompletionTable.TICK_NANOS; now < deadline + wheelNanos;
+                now += CompletionTable.TICK_NANOS) {
+            assertTrue("Timed out early at " + now, table.removeTimedOut(now).isEmpty());
+        }
+        timedOut = table.removeTimedOut(deadline + wheelNanos);
+        assertEquals(1, timedOut.size());
+        assertSame(nextRound, timedOut.get(0));
+
+        // A check after a long pause visits each bucket once and finds the last completion due
+        assertTrue(table.removeTimedOut(deadline + 2 * wheelNanos - CompletionTable.TICK_NANOS).isEmpty());
+        timedOut = table.removeTimedOut(deadline + 5 * wheelNanos);
+        assertEquals(1, timedOut.size());
+        assertSame(twoRoundsLater, timedOut.get(0));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testCompletionAlreadyDueTimesOutAtTheNextCheck() {
+        table.removeTimedOut(100 * CompletionTable.TICK_NANOS);
+        // Put with a deadline in the past of the wheel
+        CompletionValue late = put(1, 50 * CompletionTable.TICK_NANOS);
+
+        List<CompletionValue> timedOut = table.removeTimedOut(101 * CompletionTable.TICK_NANOS);
+        assertEquals(1, timedOut.size());
+        assertSame(late, timedOut.get(0));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_DIGEST_NOT_VERIFIED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_DIGEST_VERIFICATION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the verification of the digests of the entries written to the bookie.
+ */
+public class EntryDigestVerifierTest {
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private EntryDigestVerifier verifier;
+    private int verifiedEntries = 0;
+
+    @Before
+    public void setUp() {
+        verifier = new EntryDigestVerifier(2, 1000, ByteBufAllocator.DEFAULT, statsProvider.getStatsLogger(""));
+    }
+
+    @After
+    public void tearDown() {
+        verifier.shutdown();
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, DigestType digestType) throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(ledgerId, new byte[0], digestType,
+                ByteBufAllocator.DEFAULT, true);
+        ByteBuf payload = Unpooled.wrappedBuffer(("entry-" + entryId).getBytes());
+        ByteBufList packaged = digestManager.computeDigestAndPackageForSending(entryId, entryId - 1,
+                10 * entryId, payload);
+        ByteBuf entry = ByteBufList.coalesce(packaged);
+        packaged.release();
+        return entry;
+    }
+
+    private static ByteBuf corrupt(ByteBuf entry) {
+        int lastByte = entry.writerIndex() - 1;
+        entry.setByte(lastByte, entry.getByte(lastByte) + 1);
+        return entry;
+    }
+
+    private void verify(ByteBuf entry) {
+        verifier.verify(entry);
+        entry.release();
+        verifiedEntries++;
+    }
+
+    private TestOpStatsLogger verificationStats() {
+        return statsProvider.getOpStatsLogger(ADD_ENTRY_DIGEST_VERIFICATION);
+    }
+
+    private long notVerified() {
+        return statsProvider.getCounter(ADD_ENTRY_DIGEST_NOT_VERIFIED).get();
+    }
+
+    private void waitForVerifications() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (verificationStats().getSuccessCount() + verificationStats().getFailureCount() + notVerified()
+                < verifiedEntries) {
+            assertTrue("Verifications did not complete", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testVerifyCrcDigests() throws Exception {
+        for (long entryId = 0; entryId < 10; entryId++) {
+            verify(newEntry(1, entryId, DigestType.CRC32C));
+            verify(newEntry(2, entryId, DigestType.CRC32));
+        }
+        waitForVerifications();
+        assertEquals(20, verificationStats().getSuccessCount());
+        assertEquals(0, verificationStats().getFailureCount());
+        assertEquals(0, notVerified());
+    }
+
+    @Test
+    public void testCorruptedEntry() throws Exception {
+        verify(newEntry(1, 0, DigestType.CRC32C));
+        waitForVerifications();
+
+        verify(corrupt(newEntry(1, 1, DigestType.CRC32C)));
+        verify(newEntry(1, 2, DigestType.CRC32C));
+        waitForVerifications();
+
+        assertEquals(2, verificationStats().getSuccessCount());
+        assertEquals(1, verificationStats().getFailureCount());
+    }
+
+    @Test
+    public void testUnverifiableDigests() throws Exception {
+        for (long entryId = 0; entryId < 5; entryId++) {
+            verify(newEntry(3, entryId, DigestType.DUMMY));
+        }
+        waitForVerifications();
+        assertEquals(5, notVerified());
+        assertEquals(0, verificationStats().getSuccessCount());
+    }
+
+    @Test
+    public void testCorruptedFirstEntries() throws Exception {
+        // The first entries of the ledgers match no digest, the detection is retried on the next ones
+        verify(corrupt(newEntry(1, 0, DigestType.CRC32C)));
+        verify(corrupt(newEntry(2, 0, DigestType.CRC32)));
+        verify(corrupt(newEntry(2, 1, DigestType.CRC32)));
+        for (long entryId = 2; entryId < 5; entryId++) {
+            verify(newEntry(1, entryId, DigestType.CRC32C));
+            verify(newEntry(2, entryId, DigestType.CRC32));
+        }
+        waitForVerifications();
+
+        assertEquals(6, verificationStats().getSuccessCount());
+        assertEquals(3, verificationStats().getFailureCount());
+        assertEquals(0, notVerified());
+
+        // The digest type found out, a later corrupted entry is reported right away
+        verify(corrupt(newEntry(1, 5, DigestType.CRC32C)));
+        waitForVerifications();
+        assertEquals(4, verificationStats().getFailureCount());
+    }
+
+    @Test
+    public void testNotVerifiableAfterMaxDetectionAttempts() throws Exception {
+        for (long entryId = 0; entryId < EntryDigestVerifier.MAX_DETECTION_ATTEMPTS - 1; entryId++) {
+            verify(newEntry(3, entryId, DigestType.DUMMY));
+        }
+        // Not counted until the ledger is found not verifiable
+        Thread.sleep(100);
+        assertEquals(0, notVerified());
+
+        verify(newEntry(3, EntryDigestVerifier.MAX_DETECTION_ATTEMPTS - 1, DigestType.DUMMY));
+        waitForVerifications();
+        assertEquals(EntryDigestVerifier.MAX_DETECTION_ATTEMPTS, notVerified());
+        assertEquals(0, verificationStats().getFailureCount());
+
+        // Then the entries of the ledger are not verified, even a valid CRC one
+        verify(newEntry(3, EntryDigestVerifier.MAX_DETECTION_ATTEMPTS, DigestType.CRC32C));
+        waitForVerifications();
+        assertEquals(EntryDigestVerifier.MAX_DETECTION_ATTEMPTS + 1, notVerified());
+        assertEquals(0, verificationStats().getSuccessCount());
+    }
+
+    @Test
+    public void testDeletedLedgerDetectedAgain() throws Exception {
+        for (long entryId = 0; entryId < EntryDigestVerifier.MAX_DETECTION_ATTEMPTS; entryId++) {
+            verify(newEntry(4, entryId, DigestType.DUMMY));
+        }
+        verify(newEntry(5, 0, DigestType.CRC32C));
+        waitForVerifications();
+        verifier.ledgerDeleted(4);
+        verifier.ledgerDeleted(5);
+
+        // A new ledger with the same ids does not inherit the digest type of the deleted ones
+        verify(newEntry(4, 0, DigestType.CRC32));
+        verify(newEntry(5, 0, DigestType.CRC32));
+        waitForVerifications();
+        assertEquals(3, verificationStats().getSuccessCount());
+        assertEquals(0, verificationStats().getFailureCount());
+        assertEquals(EntryDigestVerifier.MAX_DETECTION_ATTEMPTS, notVerified());
+    }
+
+    @Test
+    public void testDigestVerifiedFlagOnlyTrustedForRecoveryAdds() {
+        short[] flags = {
+            BookieProtocol.FLAG_NONE,
+            BookieProtocol.FLAG_DIGEST_VERIFIED,
+            (short) (BookieProtocol.FLAG_DIGEST_VERIFIED | BookieProtocol.FLAG_HIGH_PRIORITY),
+            BookieProtocol.FLAG_RECOVERY_ADD,
+            (short) (BookieProtocol.FLAG_RECOVERY_ADD | BookieProtocol.FLAG_DIGEST_VERIFIED),
+        };
+        boolean[] trusted = { false, false, false, false, true };
+        for (int i = 0; i < flags.length; i++) {
+            BookieProtocol.ParsedAddRequest request = BookieProtocol.ParsedAddRequest.create(
+                    BookieProtocol.CURRENT_PROTOCOL_VERSION, 1, 0, flags[i], new byte[0], Unpooled.EMPTY_BUFFER);
+            assertEquals("Wrong trust for flags " + flags[i], trusted[i], request.isDigestVerified());
+            request.recycle();
+        }
+    }
+}
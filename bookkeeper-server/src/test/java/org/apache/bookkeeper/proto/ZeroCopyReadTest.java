@@ -0,0 +1,233 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.ReferenceCountUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the v2 read responses sent as file regions of the entry logs, through the server encoders.
+ */
+public class ZeroCopyReadTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int MIN_ENTRY_SIZE = 1024;
+    private static final int LARGE_ENTRY_SIZE = 8 * 1024;
+    private static final int SMALL_ENTRY_SIZE = 100;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final List<Long> locations = new ArrayList<>();
+    private File ledgerDir;
+    private DefaultEntryLogger entryLogger;
+    private BookieRequestProcessor requestProcessor;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerRoot = tmpDirs.createNew("zeroCopyRead", "ledgers");
+        ledgerDir = BookieImpl.getCurrentDirectory(ledgerRoot);
+        BookieImpl.checkDirectoryStructure(ledgerDir);
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerRoot.getPath() });
+        entryLogger = new DefaultEntryLogger(conf);
+
+        Bookie bookie = mock(Bookie.class);
+        when(bookie.readEntryRegion(anyLong(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            return entryLogger.readEntryRegion(LEDGER_ID, entryId, locations.get((int) entryId),
+                    invocation.getArgument(2));
+        });
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            return entryLogger.readEntry(LEDGER_ID, entryId, locations.get((int) entryId));
+        });
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getZeroCopyReadMinEntrySize()).thenReturn(MIN_ENTRY_SIZE);
+
+        // The outbound handlers of the server pipeline, in the same order
+        channel = new EmbeddedChannel(ByteBufList.ENCODER_WITH_SIZE,
+                BookieProtoEncoding.FileRegionFrameEncoder.INSTANCE,
+                new LengthFieldPrepender(4),
+                new BookieProtoEncoding.ResponseEncoder(ExtensionRegistry.newInstance()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channel.finishAndReleaseAll();
+        entryLogger.close();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf newEntry(long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (entryId * 31 + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private void addEntry(int size) throws Exception {
+        ByteBuf entry = newEntry(locations.size(), size);
+        try {
+            locations.add(entryLogger.addEntry(LEDGER_ID, entry));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void read(long entryId) {
+        BookieProtocol.ReadRequest request = new BookieProtocol.ReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                LEDGER_ID, entryId, BookieProtocol.FLAG_NONE, null);
+        ReadEntryProcessor.create(request, channel, requestProcessor, null, false).safeRun();
+    }
+
+    /**
+     * Write the messages sent on the channel the way the transport does, the file regions included.
+     */
+    private byte[] written() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            try {
+                if (msg instanceof FileRegion) {
+                    FileRegion region = (FileRegion) msg;
+                    while (region.transferred() < region.count()) {
+                        region.transferTo(target, region.transferred());
+                    }
+                } else {
+                    ByteBuf buf = (ByteBuf) msg;
+                    buf.readBytes(out, buf.readableBytes());
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertReadResponse(long entryId, int entrySize, byte[] written) {
+        ByteBuf frame = Unpooled.wrappedBuffer(written);
+        assertEquals(24 + entrySize, frame.readInt());
+        assertEquals(BookieProtocol.PacketHeader.toInt(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                BookieProtocol.READENTRY, (short) 0), frame.readInt());
+        assertEquals(BookieProtocol.EOK, frame.readInt());
+        assertEquals(LEDGER_ID, frame.readLong());
+        assertEquals(entryId, frame.readLong());
+        ByteBuf expected = newEntry(entryId, entrySize);
+        try {
+            assertEquals(expected, frame);
+        } finally {
+            expected.release();
+        }
+    }
+
+    @Test
+    public void testLargeEntrySentAsFileRegion() throws Exception {
+        addEntry(LARGE_ENTRY_SIZE);
+        entryLogger.flush();
+
+        read(0);
+        // The header with the frame size, followed by the region of the entry in the log
+        assertEquals(2, channel.outboundMessages().size());
+        ByteBuf header = (ByteBuf) channel.outboundMessages().peek();
+        assertEquals(24 + LARGE_ENTRY_SIZE, header.getInt(0));
+        assertEquals(28, header.readableBytes());
+        List<Object> messages = new ArrayList<>(channel.outboundMessages());
+        assertTrue(messages.get(1) instanceof DefaultFileRegion);
+        DefaultFileRegion region = (DefaultFileRegion) messages.get(1);
+        assertEquals(LARGE_ENTRY_SIZE, region.count());
+
+        // The log removed by a compaction is still read, its file stays open until the region is written
+        File logFile = new File(ledgerDir, Long.toHexString(locations.get(0) >> 32) + ".log");
+        assertTrue(logFile.delete());
+        assertTrue(region.isOpen());
+        assertReadResponse(0, LARGE_ENTRY_SIZE, written());
+        assertEquals(0, region.refCnt());
+        assertFalse(region.isOpen());
+    }
+
+    @Test
+    public void testSmallEntrySentAsBuffer() throws Exception {
+        addEntry(SMALL_ENTRY_SIZE);
+        entryLogger.flush();
+        assertNull(entryLogger.readEntryRegion(LEDGER_ID, 0, locations.get(0), MIN_ENTRY_SIZE));
+
+        read(0);
+        assertFalse(channel.outboundMessages().stream().anyMatch(msg -> msg instanceof FileRegion));
+        assertReadResponse(0, SMALL_ENTRY_SIZE, written());
+    }
+
+    @Test
+    public void testEntryInWriteBufferSentAsBuffer() throws Exception {
+        addEntry(LARGE_ENTRY_SIZE);
+        entryLogger.flush();
+        // Still in the write buffer of the current log, not in its file yet
+        addEntry(LARGE_ENTRY_SIZE);
+        assertNull(entryLogger.readEntryRegion(LEDGER_ID, 1, locations.get(1), MIN_ENTRY_SIZE));
+
+        read(1);
+        assertFalse(channel.outboundMessages().stream().anyMatch(msg -> msg instanceof FileRegion));
+        assertReadResponse(1, LARGE_ENTRY_SIZE, written());
+
+        // Both framed the same way once the entry is flushed
+        entryLogger.flush();
+        read(1);
+        assertTrue(channel.outboundMessages().stream().anyMatch(msg -> msg instanceof FileRegion));
+        assertReadResponse(1, LARGE_ENTRY_SIZE, written());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import static com.scurrilous.circe.params.CrcParameters.CRC32C;
+
+import com.scurrilous.circe.IncrementalIntHash;
+import com.scurrilous.circe.crc.Sse42Crc32C;
+import com.scurrilous.circe.crc.StandardCrcProvider;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * CRC32C computed by the SSE4.2 JNI library when it can be loaded, by the table based Java implementation
+ * otherwise.
+ */
+public final class CirceIntHash implements IntHash {
+
+    private final IncrementalIntHash hash;
+    private final boolean isNative;
+
+    public CirceIntHash() {
+        this.isNative = Sse42Crc32C.isSupported();
+        this.hash = isNative
+                ? new Crc32cSse42Provider().getIncrementalInt(CRC32C)
+                : new StandardCrcProvider().getIncrementalInt(CRC32C);
+    }
+
+    public boolean isNative() {
+        return isNative;
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer) {
+        if (buffer.hasMemoryAddress() && isNative) {
+            return hash.calculate(buffer.memoryAddress() + buffer.readerIndex(), buffer.readableBytes());
+        } else if (buffer.hasArray()) {
+            return hash.calculate(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(),
+                buffer.readableBytes());
+        } else {
+            return hash.calculate(buffer.nioBuffer());
+        }
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer) {
+        if (buffer.hasMemoryAddress() && isNative) {
+            return hash.resume(current, buffer.memoryAddress() + buffer.readerIndex(), buffer.readableBytes());
+        } else if (buffer.hasArray()) {
+            return hash.resume(current, buffer.array(), buffer.arrayOffset() + buffer.readerIndex(),
+                buffer.readableBytes());
+        } else {
+            return hash.resume(current, buffer.nioBuffer());
+        }
+    }
+}
@@ -18,12 +18,7 @@
  */
 package com.scurrilous.circe.checksum;
 
-import static com.scurrilous.circe.params.CrcParameters.CRC32C;
-
 import com.google.common.annotations.VisibleForTesting;
-import com.scurrilous.circe.IncrementalIntHash;
-import com.scurrilous.circe.crc.Sse42Crc32C;
-import com.scurrilous.circe.crc.StandardCrcProvider;
 import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,37 +28,35 @@ public class Crc32cIntChecksum {
     private static final Logger log = LoggerFactory.getLogger(Crc32cIntChecksum.class);
 
     @VisibleForTesting
-    final static IncrementalIntHash CRC32C_HASH;
+    final static IntHash CRC32C_HASH;
 
     static {
-        if (Sse42Crc32C.isSupported()) {
-            CRC32C_HASH = new Crc32cSse42Provider().getIncrementalInt(CRC32C);
-            log.info("SSE4.2 CRC32C provider initialized");
+        if (Java9IntHash.isAvailable()) {
+            CRC32C_HASH = new Java9IntHash();
+            log.info("java.util.zip.CRC32C provider initialized");
         } else {
-            CRC32C_HASH = new StandardCrcProvider().getIncrementalInt(CRC32C);
-            log.warn("Failed to load Circe JNI library. Falling back to Java based CRC32c provider");
+            CirceIntHash hash = new CirceIntHash();
+            CRC32C_HASH = hash;
+            if (hash.isNative()) {
+                log.info("SSE4.2 CRC32C provider initialized");
+            } else {
+                log.warn("Failed to load Circe JNI library. Falling back to Java based CRC32c provider");
+            }
         }
     }
 
     /**
-     * Computes crc32c checksum: if it is able to load crc32c native library then it computes using that native library
-     * which is faster as it computes using hardware machine instruction else it computes using crc32c algo.
+     * Computes crc32c checksum: on Java 9 and later it uses java.util.zip.CRC32C, which is compiled to the CRC32
+     * machine instructions, else if it is able to load crc32c native library then it computes using that native
+     * library, else it computes using crc32c algo.
      *
      * @param payload
      * @return
      */
     public static int computeChecksum(ByteBuf payload) {
-        if (payload.hasMemoryAddress() && (CRC32C_HASH instanceof Sse42Crc32C)) {
-            return CRC32C_HASH.calculate(payload.memoryAddress() + payload.readerIndex(), payload.readableBytes());
-        } else if (payload.hasArray()) {
-            return CRC32C_HASH.calculate(payload.array(), payload.arrayOffset() + payload.readerIndex(),
-                payload.readableBytes());
-        } else {
-            return CRC32C_HASH.calculate(payload.nioBuffer());
-        }
+        return CRC32C_HASH.calculate(payload);
     }
 
-
     /**
      * Computes incremental checksum with input previousChecksum and input payload
      *
@@ -72,15 +65,7 @@ public class Crc32cIntChecksum {
      * @return
      */
     public static int resumeChecksum(int previousChecksum, ByteBuf payload) {
-        if (payload.hasMemoryAddress() && (CRC32C_HASH instanceof Sse42Crc32C)) {
-            return CRC32C_HASH.resume(previousChecksum, payload.memoryAddress() + payload.readerIndex(),
-                payload.readableBytes());
-        } else if (payload.hasArray()) {
-            return CRC32C_HASH.resume(previousChecksum, payload.array(), payload.arrayOffset() + payload.readerIndex(),
-                payload.readableBytes());
-        } else {
-            return CRC32C_HASH.resume(previousChecksum, payload.nioBuffer());
-        }
+        return CRC32C_HASH.resume(previousChecksum, payload);
     }
 
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C computed by {@code java.util.zip.CRC32C}, available from Java 9, which the JIT compiles to the
+ * CRC32 instructions of the CPU for both heap and direct buffers, without any JNI call.
+ *
+ * <p>The JDK class cannot start from a given checksum. Resuming continues from the state of the thread
+ * local instance when it holds the given checksum, which is the case when the previous call on the thread
+ * computed it, and otherwise combines the checksum of the buffer with the given one.
+ */
+public final class Java9IntHash implements IntHash {
+
+    private static final MethodHandle NEW_CRC32C;
+    private static final MethodHandle UPDATE_BYTE_BUFFER;
+
+    static {
+        MethodHandle newCrc32c = null;
+        MethodHandle updateByteBuffer = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newCrc32c = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"),
+                    MethodType.methodType(void.class)).asType(MethodType.methodType(Checksum.class));
+            updateByteBuffer = lookup.findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            // Java 8
+        }
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BYTE_BUFFER = updateByteBuffer;
+    }
+
+    private static final FastThreadLocal<Checksum> CRC32C = new FastThreadLocal<Checksum>() {
+        @Override
+        protected Checksum initialValue() throws Exception {
+            try {
+                return (Checksum) NEW_CRC32C.invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to create CRC32C instance", t);
+            }
+        }
+    };
+
+    public static boolean isAvailable() {
+        return NEW_CRC32C != null;
+    }
+
+    public Java9IntHash() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("java.util.zip.CRC32C requires Java 9 or later");
+        }
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer) {
+        Checksum crc = CRC32C.get();
+        crc.reset();
+        update(crc, buffer);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer) {
+        Checksum crc = CRC32C.get();
+        if (current == 0) {
+            crc.reset();
+        } else if ((int) crc.getValue() != current) {
+            return combine(current, calculate(buffer), buffer.readableBytes());
+        }
+        update(crc, buffer);
+        return (int) crc.getValue();
+    }
+
+    private static void update(Checksum crc, ByteBuf buffer) {
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        } else if (buffer.nioBufferCount() == 1) {
+            update(crc, buffer.nioBuffer());
+        } else {
+            // Composite buffers, go through the components instead of merging them
+            for (ByteBuffer nioBuffer : buffer.nioBuffers()) {
+                update(crc, nioBuffer);
+            }
+        }
+    }
+
+    private static void update(Checksum crc, ByteBuffer buffer) {
+        try {
+            UPDATE_BYTE_BUFFER.invokeExact(crc, buffer);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to update CRC32C", t);
+        }
+    }
+
+    // CRC32C polynomial, reflected
+    private static final int POLY = 0x82F63B78;
+
+    // X2N[k] = x^(2^k) modulo the polynomial
+    private static final int[] X2N = new int[32];
+
+    static {
+        int p = 1 << 30;
+        X2N[0] = p;
+        for (int k = 1; k < 32; k++) {
+            p = multiplyModP(p, p);
+            X2N[k] = p;
+        }
+    }
+
+    /**
+     * Computes the checksum of the concatenation of two blocks of data from their checksums, as zlib's
+     * crc32_combine does.
+     */
+    static int combine(int crc1, int crc2, long length2) {
+        // Multiply crc1 by x^(8 * length2)
+        int p = 1 << 31;
+        int k = 3;
+        for (long n = length2; n != 0; n >>>= 1, k++) {
+            if ((n & 1) != 0) {
+                p = multiplyModP(X2N[k & 31], p);
+            }
+        }
+        return multiplyModP(p, crc1) ^ crc2;
+    }
+
+    private static int multiplyModP(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        while (true) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    break;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ POLY : b >>> 1;
+        }
+        return p;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import static com.scurrilous.circe.params.CrcParameters.CRC32C;
+import static org.junit.Assert.assertEquals;
+
+import com.scurrilous.circe.IncrementalIntHash;
+import com.scurrilous.circe.crc.StandardCrcProvider;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that {@link Java9IntHash} computes the same checksums as the table based Java implementation and
+ * the SSE4.2 one, for every kind of buffer, and when resuming from any checksum.
+ */
+public class Java9IntHashTest {
+
+    private static final int[] SIZES = { 0, 1, 7, 64, 1000, 4096, 65536 + 3 };
+
+    private final Random random = new Random(0x5eed);
+    private final IncrementalIntHash reference = new StandardCrcProvider().getIncrementalInt(CRC32C);
+    private final CirceIntHash circe = new CirceIntHash();
+    private Java9IntHash hash;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("java.util.zip.CRC32C requires Java 9 or later", Java9IntHash.isAvailable());
+        hash = new Java9IntHash();
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ByteBuf directBuffer(byte[] bytes) {
+        ByteBuf buffer = Unpooled.directBuffer(bytes.length);
+        buffer.writeBytes(bytes);
+        return buffer;
+    }
+
+    private static ByteBuf compositeBuffer(byte[] bytes) {
+        // A heap and a direct component, so that the buffer has neither an array nor a single nio buffer
+        int split = bytes.length / 3;
+        CompositeByteBuf composite = Unpooled.compositeBuffer();
+        composite.addComponent(true, Unpooled.wrappedBuffer(bytes, 0, split));
+        composite.addComponent(true, directBuffer(Arrays.copyOfRange(bytes, split, bytes.length)));
+        return composite;
+    }
+
+    /**
+     * Check the checksum of the buffer against the reference implementations, then release it.
+     */
+    private void assertChecksum(byte[] bytes, ByteBuf buffer) {
+        try {
+            int expected = reference.calculate(bytes);
+            assertEquals("Wrong checksum of " + bytes.length + " bytes", expected, hash.calculate(buffer));
+            assertEquals("Circe checksum differs for " + bytes.length + " bytes", expected,
+                    circe.calculate(buffer));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testHeapBuffers() {
+        for (int size : SIZES) {
+            byte[] bytes = randomBytes(size);
+            assertChecksum(bytes, Unpooled.wrappedBuffer(bytes));
+            // Not starting at the beginning of the array
+            byte[] padded = new byte[size + 11];
+            System.arraycopy(bytes, 0, padded, 5, size);
+            assertChecksum(bytes, Unpooled.wrappedBuffer(padded, 5, size));
+        }
+    }
+
+    @Test
+    public void testDirectBuffers() {
+        for (int size : SIZES) {
+            byte[] bytes = randomBytes(size);
+            assertChecksum(bytes, directBuffer(bytes));
+        }
+    }
+
+    @Test
+    public void testCompositeBuffers() {
+        for (int size : SIZES) {
+            byte[] bytes = randomBytes(size);
+            assertChecksum(bytes, compositeBuffer(bytes));
+        }
+    }
+
+    @Test
+    public void testResumeAfterCalculatingThePreviousPart() {
+        // The thread local state holds the checksum of the first part, the second part continues from it
+        for (int size : SIZES) {
+            byte[] bytes = randomBytes(size);
+            int split = size / 2;
+            ByteBuf first = Unpooled.wrappedBuffer(bytes, 0, split);
+            ByteBuf second = directBuffer(Arrays.copyOfRange(bytes, split, size));
+            int current = hash.calculate(first);
+            assertEquals(reference.calculate(bytes, 0, split), current);
+            assertEquals(reference.calculate(bytes), hash.resume(current, second));
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testResumeFromAnotherChecksum() {
+        // Another checksum is computed in between, resume has to combine the checksum of the second part
+        for (int size : SIZES) {
+            byte[] bytes = randomBytes(size);
+            int split = size / 2;
+            int current = reference.calculate(bytes, 0, split);
+            ByteBuf other = Unpooled.wrappedBuffer(randomBytes(100));
+            hash.calculate(other);
+            other.release();
+
+            ByteBuf second = compositeBuffer(Arrays.copyOfRange(bytes, split, size));
+            assertEquals("Wrong resumed checksum of " + size + " bytes", reference.calculate(bytes),
+                    hash.resume(current, second));
+            assertEquals(reference.calculate(bytes), circe.resume(current, second));
+            second.release();
+        }
+    }
+
+    @Test
+    public void testResumeInManyParts() {
+        byte[] bytes = randomBytes(10000);
+        int[] splits = { 0, 1, 1, 500, 4096, 9999, 10000 };
+        int current = 0;
+        for (int i = 1; i < splits.length; i++) {
+            ByteBuf part = directBuffer(Arrays.copyOfRange(bytes, splits[i - 1], splits[i]));
+            current = hash.resume(current, part);
+            part.release();
+            assertEquals(reference.calculate(bytes, 0, splits[i]), current);
+            if (i % 2 == 0) {
+                // Leave the thread local state elsewhere, for the next part to go through the combine
+                ByteBuf other = Unpooled.wrappedBuffer(randomBytes(10));
+                hash.calculate(other);
+                other.release();
+            }
+        }
+    }
+
+    @Test
+    public void testCombine() {
+        for (int size : SIZES) {
+            byte[] bytes = randomBytes(size);
+            for (int split : new int[] { 0, size / 3, size }) {
+                int crc1 = reference.calculate(bytes, 0, split);
+                int crc2 = reference.calculate(bytes, split, size - split);
+                assertEquals("Wrong combined checksum of " + split + " and " + (size - split) + " bytes",
+                        reference.calculate(bytes), Java9IntHash.combine(crc1, crc2, size - split));
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import java.net.ServerSocket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.LocalBookKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for many threads appending to the same ledger handle, against local bookies
+ * that do not sync the journal, so that the add path of the handle is the bottleneck.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerAddBenchmark {
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"100", "1024"})
+        private int entrySize;
+
+        @Param({"1000"})
+        private int maxOutstandingAdds;
+
+        private LocalBookKeeper cluster;
+        private BookKeeper bk;
+        private LedgerHandle lh;
+        private Semaphore outstandingAdds;
+        private byte[] entry;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            int zkPort;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                zkPort = socket.getLocalPort();
+            }
+            ServerConfiguration serverConf = new ServerConfiguration()
+                .setJournalSyncData(false)
+                .setJournalFlushWhenQueueEmpty(true);
+            cluster = LocalBookKeeper.getLocalBookies("127.0.0.1", zkPort, 3, true, serverConf);
+            cluster.start();
+
+            ClientConfiguration clientConf = new ClientConfiguration();
+            clientConf.setMetadataServiceUri(serverConf.getMetadataServiceUri());
+            bk = new BookKeeper(clientConf);
+            lh = bk.createLedger(3, 2, 2, DigestType.CRC32C, new byte[0]);
+            outstandingAdds = new Semaphore(maxOutstandingAdds);
+            entry = new byte[entrySize];
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            outstandingAdds.acquire(maxOutstandingAdds);
+            lh.close();
+            bk.close();
+            cluster.close();
+        }
+    }
+
+    @Benchmark
+    public void asyncAddEntry(TestState s) throws Exception {
+        s.outstandingAdds.acquire();
+        s.lh.asyncAddEntry(s.entry, (rc, lh, entryId, ctx) -> s.outstandingAdds.release(), null);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the throughput of the ensemble placement of new ledgers, as when many ledgers are
+ * created per second, with bookies spread over racks (zones for the zone aware policy).
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class PlacementPolicyBenchmark {
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"rackaware", "zoneaware"})
+        private String policyType;
+
+        @Param({"30", "300"})
+        private int numBookies;
+
+        @Param({"10"})
+        private int numRacks;
+
+        @Param({"3"})
+        private int ensembleSize;
+
+        private final int writeQuorumSize = 3;
+        private final int ackQuorumSize = 2;
+
+        private HashedWheelTimer timer;
+        private EnsemblePlacementPolicy policy;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            timer = new HashedWheelTimer();
+            boolean zoneAware = "zoneaware".equals(policyType);
+            // Bookies are 10.0.<rack>.<index>, mapped to their rack or zone
+            DNSToSwitchMapping dnsResolver = new DNSToSwitchMapping() {
+                @Override
+                public List<String> resolve(List<String> names) {
+                    List<String> locations = new ArrayList<>(names.size());
+                    for (String name : names) {
+                        String[] parts = name.split("\\.");
+                        String rack = parts.length == 4 ? parts[2] : "0";
+                        locations.add(zoneAware ? "/zone-" + rack + "/ud-" + parts[parts.length - 1] : "/rack-" + rack);
+                    }
+                    return locations;
+                }
+
+                @Override
+                public void reloadCachedMappings() {
+                }
+
+                @Override
+                public boolean useHostName() {
+                    return false;
+                }
+            };
+
+            ClientConfiguration conf = new ClientConfiguration();
+            if (zoneAware) {
+                policy = new ZoneawareEnsemblePlacementPolicy();
+            } else {
+                policy = new RackawareEnsemblePlacementPolicy();
+            }
+            policy.initialize(conf, Optional.of(dnsResolver), timer, SettableFeatureProvider.DISABLE_ALL,
+                    NullStatsLogger.INSTANCE, bookieId -> {
+                        String host = bookieId.toString();
+                        return new BookieSocketAddress(host.substring(0, host.indexOf(':')), 3181);
+                    });
+
+            Set<BookieId> bookies = new HashSet<>();
+            for (int i = 0; i < numBookies; i++) {
+                bookies.add(BookieId.parse("10.0." + (i % numRacks) + "." + (i / numRacks + 1) + ":3181"));
+            }
+            policy.onClusterChanged(bookies, Collections.emptySet());
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            policy.uninitalize();
+            timer.stop();
+        }
+    }
+
+    @Benchmark
+    public List<BookieId> newEnsemble(TestState s) throws Exception {
+        return s.policy.newEnsemble(s.ensembleSize, s.writeQuorumSize, s.ackQuorumSize,
+                Collections.emptyMap(), Collections.emptySet()).getResult();
+    }
+}
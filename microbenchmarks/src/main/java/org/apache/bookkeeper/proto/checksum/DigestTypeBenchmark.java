@@ -19,6 +19,9 @@
 
 package org.apache.bookkeeper.proto.checksum;
 
+import com.scurrilous.circe.checksum.CirceIntHash;
+import com.scurrilous.circe.checksum.IntHash;
+import com.scurrilous.circe.checksum.Java9IntHash;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.CompositeByteBuf;
@@ -179,4 +182,67 @@ public class DigestTypeBenchmark {
         dm.populateValueAndReset(state.digestBuf);
     }
 
+    /**
+     * CRC32C implementation.
+     */
+    public enum Crc32cImpl {
+        // SSE4.2 JNI library, or the table based fallback when it cannot be loaded
+        JNI,
+        // java.util.zip.CRC32C
+        JDK
+    }
+
+    /**
+     * Crc32cState.
+     */
+    @State(Scope.Thread)
+    public static class Crc32cState {
+
+        @Param
+        public Crc32cImpl impl;
+        @Param
+        public BufferType bufferType;
+        @Param({"64", "256", "1024", "4096", "16384", "65536"})
+        public int entrySize;
+
+        public IntHash hash;
+        public ByteBuf buffer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            hash = impl == Crc32cImpl.JDK ? new Java9IntHash() : new CirceIntHash();
+            switch (bufferType) {
+                case ARRAY_BACKED:
+                    buffer = Unpooled.wrappedBuffer(randomBytes(entrySize));
+                    break;
+                case NOT_ARRAY_BACKED:
+                    CompositeByteBuf composite = new CompositeByteBuf(ByteBufAllocator.DEFAULT, true, 2);
+                    composite.addComponent(true, Unpooled.wrappedBuffer(randomBytes(entrySize / 2)));
+                    composite.addComponent(true, Unpooled.wrappedBuffer(randomBytes(entrySize - entrySize / 2)));
+                    buffer = composite;
+                    break;
+                case BYTE_BUF_DEFAULT_ALLOC:
+                    buffer = ByteBufAllocator.DEFAULT.buffer(entrySize, entrySize);
+                    buffer.writeBytes(randomBytes(entrySize));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown buffer type " + bufferType);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 5, time = 12, timeUnit = TimeUnit.SECONDS)
+    @Fork(value = 1, warmups = 1)
+    public int crc32c(Crc32cState state) {
+        return state.hash.calculate(state.buffer);
+    }
 }
@@ -0,0 +1,64 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+/**
+ * {@link NativeAsyncIO} backed by a linux io_uring instance.
+ */
+public class IoUring implements NativeAsyncIO {
+
+    private final long ring;
+    private final int queueDepth;
+    private boolean closed = false;
+
+    public IoUring(int queueDepth) throws NativeIOException {
+        this.ring = NativeIOJni.uringInit(queueDepth);
+        this.queueDepth = queueDepth;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Override
+    public void prepareFdatasync(int fd, long userData, boolean linkNext) throws NativeIOException {
+        NativeIOJni.uringPrepFdatasync(ring, fd, userData, linkNext);
+    }
+
+    @Override
+    public int submit(boolean waitForCompletion) throws NativeIOException {
+        return NativeIOJni.uringSubmit(ring, waitForCompletion ? 1 : 0);
+    }
+
+    @Override
+    public int reapCompletions(long[] userData, int[] results) throws NativeIOException {
+        return NativeIOJni.uringReap(ring, userData, results);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            NativeIOJni.uringExit(ring);
+        }
+    }
+}
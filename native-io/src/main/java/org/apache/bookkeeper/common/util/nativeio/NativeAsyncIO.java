@@ -0,0 +1,64 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.io.Closeable;
+
+/**
+ * Asynchronous submission of I/O operations, with completions reaped by the caller.
+ *
+ * <p>Operations are prepared, then handed over to the kernel in a single {@link #submit(boolean)}
+ * call. Each operation produces one completion, carrying the user data of the operation and its
+ * result, which is the value the equivalent syscall would return or a negated errno. A linked
+ * operation only starts once the previous one has completed successfully, otherwise it completes
+ * with {@code -ECANCELED}.
+ *
+ * <p>Instances are not thread safe, they are meant to be driven by a single thread.
+ */
+public interface NativeAsyncIO extends Closeable {
+
+    int ECANCELED = 125;
+
+    /**
+     * @return the maximum number of operations that can be in flight
+     */
+    int getQueueDepth();
+
+    void prepareFdatasync(int fd, long userData, boolean linkNext) throws NativeIOException;
+
+    /**
+     * Submit all the prepared operations.
+     *
+     * @param waitForCompletion whether to block until at least one completion is available
+     * @return the number of submitted operations
+     */
+    int submit(boolean waitForCompletion) throws NativeIOException;
+
+    /**
+     * Reap the available completions, without blocking.
+     *
+     * @return the number of completions stored in the arrays
+     */
+    int reapCompletions(long[] userData, int[] results) throws NativeIOException;
+
+    @Override
+    void close();
+}
@@ -46,6 +46,20 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    /**
+     * io_uring is a linux-only interface, available from kernel 5.6, so callers must handle
+     * the possibility that it does not exist.
+     */
+    static native long uringInit(int entries) throws NativeIOException;
+
+    static native void uringPrepFdatasync(long ring, int fd, long userData, boolean link) throws NativeIOException;
+
+    static native int uringSubmit(long ring, int minComplete) throws NativeIOException;
+
+    static native int uringReap(long ring, long[] userData, int[] results) throws NativeIOException;
+
+    static native void uringExit(long ring);
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
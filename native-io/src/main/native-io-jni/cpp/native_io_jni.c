@@ -26,6 +26,17 @@
 #include <string.h>
 #include <unistd.h>
 
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#include <linux/io_uring.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#if defined(__NR_io_uring_setup) && defined(IORING_FEAT_RW_CUR_POS)
+#define HAVE_IO_URING 1
+#endif
+#endif
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 static void throwExceptionWithErrno(JNIEnv* env, const char* message) {
@@ -230,3 +241,250 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+#ifdef HAVE_IO_URING
+
+struct uring {
+    int fd;
+    unsigned entries;
+
+    unsigned* sq_head;
+    unsigned* sq_tail;
+    unsigned* sq_mask;
+    unsigned* sq_array;
+    struct io_uring_sqe* sqes;
+    // sqes prepared but not yet made visible to the kernel
+    unsigned sqe_tail;
+    unsigned sqe_head;
+
+    unsigned* cq_head;
+    unsigned* cq_tail;
+    unsigned* cq_mask;
+    struct io_uring_cqe* cqes;
+
+    void* sq_ptr;
+    size_t sq_len;
+    void* cq_ptr;
+    size_t cq_len;
+    size_t sqes_len;
+};
+
+static void uring_unmap(struct uring* ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_len);
+    }
+    if (ring->cq_ptr != NULL && ring->cq_ptr != MAP_FAILED) {
+        munmap(ring->cq_ptr, ring->cq_len);
+    }
+    if (ring->sq_ptr != NULL && ring->sq_ptr != MAP_FAILED) {
+        munmap(ring->sq_ptr, ring->sq_len);
+    }
+}
+
+static struct io_uring_sqe* uring_get_sqe(JNIEnv* env, struct uring* ring) {
+    unsigned head = __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE);
+    if (ring->sqe_tail - head >= ring->entries) {
+        errno = EBUSY;
+        throwExceptionWithErrno(env, "io_uring submission queue is full");
+        return NULL;
+    }
+    struct io_uring_sqe* sqe = &ring->sqes[ring->sqe_tail & *ring->sq_mask];
+    ring->sqe_tail++;
+    memset(sqe, 0, sizeof(*sqe));
+    return sqe;
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    uringInit
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_uringInit
+  (JNIEnv * env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params params;
+    memset(&params, 0, sizeof(params));
+
+    int fd = syscall(__NR_io_uring_setup, entries, &params);
+    if (fd < 0) {
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        return 0;
+    }
+    // IORING_OP_WRITE is available from the same kernel release
+    if (!(params.features & IORING_FEAT_RW_CUR_POS)) {
+        close(fd);
+        errno = ENOSYS;
+        throwExceptionWithErrno(env, "io_uring is too old");
+        return 0;
+    }
+
+    struct uring* ring = calloc(1, sizeof(struct uring));
+    if (ring == NULL) {
+        close(fd);
+        errno = ENOMEM;
+        throwExceptionWithErrno(env, "Failed to allocate io_uring");
+        return 0;
+    }
+    ring->fd = fd;
+    ring->entries = params.sq_entries;
+
+    ring->sq_len = params.sq_off.array + params.sq_entries * sizeof(unsigned);
+    ring->sq_ptr = mmap(NULL, ring->sq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        fd, IORING_OFF_SQ_RING);
+    ring->cq_len = params.cq_off.cqes + params.cq_entries * sizeof(struct io_uring_cqe);
+    ring->cq_ptr = mmap(NULL, ring->cq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        fd, IORING_OFF_CQ_RING);
+    ring->sqes_len = params.sq_entries * sizeof(struct io_uring_sqe);
+    ring->sqes = mmap(NULL, ring->sqes_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      fd, IORING_OFF_SQES);
+    if (ring->sq_ptr == MAP_FAILED || ring->cq_ptr == MAP_FAILED || ring->sqes == MAP_FAILED) {
+        int err = errno;
+        uring_unmap(ring);
+        close(fd);
+        free(ring);
+        errno = err;
+        throwExceptionWithErrno(env, "Failed to map io_uring");
+        return 0;
+    }
+
+    char* sq = ring->sq_ptr;
+    ring->sq_head = (unsigned*) (sq + params.sq_off.head);
+    ring->sq_tail = (unsigned*) (sq + params.sq_off.tail);
+    ring->sq_mask = (unsigned*) (sq + params.sq_off.ring_mask);
+    ring->sq_array = (unsigned*) (sq + params.sq_off.array);
+    for (unsigned i = 0; i < params.sq_entries; i++) {
+        ring->sq_array[i] = i;
+    }
+    ring->sqe_tail = *ring->sq_tail;
+    ring->sqe_head = ring->sqe_tail;
+
+    char* cq = ring->cq_ptr;
+    ring->cq_head = (unsigned*) (cq + params.cq_off.head);
+    ring->cq_tail = (unsigned*) (cq + params.cq_off.tail);
+    ring->cq_mask = (unsigned*) (cq + params.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe*) (cq + params.cq_off.cqes);
+
+    return (jlong) ring;
+#else
+    throwException(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    uringPrepFdatasync
+ * Signature: (JIJZ)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_uringPrepFdatasync
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jint fd, jlong userData, jboolean link) {
+#ifdef HAVE_IO_URING
+    struct io_uring_sqe* sqe = uring_get_sqe(env, (struct uring*) ringPtr);
+    if (sqe == NULL) {
+        return;
+    }
+    sqe->opcode = IORING_OP_FSYNC;
+    sqe->fd = fd;
+    sqe->fsync_flags = IORING_FSYNC_DATASYNC;
+    sqe->user_data = userData;
+    if (link) {
+        sqe->flags |= IOSQE_IO_LINK;
+    }
+#else
+    throwException(env, "io_uring is not available");
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    uringSubmit
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_uringSubmit
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jint minComplete) {
+#ifdef HAVE_IO_URING
+    struct uring* ring = (struct uring*) ringPtr;
+    unsigned toSubmit = ring->sqe_tail - ring->sqe_head;
+    __atomic_store_n(ring->sq_tail, ring->sqe_tail, __ATOMIC_RELEASE);
+
+    unsigned flags = minComplete > 0 ? IORING_ENTER_GETEVENTS : 0;
+    int res;
+    do {
+        res = syscall(__NR_io_uring_enter, ring->fd, toSubmit, minComplete, flags, NULL, 0);
+    } while (res < 0 && errno == EINTR);
+
+    if (res < 0) {
+        throwExceptionWithErrno(env, "Failed to submit to io_uring");
+        return -1;
+    }
+    ring->sqe_head += res;
+    return res;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    uringReap
+ * Signature: (J[J[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_uringReap
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jlongArray userData, jintArray results) {
+#ifdef HAVE_IO_URING
+    struct uring* ring = (struct uring*) ringPtr;
+    jsize max = (*env)->GetArrayLength(env, userData);
+    jsize resultsLen = (*env)->GetArrayLength(env, results);
+    if (resultsLen < max) {
+        max = resultsLen;
+    }
+
+    jlong* userDataElems = (*env)->GetPrimitiveArrayCritical(env, userData, NULL);
+    if (userDataElems == NULL) {
+        // an OutOfMemoryError is pending
+        return -1;
+    }
+    jint* resultsElems = (*env)->GetPrimitiveArrayCritical(env, results, NULL);
+    if (resultsElems == NULL) {
+        (*env)->ReleasePrimitiveArrayCritical(env, userData, userDataElems, JNI_ABORT);
+        return -1;
+    }
+
+    unsigned head = *ring->cq_head;
+    unsigned tail = __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE);
+    jint count = 0;
+    while (head != tail && count < max) {
+        struct io_uring_cqe* cqe = &ring->cqes[head & *ring->cq_mask];
+        userDataElems[count] = (jlong) cqe->user_data;
+        resultsElems[count] = cqe->res;
+        count++;
+        head++;
+    }
+    __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+
+    (*env)->ReleasePrimitiveArrayCritical(env, results, resultsElems, 0);
+    (*env)->ReleasePrimitiveArrayCritical(env, userData, userDataElems, 0);
+    return count;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    uringExit
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_uringExit
+  (JNIEnv * env, jclass clazz, jlong ringPtr) {
+#ifdef HAVE_IO_URING
+    struct uring* ring = (struct uring*) ringPtr;
+    uring_unmap(ring);
+    close(ring->fd);
+    free(ring);
+#endif
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the submission and reaping of operations through {@link IoUring}.
+ */
+public class IoUringTest {
+
+    private static final int QUEUE_DEPTH = 8;
+    private static final int EBADF = 9;
+
+    private final NativeIO nativeIO = new NativeIOImpl();
+    private IoUring ring;
+    private File file;
+    private int fd = -1;
+
+    @Before
+    public void setUp() throws Exception {
+        try {
+            ring = new IoUring(QUEUE_DEPTH);
+        } catch (NativeIOException | LinkageError e) {
+            // io_uring is linux only and can be disabled in the kernel
+            Assume.assumeNoException(e);
+        }
+        file = File.createTempFile("iouring", ".test");
+        fd = nativeIO.open(file.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 0644);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (ring != null) {
+            ring.close();
+        }
+        if (fd >= 0) {
+            nativeIO.close(fd);
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Submit the prepared operations and reap their completions.
+     *
+     * @return the results of the completions by user data
+     */
+    private Map<Long, Integer> submitAndReap(int expectedCompletions) throws Exception {
+        long[] userData = new long[QUEUE_DEPTH];
+        int[] results = new int[QUEUE_DEPTH];
+        Map<Long, Integer> completions = new HashMap<>();
+        ring.submit(true);
+        while (completions.size() < expectedCompletions) {
+            int reaped = ring.reapCompletions(userData, results);
+            for (int i = 0; i < reaped; i++) {
+                if (completions.put(userData[i], results[i]) != null) {
+                    fail("Completion reaped twice for " + userData[i]);
+                }
+            }
+            if (completions.size() < expectedCompletions) {
+                ring.submit(true);
+            }
+        }
+        return completions;
+    }
+
+    @Test
+    public void testFdatasyncCompletions() throws Exception {
+        for (long userData = 1; userData <= 3; userData++) {
+            ring.prepareFdatasync(fd, userData, false);
+        }
+        Map<Long, Integer> completions = submitAndReap(3);
+        assertEquals(3, completions.size());
+        for (long userData = 1; userData <= 3; userData++) {
+            assertEquals(Integer.valueOf(0), completions.get(userData));
+        }
+
+        // Nothing left to reap
+        assertEquals(0, ring.reapCompletions(new long[QUEUE_DEPTH], new int[QUEUE_DEPTH]));
+    }
+
+    @Test
+    public void testReapBoundedByTheArrays() throws Exception {
+        for (long userData = 1; userData <= 4; userData++) {
+            ring.prepareFdatasync(fd, userData, false);
+        }
+        assertEquals(4, ring.submit(true));
+
+        long[] userData = new long[2];
+        int[] results = new int[2];
+        int reaped = 0;
+        while (reaped < 4) {
+            int count = ring.reapCompletions(userData, results);
+            assertTrue(count <= 2);
+            reaped += count;
+            if (count == 0) {
+                ring.submit(true);
+            }
+        }
+        assertEquals(4, reaped);
+    }
+
+    @Test
+    public void testLinkedOperationCancelledAfterFailure() throws Exception {
+        ring.prepareFdatasync(-1, 1, true);
+        ring.prepareFdatasync(fd, 2, false);
+        Map<Long, Integer> completions = submitAndReap(2);
+        assertEquals(Integer.valueOf(-EBADF), completions.get(1L));
+        assertEquals(Integer.valueOf(-NativeAsyncIO.ECANCELED), completions.get(2L));
+    }
+
+    @Test
+    public void testSubmissionQueueFull() throws Exception {
+        for (long userData = 0; userData < QUEUE_DEPTH; userData++) {
+            ring.prepareFdatasync(fd, userData, false);
+        }
+        try {
+            ring.prepareFdatasync(fd, QUEUE_DEPTH, false);
+            fail("The submission queue should be full");
+        } catch (NativeIOException e) {
+            // expected
+        }
+
+        // Once submitted, the queue has room again
+        assertEquals(QUEUE_DEPTH, submitAndReap(QUEUE_DEPTH).size());
+        ring.prepareFdatasync(fd, QUEUE_DEPTH, false);
+        assertEquals(Integer.valueOf(0), submitAndReap(1).get((long) QUEUE_DEPTH));
+    }
+}